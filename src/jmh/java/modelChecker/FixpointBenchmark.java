@@ -0,0 +1,104 @@
+package modelChecker;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import formula.pathFormula.*;
+import formula.stateFormula.*;
+import model.CompiledModel;
+import model.StateSet;
+
+/**
+ * Measures the fixpoint algorithms on a random model once their scratch
+ * buffers and set pool are warm. Run with
+ * <pre>
+ * ./gradlew jmh -Pjmh.profilers=gc
+ * </pre>
+ * and look at gc.alloc.rate.norm, which should stay close to zero bytes per
+ * operation because every result is recycled.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FixpointBenchmark {
+    @Param({ "1000", "100000" })
+    public int states;
+
+    private SATChecker checker;
+    private StateSet all;
+    private StateFormula existsUntil;
+    private StateFormula forAllAlways;
+    private StateFormula existsAlways;
+    private StateFormula forAllUntil;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        CompiledModel.Builder builder = new CompiledModel.Builder();
+        String[] labels = { "p", "q" };
+        for (int s = 0; s < states; s++) {
+            builder.addState("s" + s, s == 0, new String[] { labels[random.nextInt(2)] });
+        }
+        for (int s = 0; s < states; s++) {
+            for (int k = 0; k < 3; k++) {
+                builder.addTransition(s, random.nextInt(states), new String[0]);
+            }
+        }
+
+        CompiledModel model = builder.build();
+        checker = new SATChecker(model);
+        all = model.allStates();
+
+        HashSet<String> none = new HashSet<String>();
+        StateFormula p = new AtomicProp("p");
+        StateFormula q = new AtomicProp("q");
+        existsUntil = new ThereExists(new Until(p, q, none, none));
+        forAllAlways = new ForAll(new Always(new Or(p, new ThereExists(new Next(q, none))), none));
+        existsAlways = new ThereExists(new Always(p, none));
+        forAllUntil = new ForAll(new Until(p, q, none, none));
+    }
+
+    private void check(StateFormula formula, Blackhole blackhole) {
+        StateSet sat = checker.getSat(formula, all);
+        blackhole.consume(sat.isEmpty());
+        checker.recycle(sat);
+    }
+
+    @Benchmark
+    public void existsUntil(Blackhole blackhole) {
+        check(existsUntil, blackhole);
+    }
+
+    @Benchmark
+    public void forAllAlways(Blackhole blackhole) {
+        check(forAllAlways, blackhole);
+    }
+
+    @Benchmark
+    public void existsAlways(Blackhole blackhole) {
+        check(existsAlways, blackhole);
+    }
+
+    @Benchmark
+    public void forAllUntil(Blackhole blackhole) {
+        check(forAllUntil, blackhole);
+    }
+}
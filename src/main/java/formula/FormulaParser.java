@@ -34,21 +34,63 @@ public class FormulaParser {
     public static final char ALWAYS_TOKEn = 'G';
     public static final char THEREEXISTS_TOKEN = 'E';
     public static final char FORALL_TOKEN = 'A';
+    private static final char[] TRUE_SUFFIX = "RUE".toCharArray();
+    private static final char[] FALSE_SUFFIX = "ALSE".toCharArray();
     private Reader reader;
+    private final IdentifierTable identifiers = new IdentifierTable();
+    private final Map<String, Set<String>> actionSets;
     Gson gson = new Gson();
     private JsonObject jsonFormula;
 
     public FormulaParser(String filePath) throws IOException {
-        JsonParser parser = new JsonParser();
-        JsonElement jsonElement = parser.parse(new FileReader(filePath));
-        jsonFormula = jsonElement.getAsJsonObject();
-        String formula = jsonFormula.get(JSON_FORMULA_FIELD).getAsString();
-        reader = new Reader(formula);
+        this(readJson(filePath));
     }
 
-    private FormulaParser() {
+    /**
+     * Creates a parser for a formula given as a JSON object in the same layout
+     * as the formula files: a "formula" field plus one field per action set.
+     *
+     * @param jsonFormula the JSON object
+     * @throws IOException if the object has no formula field
+     */
+    public FormulaParser(JsonObject jsonFormula) throws IOException {
+        this.jsonFormula = jsonFormula;
+        this.actionSets = new HashMap<String, Set<String>>();
+        JsonElement formula = jsonFormula.get(JSON_FORMULA_FIELD);
+        if (formula == null) {
+            throw new IOException("Missing \"" + JSON_FORMULA_FIELD + "\" field.");
+        }
+        reader = new Reader(formula.getAsString());
+    }
+
+    private static JsonObject readJson(String filePath) throws IOException {
+        try (FileReader fileReader = new FileReader(filePath)) {
+            JsonParser parser = new JsonParser();
+            JsonElement jsonElement = parser.parse(fileReader);
+            return jsonElement.getAsJsonObject();
+        }
+    }
+
+    /**
+     * Creates a parser for raw formula strings, see parseFormula(). One parser
+     * can parse any number of formulas and shares their identifiers.
+     */
+    public FormulaParser() {
+        this(new HashMap<String, Set<String>>());
+    }
+
+    /**
+     * Creates a parser for raw formula strings whose action set identifiers are
+     * looked up in the given dictionary. Every reference to an identifier gets
+     * the set from the dictionary, identifiers that are not in it stand for no
+     * actions.
+     *
+     * @param actionSets the action sets by identifier
+     */
+    public FormulaParser(Map<String, Set<String>> actionSets) {
+        this.actionSets = actionSets;
         jsonFormula = null;
-        reader = null;
+        reader = new Reader("");
     }
 
     public StateFormula parse() throws IOException {
@@ -70,9 +112,21 @@ public class FormulaParser {
      * @throws IOException
      */
     public static StateFormula parseRawFormulaString(String formula) throws IOException {
-        FormulaParser parser = new FormulaParser();
-        parser.reader = new Reader(formula);
-        return parser.parse();
+        return new FormulaParser().parseFormula(formula);
+    }
+
+    /**
+     * Parses another raw formula string with this parser, reusing its reader
+     * and interned identifiers. The same restrictions as for
+     * parseRawFormulaString() apply.
+     *
+     * @param formula the formula string
+     * @return the formula
+     * @throws IOException if the formula is malformed
+     */
+    public StateFormula parseFormula(CharSequence formula) throws IOException {
+        reader.reset(formula);
+        return parse();
     }
 
     public StateFormula recursiveParseStateFormula() throws IOException {
@@ -119,15 +173,15 @@ public class FormulaParser {
         case THEREEXISTS_TOKEN:
             return new ThereExists(parsePathFormula());
         case TRUE_TOKEN_PREFIX:
-            validateNextChars("RUE".toCharArray());
+            validateNextChars(TRUE_SUFFIX);
             return new BoolProp(true);
         case FALSE_TOKEN_PREFIX:
-            validateNextChars("ALSE".toCharArray());
+            validateNextChars(FALSE_SUFFIX);
             return new BoolProp(false);
         default:
             if (isLowerCase(nextChar)) {
                 reader.unread(nextChar);
-                String ident = parseOptionalIdentifier(true);
+                String ident = parseOptionalIdentifier(false);
                 if (ident != null) {
                     return new AtomicProp(ident);
                 }
@@ -180,40 +234,25 @@ public class FormulaParser {
     }
 
     /**
-     * Parses sequence of lower case characters into a string. Keeps reading
-     * from stream until the next character to be read is not in the range a-z.
+     * Parses sequence of lower case characters and digits into a string. Keeps
+     * reading until the next character is not in the range a-z or 0-9. The
+     * string is interned, so every occurrence of an identifier in the formulas
+     * of this parser is the same instance.
      * 
      * @return The string of lower case characters or null to denote that the
      *         reader found no lower case characters at its position.
      * @throws IOException
      */
     public String parseOptionalIdentifier(boolean allowWhitespacePrefix) throws IOException {
-        char nextChar;
         if (allowWhitespacePrefix) {
-            nextChar = reader.nextChar();
-        } else {
-            nextChar = reader.rawRead();
+            reader.skipWhitespace();
         }
-        if (isLowerCase(nextChar) || isNumericDigit(nextChar)) {
-            StringBuilder buffer = new StringBuilder(nextChar + "");
-            while (reader.ready()) {
-                nextChar = reader.rawRead();
-                if (isLowerCase(nextChar) || isNumericDigit(nextChar)) {
-                    buffer.append(nextChar + "");
-                } else {
-                    reader.unread(nextChar);
-                    break;
-                }
-            }
-            return buffer.toString();
-        } else {
-            reader.unread(nextChar);
+        int begin = reader.getIndex();
+        int end = reader.skipIdentifier();
+        if (begin == end) {
             return null;
         }
-    }
-
-    private boolean isNumericDigit(char nextChar) {
-        return nextChar >= '0' && nextChar <= '9';
+        return identifiers.intern(reader.getInput(), begin, end);
     }
 
     public boolean isLowerCase(char charIn) {
@@ -224,12 +263,18 @@ public class FormulaParser {
         if (actionSetIdentifier == null) {
             return new HashSet<String>();
         }
-        String[] actionsArray = gson.fromJson(jsonFormula.get(actionSetIdentifier), String[].class);
-        if (actionsArray == null) {
+        Set<String> actions = actionSets.get(actionSetIdentifier);
+        if (actions != null) {
+            return actions;
+        } else if (jsonFormula == null) {
             return new HashSet<String>();
-        } else {
-            return new HashSet<String>(Arrays.asList(actionsArray));
         }
+
+        // resolve each identifier once and share the set between its references
+        String[] actionsArray = gson.fromJson(jsonFormula.get(actionSetIdentifier), String[].class);
+        actions = (actionsArray == null) ? new HashSet<String>() : new HashSet<String>(Arrays.asList(actionsArray));
+        actionSets.put(actionSetIdentifier, actions);
+        return actions;
     }
 
 }
@@ -0,0 +1,195 @@
+package formula;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import formula.stateFormula.StateFormula;
+
+/**
+ * A property suite: named formulas that share one dictionary of action sets,
+ * plus an optional constraint. A suite file looks like
+ *
+ * <pre>
+ * {
+ *     "actions": {"b": ["act1", "act3"], "c": ["act1"]},
+ *     "constraint": "EcFb TRUE",
+ *     "formulas": [
+ *         {"name": "progress", "formula": "AG EF crit1"},
+ *         {"name": "mutex", "formula": "AG !(crit1 && crit2)"},
+ *         "EcFb (wait1 || wait2)"
+ *     ]
+ * }
+ * </pre>
+ *
+ * Formulas given as plain strings are named by their position. The file is
+ * read once. All formulas are parsed by one FormulaParser, so identifiers are
+ * interned across the suite. Action sets with the same actions are the same
+ * unmodifiable set instance.
+ */
+public class FormulaSuite {
+    private static final String ACTIONS_FIELD = "actions";
+    private static final String CONSTRAINT_FIELD = "constraint";
+    private static final String FORMULAS_FIELD = "formulas";
+
+    private final Map<String, StateFormula> formulas;
+    private final StateFormula constraint;
+    private final Map<String, Set<String>> actionSets;
+
+    private FormulaSuite(Map<String, StateFormula> formulas, StateFormula constraint, Map<String, Set<String>> actionSets) {
+        this.formulas = formulas;
+        this.constraint = constraint;
+        this.actionSets = actionSets;
+    }
+
+    /**
+     * Reads a suite file.
+     *
+     * @param filePath the path of the suite file
+     * @return the suite
+     * @throws IOException if the file cannot be read or a formula is malformed
+     */
+    public static FormulaSuite parse(String filePath) throws IOException {
+        try (FileReader fileReader = new FileReader(filePath)) {
+            return parse(fileReader);
+        }
+    }
+
+    public static FormulaSuite parse(Reader reader) throws IOException {
+        JsonElement element = new JsonParser().parse(reader);
+        if (!element.isJsonObject()) {
+            throw new IOException("A formula suite must be a JSON object.");
+        }
+        return parse(element.getAsJsonObject());
+    }
+
+    /**
+     * Builds a suite from a JSON object in the layout of the suite files.
+     *
+     * @param json the JSON object
+     * @return the suite
+     * @throws IOException if a formula is malformed
+     */
+    public static FormulaSuite parse(JsonObject json) throws IOException {
+        Map<String, Set<String>> actionSets = actionSets(json.getAsJsonObject(ACTIONS_FIELD));
+        FormulaParser parser = new FormulaParser(actionSets);
+
+        StateFormula constraint = null;
+        if (json.has(CONSTRAINT_FIELD) && !json.get(CONSTRAINT_FIELD).isJsonNull()) {
+            constraint = parse(parser, CONSTRAINT_FIELD, json.get(CONSTRAINT_FIELD).getAsString());
+        }
+
+        Map<String, StateFormula> formulas = new LinkedHashMap<String, StateFormula>();
+        JsonArray entries = json.getAsJsonArray(FORMULAS_FIELD);
+        if (entries == null) {
+            throw new IOException("Missing \"" + FORMULAS_FIELD + "\" field.");
+        }
+        for (int i = 0; i < entries.size(); i++) {
+            JsonElement entry = entries.get(i);
+            String name = String.valueOf(i);
+            String formula;
+            if (entry.isJsonObject()) {
+                JsonObject object = entry.getAsJsonObject();
+                if (object.has("name")) {
+                    name = object.get("name").getAsString();
+                }
+                if (!object.has("formula")) {
+                    throw new IOException("Missing \"formula\" field in formula " + name + ".");
+                }
+                formula = object.get("formula").getAsString();
+            } else {
+                formula = entry.getAsString();
+            }
+
+            if (formulas.containsKey(name)) {
+                throw new IOException("Duplicate formula name " + name + ".");
+            }
+            formulas.put(name, parse(parser, name, formula));
+        }
+        return new FormulaSuite(Collections.unmodifiableMap(formulas), constraint, Collections.unmodifiableMap(actionSets));
+    }
+
+    private static StateFormula parse(FormulaParser parser, String name, String formula) throws IOException {
+        try {
+            return parser.parseFormula(formula);
+        } catch (IOException e) {
+            throw new IOException("In formula " + name + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads the action set dictionary, interning action names and sharing equal sets.
+     */
+    private static Map<String, Set<String>> actionSets(JsonObject json) {
+        Map<String, Set<String>> actionSets = new HashMap<String, Set<String>>();
+        if (json == null) {
+            return actionSets;
+        }
+
+        Map<String, String> names = new HashMap<String, String>();
+        Map<Set<String>, Set<String>> distinct = new HashMap<Set<String>, Set<String>>();
+        for (Map.Entry<String, JsonElement> entry : json.entrySet()) {
+            Set<String> actions = new LinkedHashSet<String>();
+            for (JsonElement action : entry.getValue().getAsJsonArray()) {
+                String name = action.getAsString();
+                String known = names.get(name);
+                if (known == null) {
+                    names.put(name, name);
+                    known = name;
+                }
+                actions.add(known);
+            }
+
+            Set<String> shared = distinct.get(actions);
+            if (shared == null) {
+                shared = Collections.unmodifiableSet(actions);
+                distinct.put(actions, shared);
+            }
+            actionSets.put(entry.getKey(), shared);
+        }
+        return actionSets;
+    }
+
+    /**
+     * Returns the formulas by name, in the order of the file.
+     */
+    public Map<String, StateFormula> getFormulas() {
+        return formulas;
+    }
+
+    public List<String> getNames() {
+        return new ArrayList<String>(formulas.keySet());
+    }
+
+    public StateFormula get(String name) {
+        return formulas.get(name);
+    }
+
+    /**
+     * Returns the constraint of the suite, or null if it has none.
+     */
+    public StateFormula getConstraint() {
+        return constraint;
+    }
+
+    public Map<String, Set<String>> getActionSets() {
+        return actionSets;
+    }
+
+    public int size() {
+        return formulas.size();
+    }
+}
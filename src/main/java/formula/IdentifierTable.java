@@ -0,0 +1,67 @@
+package formula;
+
+/**
+ * Interns identifiers read from formulas. Looking up an identifier that was
+ * seen before compares it in place in the formula and returns the stored
+ * string, so repeated labels and action set names are not allocated again.
+ */
+final class IdentifierTable {
+    private String[] slots = new String[64];
+    private int size;
+
+    /**
+     * Returns the interned string for the characters in [begin, end) of the input.
+     */
+    String intern(CharSequence input, int begin, int end) {
+        int hash = 0;
+        for (int i = begin; i < end; i++) {
+            hash = 31 * hash + input.charAt(i);
+        }
+
+        int mask = slots.length - 1;
+        for (int slot = mix(hash) & mask;; slot = (slot + 1) & mask) {
+            String known = slots[slot];
+            if (known == null) {
+                String name = input.subSequence(begin, end).toString();
+                slots[slot] = name;
+                if (++size * 2 > slots.length) {
+                    grow();
+                }
+                return name;
+            } else if (known.hashCode() == hash && matches(known, input, begin, end)) {
+                return known;
+            }
+        }
+    }
+
+    private static boolean matches(String known, CharSequence input, int begin, int end) {
+        if (known.length() != end - begin) {
+            return false;
+        }
+        for (int i = begin; i < end; i++) {
+            if (known.charAt(i - begin) != input.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private void grow() {
+        String[] old = slots;
+        slots = new String[old.length * 2];
+        int mask = slots.length - 1;
+        for (String name : old) {
+            if (name != null) {
+                int slot = mix(name.hashCode()) & mask;
+                while (slots[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = name;
+            }
+        }
+    }
+}
@@ -1,27 +1,45 @@
 package formula;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.PushbackReader;
 
+/**
+ * Reads a formula character by character from an in-memory buffer. The
+ * position of the next character is an index into the buffer, so reading,
+ * unreading and scanning identifiers do not allocate.
+ */
 public class Reader {
-    private PushbackReader reader;
+    private CharSequence input;
 
-    private int position = 1;
+    private int index;
 
-    public Reader(InputStream inputStream) {
-        reader = new PushbackReader(new InputStreamReader(inputStream));
+    public Reader(InputStream inputStream) throws IOException {
+        StringBuilder buffer = new StringBuilder();
+        try (InputStreamReader reader = new InputStreamReader(inputStream)) {
+            char[] chunk = new char[1024];
+            for (int read = reader.read(chunk); read >= 0; read = reader.read(chunk)) {
+                buffer.append(chunk, 0, read);
+            }
+        }
+        this.input = buffer;
+    }
+
+    public Reader(CharSequence formula) {
+        this.input = formula;
     }
 
-    public Reader(String formula) {
-        this(new ByteArrayInputStream(formula.getBytes()));
+    /**
+     * Starts reading another formula from its first character.
+     */
+    public void reset(CharSequence formula) {
+        input = formula;
+        index = 0;
     }
 
     public char nextChar() throws IOException {
-        while (reader.ready()) {
-            char nextChar = rawRead();
+        while (index < input.length()) {
+            char nextChar = input.charAt(index++);
             switch (nextChar) {
             case ' ':
             case '\n':
@@ -35,22 +53,63 @@ public class Reader {
     }
 
     public void unread(char charIn) throws IOException {
-        reader.unread(charIn);
-        position--;
+        index--;
     }
 
+    /**
+     * Returns the next character, including whitespace, or (char) -1 after the end.
+     */
     public char rawRead() throws IOException {
-        char nextChar = (char) reader.read();
-        position++;
+        char nextChar = (index < input.length()) ? input.charAt(index) : (char) -1;
+        index++;
         return nextChar;
     }
 
     public boolean ready() throws IOException {
-        return reader.ready();
+        return index < input.length();
+    }
+
+    /**
+     * Skips whitespace up to the next character or the end of the formula.
+     */
+    public void skipWhitespace() {
+        while (index < input.length()) {
+            char nextChar = input.charAt(index);
+            if (nextChar != ' ' && nextChar != '\n' && nextChar != '\t') {
+                return;
+            }
+            index++;
+        }
+    }
+
+    /**
+     * Skips the lower case letters and digits at the current position.
+     * @return the index after the last skipped character
+     */
+    public int skipIdentifier() {
+        while (index < input.length()) {
+            char nextChar = input.charAt(index);
+            if (!(nextChar >= 'a' && nextChar <= 'z') && !(nextChar >= '0' && nextChar <= '9')) {
+                break;
+            }
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Returns the index of the next character in the formula.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public CharSequence getInput() {
+        return input;
     }
 
     public int getPosition() {
-        return position;
+        return index + 1;
     }
 
 }
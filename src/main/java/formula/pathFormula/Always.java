@@ -29,4 +29,17 @@ public class Always extends PathFormula {
 
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Always)) {
+            return false;
+        }
+        Always other = (Always) o;
+        return stateFormula.equals(other.stateFormula) && actions.equals(other.actions);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * stateFormula.hashCode() + actions.hashCode() + 6;
+    }
 }
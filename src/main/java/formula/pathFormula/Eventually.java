@@ -38,4 +38,18 @@ public class Eventually extends PathFormula {
         stateFormula.writeToBuffer(buffer);
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Eventually)) {
+            return false;
+        }
+        Eventually other = (Eventually) o;
+        return stateFormula.equals(other.stateFormula) && leftActions.equals(other.leftActions)
+                && rightActions.equals(other.rightActions);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * stateFormula.hashCode() + leftActions.hashCode()) + rightActions.hashCode() + 7;
+    }
 }
@@ -28,4 +28,17 @@ public class Next extends PathFormula {
         ;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Next)) {
+            return false;
+        }
+        Next other = (Next) o;
+        return stateFormula.equals(other.stateFormula) && actions.equals(other.actions);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * stateFormula.hashCode() + actions.hashCode() + 5;
+    }
 }
@@ -43,4 +43,19 @@ public class Until extends PathFormula {
         buffer.append(")");
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Until)) {
+            return false;
+        }
+        Until other = (Until) o;
+        return left.equals(other.left) && right.equals(other.right) && leftActions.equals(other.leftActions)
+                && rightActions.equals(other.rightActions);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * (31 * left.hashCode() + right.hashCode()) + leftActions.hashCode())
+                + rightActions.hashCode() + 8;
+    }
 }
@@ -18,4 +18,17 @@ public class And extends StateFormula {
         buffer.append(")");
     }
 
-}
\ No newline at end of file
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof And)) {
+            return false;
+        }
+        And other = (And) o;
+        return left.equals(other.left) && right.equals(other.right);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * left.hashCode() + right.hashCode() + 1;
+    }
+}
@@ -12,4 +12,13 @@ public class AtomicProp extends StateFormula {
         buffer.append(" " + label + " ");
     }
 
+    @Override
+    public boolean equals(Object o) {
+        return (o instanceof AtomicProp) && label.equals(((AtomicProp) o).label);
+    }
+
+    @Override
+    public int hashCode() {
+        return label.hashCode();
+    }
 }
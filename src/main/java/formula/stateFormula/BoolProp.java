@@ -13,4 +13,13 @@ public class BoolProp extends StateFormula {
         buffer.append(" " + stringValue + " ");
     }
 
+    @Override
+    public boolean equals(Object o) {
+        return (o instanceof BoolProp) && value == ((BoolProp) o).value;
+    }
+
+    @Override
+    public int hashCode() {
+        return value ? 1231 : 1237;
+    }
 }
@@ -17,4 +17,14 @@ public class ForAll extends StateFormula {
         pathFormula.writeToBuffer(buffer);
         buffer.append(")");
     }
+
+    @Override
+    public boolean equals(Object o) {
+        return (o instanceof ForAll) && pathFormula.equals(((ForAll) o).pathFormula);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * pathFormula.hashCode() + 3;
+    }
 }
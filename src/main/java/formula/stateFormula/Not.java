@@ -17,4 +17,13 @@ public class Not extends StateFormula {
         buffer.append(")");
     }
 
+    @Override
+    public boolean equals(Object o) {
+        return (o instanceof Not) && stateFormula.equals(((Not) o).stateFormula);
+    }
+
+    @Override
+    public int hashCode() {
+        return ~stateFormula.hashCode();
+    }
 }
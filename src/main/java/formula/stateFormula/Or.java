@@ -18,4 +18,17 @@ public class Or extends StateFormula {
         buffer.append(")");
     }
 
-}
\ No newline at end of file
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Or)) {
+            return false;
+        }
+        Or other = (Or) o;
+        return left.equals(other.left) && right.equals(other.right);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * left.hashCode() + right.hashCode() + 2;
+    }
+}
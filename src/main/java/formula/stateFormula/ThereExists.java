@@ -17,4 +17,14 @@ public class ThereExists extends StateFormula {
         pathFormula.writeToBuffer(buffer);
         buffer.append(")");
     }
+
+    @Override
+    public boolean equals(Object o) {
+        return (o instanceof ThereExists) && pathFormula.equals(((ThereExists) o).pathFormula);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * pathFormula.hashCode() + 4;
+    }
 }
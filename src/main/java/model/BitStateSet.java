@@ -0,0 +1,156 @@
+package model;
+
+import java.util.BitSet;
+
+/**
+ * A dense state set backed by a bitset, one bit per state of the model.
+ */
+public class BitStateSet implements StateSet {
+    private final int universeSize;
+    private final BitSet bits;
+
+    public BitStateSet(int universeSize) {
+        this(universeSize, new BitSet(universeSize));
+    }
+
+    private BitStateSet(int universeSize, BitSet bits) {
+        this.universeSize = universeSize;
+        this.bits = bits;
+    }
+
+    /**
+     * Creates a set that contains every state of the universe.
+     * @param universeSize the number of states in the model
+     * @return the full set
+     */
+    public static BitStateSet full(int universeSize) {
+        BitStateSet set = new BitStateSet(universeSize);
+        set.bits.set(0, universeSize);
+        return set;
+    }
+
+    @Override
+    public int universeSize() {
+        return universeSize;
+    }
+
+    @Override
+    public boolean contains(int state) {
+        return bits.get(state);
+    }
+
+    @Override
+    public void add(int state) {
+        bits.set(state);
+    }
+
+    @Override
+    public void remove(int state) {
+        bits.clear(state);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return bits.isEmpty();
+    }
+
+    @Override
+    public int cardinality() {
+        return bits.cardinality();
+    }
+
+    @Override
+    public int nextState(int from) {
+        return bits.nextSetBit(from);
+    }
+
+    @Override
+    public void addAll(StateSet other) {
+        if (other instanceof BitStateSet) {
+            bits.or(((BitStateSet) other).bits);
+            return;
+        }
+
+        for (int s = other.nextState(0); s >= 0; s = other.nextState(s + 1)) {
+            bits.set(s);
+        }
+    }
+
+    @Override
+    public void retainAll(StateSet other) {
+        if (other instanceof BitStateSet) {
+            bits.and(((BitStateSet) other).bits);
+            return;
+        }
+
+        for (int s = bits.nextSetBit(0); s >= 0; s = bits.nextSetBit(s + 1)) {
+            if (!other.contains(s)) {
+                bits.clear(s);
+            }
+        }
+    }
+
+    @Override
+    public void removeAll(StateSet other) {
+        if (other instanceof BitStateSet) {
+            bits.andNot(((BitStateSet) other).bits);
+            return;
+        }
+
+        for (int s = other.nextState(0); s >= 0; s = other.nextState(s + 1)) {
+            bits.clear(s);
+        }
+    }
+
+    @Override
+    public boolean containsAll(StateSet other) {
+        if (other instanceof BitStateSet) {
+            // walk the runs of set bits of the other set instead of cloning it
+            BitSet otherBits = ((BitStateSet) other).bits;
+            for (int s = otherBits.nextSetBit(0); s >= 0; s = otherBits.nextSetBit(s)) {
+                int end = bits.nextClearBit(s);
+                if (end == s) {
+                    return false;
+                }
+                s = end;
+            }
+            return true;
+        }
+
+        for (int s = other.nextState(0); s >= 0; s = other.nextState(s + 1)) {
+            if (!bits.get(s)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        bits.clear();
+    }
+
+    @Override
+    public StateSet copy() {
+        return new BitStateSet(universeSize, (BitSet) bits.clone());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof BitStateSet)) {
+            return false;
+        }
+        BitStateSet other = (BitStateSet) o;
+        return universeSize == other.universeSize && bits.equals(other.bits);
+    }
+
+    @Override
+    public int hashCode() {
+        return bits.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return bits.toString();
+    }
+}
@@ -0,0 +1,1020 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * An immutable, index based view of a model.
+ *
+ * States, labels and actions are numbered from 0. Transitions are stored as
+ * compressed adjacency arrays in both directions: the outgoing edges of state s
+ * are the edge ids in [succBegin(s), succEnd(s)), the incoming edges are the
+ * entries in [predBegin(s), predEnd(s)). Both directions are also indexed by
+ * action, so the edges of a state that carry a given action are one slice.
+ * Nothing in this class is modified after construction, so one instance can be
+ * shared by any number of checkers running on different threads.
+ */
+public final class CompiledModel {
+    private final Storage storage;
+    private final String[] names;
+    private final ObjectIntMap<String> stateIndex;
+    private final long[] initBits;
+    private final int[] initial;
+
+    private final String[] labels;
+    private final ObjectIntMap<String> labelIndex;
+    private final int[] labelOffset;
+    private final IntStore labelStates;
+    private final IntStore stateLabelOffset;
+    private final IntStore stateLabelIds;
+
+    private final String[] actions;
+    private final ObjectIntMap<String> actionIndex;
+
+    private final IntStore succOffset;
+    private final IntStore succTarget;
+    private final IntStore actionOffset;
+    private final IntStore edgeActions;
+
+    private final IntStore predOffset;
+    private final IntStore predSource;
+    private final IntStore predEdge;
+
+    private final IntStore succActionOffset;
+    private final IntStore succActionId;
+    private final IntStore succActionEdge;
+
+    private final IntStore predActionOffset;
+    private final IntStore predActionId;
+    private final IntStore predActionSource;
+    private final IntStore predActionEdge;
+
+    /**
+     * Compiles the given model. Transitions whose source or target is not a
+     * state of the model are dropped.
+     *
+     * @param model the parsed model
+     * @return the compiled model
+     */
+    public static CompiledModel compile(Model model) {
+        return compile(model, Storage.HEAP);
+    }
+
+    /**
+     * Compiles the given model into arrays and state sets of the given storage.
+     *
+     * @param model the parsed model
+     * @param storage where the arrays and state sets are kept
+     * @return the compiled model
+     */
+    public static CompiledModel compile(Model model, Storage storage) {
+        Builder builder = new Builder(storage);
+        for (State state : model.getStates()) {
+            builder.addState(state.getName(), state.isInit(), state.getLabel());
+        }
+        for (Transition transition : model.getTransitions()) {
+            builder.addTransition(transition.getSource(), transition.getTarget(), transition.getActions());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Builds a compiled model directly from indexed states and transitions,
+     * without going through a Model. States go straight into the columns of
+     * the compiled model, so no State objects are created. A builder builds
+     * one model; it cannot be used after build().
+     */
+    public static class Builder {
+        private final Storage storage;
+        private String[] names = new String[16];
+        private final ObjectIntMap<String> stateIndex = new ObjectIntMap<String>();
+        private long[] initBits = new long[1];
+        private final ObjectIntMap<String> labelIndex = new ObjectIntMap<String>();
+        private int[] stateLabelOffset = new int[17];
+        private int[] stateLabelIds = new int[16];
+        private int stateCount;
+        private int[] sources = new int[16];
+        private int[] targets = new int[16];
+        private final ObjectIntMap<String> actionIndex = new ObjectIntMap<String>();
+        private int[] edgeActionOffset = new int[17];
+        private int[] edgeActionIds = new int[16];
+        private int edgeCount;
+        private boolean built;
+
+        public Builder() {
+            this(Storage.HEAP);
+        }
+
+        /**
+         * @param storage where the arrays and state sets of the built model are kept
+         */
+        public Builder(Storage storage) {
+            this.storage = storage;
+        }
+
+        /**
+         * Adds a state. A state with the name of an earlier one takes over its name.
+         * @return the index of the new state
+         */
+        public int addState(String name, boolean init, String[] labels) {
+            checkNotBuilt();
+            if (stateCount == names.length) {
+                names = Arrays.copyOf(names, stateCount * 2);
+                stateLabelOffset = Arrays.copyOf(stateLabelOffset, stateCount * 2 + 1);
+            }
+            if ((stateCount >>> 6) == initBits.length) {
+                initBits = Arrays.copyOf(initBits, initBits.length * 2);
+            }
+            names[stateCount] = name;
+            stateIndex.put(name, stateCount);
+            if (init) {
+                initBits[stateCount >>> 6] |= 1L << stateCount;
+            }
+
+            int begin = stateLabelOffset[stateCount];
+            int end = begin;
+            for (int i = 0; labels != null && i < labels.length; i++) {
+                int id = labelIndex.intern(labels[i]);
+                if (contains(stateLabelIds, begin, end, id)) {
+                    continue;
+                }
+                if (end == stateLabelIds.length) {
+                    stateLabelIds = Arrays.copyOf(stateLabelIds, end * 2);
+                }
+                stateLabelIds[end++] = id;
+            }
+            stateLabelOffset[stateCount + 1] = end;
+            return stateCount++;
+        }
+
+        /**
+         * Returns the id an action has in the built model, giving a new action the next free id.
+         */
+        public int internAction(String action) {
+            checkNotBuilt();
+            return actionIndex.intern(action);
+        }
+
+        /**
+         * Adds a transition between two states that were already added.
+         */
+        public void addTransition(int source, int target, String[] actionNames) {
+            int[] ids = new int[(actionNames == null) ? 0 : actionNames.length];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = internAction(actionNames[i]);
+            }
+            addTransition(source, target, ids, ids.length);
+        }
+
+        /**
+         * Adds a transition between two states that were already added, with
+         * the first count of the given ids from internAction(). The ids are copied.
+         */
+        public void addTransition(int source, int target, int[] actionIds, int count) {
+            checkNotBuilt();
+            if (source < 0 || source >= stateCount || target < 0 || target >= stateCount) {
+                throw new IllegalArgumentException("Unknown state in transition " + source + " -> " + target);
+            }
+            if (edgeCount == sources.length) {
+                sources = Arrays.copyOf(sources, edgeCount * 2);
+                targets = Arrays.copyOf(targets, edgeCount * 2);
+                edgeActionOffset = Arrays.copyOf(edgeActionOffset, edgeCount * 2 + 1);
+            }
+            int begin = edgeActionOffset[edgeCount];
+            while (begin + count > edgeActionIds.length) {
+                edgeActionIds = Arrays.copyOf(edgeActionIds, edgeActionIds.length * 2);
+            }
+            for (int i = 0; i < count; i++) {
+                if (actionIds[i] < 0 || actionIds[i] >= actionIndex.size()) {
+                    throw new IllegalArgumentException("Unknown action id " + actionIds[i]);
+                }
+                edgeActionIds[begin + i] = actionIds[i];
+            }
+            sources[edgeCount] = source;
+            targets[edgeCount] = target;
+            edgeActionOffset[edgeCount + 1] = begin + count;
+            edgeCount++;
+        }
+
+        /**
+         * Adds a transition between two states named by an earlier addState().
+         * @return false if the source or target is unknown and the transition was dropped
+         */
+        public boolean addTransition(String source, String target, String[] actionNames) {
+            int from = stateIndex.get(source);
+            int to = stateIndex.get(target);
+            if (from < 0 || to < 0) {
+                return false;
+            }
+            addTransition(from, to, actionNames);
+            return true;
+        }
+
+        public int getStateCount() {
+            return stateCount;
+        }
+
+        /**
+         * Returns the index of the last state added with the given name.
+         * @return the index or -1 if there is no such state
+         */
+        public int indexOf(String name) {
+            return stateIndex.get(name);
+        }
+
+        public CompiledModel build() {
+            checkNotBuilt();
+            built = true;
+            return new CompiledModel(columns());
+        }
+
+        private void checkNotBuilt() {
+            if (built) {
+                throw new IllegalStateException("The model was already built");
+            }
+        }
+
+        /**
+         * Lays out the states and transitions added so far as the columns of a compiled model.
+         */
+        private Columns columns() {
+            int n = stateCount;
+            Columns columns = new Columns(storage, Arrays.copyOf(names, n), stateIndex,
+                    Arrays.copyOf(initBits, (n + 63) >>> 6), labelIndex, actionIndex);
+
+            int memberships = stateLabelOffset[n];
+            columns.stateLabelOffset = storage.newInts(n + 1);
+            columns.stateLabelIds = storage.newInts(memberships);
+            for (int s = 0; s <= n; s++) {
+                columns.stateLabelOffset.set(s, stateLabelOffset[s]);
+            }
+            for (int i = 0; i < memberships; i++) {
+                columns.stateLabelIds.set(i, stateLabelIds[i]);
+            }
+
+            /* Transitions: outgoing edges grouped by source, edge id = position */
+            int m = edgeCount;
+            IntStore succOffset = storage.newInts(n + 1);
+            for (int t = 0; t < m; t++) {
+                increment(succOffset, sources[t] + 1);
+            }
+            prefixSum(succOffset);
+
+            IntStore succTarget = storage.newInts(m);
+            int[] added = new int[m];
+            IntStore succFill = copy(storage, succOffset);
+            for (int t = 0; t < m; t++) {
+                int e = increment(succFill, sources[t]);
+                succTarget.set(e, targets[t]);
+                added[e] = t;
+            }
+            storage.release(succFill);
+
+            /* Actions of each edge, in edge order */
+            IntStore actionOffset = storage.newInts(m + 1);
+            IntStore edgeActions = storage.newInts(edgeActionOffset[m]);
+            for (int e = 0, i = 0; e < m; e++) {
+                for (int j = edgeActionOffset[added[e]]; j < edgeActionOffset[added[e] + 1]; j++) {
+                    edgeActions.set(i++, edgeActionIds[j]);
+                }
+                actionOffset.set(e + 1, i);
+            }
+
+            columns.succOffset = succOffset;
+            columns.succTarget = succTarget;
+            columns.actionOffset = actionOffset;
+            columns.edgeActions = edgeActions;
+            return columns;
+        }
+    }
+
+    /**
+     * The columns a compiled model is made of: the states with their labels,
+     * and the outgoing edges with their actions. The lists of states per
+     * label, the incoming edges and the slices by action are derived from them.
+     */
+    private static final class Columns {
+        final Storage storage;
+        final String[] names;
+        final ObjectIntMap<String> stateIndex;
+        final long[] initBits;
+        final ObjectIntMap<String> labelIndex;
+        final ObjectIntMap<String> actionIndex;
+        IntStore stateLabelOffset;
+        IntStore stateLabelIds;
+        IntStore succOffset;
+        IntStore succTarget;
+        IntStore actionOffset;
+        IntStore edgeActions;
+
+        Columns(Storage storage, String[] names, ObjectIntMap<String> stateIndex, long[] initBits,
+                ObjectIntMap<String> labelIndex, ObjectIntMap<String> actionIndex) {
+            this.storage = storage;
+            this.names = names;
+            this.stateIndex = stateIndex;
+            this.initBits = initBits;
+            this.labelIndex = labelIndex;
+            this.actionIndex = actionIndex;
+        }
+    }
+
+    /**
+     * The outgoing edges of one state that a delta edits, with the action ids of each.
+     */
+    private static final class EditedRow {
+        int[] targets = new int[4];
+        int[][] actions = new int[4][];
+        int size;
+        int pairs;
+
+        void add(int target, int[] actionIds) {
+            if (size == targets.length) {
+                targets = Arrays.copyOf(targets, size * 2);
+                actions = Arrays.copyOf(actions, size * 2);
+            }
+            targets[size] = target;
+            actions[size++] = actionIds;
+            pairs += actionIds.length;
+        }
+    }
+
+    /**
+     * Takes over the columns and derives the rest of the arrays from them.
+     */
+    private CompiledModel(Columns columns) {
+        storage = columns.storage;
+        names = columns.names;
+        stateIndex = columns.stateIndex;
+        initBits = columns.initBits;
+        int n = names.length;
+
+        int initialCount = 0;
+        for (long word : initBits) {
+            initialCount += Long.bitCount(word);
+        }
+        initial = new int[initialCount];
+        for (int s = 0, i = 0; s < n; s++) {
+            if (isInitial(s)) {
+                initial[i++] = s;
+            }
+        }
+
+        /* Labels: the label ids of each state, and one sorted list of states per label */
+        labelIndex = columns.labelIndex;
+        labels = names(labelIndex);
+        stateLabelOffset = columns.stateLabelOffset;
+        stateLabelIds = columns.stateLabelIds;
+        int memberships = stateLabelOffset.get(n);
+
+        labelOffset = new int[labels.length + 1];
+        labelStates = storage.newInts(memberships);
+        for (int i = 0; i < memberships; i++) {
+            labelOffset[stateLabelIds.get(i) + 1]++;
+        }
+        prefixSum(labelOffset);
+        int[] labelFill = labelOffset.clone();
+        for (int s = 0; s < n; s++) {
+            for (int i = stateLabelOffset.get(s); i < stateLabelOffset.get(s + 1); i++) {
+                labelStates.set(labelFill[stateLabelIds.get(i)]++, s);
+            }
+        }
+
+        /* Transitions: outgoing edges grouped by source and their actions, as laid out in the columns */
+        actionIndex = columns.actionIndex;
+        actions = names(actionIndex);
+        succOffset = columns.succOffset;
+        succTarget = columns.succTarget;
+        actionOffset = columns.actionOffset;
+        edgeActions = columns.edgeActions;
+        int m = succTarget.length();
+        int pairs = edgeActions.length();
+
+        /* Incoming edges grouped by target */
+        predOffset = storage.newInts(n + 1);
+        for (int e = 0; e < m; e++) {
+            increment(predOffset, succTarget.get(e) + 1);
+        }
+        prefixSum(predOffset);
+
+        predSource = storage.newInts(m);
+        predEdge = storage.newInts(m);
+        IntStore edgeSource = storage.newInts(m);
+        IntStore predFill = copy(storage, predOffset);
+        for (int s = 0; s < n; s++) {
+            for (int e = succOffset.get(s); e < succOffset.get(s + 1); e++) {
+                int p = increment(predFill, succTarget.get(e));
+                predSource.set(p, s);
+                predEdge.set(p, e);
+                edgeSource.set(e, s);
+            }
+        }
+        storage.release(predFill);
+
+        /* Edges by state and action: every (edge, action) pair, grouped by state, sorted by action */
+        IntStore pairEdge = storage.newInts(pairs);
+        int[] byAction = new int[actions.length + 1];
+        for (int i = 0; i < pairs; i++) {
+            byAction[edgeActions.get(i) + 1]++;
+        }
+        prefixSum(byAction);
+        for (int e = 0; e < m; e++) {
+            for (int i = actionOffset.get(e); i < actionOffset.get(e + 1); i++) {
+                pairEdge.set(byAction[edgeActions.get(i)]++, e);
+            }
+        }
+        // byAction now holds the end of each action's run, pairEdge is sorted by action
+
+        succActionOffset = storage.newInts(n + 1);
+        succActionId = storage.newInts(pairs);
+        succActionEdge = storage.newInts(pairs);
+        predActionOffset = storage.newInts(n + 1);
+        predActionId = storage.newInts(pairs);
+        predActionSource = storage.newInts(pairs);
+        predActionEdge = storage.newInts(pairs);
+        for (int i = 0; i < pairs; i++) {
+            increment(succActionOffset, edgeSource.get(pairEdge.get(i)) + 1);
+            increment(predActionOffset, succTarget.get(pairEdge.get(i)) + 1);
+        }
+        prefixSum(succActionOffset);
+        prefixSum(predActionOffset);
+
+        IntStore succActionFill = copy(storage, succActionOffset);
+        IntStore predActionFill = copy(storage, predActionOffset);
+        for (int a = 0, i = 0; a < actions.length; a++) {
+            for (; i < byAction[a]; i++) {
+                int e = pairEdge.get(i);
+                int out = increment(succActionFill, edgeSource.get(e));
+                succActionId.set(out, a);
+                succActionEdge.set(out, e);
+
+                int in = increment(predActionFill, succTarget.get(e));
+                predActionId.set(in, a);
+                predActionSource.set(in, edgeSource.get(e));
+                predActionEdge.set(in, e);
+            }
+        }
+        storage.release(succActionFill);
+        storage.release(predActionFill);
+        storage.release(pairEdge);
+        storage.release(edgeSource);
+    }
+
+    /**
+     * Returns this model with a delta applied, numbered the way compiling
+     * delta.applyTo() of the parsed model would number it: the kept states in
+     * their order, then the added ones. The label and action ids of this model
+     * are kept and new ones are appended.
+     *
+     * Only the edited states are looked up by name and only their rows are
+     * rebuilt; the rows of the other states are copied from this model's
+     * columns, renumbered if a removed or replaced state shifts the states
+     * after it. The incoming edges and the slices by action are then derived
+     * as for a new model. This model is left as it is, so snapshots of it
+     * stay valid.
+     */
+    CompiledModel apply(ModelDelta delta) {
+        int oldCount = names.length;
+
+        // removed states and states an added one replaces lose their index
+        boolean[] gone = new boolean[oldCount];
+        boolean renumber = false;
+        for (String name : delta.getRemovedStates()) {
+            int s = indexOf(name);
+            if (s >= 0) {
+                gone[s] = renumber = true;
+            }
+        }
+        for (String name : delta.getAddedStates()) {
+            int s = indexOf(name);
+            if (s >= 0) {
+                gone[s] = renumber = true;
+            }
+        }
+
+        int[] oldToNew = new int[oldCount];
+        int kept = 0;
+        for (int s = 0; s < oldCount; s++) {
+            oldToNew[s] = gone[s] ? -1 : kept++;
+        }
+        int n = kept + delta.getAddedStates().size();
+        int[] newToOld = new int[n];
+        String[] newNames = new String[n];
+        for (int s = 0; s < oldCount; s++) {
+            if (oldToNew[s] >= 0) {
+                newToOld[oldToNew[s]] = s;
+                newNames[oldToNew[s]] = names[s];
+            }
+        }
+
+        // an added state that replaces a kept one takes over its transitions
+        int next = kept;
+        for (String name : delta.getAddedStates()) {
+            int old = delta.getRemovedStates().contains(name) ? -1 : indexOf(name);
+            if (old >= 0) {
+                oldToNew[old] = next;
+            }
+            newToOld[next] = old;
+            newNames[next++] = name;
+        }
+
+        ObjectIntMap<String> newIndex;
+        if (renumber) {
+            newIndex = new ObjectIntMap<String>(n);
+            for (int s = 0; s < n; s++) {
+                newIndex.put(newNames[s], s);
+            }
+        } else {
+            newIndex = stateIndex.copy();
+            for (int s = kept; s < n; s++) {
+                newIndex.put(newNames[s], s);
+            }
+        }
+
+        long[] newInitBits = new long[(n + 63) >>> 6];
+        for (int s = 0; s < n; s++) {
+            State added = (s >= kept) ? delta.getAddedState(newNames[s]) : null;
+            boolean init = (added != null) ? added.isInit() : isInitial(newToOld[s]);
+            if (init) {
+                newInitBits[s >>> 6] |= 1L << s;
+            }
+        }
+
+        Columns columns = new Columns(storage, newNames, newIndex, newInitBits, labelIndex.copy(), actionIndex.copy());
+
+        /* Labels: added and relabelled states get new rows, the others keep theirs */
+        int[][] labelRows = new int[n][];
+        for (int s = kept; s < n; s++) {
+            String[] stateLabels = delta.getAddedState(newNames[s]).getLabel();
+            labelRows[s] = intern(columns.labelIndex, delta.relabel(newNames[s], stateLabels));
+        }
+        for (String name : delta.getRelabelledStates()) {
+            int s = newIndex.get(name);
+            if (s >= 0 && s < kept) {
+                labelRows[s] = intern(columns.labelIndex, delta.relabel(name, getLabels(newToOld[s])));
+            }
+        }
+
+        int memberships = 0;
+        for (int s = 0; s < n; s++) {
+            memberships += (labelRows[s] != null) ? labelRows[s].length
+                    : stateLabelOffset.get(newToOld[s] + 1) - stateLabelOffset.get(newToOld[s]);
+        }
+        columns.stateLabelOffset = storage.newInts(n + 1);
+        columns.stateLabelIds = storage.newInts(memberships);
+        for (int s = 0, i = 0; s < n; s++) {
+            if (labelRows[s] != null) {
+                for (int id : labelRows[s]) {
+                    columns.stateLabelIds.set(i++, id);
+                }
+            } else {
+                for (int j = stateLabelOffset.get(newToOld[s]); j < stateLabelOffset.get(newToOld[s] + 1); j++) {
+                    columns.stateLabelIds.set(i++, stateLabelIds.get(j));
+                }
+            }
+            columns.stateLabelOffset.set(s + 1, i);
+        }
+
+        /* Transitions: the sources of edited, added or moved transitions get new rows */
+        EditedRow[] rows = new EditedRow[n];
+        for (int s = kept; s < n; s++) {
+            rows[s] = new EditedRow();
+        }
+        for (String name : delta.getEditedSources()) {
+            int s = newIndex.get(name);
+            if (s >= 0 && rows[s] == null) {
+                rows[s] = new EditedRow();
+            }
+        }
+        for (Transition transition : delta.getAddedTransitions()) {
+            int s = newIndex.get(transition.getSource());
+            if (s >= 0 && rows[s] == null) {
+                rows[s] = new EditedRow();
+            }
+        }
+
+        for (int s = 0; s < n; s++) {
+            EditedRow row = rows[s];
+            int old = newToOld[s];
+            if (row == null || old < 0) {
+                continue;
+            }
+            for (int e = succBegin(old); e < succEnd(old); e++) {
+                int target = oldToNew[succTarget.get(e)];
+                if (target < 0 || delta.isRemoved(newNames[s], newNames[target])) {
+                    continue;
+                }
+                if (delta.editsActions(newNames[s], newNames[target])) {
+                    String[] edgeActionNames = new String[actionEnd(e) - actionBegin(e)];
+                    for (int i = 0; i < edgeActionNames.length; i++) {
+                        edgeActionNames[i] = actions[edgeActions.get(actionBegin(e) + i)];
+                    }
+                    row.add(target, intern(columns.actionIndex,
+                            delta.editActions(newNames[s], newNames[target], edgeActionNames), false));
+                } else {
+                    int[] ids = new int[actionEnd(e) - actionBegin(e)];
+                    for (int i = 0; i < ids.length; i++) {
+                        ids[i] = edgeActions.get(actionBegin(e) + i);
+                    }
+                    row.add(target, ids);
+                }
+            }
+        }
+        for (Transition transition : delta.getAddedTransitions()) {
+            int source = newIndex.get(transition.getSource());
+            int target = newIndex.get(transition.getTarget());
+            if (source >= 0 && target >= 0) {
+                String[] edgeActionNames = delta.editActions(transition.getSource(), transition.getTarget(),
+                        transition.getActions());
+                rows[source].add(target, intern(columns.actionIndex, edgeActionNames, false));
+            }
+        }
+
+        int m = 0;
+        int pairs = 0;
+        for (int s = 0; s < n; s++) {
+            if (rows[s] != null) {
+                m += rows[s].size;
+                pairs += rows[s].pairs;
+                continue;
+            }
+            int old = newToOld[s];
+            for (int e = succBegin(old); e < succEnd(old); e++) {
+                if (oldToNew[succTarget.get(e)] >= 0) {
+                    m++;
+                    pairs += actionEnd(e) - actionBegin(e);
+                }
+            }
+        }
+
+        columns.succOffset = storage.newInts(n + 1);
+        columns.succTarget = storage.newInts(m);
+        columns.actionOffset = storage.newInts(m + 1);
+        columns.edgeActions = storage.newInts(pairs);
+        for (int s = 0, e = 0, i = 0; s < n; s++) {
+            EditedRow row = rows[s];
+            if (row != null) {
+                for (int j = 0; j < row.size; j++, e++) {
+                    columns.succTarget.set(e, row.targets[j]);
+                    for (int id : row.actions[j]) {
+                        columns.edgeActions.set(i++, id);
+                    }
+                    columns.actionOffset.set(e + 1, i);
+                }
+            } else {
+                int old = newToOld[s];
+                for (int f = succBegin(old); f < succEnd(old); f++) {
+                    int target = oldToNew[succTarget.get(f)];
+                    if (target < 0) {
+                        continue;
+                    }
+                    columns.succTarget.set(e, target);
+                    for (int j = actionBegin(f); j < actionEnd(f); j++) {
+                        columns.edgeActions.set(i++, edgeActions.get(j));
+                    }
+                    columns.actionOffset.set(++e, i);
+                }
+            }
+            columns.succOffset.set(s + 1, e);
+        }
+        return new CompiledModel(columns);
+    }
+
+    private static int[] intern(ObjectIntMap<String> index, String[] names) {
+        return intern(index, names, true);
+    }
+
+    /**
+     * Returns the ids of the names, giving new names the next free ids.
+     */
+    private static int[] intern(ObjectIntMap<String> index, String[] names, boolean distinct) {
+        if (names == null) {
+            return new int[0];
+        }
+        int[] ids = new int[names.length];
+        int count = 0;
+        for (String name : names) {
+            int id = index.intern(name);
+            if (!distinct || !contains(ids, 0, count, id)) {
+                ids[count++] = id;
+            }
+        }
+        return (count == ids.length) ? ids : Arrays.copyOf(ids, count);
+    }
+
+    /**
+     * Returns the first position in [from, to) whose action is not smaller than the given one.
+     */
+    private static int lowerBound(IntStore ids, int from, int to, int action) {
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            if (ids.get(mid) < action) {
+                from = mid + 1;
+            } else {
+                to = mid;
+            }
+        }
+        return from;
+    }
+
+    private static String[] names(ObjectIntMap<String> index) {
+        String[] names = new String[index.size()];
+        for (int slot = 0; slot < index.capacity(); slot++) {
+            if (index.keyAt(slot) != null) {
+                names[index.valueAt(slot)] = index.keyAt(slot);
+            }
+        }
+        return names;
+    }
+
+    private static boolean contains(int[] array, int from, int to, int value) {
+        for (int i = from; i < to; i++) {
+            if (array[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void prefixSum(int[] offsets) {
+        for (int i = 1; i < offsets.length; i++) {
+            offsets[i] += offsets[i - 1];
+        }
+    }
+
+    private static void prefixSum(IntStore offsets) {
+        for (int i = 1; i < offsets.length(); i++) {
+            offsets.set(i, offsets.get(i) + offsets.get(i - 1));
+        }
+    }
+
+    /**
+     * Increments an entry and returns its old value.
+     */
+    private static int increment(IntStore store, int i) {
+        int value = store.get(i);
+        store.set(i, value + 1);
+        return value;
+    }
+
+    private static IntStore copy(Storage storage, IntStore store) {
+        IntStore copy = storage.newInts(store.length());
+        for (int i = 0; i < store.length(); i++) {
+            copy.set(i, store.get(i));
+        }
+        return copy;
+    }
+
+    /* States */
+
+    public int getStateCount() {
+        return names.length;
+    }
+
+    /**
+     * Returns the index of the state with the given name.
+     * @param name the name of the state
+     * @return the index or -1 if there is no such state
+     */
+    public int indexOf(String name) {
+        return stateIndex.get(name);
+    }
+
+    /**
+     * Returns a new State for the given index, made from the columns of this
+     * model. Two calls return equal but distinct objects.
+     * @param state the index of the state
+     * @return the state
+     */
+    public State getState(int state) {
+        return new State(names[state], isInitial(state), getLabels(state));
+    }
+
+    public String getName(int state) {
+        return names[state];
+    }
+
+    public boolean isInitial(int state) {
+        return (initBits[state >>> 6] & (1L << state)) != 0;
+    }
+
+    public int getInitialCount() {
+        return initial.length;
+    }
+
+    /**
+     * Returns the i-th initial state.
+     * @param i a number between 0 and getInitialCount()
+     * @return the index of the initial state
+     */
+    public int getInitial(int i) {
+        return initial[i];
+    }
+
+    /**
+     * Returns a new empty set of states of this model, kept in the model's storage.
+     * @return the empty set
+     */
+    public StateSet newStateSet() {
+        return storage.newStateSet(names.length);
+    }
+
+    public Storage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Returns a new set containing every state of the model.
+     * @return the set of all states
+     */
+    public StateSet allStates() {
+        return storage.newFullStateSet(names.length);
+    }
+
+    /**
+     * Returns a new set containing the initial states of the model.
+     * @return the set of initial states
+     */
+    public StateSet initialStates() {
+        StateSet set = newStateSet();
+        for (int s : initial) {
+            set.add(s);
+        }
+        return set;
+    }
+
+    /* Labels */
+
+    public int getLabelCount() {
+        return labels.length;
+    }
+
+    /**
+     * Returns the index of the given label.
+     * @param label the atomic proposition
+     * @return the index or -1 if no state carries the label
+     */
+    public int getLabelId(String label) {
+        return labelIndex.get(label);
+    }
+
+    public String getLabelName(int label) {
+        return labels[label];
+    }
+
+    /**
+     * Returns the distinct labels of a state, in the order they were first given.
+     * @param state the index of the state
+     * @return a new array of the labels
+     */
+    public String[] getLabels(int state) {
+        int begin = stateLabelOffset.get(state);
+        String[] result = new String[stateLabelOffset.get(state + 1) - begin];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = labels[stateLabelIds.get(begin + i)];
+        }
+        return result;
+    }
+
+    /**
+     * Returns true if a state carries a label.
+     * @param state the index of the state
+     * @param label the index of the label
+     * @return true if the label is one of the state's
+     */
+    public boolean hasLabel(int state, int label) {
+        for (int i = stateLabelOffset.get(state); i < stateLabelOffset.get(state + 1); i++) {
+            if (stateLabelIds.get(i) == label) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The states carrying a label are the entries in [labelBegin(label), labelEnd(label)),
+     * read with labelState(), in increasing order.
+     */
+    public int labelBegin(int label) {
+        return labelOffset[label];
+    }
+
+    public int labelEnd(int label) {
+        return labelOffset[label + 1];
+    }
+
+    public int labelState(int i) {
+        return labelStates.get(i);
+    }
+
+    /* Actions */
+
+    public int getActionCount() {
+        return actions.length;
+    }
+
+    /**
+     * Returns the index of the given action.
+     * @param action the action name
+     * @return the index or -1 if no transition carries the action
+     */
+    public int getActionId(String action) {
+        return actionIndex.get(action);
+    }
+
+    public String getActionName(int action) {
+        return actions[action];
+    }
+
+    /* Edges */
+
+    public int getEdgeCount() {
+        return succTarget.length();
+    }
+
+    /**
+     * The outgoing edges of a state are the edge ids in [succBegin(state), succEnd(state)).
+     */
+    public int succBegin(int state) {
+        return succOffset.get(state);
+    }
+
+    public int succEnd(int state) {
+        return succOffset.get(state + 1);
+    }
+
+    public int edgeTarget(int edge) {
+        return succTarget.get(edge);
+    }
+
+    /**
+     * The actions of an edge are the entries in [actionBegin(edge), actionEnd(edge)),
+     * read with edgeAction().
+     */
+    public int actionBegin(int edge) {
+        return actionOffset.get(edge);
+    }
+
+    public int actionEnd(int edge) {
+        return actionOffset.get(edge + 1);
+    }
+
+    public int edgeAction(int i) {
+        return edgeActions.get(i);
+    }
+
+    /**
+     * The incoming edges of a state are the entries in [predBegin(state), predEnd(state)),
+     * read with predSource() and predEdge().
+     */
+    public int predBegin(int state) {
+        return predOffset.get(state);
+    }
+
+    public int predEnd(int state) {
+        return predOffset.get(state + 1);
+    }
+
+    public int predSource(int i) {
+        return predSource.get(i);
+    }
+
+    public int predEdge(int i) {
+        return predEdge.get(i);
+    }
+
+    /**
+     * The outgoing edges of a state that carry an action are the entries in
+     * [succBegin(state, action), succEnd(state, action)), read with actionSuccEdge().
+     */
+    public int succBegin(int state, int action) {
+        return lowerBound(succActionId, succActionOffset.get(state), succActionOffset.get(state + 1), action);
+    }
+
+    public int succEnd(int state, int action) {
+        return lowerBound(succActionId, succActionOffset.get(state), succActionOffset.get(state + 1), action + 1);
+    }
+
+    public int actionSuccEdge(int i) {
+        return succActionEdge.get(i);
+    }
+
+    /**
+     * The incoming edges of a state that carry an action are the entries in
+     * [predBegin(state, action), predEnd(state, action)), read with actionPredEdge().
+     * The source of an entry is actionPredSource().
+     */
+    public int predBegin(int state, int action) {
+        return lowerBound(predActionId, predActionOffset.get(state), predActionOffset.get(state + 1), action);
+    }
+
+    public int predEnd(int state, int action) {
+        return lowerBound(predActionId, predActionOffset.get(state), predActionOffset.get(state + 1), action + 1);
+    }
+
+    public int actionPredEdge(int i) {
+        return predActionEdge.get(i);
+    }
+
+    public int actionPredSource(int i) {
+        return predActionSource.get(i);
+    }
+}
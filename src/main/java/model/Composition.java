@@ -0,0 +1,563 @@
+package model;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+/**
+ * The parallel composition of several component models.
+ *
+ * A product state is one state of every component; its name is the component
+ * state names joined by commas and its labels are the union of theirs. It is
+ * initial if all component states are. Components move on their own
+ * (interleaving) on transitions without actions or with actions that are not
+ * synchronised. A synchronised action is taken by all components that have it in
+ * their alphabet at the same time, and is blocked if one of them cannot take it.
+ *
+ * Only the product states reachable from the initial states are built, by a
+ * breadth-first search that writes them straight into a CompiledModel, so the
+ * product never exists as a Model or a JSON file. Transitions between the same
+ * pair of product states are merged into one with the union of their actions.
+ * The search works on state, label and action ids: the product states found
+ * are kept in a LongIntMap keyed by their mixed radix encoding, and component
+ * actions are mapped once to the action ids of the product.
+ *
+ * With reduceFor(), the exploration applies ample-set partial-order reduction
+ * that preserves the formulas without next operators and without actions whose
+ * atomic propositions are among the given visible labels. In a state, the single
+ * transition of one component is explored alone, instead of all transitions, if
+ * <ul>
+ * <li>it is the only transition of that component from its local state, so it is
+ * always enabled and nothing else the component does can interfere (C1, C4),</li>
+ * <li>it carries no synchronised action, so it is independent of all transitions
+ * of the other components (C1),</li>
+ * <li>its source and target agree on all visible labels (C2),</li>
+ * <li>it leads to a product state that was not found yet, so that no cycle of
+ * the reduced product is closed by reduced states only (C3).</li>
+ * </ul>
+ * Otherwise the state is fully expanded.
+ *
+ * A composition file looks like
+ * <pre>
+ * {"components": ["a.json", "b.json"], "sync": ["act1", "act2"]}
+ * </pre>
+ * with component paths relative to the composition file.
+ */
+public class Composition {
+    private final List<CompiledModel> components = new ArrayList<CompiledModel>();
+    private final Set<String> synchronised = new LinkedHashSet<String>();
+    private int maxStates = Integer.MAX_VALUE;
+    private Set<String> visibleLabels;
+    private int reducedStates;
+    private long enabledMoves;
+    private long takenMoves;
+
+    public Composition add(Model component) {
+        components.add(component.compile());
+        return this;
+    }
+
+    /**
+     * Makes the given actions synchronised.
+     */
+    public Composition synchronise(String... actions) {
+        synchronised.addAll(Arrays.asList(actions));
+        return this;
+    }
+
+    /**
+     * Sets the number of product states after which build() gives up.
+     */
+    public Composition setMaxStates(int maxStates) {
+        this.maxStates = maxStates;
+        return this;
+    }
+
+    /**
+     * Enables partial-order reduction for formulas over the given atomic
+     * propositions. The formulas must not contain next operators or actions.
+     *
+     * @param visibleLabels the atomic propositions of the formulas
+     */
+    public Composition reduceFor(Set<String> visibleLabels) {
+        this.visibleLabels = new HashSet<String>(visibleLabels);
+        return this;
+    }
+
+    /**
+     * Returns the number of states of the last build that were expanded with a single transition.
+     */
+    public int getReducedStates() {
+        return reducedStates;
+    }
+
+    /**
+     * Returns the share of component moves that the last build did not explore,
+     * between 0 (no reduction) and 1.
+     *
+     * @return the reduction ratio
+     */
+    public double getReductionRatio() {
+        return enabledMoves == 0 ? 0 : 1 - (double) takenMoves / enabledMoves;
+    }
+
+    /**
+     * Returns the compiled components, in the order they were added.
+     */
+    public List<CompiledModel> getComponents() {
+        return Collections.unmodifiableList(components);
+    }
+
+    public Set<String> getSynchronised() {
+        return Collections.unmodifiableSet(synchronised);
+    }
+
+    /**
+     * Reads a composition file and the component models it names.
+     *
+     * @param filePath the composition file
+     * @return the composition
+     * @throws IOException if a file cannot be read or is not valid
+     */
+    public static Composition parse(String filePath) throws IOException {
+        JsonObject spec;
+        try (Reader reader = new FileReader(filePath)) {
+            spec = new JsonParser().parse(reader).getAsJsonObject();
+        } catch (JsonParseException | IllegalStateException e) {
+            throw new IOException("Invalid composition: " + e.getMessage(), e);
+        }
+        if (!spec.has("components")) {
+            throw new IOException("Invalid composition: expected \"components\"");
+        }
+
+        Path directory = Paths.get(filePath).toAbsolutePath().getParent();
+        Composition composition = new Composition();
+        for (JsonElement component : spec.getAsJsonArray("components")) {
+            composition.add(Model.parseModel(directory.resolve(component.getAsString()).toString()));
+        }
+        if (spec.has("sync")) {
+            JsonArray sync = spec.getAsJsonArray("sync");
+            for (JsonElement action : sync) {
+                composition.synchronise(action.getAsString());
+            }
+        }
+        return composition;
+    }
+
+    /**
+     * Builds the reachable part of the product.
+     *
+     * @return the compiled product
+     * @throws IllegalStateException if the product has more states than the limit
+     */
+    public CompiledModel build() {
+        int k = components.size();
+        if (k == 0) {
+            throw new IllegalStateException("No components");
+        }
+
+        // mixed radix encoding of product states
+        long[] radix = new long[k];
+        long size = 1;
+        for (int i = 0; i < k; i++) {
+            radix[i] = size;
+            try {
+                size = Math.multiplyExact(size, (long) Math.max(1, components.get(i).getStateCount()));
+            } catch (ArithmeticException e) {
+                throw new IllegalStateException("The product of the component state spaces is too large to index");
+            }
+        }
+
+        // the id of each synchronised action in each component, -1 if it is not in the alphabet;
+        // actions that no component has are dropped
+        List<String> syncActions = new ArrayList<String>();
+        List<int[]> syncIds = new ArrayList<int[]>();
+        for (String action : synchronised) {
+            int[] ids = new int[k];
+            boolean used = false;
+            for (int i = 0; i < k; i++) {
+                ids[i] = components.get(i).getActionId(action);
+                used |= ids[i] >= 0;
+            }
+            if (used) {
+                syncActions.add(action);
+                syncIds.add(ids);
+            }
+        }
+
+        Exploration exploration = new Exploration(radix);
+        Edges edges = new Edges();
+        reducedStates = 0;
+        enabledMoves = 0;
+        takenMoves = 0;
+
+        // initial states: every combination of initial component states
+        int[] tuple = new int[k];
+        int[] counters = new int[k];
+        if (hasInitialStates()) {
+            while (true) {
+                for (int i = 0; i < k; i++) {
+                    tuple[i] = components.get(i).getInitial(counters[i]);
+                }
+                exploration.visit(tuple);
+
+                int i = 0;
+                while (i < k && ++counters[i] == components.get(i).getInitialCount()) {
+                    counters[i++] = 0;
+                }
+                if (i == k) break;
+            }
+        }
+
+        for (int current = 0; current < exploration.builder.getStateCount(); current++) {
+            exploration.decode(current, tuple);
+            long moves = countMoves(tuple, syncIds, exploration);
+            enabledMoves += moves;
+
+            if (visibleLabels != null && expandAmple(current, tuple, exploration)) {
+                reducedStates++;
+                takenMoves++;
+                continue;
+            }
+            takenMoves += moves;
+
+            edges.clear();
+
+            // interleaved moves
+            for (int i = 0; i < k; i++) {
+                CompiledModel component = components.get(i);
+                int local = tuple[i];
+
+                for (int e = component.succBegin(local); e < component.succEnd(local); e++) {
+                    if (!exploration.isLocal(i, e)) continue;
+
+                    tuple[i] = component.edgeTarget(e);
+                    int edge = edges.slot(exploration.visit(tuple));
+                    tuple[i] = local;
+                    for (int j = component.actionBegin(e); j < component.actionEnd(e); j++) {
+                        if (!exploration.synchronised[i][component.edgeAction(j)]) {
+                            edges.addAction(edge, exploration.productAction(i, component.edgeAction(j)));
+                        }
+                    }
+                }
+            }
+
+            // synchronised moves
+            for (int a = 0; a < syncActions.size(); a++) {
+                int action = exploration.builder.internAction(syncActions.get(a));
+                synchronise(syncIds.get(a), action, tuple, 0, exploration, edges);
+            }
+
+            for (int edge = 0; edge < edges.size; edge++) {
+                exploration.builder.addTransition(current, edges.targets[edge], edges.actions[edge],
+                        edges.actionCounts[edge]);
+            }
+        }
+
+        return exploration.builder.build();
+    }
+
+    /**
+     * Builds the reachable part of the product as a Model, for the parts of the
+     * checker that need one. The model is a flyweight over the compiled product.
+     *
+     * @return the product model
+     */
+    public Model buildModel() {
+        return new Model(build());
+    }
+
+    /**
+     * Explores only the transition of one component if that preserves the formulas,
+     * see the class comment.
+     *
+     * @return true if an ample transition was found and added
+     */
+    private boolean expandAmple(int current, int[] tuple, Exploration exploration) {
+        for (int i = 0; i < tuple.length; i++) {
+            CompiledModel component = components.get(i);
+            int local = tuple[i];
+            if (component.succEnd(local) - component.succBegin(local) != 1) continue;
+
+            int e = component.succBegin(local);
+            int[] actions = new int[component.actionEnd(e) - component.actionBegin(e)];
+            boolean independent = true;
+            for (int j = 0; j < actions.length; j++) {
+                int action = component.edgeAction(component.actionBegin(e) + j);
+                independent &= !exploration.synchronised[i][action];
+                actions[j] = action;
+            }
+            if (!independent) continue;
+
+            int target = component.edgeTarget(e);
+            if (!sameVisibleLabels(component, exploration.visibleIds[i], local, target)) continue;
+
+            tuple[i] = target;
+            boolean found = exploration.lookup(tuple) >= 0;
+            if (!found) {
+                for (int j = 0; j < actions.length; j++) {
+                    actions[j] = exploration.productAction(i, actions[j]);
+                }
+                exploration.builder.addTransition(current, exploration.visit(tuple), actions, actions.length);
+            }
+            tuple[i] = local;
+            if (!found) return true;
+        }
+        return false;
+    }
+
+    private static boolean sameVisibleLabels(CompiledModel component, int[] visibleIds, int source, int target) {
+        for (int label : visibleIds) {
+            if (component.hasLabel(source, label) != component.hasLabel(target, label)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Counts the moves of the components in a product state, before merging
+     * moves that lead to the same product state.
+     */
+    private long countMoves(int[] tuple, List<int[]> syncIds, Exploration exploration) {
+        long moves = 0;
+        for (int i = 0; i < tuple.length; i++) {
+            CompiledModel component = components.get(i);
+            for (int e = component.succBegin(tuple[i]); e < component.succEnd(tuple[i]); e++) {
+                if (exploration.isLocal(i, e)) moves++;
+            }
+        }
+
+        for (int[] ids : syncIds) {
+            long combinations = 1;
+            for (int i = 0; i < tuple.length; i++) {
+                if (ids[i] >= 0) {
+                    combinations *= components.get(i).succEnd(tuple[i], ids[i]) - components.get(i).succBegin(tuple[i], ids[i]);
+                }
+            }
+            moves += combinations;
+        }
+        return moves;
+    }
+
+    private boolean hasInitialStates() {
+        for (CompiledModel component : components) {
+            if (component.getInitialCount() == 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Moves every component that has the action, from component i on, along each
+     * combination of its transitions with the action.
+     */
+    private void synchronise(int[] actionIds, int action, int[] tuple, int i, Exploration exploration, Edges edges) {
+        if (i == tuple.length) {
+            edges.addAction(edges.slot(exploration.visit(tuple)), action);
+            return;
+        }
+        if (actionIds[i] < 0) {
+            synchronise(actionIds, action, tuple, i + 1, exploration, edges);
+            return;
+        }
+
+        CompiledModel component = components.get(i);
+        int local = tuple[i];
+        for (int j = component.succBegin(local, actionIds[i]); j < component.succEnd(local, actionIds[i]); j++) {
+            tuple[i] = component.edgeTarget(component.actionSuccEdge(j));
+            synchronise(actionIds, action, tuple, i + 1, exploration, edges);
+        }
+        tuple[i] = local;
+    }
+
+    /**
+     * The merged outgoing edges of the product state being expanded: one per
+     * target, in the order the targets are found, with the union of the actions.
+     */
+    private static final class Edges {
+        private final LongIntMap slots = new LongIntMap();
+        int[] targets = new int[8];
+        int[][] actions = new int[8][];
+        int[] actionCounts = new int[8];
+        int size;
+
+        /**
+         * Returns the edge to a target, adding it without actions if it is new.
+         */
+        int slot(int target) {
+            int slot = slots.get(target);
+            if (slot >= 0) {
+                return slot;
+            }
+            if (size == targets.length) {
+                targets = Arrays.copyOf(targets, size * 2);
+                actions = Arrays.copyOf(actions, size * 2);
+                actionCounts = Arrays.copyOf(actionCounts, size * 2);
+            }
+            if (actions[size] == null) {
+                actions[size] = new int[4];
+            }
+            targets[size] = target;
+            actionCounts[size] = 0;
+            slots.put(target, size);
+            return size++;
+        }
+
+        void addAction(int slot, int action) {
+            int[] ids = actions[slot];
+            int count = actionCounts[slot];
+            for (int i = 0; i < count; i++) {
+                if (ids[i] == action) return;
+            }
+            if (count == ids.length) {
+                actions[slot] = ids = Arrays.copyOf(ids, count * 2);
+            }
+            ids[count] = action;
+            actionCounts[slot] = count + 1;
+        }
+
+        void clear() {
+            slots.clear();
+            size = 0;
+        }
+    }
+
+    /**
+     * The product states found so far, numbered in the order they are found,
+     * and the ids of the components' actions and visible labels.
+     */
+    private class Exploration {
+        final CompiledModel.Builder builder = new CompiledModel.Builder();
+        final LongIntMap index = new LongIntMap();
+        final long[] radix;
+        long[] keys = new long[16];
+        /** per component and action id, whether the action is synchronised */
+        final boolean[][] synchronised;
+        /** per component and action id, the id of the action in the product, -1 until it is used */
+        final int[][] productActions;
+        /** per component, the ids of the visible labels */
+        final int[][] visibleIds;
+
+        Exploration(long[] radix) {
+            this.radix = radix;
+            int k = components.size();
+            synchronised = new boolean[k][];
+            productActions = new int[k][];
+            visibleIds = new int[k][];
+            for (int i = 0; i < k; i++) {
+                CompiledModel component = components.get(i);
+                synchronised[i] = new boolean[component.getActionCount()];
+                productActions[i] = new int[component.getActionCount()];
+                Arrays.fill(productActions[i], -1);
+                for (int a = 0; a < component.getActionCount(); a++) {
+                    synchronised[i][a] = Composition.this.synchronised.contains(component.getActionName(a));
+                }
+
+                List<Integer> visible = new ArrayList<Integer>();
+                for (int label = 0; visibleLabels != null && label < component.getLabelCount(); label++) {
+                    if (visibleLabels.contains(component.getLabelName(label))) visible.add(label);
+                }
+                visibleIds[i] = new int[visible.size()];
+                for (int j = 0; j < visibleIds[i].length; j++) {
+                    visibleIds[i][j] = visible.get(j);
+                }
+            }
+        }
+
+        /**
+         * Returns true if a component edge can be taken on its own: it has no
+         * actions or one that is not synchronised.
+         */
+        boolean isLocal(int component, int edge) {
+            CompiledModel model = components.get(component);
+            if (model.actionBegin(edge) == model.actionEnd(edge)) {
+                return true;
+            }
+            for (int j = model.actionBegin(edge); j < model.actionEnd(edge); j++) {
+                if (!synchronised[component][model.edgeAction(j)]) return true;
+            }
+            return false;
+        }
+
+        /**
+         * Returns the product id of a component's action.
+         */
+        int productAction(int component, int action) {
+            int id = productActions[component][action];
+            if (id < 0) {
+                id = builder.internAction(components.get(component).getActionName(action));
+                productActions[component][action] = id;
+            }
+            return id;
+        }
+
+        /**
+         * Returns the index of a product state, or -1 if it was not found yet.
+         */
+        int lookup(int[] tuple) {
+            return index.get(key(tuple));
+        }
+
+        /**
+         * Returns the index of a product state, adding it if it is new.
+         */
+        int visit(int[] tuple) {
+            long key = key(tuple);
+            int known = index.get(key);
+            if (known >= 0) {
+                return known;
+            }
+            if (builder.getStateCount() >= maxStates) {
+                throw new IllegalStateException("The product has more than " + maxStates + " states");
+            }
+
+            StringBuilder name = new StringBuilder();
+            List<String> labels = new ArrayList<String>();
+            boolean init = true;
+            for (int i = 0; i < tuple.length; i++) {
+                CompiledModel component = components.get(i);
+                if (i > 0) name.append(',');
+                name.append(component.getName(tuple[i]));
+                labels.addAll(Arrays.asList(component.getLabels(tuple[i])));
+                init &= component.isInitial(tuple[i]);
+            }
+
+            int id = builder.addState(name.toString(), init, labels.toArray(new String[labels.size()]));
+            if (id == keys.length) {
+                keys = Arrays.copyOf(keys, id * 2);
+            }
+            keys[id] = key;
+            index.put(key, id);
+            return id;
+        }
+
+        long key(int[] tuple) {
+            long key = 0;
+            for (int i = 0; i < tuple.length; i++) {
+                key += tuple[i] * radix[i];
+            }
+            return key;
+        }
+
+        void decode(int id, int[] tuple) {
+            long key = keys[id];
+            for (int i = tuple.length - 1; i >= 0; i--) {
+                tuple[i] = (int) (key / radix[i]);
+                key %= radix[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package model;
+
+/**
+ * An int store backed by a plain array.
+ */
+final class HeapIntStore implements IntStore {
+    private final int[] values;
+
+    HeapIntStore(int length) {
+        values = new int[length];
+    }
+
+    @Override
+    public int length() {
+        return values.length;
+    }
+
+    @Override
+    public int get(int i) {
+        return values[i];
+    }
+
+    @Override
+    public void set(int i, int value) {
+        values[i] = value;
+    }
+}
@@ -0,0 +1,127 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * A set of ints with open addressing and linear probing, without boxing.
+ *
+ * Values must not be negative; -1 marks a free slot.
+ */
+public class IntHashSet {
+    private static final int FREE = -1;
+
+    private int[] slots;
+    private int size;
+
+    public IntHashSet() {
+        this(8);
+    }
+
+    /**
+     * @param expected the number of values the set holds without growing
+     */
+    public IntHashSet(int expected) {
+        int capacity = 8;
+        while (capacity * 3 < expected * 4) {
+            capacity <<= 1;
+        }
+        slots = new int[capacity];
+        Arrays.fill(slots, FREE);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(int value) {
+        int mask = slots.length - 1;
+        for (int slot = hash(value) & mask; slots[slot] != FREE; slot = (slot + 1) & mask) {
+            if (slots[slot] == value) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the value was not in the set
+     */
+    public boolean add(int value) {
+        if (value < 0) throw new IllegalArgumentException("Negative value " + value);
+        if ((size + 1) * 4 > slots.length * 3) {
+            grow();
+        }
+
+        int mask = slots.length - 1;
+        int slot = hash(value) & mask;
+        for (; slots[slot] != FREE; slot = (slot + 1) & mask) {
+            if (slots[slot] == value) return false;
+        }
+        slots[slot] = value;
+        size++;
+        return true;
+    }
+
+    /**
+     * @return true if the value was in the set
+     */
+    public boolean remove(int value) {
+        int mask = slots.length - 1;
+        int slot = hash(value) & mask;
+        for (; slots[slot] != value; slot = (slot + 1) & mask) {
+            if (slots[slot] == FREE) return false;
+        }
+        slots[slot] = FREE;
+        size--;
+
+        // move the following values of the probe sequence into the gap
+        for (int next = (slot + 1) & mask; slots[next] != FREE; next = (next + 1) & mask) {
+            int home = hash(slots[next]) & mask;
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                slots[slot] = slots[next];
+                slots[next] = FREE;
+                slot = next;
+            }
+        }
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(slots, FREE);
+        size = 0;
+    }
+
+    /**
+     * @return the values in no particular order
+     */
+    public int[] toArray() {
+        int[] values = new int[size];
+        int i = 0;
+        for (int value : slots) {
+            if (value != FREE) values[i++] = value;
+        }
+        return values;
+    }
+
+    private void grow() {
+        int[] old = slots;
+        slots = new int[old.length * 2];
+        Arrays.fill(slots, FREE);
+        size = 0;
+        for (int value : old) {
+            if (value != FREE) add(value);
+        }
+    }
+
+    private static int hash(int value) {
+        int h = value * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+}
@@ -0,0 +1,12 @@
+package model;
+
+/**
+ * A fixed-length array of ints, kept on the heap or outside of it.
+ */
+public interface IntStore {
+    public int length();
+
+    public int get(int i);
+
+    public void set(int i, int value);
+}
@@ -0,0 +1,103 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * A map from longs to ints with open addressing and linear probing, without boxing.
+ *
+ * Keys and values are kept in two parallel arrays, so an entry costs 12 bytes
+ * instead of a boxed Long, a boxed Integer and a map entry. Values must not
+ * be negative: missing keys have the value -1, which also marks a free slot.
+ */
+public class LongIntMap {
+    private static final int FREE = -1;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+
+    public LongIntMap() {
+        this(8);
+    }
+
+    /**
+     * @param expected the number of keys the map holds without growing
+     */
+    public LongIntMap(int expected) {
+        int capacity = 8;
+        while (capacity * 3 < expected * 4) {
+            capacity <<= 1;
+        }
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, FREE);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the value of the key, or -1 if it is not in the map
+     */
+    public int get(long key) {
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; values[slot] != FREE; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) return values[slot];
+        }
+        return FREE;
+    }
+
+    /**
+     * Sets the value of a key, replacing an old one.
+     */
+    public void put(long key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value " + value);
+        }
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        for (; values[slot] != FREE; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+        }
+        if ((size + 1) * 4 > keys.length * 3) {
+            grow();
+            put(key, value);
+            return;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        Arrays.fill(values, FREE);
+        size = 0;
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldValues[slot] != FREE) {
+                put(oldKeys[slot], oldValues[slot]);
+            }
+        }
+    }
+
+    private static int hash(long key) {
+        // spread the bits of both halves so that keys with close values do not cluster
+        long h = key * 0x9e3779b97f4a7c15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Removes every entry and keeps the capacity.
+     */
+    public void clear() {
+        Arrays.fill(values, FREE);
+        size = 0;
+    }
+}
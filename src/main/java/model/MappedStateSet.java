@@ -0,0 +1,235 @@
+package model;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A dense state set whose bits live in memory-mapped segments of a MappedStorage,
+ * one bit per state of the model. Bulk operations run word by word over the
+ * segments in order.
+ */
+public class MappedStateSet implements StateSet {
+    private final MappedStorage storage;
+    private final int universeSize;
+    private final int words;
+    private final ByteBuffer[] segments;
+    private final int shift;
+    private final int mask;
+    private boolean released;
+
+    MappedStateSet(MappedStorage storage, int universeSize, ByteBuffer[] segments, int shift) {
+        this.storage = storage;
+        this.universeSize = universeSize;
+        this.words = (universeSize + 63) >>> 6;
+        this.segments = segments;
+        this.shift = shift;
+        this.mask = (1 << shift) - 1;
+    }
+
+    private long word(int w) {
+        return segments[w >>> shift].getLong((w & mask) << 3);
+    }
+
+    private void setWord(int w, long value) {
+        segments[w >>> shift].putLong((w & mask) << 3, value);
+    }
+
+    @Override
+    public int universeSize() {
+        return universeSize;
+    }
+
+    @Override
+    public boolean contains(int state) {
+        return (word(state >>> 6) & (1L << state)) != 0;
+    }
+
+    @Override
+    public void add(int state) {
+        int w = state >>> 6;
+        setWord(w, word(w) | (1L << state));
+    }
+
+    @Override
+    public void remove(int state) {
+        int w = state >>> 6;
+        setWord(w, word(w) & ~(1L << state));
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (int w = 0; w < words; w++) {
+            if (word(w) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int cardinality() {
+        int count = 0;
+        for (int w = 0; w < words; w++) {
+            count += Long.bitCount(word(w));
+        }
+        return count;
+    }
+
+    @Override
+    public int nextState(int from) {
+        if (from >= universeSize) {
+            return -1;
+        }
+        int w = from >>> 6;
+        long bits = word(w) & (-1L << from);
+        while (bits == 0) {
+            if (++w == words) {
+                return -1;
+            }
+            bits = word(w);
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    @Override
+    public void addAll(StateSet other) {
+        if (other instanceof MappedStateSet) {
+            MappedStateSet set = (MappedStateSet) other;
+            for (int w = 0; w < words; w++) {
+                setWord(w, word(w) | set.word(w));
+            }
+            return;
+        }
+
+        for (int s = other.nextState(0); s >= 0; s = other.nextState(s + 1)) {
+            add(s);
+        }
+    }
+
+    @Override
+    public void retainAll(StateSet other) {
+        if (other instanceof MappedStateSet) {
+            MappedStateSet set = (MappedStateSet) other;
+            for (int w = 0; w < words; w++) {
+                setWord(w, word(w) & set.word(w));
+            }
+            return;
+        }
+
+        for (int s = nextState(0); s >= 0; s = nextState(s + 1)) {
+            if (!other.contains(s)) {
+                remove(s);
+            }
+        }
+    }
+
+    @Override
+    public void removeAll(StateSet other) {
+        if (other instanceof MappedStateSet) {
+            MappedStateSet set = (MappedStateSet) other;
+            for (int w = 0; w < words; w++) {
+                setWord(w, word(w) & ~set.word(w));
+            }
+            return;
+        }
+
+        for (int s = other.nextState(0); s >= 0; s = other.nextState(s + 1)) {
+            remove(s);
+        }
+    }
+
+    @Override
+    public boolean containsAll(StateSet other) {
+        if (other instanceof MappedStateSet) {
+            MappedStateSet set = (MappedStateSet) other;
+            for (int w = 0; w < words; w++) {
+                if ((set.word(w) & ~word(w)) != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        for (int s = other.nextState(0); s >= 0; s = other.nextState(s + 1)) {
+            if (!contains(s)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        for (int w = 0; w < words; w++) {
+            setWord(w, 0);
+        }
+    }
+
+    /**
+     * Hands the segments back to the storage they came from, once.
+     */
+    void release(MappedStorage owner) {
+        if (owner == storage && !released) {
+            released = true;
+            storage.recycle(MappedStorage.setBytes(universeSize), segments);
+        }
+    }
+
+    /**
+     * Adds every state of the universe.
+     */
+    void fill() {
+        for (int w = 0; w < words; w++) {
+            setWord(w, -1L);
+        }
+        if ((universeSize & 63) != 0) {
+            setWord(words - 1, -1L >>> -universeSize);
+        }
+    }
+
+    @Override
+    public StateSet copy() {
+        MappedStateSet copy = (MappedStateSet) storage.newStateSet(universeSize);
+        for (int w = 0; w < words; w++) {
+            copy.setWord(w, word(w));
+        }
+        return copy;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof MappedStateSet)) {
+            return false;
+        }
+        MappedStateSet other = (MappedStateSet) o;
+        if (universeSize != other.universeSize) {
+            return false;
+        }
+        for (int w = 0; w < words; w++) {
+            if (word(w) != other.word(w)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        long h = 1234;
+        for (int w = words; --w >= 0;) {
+            h ^= word(w) * (w + 1);
+        }
+        return (int) ((h >> 32) ^ h);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buffer = new StringBuilder("{");
+        for (int s = nextState(0); s >= 0; s = nextState(s + 1)) {
+            if (buffer.length() > 1) {
+                buffer.append(", ");
+            }
+            buffer.append(s);
+        }
+        return buffer.append('}').toString();
+    }
+}
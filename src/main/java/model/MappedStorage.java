@@ -0,0 +1,215 @@
+package model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps int stores and state sets in memory-mapped temporary files, so that
+ * their size is limited by the disk and not by the heap. The operating system
+ * pages them in and out, which is cheap for the sequential scans over the
+ * adjacency arrays and bitsets that the fixpoint algorithms do.
+ *
+ * Every store is split into segments of a fixed power-of-two size, each mapped
+ * separately, because one mapping cannot exceed 2 GB. The files are deleted
+ * right after they are mapped. Sets and stores handed back with release() keep
+ * their mappings in a pool, per size, and a later set or store of the same
+ * size is carved out of them instead of a new file; the checkers release
+ * their temporary sets this way. Mappings that are not released are unmapped
+ * when they are garbage collected.
+ */
+public class MappedStorage implements Storage {
+    private static final int DEFAULT_SEGMENT_SHIFT = 26;
+    /** The number of released mappings of one size that are kept for reuse. */
+    private static final int MAX_POOLED = 64;
+
+    private final File directory;
+    private final int segmentShift;
+    private final Map<Long, ArrayDeque<ByteBuffer[]>> pool = new HashMap<Long, ArrayDeque<ByteBuffer[]>>();
+    private long mappings;
+
+    /**
+     * Creates a storage with 64 MB segments in the given directory.
+     * @param directory where the temporary files are created, null for the default temporary directory
+     */
+    public MappedStorage(File directory) {
+        this(directory, DEFAULT_SEGMENT_SHIFT);
+    }
+
+    /**
+     * @param directory where the temporary files are created, null for the default temporary directory
+     * @param segmentShift the segment size in bytes is 2 to the power of this, between 12 and 30
+     */
+    public MappedStorage(File directory, int segmentShift) {
+        if (segmentShift < 12 || segmentShift > 30) {
+            throw new IllegalArgumentException("Segment shift must be between 12 and 30: " + segmentShift);
+        }
+        this.directory = directory;
+        this.segmentShift = segmentShift;
+    }
+
+    @Override
+    public IntStore newInts(int length) {
+        return new MappedIntStore(this, length, take((long) length * 4), segmentShift - 2);
+    }
+
+    @Override
+    public StateSet newStateSet(int universeSize) {
+        return new MappedStateSet(this, universeSize, take(setBytes(universeSize)), segmentShift - 3);
+    }
+
+    static long setBytes(int universeSize) {
+        return ((long) universeSize + 63) / 64 * 8;
+    }
+
+    @Override
+    public StateSet newFullStateSet(int universeSize) {
+        MappedStateSet set = (MappedStateSet) newStateSet(universeSize);
+        set.fill();
+        return set;
+    }
+
+    @Override
+    public void release(StateSet set) {
+        if (set instanceof MappedStateSet) {
+            ((MappedStateSet) set).release(this);
+        }
+    }
+
+    @Override
+    public void release(IntStore store) {
+        if (store instanceof MappedIntStore && ((MappedIntStore) store).storage == this) {
+            MappedIntStore mapped = (MappedIntStore) store;
+            if (!mapped.released) {
+                mapped.released = true;
+                recycle((long) mapped.length * 4, mapped.segments);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of files mapped so far, which does not grow while
+     * released sets and stores can be reused.
+     * @return the number of mappings
+     */
+    public synchronized long getMappingCount() {
+        return mappings;
+    }
+
+    /**
+     * Returns zero-filled segments of the given size, reusing released ones if there are any.
+     */
+    ByteBuffer[] take(long bytes) {
+        ByteBuffer[] segments;
+        synchronized (this) {
+            ArrayDeque<ByteBuffer[]> free = pool.get(bytes);
+            segments = (free == null) ? null : free.poll();
+        }
+        if (segments == null) {
+            return map(bytes);
+        }
+        for (ByteBuffer segment : segments) {
+            int i = 0;
+            for (; i + 8 <= segment.capacity(); i += 8) {
+                segment.putLong(i, 0);
+            }
+            for (; i < segment.capacity(); i++) {
+                segment.put(i, (byte) 0);
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Keeps the segments of a released set or store for a later one of the same size.
+     */
+    synchronized void recycle(long bytes, ByteBuffer[] segments) {
+        if (segments.length == 0) {
+            return;
+        }
+        ArrayDeque<ByteBuffer[]> free = pool.get(bytes);
+        if (free == null) {
+            free = new ArrayDeque<ByteBuffer[]>();
+            pool.put(bytes, free);
+        }
+        if (free.size() < MAX_POOLED) {
+            free.push(segments);
+        }
+    }
+
+    /**
+     * Maps a new zero-filled file of the given size, one buffer per segment.
+     */
+    private ByteBuffer[] map(long bytes) {
+        long segmentBytes = 1L << segmentShift;
+        int count = (int) ((bytes + segmentBytes - 1) >> segmentShift);
+        ByteBuffer[] segments = new ByteBuffer[count];
+        if (count == 0) {
+            return segments;
+        }
+
+        synchronized (this) {
+            mappings++;
+        }
+        File file = null;
+        try {
+            file = File.createTempFile("states", ".bin", directory);
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(bytes);
+                FileChannel channel = raf.getChannel();
+                for (int i = 0; i < count; i++) {
+                    long position = (long) i << segmentShift;
+                    segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, position, Math.min(segmentBytes, bytes - position));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot map " + bytes + " bytes", e);
+        } finally {
+            if (file != null) {
+                file.delete();
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * An int store split into mapped segments of 2^shift ints.
+     */
+    private static final class MappedIntStore implements IntStore {
+        private final MappedStorage storage;
+        private final int length;
+        private final ByteBuffer[] segments;
+        private final int shift;
+        private final int mask;
+        private boolean released;
+
+        MappedIntStore(MappedStorage storage, int length, ByteBuffer[] segments, int shift) {
+            this.storage = storage;
+            this.length = length;
+            this.segments = segments;
+            this.shift = shift;
+            this.mask = (1 << shift) - 1;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public int get(int i) {
+            return segments[i >>> shift].getInt((i & mask) << 2);
+        }
+
+        @Override
+        public void set(int i, int value) {
+            segments[i >>> shift].putInt((i & mask) << 2, value);
+        }
+    }
+}
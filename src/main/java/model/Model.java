@@ -2,34 +2,319 @@ package model;
 
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.HashMap;
-// import java.util.List;
-// import java.util.ArrayList;
+import java.util.List;
+import java.util.ArrayList;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 /**
  * A model is consist of states and transitions
+ *
+ * A model parsed with parseFlyweight() keeps no State objects. Its states
+ * live in the columns of the compiled model (a name table, the labels of
+ * each state and a bitmap of the initial states), and the methods that
+ * return states make new ones from the columns on every call. Such models
+ * are meant for large inputs, where the checker only needs state indexes.
+ * Their transitions are the edges of the compiled model as well, made into
+ * Transition objects only when they are asked for.
+ *
+ * Other models keep the State and Transition objects they were parsed into,
+ * plus an index of the transitions of each state in two offset arrays, which
+ * costs two ints per transition and two per state.
  */
 public class Model {
     private Set<State> initialSet;
     private Set<State> statesSet;
-    private HashMap<String, State> stateMap;
-    private HashMap<String, Set<Transition>> targetMap;
-    private HashMap<String, Set<Transition>> transitionMap;
+    private ObjectIntMap<String> stateIds;
+    /* outgoing[outOffset[s]..outOffset[s+1]) are the indexes of the transitions leaving state s */
+    private int[] outOffset;
+    private int[] outgoing;
+    private int[] inOffset;
+    private int[] incoming;
     State[] states;
     Transition[] transitions;
+    private transient volatile CompiledModel compiled;
+
+    Model() {
+    }
+
+    /**
+     * Creates a model from the given states and transitions.
+     *
+     * @param states the states
+     * @param transitions the transitions between them
+     */
+    public Model(State[] states, Transition[] transitions) {
+        this.states = states;
+        this.transitions = transitions;
+        generateInitialSet();
+        generateStateMap();
+    }
+
+    /**
+     * Creates a flyweight model whose states and transitions are kept by its compiled form only.
+     */
+    Model(CompiledModel compiled) {
+        this.compiled = compiled;
+    }
 
     public static Model parseModel(String filePath) throws IOException {
+        try (FileReader reader = new FileReader(filePath)) {
+            return parseModel(reader);
+        }
+    }
+
+    /**
+     * Parses a model from the given JSON source.
+     *
+     * @param reader the JSON source, it is not closed
+     * @return the model
+     * @throws IOException if the source cannot be read or is not a model
+     */
+    public static Model parseModel(Reader reader) throws IOException {
         Gson gson = new Gson();
-        Model model = gson.fromJson(new FileReader(filePath), Model.class);
+        Model model;
+        try {
+            model = gson.fromJson(reader, Model.class);
+        } catch (JsonParseException e) {
+            throw new IOException("Invalid model: " + e.getMessage(), e);
+        }
+        if (model == null || model.states == null || model.transitions == null) {
+            throw new IOException("Invalid model: expected \"states\" and \"transitions\"");
+        }
         model.generateInitialSet();
         model.generateStateMap();
         return model;
     }
 
+    /**
+     * Parses a flyweight model from the given file, see parseFlyweight(Reader, Storage).
+     */
+    public static Model parseFlyweight(String filePath) throws IOException {
+        try (FileReader reader = new FileReader(filePath)) {
+            return parseFlyweight(reader, Storage.HEAP);
+        }
+    }
+
+    /**
+     * Parses a model without creating State or Transition objects. The states
+     * and transitions are read one by one straight into the columns of the
+     * compiled model, which is built here; transitions whose source or target
+     * is not a state are dropped, as by compile(). Transitions that come
+     * before the states are kept as ids until the states are read.
+     *
+     * @param reader the JSON source, it is not closed
+     * @param storage where the arrays and state sets of the compiled model are kept
+     * @return the flyweight model
+     * @throws IOException if the source cannot be read or is not a model
+     */
+    public static Model parseFlyweight(Reader reader, Storage storage) throws IOException {
+        CompiledModel.Builder builder = new CompiledModel.Builder(storage);
+        TransitionReader transitions = new TransitionReader(builder);
+        boolean hasStates = false;
+        boolean hasTransitions = false;
+
+        JsonReader json = new JsonReader(reader);
+        json.setLenient(true);
+        try {
+            json.beginObject();
+            while (json.hasNext()) {
+                switch (json.nextName()) {
+                case "states":
+                    json.beginArray();
+                    while (json.hasNext()) {
+                        readState(json, builder);
+                    }
+                    json.endArray();
+                    hasStates = true;
+                    break;
+                case "transitions":
+                    json.beginArray();
+                    while (json.hasNext()) {
+                        transitions.read(json, hasStates);
+                    }
+                    json.endArray();
+                    hasTransitions = true;
+                    break;
+                default:
+                    json.skipValue();
+                }
+            }
+            json.endObject();
+        } catch (JsonParseException | IllegalStateException e) {
+            throw new IOException("Invalid model: " + e.getMessage(), e);
+        }
+        if (!hasStates || !hasTransitions) {
+            throw new IOException("Invalid model: expected \"states\" and \"transitions\"");
+        }
+
+        transitions.addPending();
+        return new Model(builder.build());
+    }
+
+    /**
+     * Reads transition objects in the layout Gson reads into Transition and
+     * adds them to a builder. Transitions read before the states are kept,
+     * with their names interned, until addPending(). Only the actions of
+     * transitions that are added get an id, as by compile().
+     */
+    private static final class TransitionReader {
+        private final CompiledModel.Builder builder;
+        private String[] actions = new String[4];
+        private int actionCount;
+        private int[] ids = new int[4];
+
+        private final ObjectIntMap<String> pendingNames = new ObjectIntMap<String>();
+        private String[] names = new String[16];
+        private int[] sources = new int[16];
+        private int[] targets = new int[16];
+        private int[] actionOffset = new int[17];
+        private int[] actionNames = new int[16];
+        private int pending;
+
+        TransitionReader(CompiledModel.Builder builder) {
+            this.builder = builder;
+        }
+
+        void read(JsonReader json, boolean statesKnown) throws IOException {
+            String source = null;
+            String target = null;
+            actionCount = 0;
+
+            json.beginObject();
+            while (json.hasNext()) {
+                String field = json.nextName();
+                if (json.peek() == JsonToken.NULL) {
+                    json.nextNull();
+                } else if (field.equals("source")) {
+                    source = json.nextString();
+                } else if (field.equals("target")) {
+                    target = json.nextString();
+                } else if (field.equals("actions")) {
+                    json.beginArray();
+                    while (json.hasNext()) {
+                        if (actionCount == actions.length) {
+                            actions = Arrays.copyOf(actions, actionCount * 2);
+                        }
+                        actions[actionCount++] = json.nextString();
+                    }
+                    json.endArray();
+                } else {
+                    json.skipValue();
+                }
+            }
+            json.endObject();
+
+            if (source == null || target == null) {
+                return;
+            }
+            if (statesKnown) {
+                add(builder.indexOf(source), builder.indexOf(target));
+            } else {
+                keep(source, target);
+            }
+        }
+
+        /**
+         * Adds the transitions that were read before the states.
+         */
+        void addPending() {
+            for (int t = 0; t < pending; t++) {
+                actionCount = 0;
+                for (int i = actionOffset[t]; i < actionOffset[t + 1]; i++) {
+                    if (actionCount == actions.length) {
+                        actions = Arrays.copyOf(actions, actionCount * 2);
+                    }
+                    actions[actionCount++] = names[actionNames[i]];
+                }
+                add(builder.indexOf(names[sources[t]]), builder.indexOf(names[targets[t]]));
+            }
+            pending = 0;
+        }
+
+        private void add(int source, int target) {
+            if (source < 0 || target < 0) {
+                return;
+            }
+            if (ids.length < actionCount) {
+                ids = new int[actions.length];
+            }
+            for (int i = 0; i < actionCount; i++) {
+                ids[i] = builder.internAction(actions[i]);
+            }
+            builder.addTransition(source, target, ids, actionCount);
+        }
+
+        private void keep(String source, String target) {
+            if (pending == sources.length) {
+                sources = Arrays.copyOf(sources, pending * 2);
+                targets = Arrays.copyOf(targets, pending * 2);
+                actionOffset = Arrays.copyOf(actionOffset, pending * 2 + 1);
+            }
+            int begin = actionOffset[pending];
+            while (begin + actionCount > actionNames.length) {
+                actionNames = Arrays.copyOf(actionNames, actionNames.length * 2);
+            }
+            for (int i = 0; i < actionCount; i++) {
+                actionNames[begin + i] = name(actions[i]);
+            }
+            sources[pending] = name(source);
+            targets[pending] = name(target);
+            actionOffset[pending + 1] = begin + actionCount;
+            pending++;
+        }
+
+        private int name(String name) {
+            int id = pendingNames.intern(name);
+            if (id == names.length) {
+                names = Arrays.copyOf(names, id * 2);
+            }
+            names[id] = name;
+            return id;
+        }
+    }
+
+    /**
+     * Reads a state object in the layout Gson reads into State.
+     */
+    private static void readState(JsonReader json, CompiledModel.Builder builder) throws IOException {
+        String name = null;
+        boolean init = false;
+        String[] label = null;
+
+        json.beginObject();
+        while (json.hasNext()) {
+            String field = json.nextName();
+            if (json.peek() == JsonToken.NULL) {
+                json.nextNull();
+            } else if (field.equals("name")) {
+                name = json.nextString();
+            } else if (field.equals("init")) {
+                init = json.nextBoolean();
+            } else if (field.equals("label")) {
+                List<String> labels = new ArrayList<String>();
+                json.beginArray();
+                while (json.hasNext()) {
+                    labels.add(json.nextString());
+                }
+                json.endArray();
+                label = labels.toArray(new String[labels.size()]);
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+        builder.addState(name, init, label);
+    }
+
     /**
      * Generates the set of initial states.
      */
@@ -46,103 +331,289 @@ public class Model {
         }
     }
 
+    /**
+     * Indexes the transitions by the index of their source and target state.
+     * Each index costs an int per transition, and transitions whose source or
+     * target is not a state are left out.
+     */
     private void generateStateMap() {
-        stateMap = new HashMap<>();
-        targetMap = new HashMap<>();
-        transitionMap = new HashMap<>();
-
-        for (State state : states) {
-            Set<Transition> list = new HashSet<>();
-            String name = state.getName();
-
-            for (Transition transition : transitions) {
-                if (transition.getSource().equals(name)) {
-                    list.add(transition);
-                }
-
-                String target = transition.getTarget();
-                if (!targetMap.containsKey(target)) {
-                    // Initialize the new set
-                    Set<Transition> newSet = new HashSet<Transition>();
-                    newSet.add(transition);
-                    targetMap.put(target, newSet);
+        int n = states.length;
+        stateIds = new ObjectIntMap<String>(n);
+        for (int s = 0; s < n; s++) {
+            stateIds.put(states[s].getName(), s);
+        }
 
-                } else {
-                    // Populate the target set.
-                    targetMap.get(target).add(transition);
-                }
-            }
+        outOffset = new int[n + 1];
+        inOffset = new int[n + 1];
+        for (Transition transition : transitions) {
+            int source = indexOf(transition.getSource());
+            int target = indexOf(transition.getTarget());
+            if (source >= 0) outOffset[source + 1]++;
+            if (target >= 0) inOffset[target + 1]++;
+        }
+        for (int s = 0; s < n; s++) {
+            outOffset[s + 1] += outOffset[s];
+            inOffset[s + 1] += inOffset[s];
+        }
 
-            stateMap.put(name, state);
-            transitionMap.put(name, list);
+        outgoing = new int[outOffset[n]];
+        incoming = new int[inOffset[n]];
+        int[] outFill = Arrays.copyOf(outOffset, n);
+        int[] inFill = Arrays.copyOf(inOffset, n);
+        for (int t = 0; t < transitions.length; t++) {
+            int source = indexOf(transitions[t].getSource());
+            int target = indexOf(transitions[t].getTarget());
+            if (source >= 0) outgoing[outFill[source]++] = t;
+            if (target >= 0) incoming[inFill[target]++] = t;
         }
     }
 
     /**
-     * Getter for initialSet.
+     * Getter for initialSet. A flyweight model builds a new set on every call.
      * 
      * @return initialSet
      */
     public Set<State> getInitialSet() {
-        return initialSet;
+        if (states != null) {
+            return initialSet;
+        }
+        Set<State> initial = new HashSet<State>();
+        for (int i = 0; i < compiled.getInitialCount(); i++) {
+            initial.add(compiled.getState(compiled.getInitial(i)));
+        }
+        return initial;
     }
 
     /**
-     * Getter for statesSet.
+     * Getter for statesSet. A flyweight model builds a new set on every call.
      * 
      * @return statesSet
      */
     public Set<State> getStatesSet() {
-        return statesSet;
+        if (states != null) {
+            return statesSet;
+        }
+        return new HashSet<State>(Arrays.asList(getStates()));
     }
 
     /**
-     * Returns the list of the states
+     * Returns the list of the states. A flyweight model makes a new array of
+     * new states on every call.
      * 
      * @return list of state for the given model
      */
     public State[] getStates() {
-        return states;
+        if (states != null) {
+            return states;
+        }
+        State[] all = new State[compiled.getStateCount()];
+        for (int s = 0; s < all.length; s++) {
+            all[s] = compiled.getState(s);
+        }
+        return all;
+    }
+
+    /**
+     * Returns the number of states, without making any in a flyweight model.
+     * @return the number of states
+     */
+    public int getStateCount() {
+        return (states != null) ? states.length : compiled.getStateCount();
     }
 
     /**
-     * Returns the list of transitions
+     * Returns the name of a state, without making the state in a flyweight model.
+     * @param state the index of the state in getStates()
+     * @return the name
+     */
+    public String getName(int state) {
+        return (states != null) ? states[state].getName() : compiled.getName(state);
+    }
+
+    /**
+     * Tells whether the states of this model are kept by its compiled form only.
+     * @return true if the model was parsed with parseFlyweight()
+     */
+    public boolean isFlyweight() {
+        return states == null;
+    }
+
+    /**
+     * Returns the list of transitions. A flyweight model makes a new array of
+     * new transitions on every call, one per edge of its compiled form.
      * 
      * @return list of transition for the given model
      */
     public Transition[] getTransitions() {
-        return transitions;
+        if (transitions != null) {
+            return transitions;
+        }
+        Transition[] all = new Transition[compiled.getEdgeCount()];
+        for (int s = 0; s < compiled.getStateCount(); s++) {
+            for (int e = compiled.succBegin(s); e < compiled.succEnd(s); e++) {
+                all[e] = edge(s, e);
+            }
+        }
+        return all;
     }
 
+    /**
+     * Makes the transition of an edge of the compiled form of a flyweight model.
+     */
+    private Transition edge(int source, int e) {
+        String[] actions = new String[compiled.actionEnd(e) - compiled.actionBegin(e)];
+        for (int i = 0; i < actions.length; i++) {
+            actions[i] = compiled.getActionName(compiled.edgeAction(compiled.actionBegin(e) + i));
+        }
+        return new Transition(compiled.getName(source), compiled.getName(compiled.edgeTarget(e)), actions);
+    }
+
+    /**
+     * Returns the compiled form of this model. The model is compiled on the
+     * first call; later calls return the same instance.
+     *
+     * @return the compiled model, safe to share between threads
+     */
+    public CompiledModel compile() {
+        CompiledModel result = compiled;
+        if (result == null) {
+            synchronized (this) {
+                result = compiled;
+                if (result == null) {
+                    result = CompiledModel.compile(this);
+                    compiled = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Builds a map from state names to states. The model does not keep this
+     * map, so use getState() for single lookups.
+     */
     public HashMap<String, State> getStateMap() {
+        HashMap<String, State> stateMap = new HashMap<>();
+        for (State state : getStates()) {
+            stateMap.put(state.getName(), state);
+        }
         return stateMap;
     }
 
+    /**
+     * Builds a map from state names to their outgoing transitions. The model
+     * does not keep this map, so use getTransition() for single lookups.
+     */
     public HashMap<String, Set<Transition>> getTransitionMap() {
+        HashMap<String, Set<Transition>> transitionMap = new HashMap<>();
+        for (int s = 0; s < getStateCount(); s++) {
+            transitionMap.put(getName(s), getTransition(getName(s)));
+        }
         return transitionMap;
     }
 
+    /**
+     * Builds a map from state names to their incoming transitions. The model
+     * does not keep this map, so use getTargetTransition() for single lookups.
+     */
     public HashMap<String, Set<Transition>> getTargetMap() {
+        HashMap<String, Set<Transition>> targetMap = new HashMap<>();
+        for (int s = 0; s < getStateCount(); s++) {
+            Set<Transition> incoming = getTargetTransition(getName(s));
+            if (!incoming.isEmpty()) {
+                targetMap.put(getName(s), incoming);
+            }
+        }
         return targetMap;
     }
 
     public State getState(String name) {
-        return stateMap.get(name);
+        int state = indexOf(name);
+        if (state < 0) {
+            return null;
+        }
+        return (states != null) ? states[state] : compiled.getState(state);
+    }
+
+    /**
+     * Returns the index of the state with the given name in getStates().
+     * @param name the name of the state
+     * @return the index or -1 if there is no such state
+     */
+    public int indexOf(String name) {
+        return (stateIds != null) ? stateIds.get(name) : compiled.indexOf(name);
+    }
+
+    /**
+     * Returns the indexes in getTransitions() of the transitions leaving a state.
+     * @param state the index of the state
+     * @return a new array of the transition indexes
+     */
+    public int[] getOutgoing(int state) {
+        if (transitions != null) {
+            return Arrays.copyOfRange(outgoing, outOffset[state], outOffset[state + 1]);
+        }
+        int[] edges = new int[compiled.succEnd(state) - compiled.succBegin(state)];
+        for (int i = 0; i < edges.length; i++) {
+            edges[i] = compiled.succBegin(state) + i;
+        }
+        return edges;
+    }
+
+    /**
+     * Returns the indexes in getTransitions() of the transitions entering a state.
+     * @param state the index of the state
+     * @return a new array of the transition indexes
+     */
+    public int[] getIncoming(int state) {
+        if (transitions != null) {
+            return Arrays.copyOfRange(incoming, inOffset[state], inOffset[state + 1]);
+        }
+        int[] edges = new int[compiled.predEnd(state) - compiled.predBegin(state)];
+        for (int i = 0; i < edges.length; i++) {
+            edges[i] = compiled.predEdge(compiled.predBegin(state) + i);
+        }
+        return edges;
     }
 
     /**
      * Gets the set of transitions whose target state is equal to the given state.
      * @param state - target state
-     * @return May return null if the state is an initial state without any connecting transitions.
+     * @return an empty set if no transition enters the state
      */
     public Set<Transition> getTargetTransition(String name) {
-        Set<Transition> transitions = targetMap.get(name);
-        
-        return (transitions != null)? transitions: new HashSet<>();
+        Set<Transition> set = new HashSet<>();
+        int state = indexOf(name);
+        if (state < 0) {
+            return set;
+        }
+        if (transitions == null) {
+            for (int i = compiled.predBegin(state); i < compiled.predEnd(state); i++) {
+                set.add(edge(compiled.predSource(i), compiled.predEdge(i)));
+            }
+            return set;
+        }
+        for (int i = inOffset[state]; i < inOffset[state + 1]; i++) {
+            set.add(transitions[incoming[i]]);
+        }
+        return set;
     }
 
     public Set<Transition> getTransition(String name) {
-        return transitionMap.get(name);
+        int state = indexOf(name);
+        if (state < 0) {
+            return null;
+        }
+        Set<Transition> set = new HashSet<>();
+        if (transitions == null) {
+            for (int e = compiled.succBegin(state); e < compiled.succEnd(state); e++) {
+                set.add(edge(state, e));
+            }
+            return set;
+        }
+        for (int i = outOffset[state]; i < outOffset[state + 1]; i++) {
+            set.add(transitions[outgoing[i]]);
+        }
+        return set;
     }
-
 }
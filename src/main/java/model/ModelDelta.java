@@ -0,0 +1,296 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A small edit to a model: states, transitions, labels and actions that are
+ * added or removed. Build a delta with the fluent methods and apply it with
+ * applyTo(), which leaves the original model untouched.
+ *
+ * Changes are applied in this order: removed states (with all their transitions),
+ * removed transitions, added states, added transitions, labels, actions.
+ * Edits are indexed by state name, so applying a delta looks each one up once
+ * instead of comparing every transition with every edit.
+ */
+public class ModelDelta {
+    private final Set<String> removedStates = new LinkedHashSet<String>();
+    private final Map<String, Set<String>> removedTransitions = new LinkedHashMap<String, Set<String>>();
+    private final Map<String, State> addedStates = new LinkedHashMap<String, State>();
+    private final List<Transition> addedTransitions = new ArrayList<Transition>();
+    private final Map<String, Set<String>> addedLabels = new LinkedHashMap<String, Set<String>>();
+    private final Map<String, Set<String>> removedLabels = new LinkedHashMap<String, Set<String>>();
+    private final Map<String, Map<String, Set<String>>> addedActions = new LinkedHashMap<String, Map<String, Set<String>>>();
+    private final Map<String, Map<String, Set<String>>> removedActions = new LinkedHashMap<String, Map<String, Set<String>>>();
+
+    public ModelDelta addState(String name, boolean init, String... labels) {
+        addedStates.put(name, new State(name, init, labels));
+        return this;
+    }
+
+    public ModelDelta removeState(String name) {
+        removedStates.add(name);
+        return this;
+    }
+
+    public ModelDelta addTransition(String source, String target, String... actions) {
+        addedTransitions.add(new Transition(source, target, actions));
+        return this;
+    }
+
+    /**
+     * Removes every transition from source to target.
+     */
+    public ModelDelta removeTransition(String source, String target) {
+        set(removedTransitions, source).add(target);
+        return this;
+    }
+
+    public ModelDelta addLabel(String state, String label) {
+        set(addedLabels, state).add(label);
+        return this;
+    }
+
+    public ModelDelta removeLabel(String state, String label) {
+        set(removedLabels, state).add(label);
+        return this;
+    }
+
+    /**
+     * Adds an action to every transition from source to target.
+     */
+    public ModelDelta addAction(String source, String target, String action) {
+        actions(addedActions, source, target).add(action);
+        return this;
+    }
+
+    /**
+     * Removes an action from every transition from source to target.
+     */
+    public ModelDelta removeAction(String source, String target, String action) {
+        actions(removedActions, source, target).add(action);
+        return this;
+    }
+
+    private static Set<String> set(Map<String, Set<String>> map, String key) {
+        Set<String> set = map.get(key);
+        if (set == null) {
+            set = new LinkedHashSet<String>();
+            map.put(key, set);
+        }
+        return set;
+    }
+
+    private static Set<String> actions(Map<String, Map<String, Set<String>>> map, String source, String target) {
+        Map<String, Set<String>> byTarget = map.get(source);
+        if (byTarget == null) {
+            byTarget = new LinkedHashMap<String, Set<String>>();
+            map.put(source, byTarget);
+        }
+        return set(byTarget, target);
+    }
+
+    public Set<String> getRemovedStates() {
+        return Collections.unmodifiableSet(removedStates);
+    }
+
+    public Set<String> getAddedStates() {
+        return Collections.unmodifiableSet(addedStates.keySet());
+    }
+
+    /**
+     * Returns the names of the existing states whose labels change.
+     * @return the relabelled states
+     */
+    public Set<String> getRelabelledStates() {
+        Set<String> states = new LinkedHashSet<String>(addedLabels.keySet());
+        states.addAll(removedLabels.keySet());
+        return states;
+    }
+
+    /**
+     * Returns the source and target names of every transition that is added,
+     * removed or gets its actions changed, as pairs {source, target}.
+     * Transitions removed together with a removed state are not included.
+     *
+     * @return the changed edges
+     */
+    public List<String[]> getChangedEdges() {
+        List<String[]> edges = new ArrayList<String[]>();
+        for (Map.Entry<String, Set<String>> entry : removedTransitions.entrySet()) {
+            for (String target : entry.getValue()) {
+                edges.add(new String[] { entry.getKey(), target });
+            }
+        }
+        for (Transition transition : addedTransitions) {
+            edges.add(new String[] { transition.getSource(), transition.getTarget() });
+        }
+        addPairs(edges, addedActions);
+        addPairs(edges, removedActions);
+        return edges;
+    }
+
+    private static void addPairs(List<String[]> edges, Map<String, Map<String, Set<String>>> map) {
+        for (Map.Entry<String, Map<String, Set<String>>> entry : map.entrySet()) {
+            for (String target : entry.getValue().keySet()) {
+                edges.add(new String[] { entry.getKey(), target });
+            }
+        }
+    }
+
+    /**
+     * Returns a new model with this delta applied. States and transitions that
+     * are not changed are shared with the original model.
+     *
+     * @param model the original model
+     * @return the edited model
+     */
+    public Model applyTo(Model model) {
+        List<State> states = new ArrayList<State>();
+        for (State state : model.getStates()) {
+            if (removedStates.contains(state.getName()) || addedStates.containsKey(state.getName())) {
+                continue;
+            }
+            states.add(relabel(state));
+        }
+        for (State state : addedStates.values()) {
+            states.add(relabel(state));
+        }
+
+        List<Transition> transitions = new ArrayList<Transition>();
+        for (Transition transition : model.getTransitions()) {
+            if (removedStates.contains(transition.getSource()) || removedStates.contains(transition.getTarget())
+                    || isRemoved(transition.getSource(), transition.getTarget())) {
+                continue;
+            }
+            transitions.add(editActions(transition));
+        }
+        for (Transition transition : addedTransitions) {
+            transitions.add(editActions(transition));
+        }
+
+        return new Model(states.toArray(new State[states.size()]), transitions.toArray(new Transition[transitions.size()]));
+    }
+
+    /**
+     * Returns a new compiled model with this delta applied, numbered the way
+     * compiling applyTo() of the original model would number it. Only the
+     * edited states are looked up by name; see CompiledModel.apply().
+     * A transition to or from a state that does not exist afterwards is
+     * dropped, as compile() drops it, so a later delta adding that state
+     * does not bring it back.
+     *
+     * @param model the original model
+     * @return the edited model
+     */
+    public CompiledModel applyTo(CompiledModel model) {
+        return model.apply(this);
+    }
+
+    private State relabel(State state) {
+        String[] labels = relabel(state.getName(), state.getLabel());
+        return (labels == state.getLabel()) ? state : new State(state.getName(), state.isInit(), labels);
+    }
+
+    private Transition editActions(Transition transition) {
+        String[] actions = editActions(transition.getSource(), transition.getTarget(), transition.getActions());
+        return (actions == transition.getActions()) ? transition
+                : new Transition(transition.getSource(), transition.getTarget(), actions);
+    }
+
+    /* Lookups for CompiledModel.apply() */
+
+    State getAddedState(String name) {
+        return addedStates.get(name);
+    }
+
+    List<Transition> getAddedTransitions() {
+        return addedTransitions;
+    }
+
+    boolean isRemoved(String source, String target) {
+        Set<String> targets = removedTransitions.get(source);
+        return targets != null && targets.contains(target);
+    }
+
+    /**
+     * Returns the sources of the removed transitions and of the transitions whose actions change.
+     */
+    Set<String> getEditedSources() {
+        Set<String> sources = new LinkedHashSet<String>(removedTransitions.keySet());
+        sources.addAll(addedActions.keySet());
+        sources.addAll(removedActions.keySet());
+        return sources;
+    }
+
+    boolean isRelabelled(String name) {
+        return addedLabels.containsKey(name) || removedLabels.containsKey(name);
+    }
+
+    boolean editsActions(String source, String target) {
+        return (addedActions.containsKey(source) && addedActions.get(source).containsKey(target))
+                || (removedActions.containsKey(source) && removedActions.get(source).containsKey(target));
+    }
+
+    /**
+     * Returns the labels of a state after this delta, or the given array if they do not change.
+     */
+    String[] relabel(String name, String[] labels) {
+        Set<String> added = addedLabels.get(name);
+        Set<String> removed = removedLabels.get(name);
+        if (added == null && removed == null) {
+            return labels;
+        }
+
+        Set<String> result = new LinkedHashSet<String>();
+        if (labels != null) {
+            result.addAll(Arrays.asList(labels));
+        }
+        if (added != null) {
+            result.addAll(added);
+        }
+        if (removed != null) {
+            result.removeAll(removed);
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    /**
+     * Returns the actions of a transition after this delta, or the given array if they do not change.
+     */
+    String[] editActions(String source, String target, String[] actions) {
+        Set<String> added = addedActions.containsKey(source) ? addedActions.get(source).get(target) : null;
+        Set<String> removed = removedActions.containsKey(source) ? removedActions.get(source).get(target) : null;
+        if (added == null && removed == null) {
+            return actions;
+        }
+
+        Set<String> result = new LinkedHashSet<String>();
+        if (actions != null) {
+            result.addAll(Arrays.asList(actions));
+        }
+        if (added != null) {
+            result.addAll(added);
+        }
+        if (removed != null) {
+            result.removeAll(removed);
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    /**
+     * Returns true if the delta changes nothing.
+     * @return true for an empty delta
+     */
+    public boolean isEmpty() {
+        return removedStates.isEmpty() && removedTransitions.isEmpty() && addedStates.isEmpty()
+                && addedTransitions.isEmpty() && addedLabels.isEmpty() && removedLabels.isEmpty()
+                && addedActions.isEmpty() && removedActions.isEmpty();
+    }
+}
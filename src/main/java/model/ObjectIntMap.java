@@ -0,0 +1,171 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * A map from objects to ints with open addressing and linear probing.
+ *
+ * Keys and values are kept in two parallel arrays, so an entry costs a
+ * reference and an int instead of a boxed Integer and a map entry. It also
+ * interns keys: intern() gives each new key the next free id, starting at 0.
+ * Missing keys have the value -1, so values should not be negative, and null
+ * keys are not allowed.
+ */
+public class ObjectIntMap<K> {
+    private Object[] keys;
+    private int[] values;
+    private int size;
+
+    public ObjectIntMap() {
+        this(8);
+    }
+
+    /**
+     * @param expected the number of keys the map holds without growing
+     */
+    public ObjectIntMap(int expected) {
+        int capacity = 8;
+        while (capacity * 3 < expected * 4) {
+            capacity <<= 1;
+        }
+        keys = new Object[capacity];
+        values = new int[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the value of the key, or -1 if it is not in the map
+     */
+    public int get(K key) {
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot].equals(key)) return values[slot];
+        }
+        return -1;
+    }
+
+    public boolean containsKey(K key) {
+        return slotOf(key) >= 0;
+    }
+
+    /**
+     * Sets the value of a key, replacing an old one.
+     */
+    public void put(K key, int value) {
+        int slot = slotOf(key);
+        if (slot >= 0) {
+            values[slot] = value;
+        } else {
+            insert(key, value);
+        }
+    }
+
+    /**
+     * Returns the id of a key, and gives it the next free id if it has none.
+     * The ids are dense as long as put() is not used on the same map.
+     *
+     * @param key the key
+     * @return its id
+     */
+    public int intern(K key) {
+        int slot = slotOf(key);
+        if (slot >= 0) return values[slot];
+
+        int id = size;
+        insert(key, id);
+        return id;
+    }
+
+    /**
+     * The entries are the slots in [0, capacity()) whose key is not null, read
+     * with keyAt() and valueAt().
+     */
+    public int capacity() {
+        return keys.length;
+    }
+
+    @SuppressWarnings("unchecked")
+    public K keyAt(int slot) {
+        return (K) keys[slot];
+    }
+
+    public int valueAt(int slot) {
+        return values[slot];
+    }
+
+    private int slotOf(Object key) {
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot].equals(key)) return slot;
+        }
+        return -1;
+    }
+
+    private void insert(Object key, int value) {
+        if ((size + 1) * 4 > keys.length * 3) {
+            grow();
+        }
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+    }
+
+    private void grow() {
+        Object[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new Object[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        size = 0;
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] != null) {
+                insert(oldKeys[slot], oldValues[slot]);
+            }
+        }
+    }
+
+    private static int hash(Object key) {
+        // spread the bits so that keys with close hash codes do not cluster
+        int h = key.hashCode() * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != null) {
+                if (sb.length() > 1) sb.append(", ");
+                sb.append(keys[slot]).append('=').append(values[slot]);
+            }
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * Returns an independent copy of this map, with the same ids.
+     * @return the copy
+     */
+    public ObjectIntMap<K> copy() {
+        ObjectIntMap<K> copy = new ObjectIntMap<K>();
+        copy.keys = keys.clone();
+        copy.values = values.clone();
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * Removes every entry and keeps the capacity.
+     */
+    public void clear() {
+        Arrays.fill(keys, null);
+        size = 0;
+    }
+}
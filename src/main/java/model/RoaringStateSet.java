@@ -0,0 +1,800 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * A compressed state set in the style of Roaring bitmaps.
+ *
+ * The states are split into chunks of 65536 by the high 16 bits of their index.
+ * Each non-empty chunk is kept in the smallest of three containers:
+ * <ul>
+ * <li>an array of the sorted low bits, for at most 4096 states,</li>
+ * <li>a bitmap of 65536 bits, for dense chunks,</li>
+ * <li>a list of runs of consecutive states, for chunks made of a few intervals.</li>
+ * </ul>
+ * Single additions and removals switch between arrays and bitmaps. Bulk
+ * operations and optimize() also consider runs, so a label's few states or
+ * "all but a few" after a complement stay small.
+ */
+public class RoaringStateSet implements StateSet {
+    private static final int CHUNK = 1 << 16;
+    private static final int ARRAY_MAX = 4096;
+    private static final int WORDS = CHUNK / 64;
+
+    private final int universeSize;
+    private char[] keys;
+    private Container[] containers;
+    private int size;
+
+    public RoaringStateSet(int universeSize) {
+        this.universeSize = universeSize;
+        this.keys = new char[4];
+        this.containers = new Container[4];
+    }
+
+    private RoaringStateSet(RoaringStateSet other) {
+        this.universeSize = other.universeSize;
+        this.keys = Arrays.copyOf(other.keys, other.size);
+        this.containers = new Container[other.size];
+        this.size = other.size;
+        for (int i = 0; i < size; i++) {
+            containers[i] = other.containers[i].copy();
+        }
+    }
+
+    /**
+     * Creates a set that contains every state of the universe, one run per chunk.
+     * @param universeSize the number of states in the model
+     * @return the full set
+     */
+    public static RoaringStateSet full(int universeSize) {
+        RoaringStateSet set = new RoaringStateSet(universeSize);
+        set.addRange(0, universeSize);
+        return set;
+    }
+
+    /**
+     * Adds the states in [from, to).
+     */
+    public void addRange(int from, int to) {
+        while (from < to) {
+            int high = from >>> 16;
+            int end = Math.min(to, (high + 1) << 16);
+            int i = find(high);
+            Container range = RunContainer.range(from & 0xFFFF, end - (high << 16));
+            if (i >= 0) {
+                containers[i] = or(containers[i], range);
+            } else {
+                insert(-i - 1, (char) high, range);
+            }
+            from = end;
+        }
+    }
+
+    /**
+     * Returns the states of the universe that are not in this set.
+     * @return a new set
+     */
+    public RoaringStateSet complement() {
+        RoaringStateSet result = new RoaringStateSet(universeSize);
+        int chunks = (universeSize + CHUNK - 1) >>> 16;
+        for (int high = 0, i = 0; high < chunks; high++) {
+            int limit = Math.min(CHUNK, universeSize - (high << 16));
+            Container c;
+            if (i < size && keys[i] == high) {
+                c = complement(containers[i++], limit);
+            } else {
+                c = RunContainer.range(0, limit);
+            }
+            if (c != null) {
+                result.insert(result.size, (char) high, c);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Converts every chunk to its smallest container.
+     */
+    public void optimize() {
+        for (int i = 0; i < size; i++) {
+            containers[i] = normalize(containers[i].toBitmap());
+        }
+    }
+
+    @Override
+    public int universeSize() {
+        return universeSize;
+    }
+
+    @Override
+    public boolean contains(int state) {
+        int i = find(state >>> 16);
+        return i >= 0 && containers[i].contains((char) state);
+    }
+
+    @Override
+    public void add(int state) {
+        int i = find(state >>> 16);
+        if (i >= 0) {
+            containers[i] = containers[i].add((char) state);
+        } else {
+            insert(-i - 1, (char) (state >>> 16), new ArrayContainer().add((char) state));
+        }
+    }
+
+    @Override
+    public void remove(int state) {
+        int i = find(state >>> 16);
+        if (i >= 0) {
+            Container c = containers[i].remove((char) state);
+            if (c == null) {
+                delete(i);
+            } else {
+                containers[i] = c;
+            }
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int cardinality() {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            count += containers[i].cardinality();
+        }
+        return count;
+    }
+
+    @Override
+    public int nextState(int from) {
+        if (from >= universeSize) {
+            return -1;
+        }
+        int i = find(from >>> 16);
+        if (i >= 0) {
+            int low = containers[i].next(from & 0xFFFF);
+            if (low >= 0) {
+                return (keys[i] << 16) | low;
+            }
+            i++;
+        } else {
+            i = -i - 1;
+        }
+        return (i < size) ? (keys[i] << 16) | containers[i].next(0) : -1;
+    }
+
+    @Override
+    public void addAll(StateSet other) {
+        if (other instanceof RoaringStateSet) {
+            RoaringStateSet set = (RoaringStateSet) other;
+            for (int j = 0; j < set.size; j++) {
+                int i = find(set.keys[j]);
+                if (i >= 0) {
+                    containers[i] = or(containers[i], set.containers[j]);
+                } else {
+                    insert(-i - 1, set.keys[j], set.containers[j].copy());
+                }
+            }
+            return;
+        }
+
+        for (int s = other.nextState(0); s >= 0; s = other.nextState(s + 1)) {
+            add(s);
+        }
+    }
+
+    @Override
+    public void retainAll(StateSet other) {
+        if (other instanceof RoaringStateSet) {
+            RoaringStateSet set = (RoaringStateSet) other;
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                int j = set.find(keys[i]);
+                Container c = (j >= 0) ? and(containers[i], set.containers[j]) : null;
+                if (c != null) {
+                    keys[kept] = keys[i];
+                    containers[kept++] = c;
+                }
+            }
+            Arrays.fill(containers, kept, size, null);
+            size = kept;
+            return;
+        }
+
+        for (int s = nextState(0); s >= 0; s = nextState(s + 1)) {
+            if (!other.contains(s)) {
+                remove(s);
+            }
+        }
+    }
+
+    @Override
+    public void removeAll(StateSet other) {
+        if (other instanceof RoaringStateSet) {
+            RoaringStateSet set = (RoaringStateSet) other;
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                int j = set.find(keys[i]);
+                Container c = (j >= 0) ? andNot(containers[i], set.containers[j]) : containers[i];
+                if (c != null) {
+                    keys[kept] = keys[i];
+                    containers[kept++] = c;
+                }
+            }
+            Arrays.fill(containers, kept, size, null);
+            size = kept;
+            return;
+        }
+
+        for (int s = other.nextState(0); s >= 0; s = other.nextState(s + 1)) {
+            remove(s);
+        }
+    }
+
+    @Override
+    public boolean containsAll(StateSet other) {
+        if (other instanceof RoaringStateSet) {
+            RoaringStateSet set = (RoaringStateSet) other;
+            for (int j = 0; j < set.size; j++) {
+                int i = find(set.keys[j]);
+                if (i < 0 || andNot(set.containers[j], containers[i]) != null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        for (int s = other.nextState(0); s >= 0; s = other.nextState(s + 1)) {
+            if (!contains(s)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(containers, 0, size, null);
+        size = 0;
+    }
+
+    @Override
+    public StateSet copy() {
+        return new RoaringStateSet(this);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof RoaringStateSet)) {
+            return false;
+        }
+        RoaringStateSet other = (RoaringStateSet) o;
+        if (universeSize != other.universeSize || size != other.size) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (keys[i] != other.keys[i] || !Arrays.equals(containers[i].toBitmap(), other.containers[i].toBitmap())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 0;
+        for (int i = 0; i < size; i++) {
+            h = 31 * h + keys[i];
+            h = 31 * h + Arrays.hashCode(containers[i].toBitmap());
+        }
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buffer = new StringBuilder("{");
+        for (int s = nextState(0); s >= 0; s = nextState(s + 1)) {
+            if (buffer.length() > 1) {
+                buffer.append(", ");
+            }
+            buffer.append(s);
+        }
+        return buffer.append('}').toString();
+    }
+
+    /* Chunk index */
+
+    /**
+     * Returns the position of the chunk, or -(insertion point) - 1 if it is missing.
+     */
+    private int find(int high) {
+        int from = 0;
+        int to = size - 1;
+        while (from <= to) {
+            int mid = (from + to) >>> 1;
+            if (keys[mid] < high) {
+                from = mid + 1;
+            } else if (keys[mid] > high) {
+                to = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -from - 1;
+    }
+
+    private void insert(int i, char key, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, Math.max(4, size * 2));
+            containers = Arrays.copyOf(containers, keys.length);
+        }
+        System.arraycopy(keys, i, keys, i + 1, size - i);
+        System.arraycopy(containers, i, containers, i + 1, size - i);
+        keys[i] = key;
+        containers[i] = container;
+        size++;
+    }
+
+    private void delete(int i) {
+        System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+        System.arraycopy(containers, i + 1, containers, i, size - i - 1);
+        containers[--size] = null;
+    }
+
+    /* Operations on containers, null is the empty container */
+
+    private static Container or(Container a, Container b) {
+        if (a instanceof ArrayContainer && b instanceof ArrayContainer
+                && a.cardinality() + b.cardinality() <= ARRAY_MAX) {
+            return ((ArrayContainer) a).merge((ArrayContainer) b);
+        }
+        long[] bits = a.toBitmap();
+        b.orInto(bits);
+        return normalize(bits);
+    }
+
+    private static Container and(Container a, Container b) {
+        if (a instanceof ArrayContainer) {
+            return ((ArrayContainer) a).filter(b, true);
+        } else if (b instanceof ArrayContainer) {
+            return ((ArrayContainer) b).filter(a, true);
+        }
+        long[] bits = a.toBitmap();
+        long[] other = b.toBitmap();
+        for (int w = 0; w < WORDS; w++) {
+            bits[w] &= other[w];
+        }
+        return normalize(bits);
+    }
+
+    private static Container andNot(Container a, Container b) {
+        if (a instanceof ArrayContainer) {
+            return ((ArrayContainer) a).filter(b, false);
+        }
+        long[] bits = a.toBitmap();
+        long[] other = b.toBitmap();
+        for (int w = 0; w < WORDS; w++) {
+            bits[w] &= ~other[w];
+        }
+        return normalize(bits);
+    }
+
+    /**
+     * Returns the low bits in [0, limit) that are not in the container.
+     */
+    private static Container complement(Container c, int limit) {
+        long[] bits = c.toBitmap();
+        for (int w = 0; w < WORDS; w++) {
+            bits[w] = ~bits[w];
+        }
+        clearFrom(bits, limit);
+        return normalize(bits);
+    }
+
+    private static void clearFrom(long[] bits, int from) {
+        if (from >= CHUNK) {
+            return;
+        }
+        bits[from >>> 6] &= ~(-1L << from);
+        for (int w = (from >>> 6) + 1; w < WORDS; w++) {
+            bits[w] = 0;
+        }
+    }
+
+    /**
+     * Returns the smallest container holding the given bits.
+     */
+    private static Container normalize(long[] bits) {
+        int cardinality = 0;
+        int runs = 0;
+        long carry = 0;
+        for (int w = 0; w < WORDS; w++) {
+            long word = bits[w];
+            cardinality += Long.bitCount(word);
+            // a run starts where a bit is set and the one below it is not
+            runs += Long.bitCount(word & ~((word << 1) | carry));
+            carry = word >>> 63;
+        }
+
+        if (cardinality == 0) {
+            return null;
+        }
+        int arrayBytes = 2 * cardinality;
+        int runBytes = 4 * runs;
+        if (runBytes < Math.min(arrayBytes, WORDS * 8)) {
+            return RunContainer.fromBitmap(bits, runs);
+        } else if (cardinality <= ARRAY_MAX) {
+            return ArrayContainer.fromBitmap(bits, cardinality);
+        }
+        return new BitmapContainer(bits, cardinality);
+    }
+
+    /**
+     * The states of one chunk, identified by their low 16 bits.
+     * Mutating methods return the container that replaces this one, null if it became empty.
+     */
+    private abstract static class Container {
+        abstract int cardinality();
+
+        abstract boolean contains(char low);
+
+        abstract Container add(char low);
+
+        abstract Container remove(char low);
+
+        /**
+         * Returns the first low bits greater than or equal to from, -1 if there are none.
+         */
+        abstract int next(int from);
+
+        abstract void orInto(long[] bits);
+
+        abstract Container copy();
+
+        long[] toBitmap() {
+            long[] bits = new long[WORDS];
+            orInto(bits);
+            return bits;
+        }
+    }
+
+    private static final class ArrayContainer extends Container {
+        private char[] values;
+        private int cardinality;
+
+        ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        static ArrayContainer fromBitmap(long[] bits, int cardinality) {
+            char[] values = new char[cardinality];
+            int n = 0;
+            for (int w = 0; w < WORDS; w++) {
+                for (long word = bits[w]; word != 0; word &= word - 1) {
+                    values[n++] = (char) ((w << 6) + Long.numberOfTrailingZeros(word));
+                }
+            }
+            return new ArrayContainer(values, cardinality);
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return Arrays.binarySearch(values, 0, cardinality, low) >= 0;
+        }
+
+        @Override
+        Container add(char low) {
+            int i = Arrays.binarySearch(values, 0, cardinality, low);
+            if (i >= 0) {
+                return this;
+            }
+            if (cardinality == ARRAY_MAX) {
+                long[] bits = toBitmap();
+                bits[low >>> 6] |= 1L << low;
+                return new BitmapContainer(bits, cardinality + 1);
+            }
+            i = -i - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, cardinality * 2));
+            }
+            System.arraycopy(values, i, values, i + 1, cardinality - i);
+            values[i] = low;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        Container remove(char low) {
+            int i = Arrays.binarySearch(values, 0, cardinality, low);
+            if (i >= 0) {
+                System.arraycopy(values, i + 1, values, i, cardinality - i - 1);
+                cardinality--;
+            }
+            return (cardinality == 0) ? null : this;
+        }
+
+        @Override
+        int next(int from) {
+            int i = Arrays.binarySearch(values, 0, cardinality, (char) from);
+            if (i < 0) {
+                i = -i - 1;
+            }
+            return (i < cardinality) ? values[i] : -1;
+        }
+
+        @Override
+        void orInto(long[] bits) {
+            for (int i = 0; i < cardinality; i++) {
+                bits[values[i] >>> 6] |= 1L << values[i];
+            }
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, Math.max(1, cardinality)), cardinality);
+        }
+
+        ArrayContainer merge(ArrayContainer other) {
+            char[] merged = new char[cardinality + other.cardinality];
+            int i = 0, j = 0, n = 0;
+            while (i < cardinality && j < other.cardinality) {
+                char a = values[i], b = other.values[j];
+                merged[n++] = (a <= b) ? a : b;
+                if (a <= b) i++;
+                if (b <= a) j++;
+            }
+            while (i < cardinality) merged[n++] = values[i++];
+            while (j < other.cardinality) merged[n++] = other.values[j++];
+            return new ArrayContainer(merged, n);
+        }
+
+        /**
+         * Returns the values that are (keep = true) or are not (keep = false) in the other container.
+         */
+        ArrayContainer filter(Container other, boolean keep) {
+            char[] kept = new char[cardinality];
+            int n = 0;
+            for (int i = 0; i < cardinality; i++) {
+                if (other.contains(values[i]) == keep) {
+                    kept[n++] = values[i];
+                }
+            }
+            return (n == 0) ? null : new ArrayContainer(kept, n);
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        private final long[] bits;
+        private int cardinality;
+
+        BitmapContainer(long[] bits, int cardinality) {
+            this.bits = bits;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return (bits[low >>> 6] & (1L << low)) != 0;
+        }
+
+        @Override
+        Container add(char low) {
+            long word = bits[low >>> 6];
+            long set = word | (1L << low);
+            if (set != word) {
+                bits[low >>> 6] = set;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Container remove(char low) {
+            long word = bits[low >>> 6];
+            long cleared = word & ~(1L << low);
+            if (cleared != word) {
+                bits[low >>> 6] = cleared;
+                cardinality--;
+                if (cardinality <= ARRAY_MAX) {
+                    return (cardinality == 0) ? null : ArrayContainer.fromBitmap(bits, cardinality);
+                }
+            }
+            return this;
+        }
+
+        @Override
+        int next(int from) {
+            int w = from >>> 6;
+            long word = bits[w] & (-1L << from);
+            while (word == 0) {
+                if (++w == WORDS) {
+                    return -1;
+                }
+                word = bits[w];
+            }
+            return (w << 6) + Long.numberOfTrailingZeros(word);
+        }
+
+        @Override
+        void orInto(long[] other) {
+            for (int w = 0; w < WORDS; w++) {
+                other[w] |= bits[w];
+            }
+        }
+
+        @Override
+        long[] toBitmap() {
+            return bits.clone();
+        }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(bits.clone(), cardinality);
+        }
+    }
+
+    /**
+     * Runs of consecutive low bits, each stored as its start and its length minus one.
+     */
+    private static final class RunContainer extends Container {
+        private final char[] starts;
+        private final char[] lengths;
+        private final int runs;
+
+        RunContainer(char[] starts, char[] lengths, int runs) {
+            this.starts = starts;
+            this.lengths = lengths;
+            this.runs = runs;
+        }
+
+        /**
+         * Returns the container of the low bits in [from, to), with from < to.
+         */
+        static RunContainer range(int from, int to) {
+            return new RunContainer(new char[] { (char) from }, new char[] { (char) (to - from - 1) }, 1);
+        }
+
+        static RunContainer fromBitmap(long[] bits, int runs) {
+            char[] starts = new char[runs];
+            char[] lengths = new char[runs];
+            int n = 0;
+            int low = nextSet(bits, 0);
+            while (low >= 0) {
+                int end = nextClear(bits, low);
+                starts[n] = (char) low;
+                lengths[n++] = (char) (end - low - 1);
+                low = (end < CHUNK) ? nextSet(bits, end) : -1;
+            }
+            return new RunContainer(starts, lengths, n);
+        }
+
+        private static int nextSet(long[] bits, int from) {
+            int w = from >>> 6;
+            long word = bits[w] & (-1L << from);
+            while (word == 0) {
+                if (++w == WORDS) {
+                    return -1;
+                }
+                word = bits[w];
+            }
+            return (w << 6) + Long.numberOfTrailingZeros(word);
+        }
+
+        private static int nextClear(long[] bits, int from) {
+            int w = from >>> 6;
+            long word = ~bits[w] & (-1L << from);
+            while (word == 0) {
+                if (++w == WORDS) {
+                    return CHUNK;
+                }
+                word = ~bits[w];
+            }
+            return (w << 6) + Long.numberOfTrailingZeros(word);
+        }
+
+        /**
+         * Returns the index of the last run starting at or before low, -1 if there is none.
+         */
+        private int run(int low) {
+            int from = 0;
+            int to = runs - 1;
+            while (from <= to) {
+                int mid = (from + to) >>> 1;
+                if (starts[mid] <= low) {
+                    from = mid + 1;
+                } else {
+                    to = mid - 1;
+                }
+            }
+            return from - 1;
+        }
+
+        @Override
+        int cardinality() {
+            int count = 0;
+            for (int i = 0; i < runs; i++) {
+                count += lengths[i] + 1;
+            }
+            return count;
+        }
+
+        @Override
+        boolean contains(char low) {
+            int i = run(low);
+            return i >= 0 && low <= starts[i] + lengths[i];
+        }
+
+        @Override
+        Container add(char low) {
+            if (contains(low)) {
+                return this;
+            }
+            long[] bits = toBitmap();
+            bits[low >>> 6] |= 1L << low;
+            return new BitmapContainer(bits, cardinality() + 1);
+        }
+
+        @Override
+        Container remove(char low) {
+            if (!contains(low)) {
+                return this;
+            }
+            long[] bits = toBitmap();
+            bits[low >>> 6] &= ~(1L << low);
+            return normalize(bits);
+        }
+
+        @Override
+        int next(int from) {
+            int i = run(from);
+            if (i >= 0 && from <= starts[i] + lengths[i]) {
+                return from;
+            }
+            return (i + 1 < runs) ? starts[i + 1] : -1;
+        }
+
+        @Override
+        void orInto(long[] bits) {
+            for (int i = 0; i < runs; i++) {
+                int from = starts[i];
+                int to = from + lengths[i] + 1;
+                int first = from >>> 6;
+                int last = (to - 1) >>> 6;
+                if (first == last) {
+                    bits[first] |= (-1L << from) & (-1L >>> -to);
+                } else {
+                    bits[first] |= -1L << from;
+                    for (int w = first + 1; w < last; w++) {
+                        bits[w] = -1L;
+                    }
+                    bits[last] |= -1L >>> -to;
+                }
+            }
+        }
+
+        @Override
+        Container copy() {
+            return this;
+        }
+    }
+}
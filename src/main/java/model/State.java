@@ -1,12 +1,29 @@
 package model;
 
 /**
- * 
+ * A state of a model. Names identify the states of a model, so two states
+ * are equal if they have the same name. A compiled model hands out new State
+ * objects made from its columns, which are equal to the parsed ones.
  * */
 public class State {
     private boolean init;
     private String name;
     private String [] label;
+
+    State() {
+    }
+
+    /**
+     * Creates a state.
+     * @param name the name of the state
+     * @param init true if it is an initial state
+     * @param label the atomic propositions that hold in the state
+     * */
+    public State(String name, boolean init, String[] label) {
+	this.name = name;
+	this.init = init;
+	this.label = label;
+    }
 	
     /**
      * Is state an initial state
@@ -32,6 +49,23 @@ public class State {
 	return label;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof State)) {
+            return false;
+        }
+        String other = ((State) o).name;
+        return (name == null) ? other == null : name.equals(other);
+    }
+
+    @Override
+    public int hashCode() {
+        return (name == null) ? 0 : name.hashCode();
+    }
+
     @Override
     public String toString() {
         return name ;
@@ -0,0 +1,64 @@
+package model;
+
+/**
+ * A set of states of a compiled model, identified by their index.
+ *
+ * Every set has a fixed universe size: the number of states of the model it
+ * belongs to. Sets are not thread-safe; each check works on its own sets.
+ */
+public interface StateSet {
+    /**
+     * Returns the number of states in the model this set belongs to.
+     * @return the universe size
+     */
+    public int universeSize();
+
+    public boolean contains(int state);
+
+    public void add(int state);
+
+    public void remove(int state);
+
+    public boolean isEmpty();
+
+    /**
+     * Returns the number of states in the set.
+     * @return the cardinality
+     */
+    public int cardinality();
+
+    /**
+     * Returns the first state in the set whose index is greater than or equal to the given one.
+     * @param from the index to start from
+     * @return the next state or -1 if there is none
+     */
+    public int nextState(int from);
+
+    /**
+     * Adds all states of the other set to this one.
+     * @param other the other set
+     */
+    public void addAll(StateSet other);
+
+    /**
+     * Removes all states from this set that are not in the other set.
+     * @param other the other set
+     */
+    public void retainAll(StateSet other);
+
+    /**
+     * Removes all states of the other set from this one.
+     * @param other the other set
+     */
+    public void removeAll(StateSet other);
+
+    public boolean containsAll(StateSet other);
+
+    public void clear();
+
+    /**
+     * Returns an independent copy of this set.
+     * @return the copy
+     */
+    public StateSet copy();
+}
@@ -0,0 +1,90 @@
+package model;
+
+/**
+ * Allocates the arrays of a compiled model and the state sets of the checks on it.
+ *
+ * The default storage keeps everything on the heap. COMPRESSED keeps the sets
+ * in compressed containers, and a MappedStorage keeps everything in
+ * memory-mapped files, for models that do not fit in the heap.
+ */
+public interface Storage {
+    /**
+     * Keeps arrays and sets on the heap.
+     */
+    public static final Storage HEAP = new Storage() {
+        @Override
+        public IntStore newInts(int length) {
+            return new HeapIntStore(length);
+        }
+
+        @Override
+        public StateSet newStateSet(int universeSize) {
+            return new BitStateSet(universeSize);
+        }
+
+        @Override
+        public StateSet newFullStateSet(int universeSize) {
+            return BitStateSet.full(universeSize);
+        }
+    };
+
+    /**
+     * Keeps arrays on the heap and state sets in compressed RoaringStateSets,
+     * for models whose satisfaction sets are mostly sparse or made of long runs.
+     */
+    public static final Storage COMPRESSED = new Storage() {
+        @Override
+        public IntStore newInts(int length) {
+            return new HeapIntStore(length);
+        }
+
+        @Override
+        public StateSet newStateSet(int universeSize) {
+            return new RoaringStateSet(universeSize);
+        }
+
+        @Override
+        public StateSet newFullStateSet(int universeSize) {
+            return RoaringStateSet.full(universeSize);
+        }
+    };
+
+    /**
+     * Returns a new store of the given length, filled with zeros.
+     * @param length the number of ints
+     * @return the store
+     */
+    public IntStore newInts(int length);
+
+    /**
+     * Returns a new empty state set.
+     * @param universeSize the number of states in the model
+     * @return the set
+     */
+    public StateSet newStateSet(int universeSize);
+
+    /**
+     * Returns a new set containing every state of the universe.
+     * @param universeSize the number of states in the model
+     * @return the set
+     */
+    public StateSet newFullStateSet(int universeSize);
+
+    /**
+     * Hands back a set of this storage that is not used anymore, so that its
+     * space can be reused by a later set. The set must not be used afterwards.
+     * The heap storages leave it to the garbage collector.
+     *
+     * @param set the set
+     */
+    public default void release(StateSet set) {
+    }
+
+    /**
+     * Hands back a store of this storage that is not used anymore, like release(StateSet).
+     *
+     * @param store the store
+     */
+    public default void release(IntStore store) {
+    }
+}
@@ -10,6 +10,21 @@ public class  Transition {
     private String source;
     private String target;
     private String [] actions;
+
+    Transition() {
+    }
+
+    /**
+     * Creates a transition.
+     * @param source the name of the source state
+     * @param target the name of the target state
+     * @param actions the actions of the transition
+     * */
+    public Transition(String source, String target, String[] actions) {
+	this.source = source;
+	this.target = target;
+	this.actions = actions;
+    }
 	
     /**
      * Returns the source state of a transition.
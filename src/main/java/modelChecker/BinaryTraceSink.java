@@ -0,0 +1,199 @@
+package modelChecker;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import model.CompiledModel;
+
+/**
+ * Writes traces in a compact binary format.
+ *
+ * The stream starts with the magic number and a version, followed by records
+ * that each start with a tag byte. Numbers are unsigned variable-length
+ * integers of 7 bits per byte, and strings are in modified UTF-8.
+ * <ul>
+ * <li>LABEL id name and ACTION id name give the name of a label or action id,</li>
+ * <li>STATE id name count label-ids give the name and labels of a state id,</li>
+ * <li>TRACE starts a trace and END ends it,</li>
+ * <li>STEP state count action-ids is the next state of the current trace and
+ * the actions of the transition it was reached over.</li>
+ * </ul>
+ * The ids are the indexes of the compiled model. Each name is written once, the
+ * first time its id is used, so a long trace that keeps visiting the same states
+ * takes a few bytes per step.
+ */
+public class BinaryTraceSink implements TraceSink {
+    static final int MAGIC = 0x43544c54;
+    static final int VERSION = 1;
+
+    static final int LABEL = 1;
+    static final int ACTION = 2;
+    static final int STATE = 3;
+    static final int TRACE = 4;
+    static final int STEP = 5;
+    static final int END = 6;
+
+    private final DataOutputStream out;
+    private CompiledModel model;
+    private boolean[] statesWritten;
+    private boolean[] labelsWritten;
+    private boolean[] actionsWritten;
+
+    public BinaryTraceSink(OutputStream out) throws IOException {
+        this.out = new DataOutputStream(out);
+        this.out.writeInt(MAGIC);
+        this.out.writeByte(VERSION);
+    }
+
+    @Override
+    public void begin(CompiledModel model) throws IOException {
+        if (this.model != model) {
+            this.model = model;
+            statesWritten = new boolean[model.getStateCount()];
+            labelsWritten = new boolean[model.getLabelCount()];
+            actionsWritten = new boolean[model.getActionCount()];
+        }
+        out.writeByte(TRACE);
+    }
+
+    @Override
+    public void step(int state, int edge) throws IOException {
+        if (!statesWritten[state]) {
+            writeState(state);
+        }
+
+        int actionCount = 0;
+        if (edge >= 0) {
+            for (int i = model.actionBegin(edge); i < model.actionEnd(edge); i++) {
+                int action = model.edgeAction(i);
+                if (!actionsWritten[action]) {
+                    actionsWritten[action] = true;
+                    out.writeByte(ACTION);
+                    writeNumber(out, action);
+                    out.writeUTF(model.getActionName(action));
+                }
+                actionCount++;
+            }
+        }
+
+        out.writeByte(STEP);
+        writeNumber(out, state);
+        writeNumber(out, actionCount);
+        if (edge >= 0) {
+            for (int i = model.actionBegin(edge); i < model.actionEnd(edge); i++) {
+                writeNumber(out, model.edgeAction(i));
+            }
+        }
+    }
+
+    private void writeState(int state) throws IOException {
+        statesWritten[state] = true;
+        String[] labels = model.getLabels(state);
+        int[] labelIds = new int[labels.length];
+        for (int i = 0; i < labelIds.length; i++) {
+            labelIds[i] = model.getLabelId(labels[i]);
+            if (!labelsWritten[labelIds[i]]) {
+                labelsWritten[labelIds[i]] = true;
+                out.writeByte(LABEL);
+                writeNumber(out, labelIds[i]);
+                out.writeUTF(labels[i]);
+            }
+        }
+
+        out.writeByte(STATE);
+        writeNumber(out, state);
+        out.writeUTF(model.getName(state));
+        writeNumber(out, labelIds.length);
+        for (int label : labelIds) {
+            writeNumber(out, label);
+        }
+    }
+
+    @Override
+    public void end() throws IOException {
+        out.writeByte(END);
+        out.flush();
+    }
+
+    /**
+     * Reads the state names of the traces of a binary trace stream.
+     *
+     * @param in the stream, read to its end
+     * @return the state names of each trace
+     * @throws IOException if the stream cannot be read or is not a trace stream
+     */
+    public static List<String[]> readTraces(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC || data.readByte() != VERSION) {
+            throw new IOException("Not a binary trace stream");
+        }
+
+        Map<Integer, String> states = new HashMap<Integer, String>();
+        List<String[]> traces = new ArrayList<String[]>();
+        List<String> trace = null;
+        while (true) {
+            int tag = data.read();
+            if (tag < 0) break;
+
+            switch (tag) {
+            case LABEL:
+            case ACTION:
+                readNumber(data);
+                data.readUTF();
+                break;
+            case STATE:
+                int state = readNumber(data);
+                states.put(state, data.readUTF());
+                for (int i = readNumber(data); i > 0; i--) {
+                    readNumber(data);
+                }
+                break;
+            case TRACE:
+                trace = new ArrayList<String>();
+                break;
+            case STEP:
+                if (trace == null) throw new IOException("Step outside of a trace");
+                trace.add(states.get(readNumber(data)));
+                for (int i = readNumber(data); i > 0; i--) {
+                    readNumber(data);
+                }
+                break;
+            case END:
+                if (trace == null) throw new IOException("End outside of a trace");
+                traces.add(trace.toArray(new String[trace.size()]));
+                trace = null;
+                break;
+            default:
+                throw new IOException("Unknown record " + tag);
+            }
+        }
+        return traces;
+    }
+
+    static void writeNumber(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readNumber(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.read();
+            if (b < 0) throw new EOFException();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed number");
+    }
+}
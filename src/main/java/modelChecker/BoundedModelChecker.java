@@ -0,0 +1,493 @@
+package modelChecker;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import formula.pathFormula.Always;
+import formula.pathFormula.Eventually;
+import formula.pathFormula.Next;
+import formula.pathFormula.PathFormula;
+import formula.pathFormula.Until;
+import formula.stateFormula.And;
+import formula.stateFormula.BoolProp;
+import formula.stateFormula.ForAll;
+import formula.stateFormula.Not;
+import formula.stateFormula.Or;
+import formula.stateFormula.StateFormula;
+import formula.stateFormula.ThereExists;
+import model.CompiledModel;
+import model.Model;
+import model.StateSet;
+
+/**
+ * Searches for short counterexamples by bounded model checking.
+ *
+ * The negation of the query is brought into negation normal form over the
+ * existential operators EX, EU and EG, with ForAll replaced by its ENF
+ * translation. For k = 0, 1, 2, ... the checker then asks the CdclSolver for a
+ * path s0 ... sk from a starting state on which the negated query holds in s0.
+ * The path is kept in one-hot state variables, one set per position; each new
+ * position only adds clauses, so the solver and its learnt clauses are reused
+ * from one bound to the next, and the formula is encoded for the bound in fresh
+ * variables that are assumed.
+ *
+ * On the path, EX looks at the next position, EU at the following ones, and
+ * EG needs all following positions and an edge from sk back to one of them.
+ * The action constraints are the same state filters as in the SATChecker, and
+ * an until with right actions must enter its right states over an edge with one
+ * of them. Subformulas outside this fragment, that is, existential operators
+ * under a negation, are computed by the explicit engine and enter the encoding
+ * as sets of states, as do the propositional ones.
+ *
+ * All existential operators on one path share it, so a satisfying path always
+ * is a real counterexample. A conjunction whose operands need different
+ * branches is not found, so no counterexample up to the bound does not mean that
+ * the query holds.
+ */
+public class BoundedModelChecker {
+    private final CompiledModel model;
+    private final SATChecker checker;
+    private int maxBound = 50;
+    private int bound = -1;
+    private int nodes;
+
+    private CdclSolver solver;
+    private int trueVar;
+    private final List<int[]> positions = new ArrayList<int[]>();
+    private final List<Integer> alive = new ArrayList<Integer>();
+
+    // per bound
+    private Map<Long, Integer> encoded;
+    private Map<Integer, Integer> loops;
+
+    public BoundedModelChecker(CompiledModel model) {
+        this.model = model;
+        this.checker = new SATChecker(model);
+    }
+
+    public BoundedModelChecker(Model model) {
+        this(model.compile());
+    }
+
+    /**
+     * Sets the longest path that is searched, in transitions.
+     */
+    public BoundedModelChecker setMaxBound(int maxBound) {
+        this.maxBound = maxBound;
+        return this;
+    }
+
+    /**
+     * Returns the length of the last counterexample, or -1 if none was found.
+     */
+    public int getBound() {
+        return bound;
+    }
+
+    /**
+     * Searches for a counterexample from the initial states of the model.
+     *
+     * @param query the query
+     * @return the states of the counterexample, or null if there is none up to the bound
+     */
+    public String[] findCounterexample(StateFormula query) {
+        return findCounterexample(model.initialStates(), query);
+    }
+
+    /**
+     * Searches for a path from one of the starting states on which the query
+     * fails, with as few transitions as possible.
+     *
+     * @param startingStates the states the path may start in
+     * @param query the query
+     * @return the names of the states of the path, the failing starting state
+     *     first and, if the path ends in a cycle, the state it returns to last;
+     *     null if there is no counterexample up to the bound
+     */
+    public String[] findCounterexample(StateSet startingStates, StateFormula query) {
+        bound = -1;
+        if (startingStates.isEmpty()) {
+            return null;
+        }
+        Node negated = convert(query, false);
+
+        solver = new CdclSolver();
+        trueVar = solver.newVar();
+        solver.addClause(trueVar);
+        positions.clear();
+        alive.clear();
+
+        int last = Math.min(maxBound, model.getStateCount());
+        for (int k = 0; k <= last; k++) {
+            addPosition(k, startingStates);
+            encoded = new HashMap<Long, Integer>();
+            loops = new HashMap<Integer, Integer>();
+            int top = encode(negated, 0, k);
+            if (top != -trueVar && solver.solve(top)) {
+                bound = k;
+                return trace(k);
+            }
+        }
+        return null;
+    }
+
+    private String[] trace(int k) {
+        List<String> names = new ArrayList<String>();
+        for (int i = 0; i <= k && solver.value(alive.get(i)); i++) {
+            names.add(model.getName(stateAt(i)));
+        }
+        for (Map.Entry<Integer, Integer> loop : loops.entrySet()) {
+            if (solver.value(loop.getValue())) {
+                names.add(model.getName(stateAt(loop.getKey())));
+                break;
+            }
+        }
+        return names.toArray(new String[names.size()]);
+    }
+
+    private int stateAt(int position) {
+        int[] x = positions.get(position);
+        for (int s = 0; s < x.length; s++) {
+            if (solver.value(x[s])) return s;
+        }
+        return -1;
+    }
+
+    /**
+     * Adds the variables of a position: one state at most, and if the position
+     * is used, a successor of the state at the position before.
+     */
+    private void addPosition(int i, StateSet startingStates) {
+        int n = model.getStateCount();
+        int[] x = new int[n];
+        for (int s = 0; s < n; s++) {
+            x[s] = solver.newVar();
+        }
+        int used = solver.newVar();
+        positions.add(x);
+        alive.add(used);
+
+        int[] some = new int[n + 1];
+        some[0] = -used;
+        for (int s = 0; s < n; s++) {
+            some[s + 1] = x[s];
+            solver.addClause(-x[s], used);
+        }
+        solver.addClause(some);
+        atMostOne(x);
+
+        if (i == 0) {
+            solver.addClause(used);
+            for (int s = 0; s < n; s++) {
+                if (!startingStates.contains(s)) solver.addClause(-x[s]);
+            }
+            return;
+        }
+
+        int[] before = positions.get(i - 1);
+        solver.addClause(-used, alive.get(i - 1));
+        for (int t = 0; t < n; t++) {
+            List<Integer> clause = new ArrayList<Integer>();
+            clause.add(-x[t]);
+            for (int j = model.predBegin(t); j < model.predEnd(t); j++) {
+                clause.add(before[model.predSource(j)]);
+            }
+            solver.addClause(toArray(clause));
+        }
+    }
+
+    /**
+     * Adds the sequential counter encoding of "at most one of the variables".
+     */
+    private void atMostOne(int[] x) {
+        int previous = 0;
+        for (int s = 0; s < x.length; s++) {
+            if (previous != 0) {
+                solver.addClause(-x[s], -previous);
+            }
+            if (s < x.length - 1) {
+                int counter = solver.newVar();
+                solver.addClause(-x[s], counter);
+                if (previous != 0) {
+                    solver.addClause(-previous, counter);
+                }
+                previous = counter;
+            }
+        }
+    }
+
+    /**
+     * Returns a literal that implies that a node holds at a position of a path
+     * of length k.
+     */
+    private int encode(Node node, int i, int k) {
+        if (node.kind == Kind.STATES && node.states.isEmpty()) {
+            return -trueVar;
+        }
+        long key = ((long) node.id << 32) | i;
+        Integer known = encoded.get(key);
+        if (known != null) {
+            return known;
+        }
+
+        int v = solver.newVar();
+        encoded.put(key, v);
+        int[] x = positions.get(i);
+        switch (node.kind) {
+        case STATES:
+            states(v, node.states, x, alive.get(i));
+            break;
+        case AND:
+            solver.addClause(-v, encode(node.left, i, k));
+            solver.addClause(-v, encode(node.right, i, k));
+            break;
+        case OR:
+            solver.addClause(-v, encode(node.left, i, k), encode(node.right, i, k));
+            break;
+        case NEXT:
+            solver.addClause(-v, (i < k) ? encode(node.left, i + 1, k) : -trueVar);
+            break;
+        case UNTIL:
+            until(v, node, i, k);
+            break;
+        case ALWAYS:
+            for (int j = i; j <= k; j++) {
+                solver.addClause(-v, encode(node.left, j, k));
+            }
+            int[] back = new int[k - i + 2];
+            back[0] = -v;
+            for (int l = i; l <= k; l++) {
+                back[l - i + 1] = loop(l, k);
+            }
+            solver.addClause(back);
+            break;
+        }
+        return v;
+    }
+
+    private void states(int v, StateSet states, int[] x, int used) {
+        int n = x.length;
+        if (2 * states.cardinality() <= n) {
+            int[] clause = new int[states.cardinality() + 1];
+            clause[0] = -v;
+            int size = 1;
+            for (int s = states.nextState(0); s >= 0; s = states.nextState(s + 1)) {
+                clause[size++] = x[s];
+            }
+            solver.addClause(clause);
+        } else {
+            solver.addClause(-v, used);
+            for (int s = 0; s < n; s++) {
+                if (!states.contains(s)) solver.addClause(-v, -x[s]);
+            }
+        }
+    }
+
+    /**
+     * E(L U R) at i: R holds at i, or L holds at i and the until at i + 1, which
+     * is entered over an edge with a right action if it is a right state.
+     */
+    private void until(int v, Node node, int i, int k) {
+        int right = encode(node.right, i, k);
+        if (i == k) {
+            solver.addClause(-v, right);
+            return;
+        }
+
+        int step = solver.newVar();
+        solver.addClause(-v, right, step);
+        solver.addClause(-step, encode(node.left, i, k));
+        solver.addClause(-step, encode(node, i + 1, k));
+        if (node.rightEdges == null) {
+            return;
+        }
+
+        int[] x = positions.get(i);
+        int[] next = positions.get(i + 1);
+        StateSet rightStates = node.right.states;
+        for (int t = rightStates.nextState(0); t >= 0; t = rightStates.nextState(t + 1)) {
+            int[] sources = node.rightEdges[t];
+            int[] clause = new int[sources.length + 2];
+            clause[0] = -step;
+            clause[1] = -next[t];
+            for (int j = 0; j < sources.length; j++) {
+                clause[j + 2] = x[sources[j]];
+            }
+            solver.addClause(clause);
+        }
+    }
+
+    /**
+     * Returns a variable that implies an edge from the state at k to the state at l.
+     */
+    private int loop(int l, int k) {
+        Integer known = loops.get(l);
+        if (known != null) {
+            return known;
+        }
+
+        int v = solver.newVar();
+        loops.put(l, v);
+        int[] source = positions.get(k);
+        int[] target = positions.get(l);
+        solver.addClause(-v, alive.get(k));
+        for (int t = 0; t < target.length; t++) {
+            List<Integer> clause = new ArrayList<Integer>();
+            clause.add(-v);
+            clause.add(-target[t]);
+            for (int j = model.predBegin(t); j < model.predEnd(t); j++) {
+                clause.add(source[model.predSource(j)]);
+            }
+            solver.addClause(toArray(clause));
+        }
+        return v;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * Converts a formula, or its negation, to the existential fragment.
+     */
+    private Node convert(StateFormula formula, boolean positive) {
+        if (formula instanceof Not) {
+            return convert(((Not) formula).stateFormula, !positive);
+        } else if (formula instanceof And || formula instanceof Or) {
+            StateFormula left = (formula instanceof And) ? ((And) formula).left : ((Or) formula).left;
+            StateFormula right = (formula instanceof And) ? ((And) formula).right : ((Or) formula).right;
+            boolean conjunction = (formula instanceof And) == positive;
+            return new Node(conjunction ? Kind.AND : Kind.OR, convert(left, positive), convert(right, positive));
+        } else if (formula instanceof ForAll) {
+            return convert(new ENFConverter().convertToENF(formula), positive);
+        } else if (formula instanceof ThereExists && positive) {
+            return convert(((ThereExists) formula).pathFormula);
+        }
+        return explicit(formula, positive);
+    }
+
+    private Node convert(PathFormula formula) {
+        if (formula instanceof Next) {
+            Next next = (Next) formula;
+            Node operand = convert(next.stateFormula, true);
+            if (!next.actionsIsEmpty()) {
+                operand = new Node(Kind.AND, operand, incoming(next.getActions()));
+            }
+            return new Node(Kind.NEXT, operand, null);
+        } else if (formula instanceof Eventually) {
+            Eventually eventually = (Eventually) formula;
+            return until(new Node(model.allStates()), eventually.stateFormula, eventually.getLeftActions(),
+                    eventually.getRightActions());
+        } else if (formula instanceof Until) {
+            Until until = (Until) formula;
+            return until(convert(until.left, true), until.right, until.getLeftActions(), until.getRightActions());
+        } else {
+            Always always = (Always) formula;
+            Node operand = convert(always.stateFormula, true);
+            if (!always.actionsIsEmpty()) {
+                operand = new Node(Kind.AND, operand, incoming(always.getActions()));
+            }
+            return new Node(Kind.ALWAYS, operand, null);
+        }
+    }
+
+    private Node until(Node left, StateFormula rightFormula, Set<String> leftActions, Set<String> rightActions) {
+        if (!leftActions.isEmpty()) {
+            left = new Node(Kind.AND, left, outgoing(leftActions));
+        }
+        if (rightActions.isEmpty()) {
+            return new Node(Kind.UNTIL, left, convert(rightFormula, true));
+        }
+
+        // the right states decide which edges must carry a right action, so they are computed explicitly
+        int[] actionIds = checker.actionIds(rightActions);
+        StateSet rightStates = checker.getSat(rightFormula, model.allStates());
+        for (int s = rightStates.nextState(0); s >= 0; s = rightStates.nextState(s + 1)) {
+            if (!checker.passesIncomingActions(s, actionIds)) rightStates.remove(s);
+        }
+
+        Node until = new Node(Kind.UNTIL, left, new Node(rightStates));
+        until.rightEdges = new int[model.getStateCount()][];
+        for (int t = rightStates.nextState(0); t >= 0; t = rightStates.nextState(t + 1)) {
+            List<Integer> sources = new ArrayList<Integer>();
+            for (int action : actionIds) {
+                for (int j = model.predBegin(t, action); j < model.predEnd(t, action); j++) {
+                    sources.add(model.actionPredSource(j));
+                }
+            }
+            until.rightEdges[t] = toArray(sources);
+        }
+        return until;
+    }
+
+    private Node incoming(Set<String> actions) {
+        int[] actionIds = checker.actionIds(actions);
+        StateSet states = model.newStateSet();
+        for (int s = 0; s < model.getStateCount(); s++) {
+            if (checker.passesIncomingActions(s, actionIds)) states.add(s);
+        }
+        return new Node(states);
+    }
+
+    private Node outgoing(Set<String> actions) {
+        int[] actionIds = checker.actionIds(actions);
+        StateSet states = model.newStateSet();
+        for (int s = 0; s < model.getStateCount(); s++) {
+            if (checker.passesOutgoingActions(s, actionIds)) states.add(s);
+        }
+        return new Node(states);
+    }
+
+    private Node explicit(StateFormula formula, boolean positive) {
+        StateSet states;
+        if (formula instanceof BoolProp) {
+            states = ((BoolProp) formula).value ? model.allStates() : model.newStateSet();
+        } else {
+            states = checker.getSat(formula, model.allStates());
+        }
+        if (!positive) {
+            StateSet complement = model.allStates();
+            complement.removeAll(states);
+            states = complement;
+        }
+        return new Node(states);
+    }
+
+    private enum Kind {
+        STATES, AND, OR, NEXT, UNTIL, ALWAYS
+    }
+
+    /**
+     * A formula of the existential fragment in negation normal form.
+     */
+    private final class Node {
+        final int id = nodes++;
+        final Kind kind;
+        final Node left;
+        final Node right;
+        final StateSet states;
+        // for an until with right actions, the sources of the edges with one of them into each right state
+        int[][] rightEdges;
+
+        Node(Kind kind, Node left, Node right) {
+            this.kind = kind;
+            this.left = left;
+            this.right = right;
+            this.states = null;
+        }
+
+        Node(StateSet states) {
+            this.kind = Kind.STATES;
+            this.left = null;
+            this.right = null;
+            this.states = states;
+        }
+    }
+}
@@ -0,0 +1,546 @@
+package modelChecker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An incremental conflict-driven clause learning SAT solver.
+ *
+ * Variables are numbered from 1 and literals are written as in DIMACS: v for
+ * the variable and -v for its negation. Clauses can be added between calls to
+ * solve(), and each call can assume some literals, so that a bounded encoding
+ * can grow one step at a time while the learnt clauses are kept.
+ *
+ * The solver propagates with two watched literals, learns first-UIP clauses
+ * with local minimisation, picks variables by VSIDS activity with saved phases,
+ * restarts after a Luby sequence of conflicts and drops half of the longer
+ * learnt clauses when there are too many.
+ */
+final class CdclSolver {
+    private static final int TRUE = 1;
+    private static final int FALSE = -1;
+
+    // per internal literal 2v or 2v + 1
+    private byte[] values = new byte[16];
+    private IntList[] watchers = new IntList[16];
+
+    // per variable
+    private int[] levels = new int[8];
+    private int[] reasons = new int[8];
+    private double[] activity = new double[8];
+    private boolean[] phases = new boolean[8];
+    private boolean[] seen = new boolean[8];
+    private boolean[] model = new boolean[8];
+    private int vars;
+
+    private final List<int[]> clauses = new ArrayList<int[]>();
+    private final IntList learnts = new IntList();
+    private int maxLearnts = 4096;
+
+    private int[] trail = new int[8];
+    private int trailSize;
+    private int qhead;
+    private final IntList trailLimits = new IntList();
+
+    private final Heap order = new Heap();
+    private double variableIncrement = 1;
+    private boolean ok = true;
+    private long conflicts;
+
+    /**
+     * Makes a new variable.
+     * @return its number
+     */
+    int newVar() {
+        int v = vars++;
+        if (vars > levels.length) {
+            int capacity = vars * 2;
+            levels = Arrays.copyOf(levels, capacity);
+            reasons = Arrays.copyOf(reasons, capacity);
+            activity = Arrays.copyOf(activity, capacity);
+            phases = Arrays.copyOf(phases, capacity);
+            seen = Arrays.copyOf(seen, capacity);
+            model = Arrays.copyOf(model, capacity);
+            trail = Arrays.copyOf(trail, capacity);
+            values = Arrays.copyOf(values, capacity * 2);
+            watchers = Arrays.copyOf(watchers, capacity * 2);
+        }
+        watchers[2 * v] = new IntList();
+        watchers[2 * v + 1] = new IntList();
+        reasons[v] = -1;
+        order.insert(v);
+        return v + 1;
+    }
+
+    int getVarCount() {
+        return vars;
+    }
+
+    long getConflicts() {
+        return conflicts;
+    }
+
+    /**
+     * Adds a clause; must not be called while solving.
+     * @param literals the literals of the clause
+     */
+    void addClause(int... literals) {
+        if (!ok) return;
+
+        int[] clause = new int[literals.length];
+        int size = 0;
+        for (int external : literals) {
+            int literal = internal(external);
+            if (values[literal] == TRUE) return;
+            if (values[literal] == FALSE) continue;
+
+            boolean known = false;
+            for (int i = 0; i < size && !known; i++) {
+                if (clause[i] == (literal ^ 1)) return;
+                known = clause[i] == literal;
+            }
+            if (!known) clause[size++] = literal;
+        }
+
+        if (size == 0) {
+            ok = false;
+        } else if (size == 1) {
+            enqueue(clause[0], -1);
+            ok = propagate() < 0;
+        } else {
+            attach(Arrays.copyOf(clause, size));
+        }
+    }
+
+    /**
+     * Searches for an assignment that satisfies all clauses and the assumptions.
+     * @param assumptions the literals that must be true
+     * @return true if there is one; it is then available through value()
+     */
+    boolean solve(int... assumptions) {
+        if (!ok) return false;
+
+        int[] assumed = new int[assumptions.length];
+        for (int i = 0; i < assumed.length; i++) {
+            assumed[i] = internal(assumptions[i]);
+        }
+
+        for (int restart = 0;; restart++) {
+            int status = search(luby(restart) * 100, assumed);
+            if (status != 0) {
+                if (status == TRUE) {
+                    for (int v = 0; v < vars; v++) {
+                        model[v] = values[2 * v] == TRUE;
+                    }
+                }
+                cancelUntil(0);
+                return status == TRUE;
+            }
+        }
+    }
+
+    /**
+     * Returns the value of a variable in the last satisfying assignment.
+     */
+    boolean value(int variable) {
+        return model[variable - 1];
+    }
+
+    /**
+     * Runs until a model or conflict is found, or the given number of conflicts
+     * has been reached.
+     * @return TRUE, FALSE or 0 for a restart
+     */
+    private int search(long maxConflicts, int[] assumptions) {
+        long found = 0;
+        IntList learnt = new IntList();
+
+        while (true) {
+            int conflict = propagate();
+            if (conflict >= 0) {
+                conflicts++;
+                found++;
+                if (decisionLevel() == 0) {
+                    ok = false;
+                    return FALSE;
+                }
+
+                int backtrack = analyze(conflict, learnt);
+                cancelUntil(backtrack);
+                if (learnt.size == 1) {
+                    enqueue(learnt.get(0), -1);
+                } else {
+                    int[] clause = learnt.toArray();
+                    int index = attach(clause);
+                    learnts.add(index);
+                    enqueue(clause[0], index);
+                }
+                variableIncrement /= 0.95;
+                continue;
+            }
+
+            if (found >= maxConflicts) {
+                cancelUntil(0);
+                return 0;
+            }
+            if (learnts.size - trailSize >= maxLearnts) {
+                reduceLearnts();
+            }
+
+            int next = -1;
+            while (decisionLevel() < assumptions.length) {
+                int assumption = assumptions[decisionLevel()];
+                if (values[assumption] == TRUE) {
+                    trailLimits.add(trailSize);
+                } else if (values[assumption] == FALSE) {
+                    return FALSE;
+                } else {
+                    next = assumption;
+                    break;
+                }
+            }
+
+            if (next < 0) {
+                int v = pickBranchVariable();
+                if (v < 0) return TRUE;
+                next = 2 * v + (phases[v] ? 0 : 1);
+            }
+            trailLimits.add(trailSize);
+            enqueue(next, -1);
+        }
+    }
+
+    /**
+     * Propagates the assignments on the trail.
+     * @return the index of a conflicting clause, or -1
+     */
+    private int propagate() {
+        while (qhead < trailSize) {
+            int falseLiteral = trail[qhead++] ^ 1;
+            IntList watching = watchers[falseLiteral];
+            int i = 0;
+            int j = 0;
+
+            while (i < watching.size) {
+                int index = watching.items[i++];
+                int[] clause = clauses.get(index);
+                if (clause == null) continue;
+
+                if (clause[0] == falseLiteral) {
+                    clause[0] = clause[1];
+                    clause[1] = falseLiteral;
+                }
+                if (values[clause[0]] == TRUE) {
+                    watching.items[j++] = index;
+                    continue;
+                }
+
+                boolean moved = false;
+                for (int k = 2; k < clause.length; k++) {
+                    if (values[clause[k]] != FALSE) {
+                        clause[1] = clause[k];
+                        clause[k] = falseLiteral;
+                        watchers[clause[1]].add(index);
+                        moved = true;
+                        break;
+                    }
+                }
+                if (moved) continue;
+
+                watching.items[j++] = index;
+                if (values[clause[0]] == FALSE) {
+                    while (i < watching.size) {
+                        watching.items[j++] = watching.items[i++];
+                    }
+                    watching.size = j;
+                    qhead = trailSize;
+                    return index;
+                }
+                enqueue(clause[0], index);
+            }
+            watching.size = j;
+        }
+        return -1;
+    }
+
+    /**
+     * Derives the first-UIP clause of a conflict, with the asserting literal first
+     * and a literal of the backtrack level second.
+     * @return the level to backtrack to
+     */
+    private int analyze(int conflict, IntList learnt) {
+        learnt.clear();
+        learnt.add(-1);
+        int open = 0;
+        int literal = -1;
+        int index = trailSize - 1;
+        int reason = conflict;
+
+        do {
+            int[] clause = clauses.get(reason);
+            for (int i = (literal < 0) ? 0 : 1; i < clause.length; i++) {
+                int q = clause[i];
+                int v = q >> 1;
+                if (seen[v] || levels[v] == 0) continue;
+
+                seen[v] = true;
+                bump(v);
+                if (levels[v] >= decisionLevel()) {
+                    open++;
+                } else {
+                    learnt.add(q);
+                }
+            }
+
+            while (!seen[trail[index] >> 1]) {
+                index--;
+            }
+            literal = trail[index--];
+            reason = reasons[literal >> 1];
+            seen[literal >> 1] = false;
+            open--;
+        } while (open > 0);
+        learnt.items[0] = literal ^ 1;
+
+        // drop the literals that are implied by the others
+        int[] derived = learnt.toArray();
+        int size = 1;
+        for (int i = 1; i < derived.length; i++) {
+            if (!redundant(derived[i])) {
+                learnt.items[size++] = derived[i];
+            }
+        }
+        for (int i = 1; i < derived.length; i++) {
+            seen[derived[i] >> 1] = false;
+        }
+        learnt.size = size;
+
+        int backtrack = 0;
+        for (int i = 1; i < learnt.size; i++) {
+            int level = levels[learnt.items[i] >> 1];
+            if (level > backtrack) {
+                backtrack = level;
+                int swap = learnt.items[1];
+                learnt.items[1] = learnt.items[i];
+                learnt.items[i] = swap;
+            }
+        }
+        return backtrack;
+    }
+
+    private boolean redundant(int literal) {
+        int reason = reasons[literal >> 1];
+        if (reason < 0) return false;
+
+        int[] clause = clauses.get(reason);
+        for (int i = 1; i < clause.length; i++) {
+            int v = clause[i] >> 1;
+            if (!seen[v] && levels[v] > 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Removes the longer half of the learnt clauses that are not the reason of an assignment.
+     */
+    private void reduceLearnts() {
+        int[] indexes = learnts.toArray();
+        Integer[] sorted = new Integer[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            sorted[i] = indexes[i];
+        }
+        Arrays.sort(sorted, (a, b) -> clauses.get(b).length - clauses.get(a).length);
+
+        learnts.clear();
+        for (int i = 0; i < sorted.length; i++) {
+            int index = sorted[i];
+            int[] clause = clauses.get(index);
+            boolean locked = reasons[clause[0] >> 1] == index && values[clause[0]] == TRUE;
+            if (i < sorted.length / 2 && clause.length > 2 && !locked) {
+                clauses.set(index, null);
+            } else {
+                learnts.add(index);
+            }
+        }
+        maxLearnts += maxLearnts / 10;
+    }
+
+    private int attach(int[] clause) {
+        int index = clauses.size();
+        clauses.add(clause);
+        watchers[clause[0]].add(index);
+        watchers[clause[1]].add(index);
+        return index;
+    }
+
+    private void enqueue(int literal, int reason) {
+        int v = literal >> 1;
+        values[literal] = TRUE;
+        values[literal ^ 1] = FALSE;
+        levels[v] = decisionLevel();
+        reasons[v] = reason;
+        trail[trailSize++] = literal;
+    }
+
+    private void cancelUntil(int level) {
+        if (decisionLevel() <= level) return;
+
+        int limit = trailLimits.get(level);
+        for (int i = trailSize - 1; i >= limit; i--) {
+            int literal = trail[i];
+            int v = literal >> 1;
+            values[literal] = 0;
+            values[literal ^ 1] = 0;
+            reasons[v] = -1;
+            phases[v] = (literal & 1) == 0;
+            order.insert(v);
+        }
+        trailSize = limit;
+        qhead = limit;
+        trailLimits.size = level;
+    }
+
+    private int decisionLevel() {
+        return trailLimits.size;
+    }
+
+    private int pickBranchVariable() {
+        while (!order.isEmpty()) {
+            int v = order.removeMax();
+            if (values[2 * v] == 0) return v;
+        }
+        return -1;
+    }
+
+    private void bump(int v) {
+        activity[v] += variableIncrement;
+        if (activity[v] > 1e100) {
+            for (int i = 0; i < vars; i++) {
+                activity[i] *= 1e-100;
+            }
+            variableIncrement *= 1e-100;
+        }
+        order.increased(v);
+    }
+
+    private static int internal(int literal) {
+        return (literal > 0) ? 2 * (literal - 1) : 2 * (-literal - 1) + 1;
+    }
+
+    /**
+     * Returns the i-th element of the Luby sequence 1 1 2 1 1 2 4 ...
+     */
+    private static long luby(int i) {
+        int size = 1;
+        int sequence = 0;
+        while (size < i + 1) {
+            sequence++;
+            size = 2 * size + 1;
+        }
+        while (size - 1 != i) {
+            size = (size - 1) >> 1;
+            sequence--;
+            i = i % size;
+        }
+        return 1L << sequence;
+    }
+
+    private static final class IntList {
+        int[] items = new int[4];
+        int size;
+
+        void add(int item) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = item;
+        }
+
+        int get(int i) {
+            return items[i];
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(items, size);
+        }
+    }
+
+    /**
+     * A binary max-heap of variables by activity.
+     */
+    private final class Heap {
+        private int[] heap = new int[8];
+        private int[] positions = new int[8];
+        private int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void insert(int v) {
+            if (v >= positions.length) {
+                int capacity = Math.max(v + 1, positions.length * 2);
+                int old = positions.length;
+                positions = Arrays.copyOf(positions, capacity);
+                Arrays.fill(positions, old, capacity, -1);
+                heap = Arrays.copyOf(heap, capacity);
+            } else if (positions[v] >= 0 && positions[v] < size && heap[positions[v]] == v) {
+                return;
+            }
+            heap[size] = v;
+            positions[v] = size;
+            up(size++);
+        }
+
+        void increased(int v) {
+            if (v < positions.length && positions[v] >= 0 && positions[v] < size && heap[positions[v]] == v) {
+                up(positions[v]);
+            }
+        }
+
+        int removeMax() {
+            int max = heap[0];
+            positions[max] = -1;
+            size--;
+            if (size > 0) {
+                heap[0] = heap[size];
+                positions[heap[0]] = 0;
+                down(0);
+            }
+            return max;
+        }
+
+        private void up(int i) {
+            int v = heap[i];
+            while (i > 0) {
+                int parent = (i - 1) >> 1;
+                if (activity[heap[parent]] >= activity[v]) break;
+                heap[i] = heap[parent];
+                positions[heap[i]] = i;
+                i = parent;
+            }
+            heap[i] = v;
+            positions[v] = i;
+        }
+
+        private void down(int i) {
+            int v = heap[i];
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) break;
+                if (child + 1 < size && activity[heap[child + 1]] > activity[heap[child]]) child++;
+                if (activity[heap[child]] <= activity[v]) break;
+                heap[i] = heap[child];
+                positions[heap[i]] = i;
+                i = child;
+            }
+            heap[i] = v;
+            positions[v] = i;
+        }
+    }
+}
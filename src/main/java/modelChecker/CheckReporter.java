@@ -0,0 +1,15 @@
+package modelChecker;
+
+/**
+ * Receives the result of every check a model checker performs.
+ * Reporters are optional: a model checker without one does no output at all.
+ */
+public interface CheckReporter {
+    /**
+     * Called once per check, after the result is complete.
+     *
+     * @param result
+     *            - the result of the check
+     */
+    public void report(CheckResult result);
+}
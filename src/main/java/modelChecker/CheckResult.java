@@ -0,0 +1,262 @@
+package modelChecker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The outcome of a single model checking run.
+ *
+ * A result holds the verdict, whether the verdict was reached trivially because
+ * no initial state satisfies the constraint, the initial states that violate the
+ * query, the counterexample traces, the sizes of the satisfaction sets and the
+ * time spent in each phase. It never prints anything; use a {@link CheckReporter}
+ * to render it.
+ */
+public class CheckResult {
+    private boolean satisfied;
+    private boolean triviallySatisfied;
+    private boolean earlyTerminated;
+    private String message;
+    private List<String> failingInitialStates = new ArrayList<String>();
+    private List<String[]> traces = new ArrayList<String[]>();
+    private Map<String, Boolean> verdicts = new LinkedHashMap<String, Boolean>();
+    private int constraintSatSize = -1;
+    private int querySatSize = -1;
+    private int simplifiedNodes;
+    private int reorderedOperands;
+    private int skippedOperands;
+    private int restrictedOperands;
+    private long savedCost;
+    private long constraintNanos;
+    private long queryNanos;
+    private long traceNanos;
+    private long totalNanos;
+
+    CheckResult() {
+    }
+
+    /**
+     * Returns true if the model satisfies the query under the constraint.
+     * @return the verdict
+     */
+    public boolean isSatisfied() {
+        return satisfied;
+    }
+
+    /**
+     * Returns true if the verdict was reached because no initial state satisfies the constraint.
+     * @return the trivial-satisfaction flag
+     */
+    public boolean isTriviallySatisfied() {
+        return triviallySatisfied;
+    }
+
+    /**
+     * Returns true if the check stopped as soon as the verdict was known. The
+     * failing initial states then hold only the first one found, and the query
+     * satisfaction set size is unknown.
+     * @return the early termination flag
+     */
+    public boolean isEarlyTerminated() {
+        return earlyTerminated;
+    }
+
+    /**
+     * Returns a human readable description of the verdict.
+     * @return the message
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Returns the names of the initial states that do not satisfy the query.
+     * @return the failing initial states, empty if the check passed
+     */
+    public List<String> getFailingInitialStates() {
+        return Collections.unmodifiableList(failingInitialStates);
+    }
+
+    /**
+     * Returns the counterexample traces, each one a sequence of state names.
+     * @return the traces, empty if the check passed
+     */
+    public List<String[]> getTraces() {
+        return Collections.unmodifiableList(traces);
+    }
+
+    /**
+     * Returns the first counterexample trace.
+     * @return the trace or null if there is none
+     */
+    public String[] getTrace() {
+        return traces.isEmpty() ? null : traces.get(0);
+    }
+
+    /**
+     * Returns the verdict of each initial state, in the order of the model: true
+     * if it satisfies the query given the constraint.
+     * @return the verdicts, empty if the check was trivial or stopped early
+     */
+    public Map<String, Boolean> getVerdicts() {
+        return Collections.unmodifiableMap(verdicts);
+    }
+
+    /**
+     * Returns the size of the constraint's satisfaction set.
+     * @return the size or -1 if no constraint was given
+     */
+    public int getConstraintSatSize() {
+        return constraintSatSize;
+    }
+
+    /**
+     * Returns the size of the query's satisfaction set (after the constraint was applied).
+     * @return the size or -1 if the query was not evaluated
+     */
+    public int getQuerySatSize() {
+        return querySatSize;
+    }
+
+    /**
+     * Returns how many formula nodes the simplifier removed from the constraint and query.
+     * @return the number of removed nodes
+     */
+    public int getSimplifiedNodes() {
+        return simplifiedNodes;
+    }
+
+    /**
+     * Returns how many conjunctions and disjunctions of the query the planner
+     * evaluated right operand first.
+     * @return the number of reordered operands, 0 without query planning
+     */
+    public int getReorderedOperands() {
+        return reorderedOperands;
+    }
+
+    /**
+     * Returns how many operands of the query were not evaluated because the
+     * other operand already decided the result.
+     * @return the number of skipped operands, 0 without query planning
+     */
+    public int getSkippedOperands() {
+        return skippedOperands;
+    }
+
+    /**
+     * Returns how many operands of the query were only evaluated over the
+     * states the other operand left open.
+     * @return the number of restricted operands, 0 without query planning
+     */
+    public int getRestrictedOperands() {
+        return restrictedOperands;
+    }
+
+    /**
+     * Returns the planner's estimate of the states and edges the skipped
+     * operands would have visited.
+     * @return the estimated cost saved, 0 without query planning
+     */
+    public long getSavedCost() {
+        return savedCost;
+    }
+
+    /**
+     * Returns the time spent evaluating the constraint.
+     * @return elapsed nanoseconds
+     */
+    public long getConstraintNanos() {
+        return constraintNanos;
+    }
+
+    /**
+     * Returns the time spent evaluating the query.
+     * @return elapsed nanoseconds
+     */
+    public long getQueryNanos() {
+        return queryNanos;
+    }
+
+    /**
+     * Returns the time spent generating counterexample traces.
+     * @return elapsed nanoseconds
+     */
+    public long getTraceNanos() {
+        return traceNanos;
+    }
+
+    /**
+     * Returns the wall-clock time of the whole check.
+     * @return elapsed nanoseconds
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    void setSatisfied(boolean satisfied) {
+        this.satisfied = satisfied;
+    }
+
+    void setTriviallySatisfied(boolean triviallySatisfied) {
+        this.triviallySatisfied = triviallySatisfied;
+    }
+
+    void setEarlyTerminated(boolean earlyTerminated) {
+        this.earlyTerminated = earlyTerminated;
+    }
+
+    void setMessage(String message) {
+        this.message = message;
+    }
+
+    void addFailingInitialState(String name) {
+        failingInitialStates.add(name);
+    }
+
+    void addTrace(String[] trace) {
+        traces.add(trace);
+    }
+
+    void setVerdict(String initialState, boolean satisfied) {
+        verdicts.put(initialState, satisfied);
+    }
+
+    void setConstraintSatSize(int constraintSatSize) {
+        this.constraintSatSize = constraintSatSize;
+    }
+
+    void setQuerySatSize(int querySatSize) {
+        this.querySatSize = querySatSize;
+    }
+
+    void addSimplifiedNodes(int nodes) {
+        this.simplifiedNodes += nodes;
+    }
+
+    void setPlan(int reorderedOperands, int skippedOperands, int restrictedOperands, long savedCost) {
+        this.reorderedOperands = reorderedOperands;
+        this.skippedOperands = skippedOperands;
+        this.restrictedOperands = restrictedOperands;
+        this.savedCost = savedCost;
+    }
+
+    void setConstraintNanos(long constraintNanos) {
+        this.constraintNanos = constraintNanos;
+    }
+
+    void setQueryNanos(long queryNanos) {
+        this.queryNanos = queryNanos;
+    }
+
+    void setTraceNanos(long traceNanos) {
+        this.traceNanos = traceNanos;
+    }
+
+    void setTotalNanos(long totalNanos) {
+        this.totalNanos = totalNanos;
+    }
+}
@@ -3,6 +3,8 @@ package modelChecker;
 import java.util.Set;
 import java.util.HashSet;
 
+import model.IntHashSet;
+
 class CollectionHelper {
     public static <T> Set<T> intersection(Set<T> set1, Set<T> set2) {
         Set<T> set = new HashSet<T>();
@@ -22,4 +24,18 @@ class CollectionHelper {
         set.removeAll(set2);
         return set;
     }
+
+    /**
+     * Finds a common value without building the intersection.
+     *
+     * @return the first value of the array that is in the set, or -1
+     */
+    public static int firstCommon(IntHashSet set, int[] values) {
+        for (int value : values) {
+            if (set.contains(value)) {
+                return value;
+            }
+        }
+        return -1;
+    }
 }
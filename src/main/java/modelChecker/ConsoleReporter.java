@@ -0,0 +1,39 @@
+package modelChecker;
+
+import java.io.PrintStream;
+
+/**
+ * Prints the verdict and the counterexample trace of each check.
+ */
+public class ConsoleReporter implements CheckReporter {
+    private final PrintStream out;
+
+    public ConsoleReporter() {
+        this(System.out);
+    }
+
+    public ConsoleReporter(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void report(CheckResult result) {
+        out.println(result.getMessage());
+
+        for (String[] trace : result.getTraces()) {
+            printTrace(trace);
+        }
+    }
+
+    private void printTrace(String[] trace) {
+        out.println("Path Trace:");
+        out.print(trace[0]);
+
+        // print each state as it comes instead of building the whole line first
+        for (int i = 1; i < trace.length; i++) {
+            out.print("->");
+            out.print(trace[i]);
+        }
+        out.println();
+    }
+}
@@ -0,0 +1,249 @@
+package modelChecker;
+
+import java.util.Set;
+
+import formula.pathFormula.Always;
+import formula.pathFormula.Eventually;
+import formula.pathFormula.Next;
+import formula.pathFormula.PathFormula;
+import formula.pathFormula.Until;
+import formula.stateFormula.And;
+import formula.stateFormula.AtomicProp;
+import formula.stateFormula.BoolProp;
+import formula.stateFormula.ForAll;
+import formula.stateFormula.Not;
+import formula.stateFormula.Or;
+import formula.stateFormula.StateFormula;
+import formula.stateFormula.ThereExists;
+
+/**
+ * Rewrites a formula into an equivalent one that is cheaper to evaluate.
+ *
+ * The formula is rebuilt bottom-up and every node is rewritten with these rules:
+ * <ul>
+ * <li>not(not(P)) = P, not(true) = false, not(false) = true</li>
+ * <li>P and true = P, P and false = false, P or true = true, P or false = P</li>
+ * <li>P and P = P, P or P = P, P and not(P) = false, P or not(P) = true</li>
+ * <li>P and (P or Q) = P, P or (P and Q) = P</li>
+ * <li>not(P) and not(Q) = not(P or Q), not(P) or not(Q) = not(P and Q)</li>
+ * <li>Exists(P U Q) with P = true is Exists(Eventually(Q)), a single backward search</li>
+ * <li>Exists(Next(false)), Exists(P U false), Exists(Eventually(false)) and Exists(Always(false)) are false</li>
+ * <li>without actions: Exists(false U Q) = Q, Exists(P U P) = P, Exists(P U true) = true,
+ * Exists(Eventually(Exists(Eventually(P)))) = Exists(Eventually(P)) and
+ * Exists(Always(Exists(Always(P)))) = Exists(Always(P))</li>
+ * </ul>
+ * Universally quantified formulas are kept, only their operands are simplified.
+ */
+public class FormulaSimplifier {
+    private static final BoolProp TRUE = new BoolProp(true);
+    private static final BoolProp FALSE = new BoolProp(false);
+
+    /**
+     * Returns the simplified formula.
+     *
+     * @param formula the original formula
+     * @return an equivalent formula with at most as many nodes
+     */
+    public StateFormula simplify(StateFormula formula) {
+        if (formula instanceof AtomicProp || formula instanceof BoolProp) {
+            return formula;
+        } else if (formula instanceof Not) {
+            return not(simplify(((Not) formula).stateFormula));
+        } else if (formula instanceof And) {
+            And and = (And) formula;
+            return and(simplify(and.left), simplify(and.right));
+        } else if (formula instanceof Or) {
+            Or or = (Or) formula;
+            return or(simplify(or.left), simplify(or.right));
+        } else if (formula instanceof ThereExists) {
+            return exists(simplify(((ThereExists) formula).pathFormula));
+        } else if (formula instanceof ForAll) {
+            return new ForAll(simplify(((ForAll) formula).pathFormula));
+        }
+        return formula;
+    }
+
+    /**
+     * Returns the number of state and path formula nodes in a formula.
+     *
+     * @param formula the formula
+     * @return the number of nodes
+     */
+    public static int size(StateFormula formula) {
+        if (formula instanceof Not) {
+            return 1 + size(((Not) formula).stateFormula);
+        } else if (formula instanceof And) {
+            return 1 + size(((And) formula).left) + size(((And) formula).right);
+        } else if (formula instanceof Or) {
+            return 1 + size(((Or) formula).left) + size(((Or) formula).right);
+        } else if (formula instanceof ThereExists) {
+            return 1 + size(((ThereExists) formula).pathFormula);
+        } else if (formula instanceof ForAll) {
+            return 1 + size(((ForAll) formula).pathFormula);
+        }
+        return 1;
+    }
+
+    private static int size(PathFormula formula) {
+        if (formula instanceof Next) {
+            return 1 + size(((Next) formula).stateFormula);
+        } else if (formula instanceof Until) {
+            return 1 + size(((Until) formula).left) + size(((Until) formula).right);
+        } else if (formula instanceof Eventually) {
+            return 1 + size(((Eventually) formula).stateFormula);
+        } else if (formula instanceof Always) {
+            return 1 + size(((Always) formula).stateFormula);
+        }
+        return 1;
+    }
+
+    private PathFormula simplify(PathFormula formula) {
+        if (formula instanceof Next) {
+            Next next = (Next) formula;
+            return new Next(simplify(next.stateFormula), next.getActions());
+        } else if (formula instanceof Until) {
+            Until until = (Until) formula;
+            StateFormula left = simplify(until.left);
+            if (isTrue(left)) {
+                return new Eventually(simplify(until.right), until.getLeftActions(), until.getRightActions());
+            }
+            return new Until(left, simplify(until.right), until.getLeftActions(), until.getRightActions());
+        } else if (formula instanceof Eventually) {
+            Eventually eventually = (Eventually) formula;
+            return new Eventually(simplify(eventually.stateFormula), eventually.getLeftActions(), eventually.getRightActions());
+        } else if (formula instanceof Always) {
+            Always always = (Always) formula;
+            return new Always(simplify(always.stateFormula), always.getActions());
+        }
+        return formula;
+    }
+
+    private StateFormula not(StateFormula operand) {
+        if (operand instanceof Not) {
+            return ((Not) operand).stateFormula;
+        } else if (operand instanceof BoolProp) {
+            return ((BoolProp) operand).value ? FALSE : TRUE;
+        }
+        return new Not(operand);
+    }
+
+    private StateFormula and(StateFormula left, StateFormula right) {
+        if (isFalse(left) || isFalse(right)) {
+            return FALSE;
+        } else if (isTrue(left)) {
+            return right;
+        } else if (isTrue(right) || left.equals(right)) {
+            return left;
+        } else if (isComplement(left, right)) {
+            return FALSE;
+        } else if (absorbs(left, right, Or.class)) {
+            return left;
+        } else if (absorbs(right, left, Or.class)) {
+            return right;
+        } else if (left instanceof Not && right instanceof Not) {
+            return not(or(((Not) left).stateFormula, ((Not) right).stateFormula));
+        }
+        return new And(left, right);
+    }
+
+    private StateFormula or(StateFormula left, StateFormula right) {
+        if (isTrue(left) || isTrue(right)) {
+            return TRUE;
+        } else if (isFalse(left)) {
+            return right;
+        } else if (isFalse(right) || left.equals(right)) {
+            return left;
+        } else if (isComplement(left, right)) {
+            return TRUE;
+        } else if (absorbs(left, right, And.class)) {
+            return left;
+        } else if (absorbs(right, left, And.class)) {
+            return right;
+        } else if (left instanceof Not && right instanceof Not) {
+            return not(and(((Not) left).stateFormula, ((Not) right).stateFormula));
+        }
+        return new Or(left, right);
+    }
+
+    private StateFormula exists(PathFormula path) {
+        if (path instanceof Next) {
+            if (isFalse(((Next) path).stateFormula)) {
+                return FALSE;
+            }
+        } else if (path instanceof Until) {
+            Until until = (Until) path;
+            boolean noActions = isEmpty(until.getLeftActions()) && isEmpty(until.getRightActions());
+
+            if (isFalse(until.right)) {
+                return FALSE;
+            } else if (noActions && (isFalse(until.left) || until.left.equals(until.right))) {
+                return until.right;
+            } else if (noActions && isTrue(until.right)) {
+                return TRUE;
+            }
+        } else if (path instanceof Eventually) {
+            Eventually eventually = (Eventually) path;
+
+            if (isFalse(eventually.stateFormula)) {
+                return FALSE;
+            } else if (isEmpty(eventually.getRightActions()) && isTrue(eventually.stateFormula)) {
+                return TRUE;
+            } else if (hasNoActions(eventually) && isExists(eventually.stateFormula, Eventually.class)
+                    && hasNoActions(((ThereExists) eventually.stateFormula).pathFormula)) {
+                return eventually.stateFormula;
+            }
+        } else if (path instanceof Always) {
+            Always always = (Always) path;
+
+            if (isFalse(always.stateFormula)) {
+                return FALSE;
+            } else if (hasNoActions(always) && isExists(always.stateFormula, Always.class)
+                    && hasNoActions(((ThereExists) always.stateFormula).pathFormula)) {
+                return always.stateFormula;
+            }
+        }
+        return new ThereExists(path);
+    }
+
+    private static boolean isTrue(StateFormula formula) {
+        return formula instanceof BoolProp && ((BoolProp) formula).value;
+    }
+
+    private static boolean isFalse(StateFormula formula) {
+        return formula instanceof BoolProp && !((BoolProp) formula).value;
+    }
+
+    private static boolean isComplement(StateFormula left, StateFormula right) {
+        return (left instanceof Not && ((Not) left).stateFormula.equals(right))
+                || (right instanceof Not && ((Not) right).stateFormula.equals(left));
+    }
+
+    /**
+     * Returns true if other is an operator of the given type that has formula as an operand.
+     */
+    private static boolean absorbs(StateFormula formula, StateFormula other, Class<? extends StateFormula> type) {
+        if (other instanceof And && type == And.class) {
+            return formula.equals(((And) other).left) || formula.equals(((And) other).right);
+        } else if (other instanceof Or && type == Or.class) {
+            return formula.equals(((Or) other).left) || formula.equals(((Or) other).right);
+        }
+        return false;
+    }
+
+    private static boolean isExists(StateFormula formula, Class<? extends PathFormula> type) {
+        return formula instanceof ThereExists && type.isInstance(((ThereExists) formula).pathFormula);
+    }
+
+    private static boolean hasNoActions(PathFormula path) {
+        if (path instanceof Eventually) {
+            return isEmpty(((Eventually) path).getLeftActions()) && isEmpty(((Eventually) path).getRightActions());
+        } else if (path instanceof Always) {
+            return isEmpty(((Always) path).getActions());
+        }
+        return false;
+    }
+
+    private static boolean isEmpty(Set<String> actions) {
+        return actions == null || actions.isEmpty();
+    }
+}
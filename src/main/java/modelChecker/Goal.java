@@ -0,0 +1,143 @@
+package modelChecker;
+
+import model.StateSet;
+
+/**
+ * A question about the satisfaction set of a formula on a set of watched
+ * states: are all of them in it (ALL_IN), or none of them (NONE_IN)?
+ *
+ * A fixpoint that is given a goal reports every state that enters a growing
+ * result or leaves a shrinking one, and stops as soon as the goal is decided.
+ * A least fixpoint decides ALL_IN once the last watched state enters, a
+ * greatest fixpoint decides it once the first watched state leaves, and the
+ * other way round for NONE_IN. The set a decided fixpoint returns is only
+ * partial and must not be used.
+ */
+final class Goal {
+    enum Kind {
+        ALL_IN, NONE_IN
+    }
+
+    private final StateSet watched;
+    private final Kind kind;
+    private int pending;
+    private boolean decided;
+    private boolean holds;
+    private int witness = -1;
+
+    Goal(StateSet watched, Kind kind) {
+        this.watched = watched;
+        this.kind = kind;
+    }
+
+    /**
+     * Returns the goal for the operand of a negation: all watched states satisfy
+     * not(P) exactly when none of them satisfies P.
+     */
+    Goal negate() {
+        return new Goal(watched, (kind == Kind.ALL_IN) ? Kind.NONE_IN : Kind.ALL_IN);
+    }
+
+    /**
+     * Takes over the decision of the goal of a negated operand.
+     */
+    void decideFrom(Goal negated) {
+        if (negated.decided) {
+            decide(negated.holds, negated.witness);
+        }
+    }
+
+    boolean isDecided() {
+        return decided;
+    }
+
+    /**
+     * Returns the answer, only valid once the goal is decided.
+     */
+    boolean holds() {
+        return holds;
+    }
+
+    /**
+     * Returns a watched state that makes the goal fail, or -1.
+     */
+    int getWitness() {
+        return witness;
+    }
+
+    /**
+     * Starts a least fixpoint from the given states.
+     * @return true if the goal is decided
+     */
+    boolean startGrowing(StateSet initial) {
+        pending = 0;
+        for (int s = watched.nextState(0); s >= 0 && !decided; s = watched.nextState(s + 1)) {
+            if (!initial.contains(s)) {
+                pending++;
+            } else if (kind == Kind.NONE_IN) {
+                decide(false, s);
+            }
+        }
+        if (!decided && kind == Kind.ALL_IN && pending == 0) {
+            decide(true, -1);
+        }
+        return decided;
+    }
+
+    /**
+     * Reports a state that entered the result of a least fixpoint.
+     * @return true if the goal is decided
+     */
+    boolean entered(int state) {
+        if (!watched.contains(state)) {
+            return false;
+        }
+        if (kind == Kind.NONE_IN) {
+            decide(false, state);
+        } else if (--pending == 0) {
+            decide(true, -1);
+        }
+        return decided;
+    }
+
+    /**
+     * Starts a greatest fixpoint from the given states.
+     * @return true if the goal is decided
+     */
+    boolean startShrinking(StateSet initial) {
+        pending = 0;
+        for (int s = watched.nextState(0); s >= 0 && !decided; s = watched.nextState(s + 1)) {
+            if (initial.contains(s)) {
+                pending++;
+            } else if (kind == Kind.ALL_IN) {
+                decide(false, s);
+            }
+        }
+        if (!decided && kind == Kind.NONE_IN && pending == 0) {
+            decide(true, -1);
+        }
+        return decided;
+    }
+
+    /**
+     * Reports a state that left the result of a greatest fixpoint.
+     * @return true if the goal is decided
+     */
+    boolean left(int state) {
+        if (!watched.contains(state)) {
+            return false;
+        }
+        if (kind == Kind.ALL_IN) {
+            decide(false, state);
+        } else if (--pending == 0) {
+            decide(true, -1);
+        }
+        return decided;
+    }
+
+    private void decide(boolean holds, int witness) {
+        this.decided = true;
+        this.holds = holds;
+        this.witness = witness;
+    }
+}
@@ -0,0 +1,587 @@
+package modelChecker;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import formula.pathFormula.*;
+import formula.stateFormula.*;
+import model.*;
+
+/**
+ * Re-checks formulas after small edits to a model.
+ *
+ * A full check keeps the satisfaction set of every subformula in a Snapshot.
+ * When the model is edited with a ModelDelta, the delta is applied to the
+ * compiled model (see ModelDelta.applyTo(CompiledModel)) and each subformula
+ * is re-evaluated bottom-up, starting from its previous satisfaction set and
+ * patching only the states whose value can have changed:
+ * <ul>
+ * <li>for atomic propositions, the added and relabelled states,</li>
+ * <li>for propositional operators, the states changed in any operand,</li>
+ * <li>for EX, the predecessors of the changed states of the operand and the
+ * states whose outgoing transitions changed,</li>
+ * <li>for EU and EG, every state that can reach a changed state of an operand or
+ * a state whose outgoing transitions changed. No other state can see a
+ * difference along any path, so its previous value is kept and the fixpoint
+ * is only iterated over the changed region.</li>
+ * </ul>
+ * Formulas are converted to ENF and simplified first, so the results are those
+ * of checking the ENF formula over all states of the edited model, as checkENF() does.
+ */
+public class IncrementalChecker {
+    private final ENFConverter enfConverter = new ENFConverter();
+    private final FormulaSimplifier simplifier = new FormulaSimplifier();
+
+    /**
+     * The satisfaction sets of a set of formulas and all their subformulas on one model.
+     */
+    public static class Snapshot {
+        private final CompiledModel compiled;
+        private final Map<StateFormula, StateFormula> roots = new LinkedHashMap<StateFormula, StateFormula>();
+        private final Map<StateFormula, StateSet> sat = new HashMap<StateFormula, StateSet>();
+        private final Map<StateFormula, StateSet[]> filtered = new HashMap<StateFormula, StateSet[]>();
+        private int recomputedStates;
+
+        private Snapshot(CompiledModel compiled) {
+            this.compiled = compiled;
+        }
+
+        public CompiledModel getCompiledModel() {
+            return compiled;
+        }
+
+        /**
+         * Returns the satisfaction set of a checked formula.
+         * @param formula one of the formulas given to check()
+         * @return a copy of its satisfaction set
+         */
+        public StateSet getSat(StateFormula formula) {
+            StateFormula root = roots.get(formula);
+            if (root == null) {
+                throw new IllegalArgumentException("Formula was not checked: " + formula);
+            }
+            return sat.get(root).copy();
+        }
+
+        /**
+         * Returns true if every initial state satisfies the formula.
+         * @param formula one of the formulas given to check()
+         * @return the verdict
+         */
+        public boolean holds(StateFormula formula) {
+            return getSat(formula).containsAll(compiled.initialStates());
+        }
+
+        /**
+         * Returns the number of states the subformulas were evaluated on to
+         * build this snapshot. For a full check this is the number of states
+         * times the number of subformulas; for a recheck it is the sum of the
+         * sizes of their changed regions.
+         *
+         * @return the number of recomputed states
+         */
+        public int getRecomputedStates() {
+            return recomputedStates;
+        }
+    }
+
+    /**
+     * Checks the formulas from scratch.
+     *
+     * @param model the model
+     * @param formulas the formulas to check
+     * @return the snapshot to pass to recheck() after the next edit
+     */
+    public Snapshot check(Model model, Collection<StateFormula> formulas) {
+        Snapshot snapshot = new Snapshot(model.compile());
+        Evaluation evaluation = new Evaluation(null, snapshot, null);
+
+        for (StateFormula formula : formulas) {
+            StateFormula enf = simplifier.simplify(enfConverter.convertToENF(formula));
+            snapshot.roots.put(formula, enf);
+            evaluation.sat(enf);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Applies the delta to the snapshot's compiled model and re-checks the same
+     * formulas, reusing the previous satisfaction sets wherever they cannot
+     * have changed.
+     *
+     * @param previous the snapshot of the previous check
+     * @param delta the edit
+     * @return the snapshot of the edited model
+     */
+    public Snapshot recheck(Snapshot previous, ModelDelta delta) {
+        Snapshot snapshot = new Snapshot(delta.applyTo(previous.compiled));
+        Evaluation evaluation = new Evaluation(previous, snapshot, new Changes(previous.compiled, snapshot.compiled, delta));
+
+        for (Map.Entry<StateFormula, StateFormula> root : previous.roots.entrySet()) {
+            snapshot.roots.put(root.getKey(), root.getValue());
+            evaluation.sat(root.getValue());
+        }
+        return snapshot;
+    }
+
+    /**
+     * The states of the edited model affected directly by a delta, and the mapping
+     * from the states of the previous model to the edited one. Only the states
+     * named by the delta and their neighbours are looked at.
+     */
+    private static class Changes {
+        /** null if every previous state keeps its index */
+        final int[] oldToNew;
+        final StateSet added;
+        final StateSet relabelled;
+        final StateSet sourceChanged;
+        final StateSet targetChanged;
+
+        Changes(CompiledModel before, CompiledModel after, ModelDelta delta) {
+            int n = after.getStateCount();
+
+            // removed and replaced states shift the states after them
+            boolean renumbered = false;
+            for (String name : delta.getRemovedStates()) {
+                renumbered |= before.indexOf(name) >= 0;
+            }
+            for (String name : delta.getAddedStates()) {
+                renumbered |= before.indexOf(name) >= 0;
+            }
+            if (renumbered) {
+                oldToNew = new int[before.getStateCount()];
+                for (int s = 0; s < oldToNew.length; s++) {
+                    oldToNew[s] = after.indexOf(before.getName(s));
+                }
+            } else {
+                oldToNew = null;
+            }
+
+            added = new BitStateSet(n);
+            for (String name : delta.getAddedStates()) {
+                added.add(after.indexOf(name));
+            }
+
+            relabelled = added.copy();
+            for (String name : delta.getRelabelledStates()) {
+                mark(relabelled, after, name);
+            }
+
+            // transitions of added states
+            sourceChanged = added.copy();
+            targetChanged = added.copy();
+            for (int s = added.nextState(0); s >= 0; s = added.nextState(s + 1)) {
+                for (int i = after.predBegin(s); i < after.predEnd(s); i++) {
+                    sourceChanged.add(after.predSource(i));
+                }
+                for (int e = after.succBegin(s); e < after.succEnd(s); e++) {
+                    targetChanged.add(after.edgeTarget(e));
+                }
+            }
+            for (String[] edge : delta.getChangedEdges()) {
+                mark(sourceChanged, after, edge[0]);
+                mark(targetChanged, after, edge[1]);
+            }
+
+            // transitions of removed states disappear with them
+            for (String name : delta.getRemovedStates()) {
+                int removed = before.indexOf(name);
+                if (removed < 0) continue;
+
+                for (int i = before.predBegin(removed); i < before.predEnd(removed); i++) {
+                    mark(sourceChanged, after, before.getName(before.predSource(i)));
+                }
+                for (int e = before.succBegin(removed); e < before.succEnd(removed); e++) {
+                    mark(targetChanged, after, before.getName(before.edgeTarget(e)));
+                }
+            }
+        }
+
+        private static void mark(StateSet set, CompiledModel model, String name) {
+            int state = model.indexOf(name);
+            if (state >= 0) set.add(state);
+        }
+
+        /**
+         * Maps a set of the previous model to the edited one.
+         */
+        StateSet map(StateSet old, int size) {
+            StateSet set = new BitStateSet(size);
+            if (oldToNew == null) {
+                set.addAll(old);
+                return set;
+            }
+            for (int s = old.nextState(0); s >= 0; s = old.nextState(s + 1)) {
+                if (oldToNew[s] >= 0) set.add(oldToNew[s]);
+            }
+            return set;
+        }
+    }
+
+    /**
+     * Evaluates formulas for one snapshot. Without a previous snapshot every state
+     * is treated as changed, which is a full check.
+     */
+    private static class Evaluation {
+        private final Snapshot previous;
+        private final Snapshot snapshot;
+        private final Changes changes;
+        private final CompiledModel model;
+        private final SATChecker checker;
+        private final Map<StateFormula, StateSet> dirty = new HashMap<StateFormula, StateSet>();
+        private final StateSet allStates;
+
+        Evaluation(Snapshot previous, Snapshot snapshot, Changes changes) {
+            this.previous = previous;
+            this.snapshot = snapshot;
+            this.changes = changes;
+            this.model = snapshot.compiled;
+            this.checker = new SATChecker(model);
+            this.allStates = model.allStates();
+        }
+
+        /**
+         * Returns the satisfaction set of a formula, evaluating it if it is not known yet.
+         */
+        StateSet sat(StateFormula formula) {
+            StateSet known = snapshot.sat.get(formula);
+            if (known != null) {
+                return known;
+            }
+
+            StateSet result;
+            if (formula instanceof BoolProp || formula instanceof AtomicProp || formula instanceof Not
+                    || formula instanceof And || formula instanceof Or) {
+                result = propositional(formula);
+            } else if (formula instanceof ThereExists) {
+                result = exists(formula, ((ThereExists) formula).pathFormula);
+            } else {
+                throw new IllegalArgumentException("Unsupported formula after ENF conversion: " + formula);
+            }
+
+            snapshot.sat.put(formula, result);
+            return result;
+        }
+
+        /**
+         * Evaluates a propositional formula over every state for a full check,
+         * and otherwise patches its previous set on the states that changed in
+         * the model or in an operand.
+         */
+        private StateSet propositional(StateFormula formula) {
+            StateSet region;
+            if (formula instanceof BoolProp) {
+                region = changed(null);
+            } else if (formula instanceof AtomicProp) {
+                region = changed(changes == null ? null : changes.relabelled);
+            } else if (formula instanceof Not) {
+                sat(((Not) formula).stateFormula);
+                region = dirtyOf(((Not) formula).stateFormula);
+            } else if (formula instanceof And) {
+                And and = (And) formula;
+                sat(and.left);
+                sat(and.right);
+                region = union(dirtyOf(and.left), dirtyOf(and.right));
+            } else {
+                Or or = (Or) formula;
+                sat(or.left);
+                sat(or.right);
+                region = union(dirtyOf(or.left), dirtyOf(or.right));
+            }
+            dirty.put(formula, region);
+            snapshot.recomputedStates += region.cardinality();
+
+            if (changes == null) {
+                return whole(formula);
+            }
+            StateSet result = previousSat(formula);
+            int label = (formula instanceof AtomicProp) ? model.getLabelId(((AtomicProp) formula).label) : -1;
+            for (int s = region.nextState(0); s >= 0; s = region.nextState(s + 1)) {
+                boolean value;
+                if (formula instanceof BoolProp) {
+                    value = ((BoolProp) formula).value;
+                } else if (formula instanceof AtomicProp) {
+                    value = label >= 0 && model.hasLabel(s, label);
+                } else if (formula instanceof Not) {
+                    value = !sat(((Not) formula).stateFormula).contains(s);
+                } else if (formula instanceof And) {
+                    value = sat(((And) formula).left).contains(s) && sat(((And) formula).right).contains(s);
+                } else {
+                    value = sat(((Or) formula).left).contains(s) || sat(((Or) formula).right).contains(s);
+                }
+                if (value) result.add(s); else result.remove(s);
+            }
+            return result;
+        }
+
+        /**
+         * Evaluates a propositional formula over every state, from the sets of its operands.
+         */
+        private StateSet whole(StateFormula formula) {
+            StateSet result;
+            if (formula instanceof BoolProp || formula instanceof AtomicProp) {
+                result = checker.getSat(formula, allStates);
+            } else if (formula instanceof Not) {
+                result = allStates.copy();
+                result.removeAll(sat(((Not) formula).stateFormula));
+            } else if (formula instanceof And) {
+                result = sat(((And) formula).left).copy();
+                result.retainAll(sat(((And) formula).right));
+            } else {
+                result = sat(((Or) formula).left).copy();
+                result.addAll(sat(((Or) formula).right));
+            }
+            return result;
+        }
+
+        private StateSet dirtyOf(StateFormula formula) {
+            return dirty.get(formula);
+        }
+
+        /**
+         * Returns the given states plus the added ones, or every state for a full check.
+         */
+        private StateSet changed(StateSet states) {
+            if (changes == null) {
+                return allStates.copy();
+            }
+            StateSet set = changes.added.copy();
+            if (states != null) set.addAll(states);
+            return set;
+        }
+
+        private StateSet union(StateSet a, StateSet b) {
+            StateSet set = a.copy();
+            set.addAll(b);
+            return set;
+        }
+
+        private StateSet previousSat(StateFormula formula) {
+            return changes.map(previous.sat.get(formula), model.getStateCount());
+        }
+
+        private StateSet previousFiltered(StateFormula formula, int i) {
+            return changes.map(previous.filtered.get(formula)[i], model.getStateCount());
+        }
+
+        private StateSet exists(StateFormula formula, PathFormula path) {
+            if (path instanceof Next) {
+                Next next = (Next) path;
+                return existsNext(formula, next.stateFormula, next.getActions());
+            } else if (path instanceof Until) {
+                Until until = (Until) path;
+                return existsUntil(formula, until.left, until.right, until.getLeftActions(), until.getRightActions());
+            } else if (path instanceof Eventually) {
+                Eventually eventually = (Eventually) path;
+                return existsUntil(formula, new BoolProp(true), eventually.stateFormula, eventually.getLeftActions(),
+                        eventually.getRightActions());
+            } else if (path instanceof Always) {
+                Always always = (Always) path;
+                return existsAlways(formula, always.stateFormula, always.getActions());
+            }
+            throw new IllegalArgumentException("Unsupported path formula: " + formula);
+        }
+
+        /**
+         * Applies an action filter to the changed states of an operand and reuses
+         * the previous filtered set elsewhere. Returns the filtered set; the states
+         * whose filtered value may differ are added to changedOut.
+         */
+        private StateSet filter(StateFormula formula, int slot, StateSet operand, StateSet operandDirty,
+                Set<String> actions, boolean incoming, StateSet changedOut) {
+            if (actions.isEmpty()) {
+                changedOut.addAll(operandDirty);
+                return operand;
+            }
+
+            int[] actionIds = checker.actionIds(actions);
+            StateSet region = operandDirty.copy();
+            if (changes != null) region.addAll(incoming ? changes.targetChanged : changes.sourceChanged);
+
+            StateSet result = (changes == null) ? model.newStateSet() : previousFiltered(formula, slot);
+            for (int s = region.nextState(0); s >= 0; s = region.nextState(s + 1)) {
+                boolean passes = operand.contains(s)
+                        && (incoming ? checker.passesIncomingActions(s, actionIds) : checker.passesOutgoingActions(s, actionIds));
+                if (passes) result.add(s); else result.remove(s);
+            }
+            changedOut.addAll(region);
+            return result;
+        }
+
+        /**
+         * Returns every state that can reach one of the given states, including them.
+         */
+        private StateSet backwardClosure(StateSet base) {
+            if (changes == null) {
+                return allStates.copy();
+            }
+
+            StateSet closure = base.copy();
+            int[] queue = Scratch.get().queue(model.getStateCount());
+            int tail = 0;
+            for (int s = base.nextState(0); s >= 0; s = base.nextState(s + 1)) {
+                queue[tail++] = s;
+            }
+            for (int head = 0; head < tail; head++) {
+                int state = queue[head];
+                for (int i = model.predBegin(state); i < model.predEnd(state); i++) {
+                    int source = model.predSource(i);
+                    if (!closure.contains(source)) {
+                        closure.add(source);
+                        queue[tail++] = source;
+                    }
+                }
+            }
+            return closure;
+        }
+
+        private StateSet sourceChanged() {
+            return changes == null ? allStates.copy() : changes.sourceChanged.copy();
+        }
+
+        private StateSet existsNext(StateFormula formula, StateFormula operand, Set<String> actions) {
+            StateSet operandSat = sat(operand);
+            StateSet filterChanged = model.newStateSet();
+            StateSet fStates = filter(formula, 0, operandSat, dirtyOf(operand), actions, true, filterChanged);
+            snapshot.filtered.put(formula, new StateSet[] { fStates });
+
+            // predecessors of changed states and states with changed successors
+            StateSet region = sourceChanged();
+            for (int t = filterChanged.nextState(0); t >= 0; t = filterChanged.nextState(t + 1)) {
+                for (int i = model.predBegin(t); i < model.predEnd(t); i++) {
+                    region.add(model.predSource(i));
+                }
+            }
+
+            StateSet result = (changes == null) ? model.newStateSet() : previousSat(formula);
+            for (int s = region.nextState(0); s >= 0; s = region.nextState(s + 1)) {
+                result.remove(s);
+                for (int e = model.succBegin(s); e < model.succEnd(s); e++) {
+                    if (fStates.contains(model.edgeTarget(e))) {
+                        result.add(s);
+                        break;
+                    }
+                }
+            }
+
+            dirty.put(formula, region);
+            snapshot.recomputedStates += region.cardinality();
+            return result;
+        }
+
+        private StateSet existsUntil(StateFormula formula, StateFormula left, StateFormula right,
+                Set<String> leftActions, Set<String> rightActions) {
+            StateSet leftSat = sat(left);
+            StateSet rightSat = sat(right);
+            StateSet base = sourceChanged();
+            StateSet rightStates = filter(formula, 1, rightSat, dirtyOf(right), rightActions, true, base);
+            StateSet leftStates = filter(formula, 0, leftSat, dirtyOf(left), leftActions, false, base);
+            snapshot.filtered.put(formula, new StateSet[] { leftStates, rightStates });
+
+            StateSet region = backwardClosure(base);
+            int[] rightActionIds = checker.actionIds(rightActions);
+            boolean checkRightActions = !rightActions.isEmpty();
+
+            // keep the previous value outside the region, start from the right states inside it
+            StateSet result = (changes == null) ? model.newStateSet() : previousSat(formula);
+            result.removeAll(region);
+            StateSet seeds = rightStates.copy();
+            seeds.retainAll(region);
+            result.addAll(seeds);
+
+            int[] queue = Scratch.get().queue(model.getStateCount());
+            int tail = 0;
+            for (int s = seeds.nextState(0); s >= 0; s = seeds.nextState(s + 1)) {
+                queue[tail++] = s;
+            }
+
+            // region states with an edge to a state outside the region that satisfies the formula
+            for (int s = region.nextState(0); s >= 0; s = region.nextState(s + 1)) {
+                if (result.contains(s) || !leftStates.contains(s)) continue;
+
+                for (int e = model.succBegin(s); e < model.succEnd(s); e++) {
+                    int t = model.edgeTarget(e);
+                    if (region.contains(t) || !result.contains(t)) continue;
+                    if (checkRightActions && rightStates.contains(t) && !checker.hasAction(e, rightActionIds)) continue;
+
+                    result.add(s);
+                    queue[tail++] = s;
+                    break;
+                }
+            }
+
+            // predecessors of region states are in the region, so the search stays inside it
+            for (int head = 0; head < tail; head++) {
+                int next = queue[head];
+                boolean checkActions = checkRightActions && rightStates.contains(next);
+
+                for (int i = model.predBegin(next); i < model.predEnd(next); i++) {
+                    int state = model.predSource(i);
+
+                    if (result.contains(state) || !leftStates.contains(state)) continue;
+                    if (checkActions && !checker.hasAction(model.predEdge(i), rightActionIds)) continue;
+
+                    result.add(state);
+                    queue[tail++] = state;
+                }
+            }
+
+            dirty.put(formula, region);
+            snapshot.recomputedStates += region.cardinality();
+            return result;
+        }
+
+        private StateSet existsAlways(StateFormula formula, StateFormula operand, Set<String> actions) {
+            StateSet operandSat = sat(operand);
+            StateSet base = sourceChanged();
+            StateSet fStates = filter(formula, 0, operandSat, dirtyOf(operand), actions, true, base);
+            snapshot.filtered.put(formula, new StateSet[] { fStates });
+
+            StateSet region = backwardClosure(base);
+
+            // keep the previous value outside the region, start from the operand inside it
+            StateSet result = (changes == null) ? model.newStateSet() : previousSat(formula);
+            result.removeAll(region);
+            StateSet candidates = fStates.copy();
+            candidates.retainAll(region);
+            result.addAll(candidates);
+
+            Scratch scratch = Scratch.get();
+            int[] counters = scratch.counters(model.getStateCount());
+            int[] queue = scratch.queue(model.getStateCount());
+            int tail = 0;
+
+            for (int s = candidates.nextState(0); s >= 0; s = candidates.nextState(s + 1)) {
+                int count = 0;
+                for (int e = model.succBegin(s); e < model.succEnd(s); e++) {
+                    if (result.contains(model.edgeTarget(e))) count++;
+                }
+                counters[s] = count;
+                if (count == 0) queue[tail++] = s;
+            }
+            for (int i = 0; i < tail; i++) {
+                result.remove(queue[i]);
+            }
+
+            for (int head = 0; head < tail; head++) {
+                int removed = queue[head];
+
+                for (int i = model.predBegin(removed); i < model.predEnd(removed); i++) {
+                    int state = model.predSource(i);
+
+                    if (result.contains(state) && --counters[state] == 0) {
+                        result.remove(state);
+                        queue[tail++] = state;
+                    }
+                }
+            }
+
+            dirty.put(formula, region);
+            snapshot.recomputedStates += region.cardinality();
+            return result;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package modelChecker;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import com.google.gson.stream.JsonWriter;
+
+import model.CompiledModel;
+
+/**
+ * Writes each trace as one JSON object on its own line, step by step, like
+ * <pre>
+ * {"steps":[{"state":"s0","labels":["p"]},{"actions":["a1"],"state":"s1","labels":[]}]}
+ * </pre>
+ * Every step after the first has the actions of the transition it was reached
+ * over. Nothing is buffered apart from the writer itself.
+ */
+public class JsonTraceSink implements TraceSink {
+    private final Writer out;
+    private CompiledModel model;
+    private JsonWriter json;
+
+    public JsonTraceSink(Writer out) {
+        this.out = out;
+    }
+
+    @Override
+    public void begin(CompiledModel model) throws IOException {
+        this.model = model;
+        json = new JsonWriter(out);
+        json.beginObject();
+        json.name("steps");
+        json.beginArray();
+    }
+
+    @Override
+    public void step(int state, int edge) throws IOException {
+        json.beginObject();
+        if (edge >= 0) {
+            json.name("actions");
+            json.beginArray();
+            for (int i = model.actionBegin(edge); i < model.actionEnd(edge); i++) {
+                json.value(model.getActionName(model.edgeAction(i)));
+            }
+            json.endArray();
+        }
+        json.name("state").value(model.getName(state));
+        json.name("labels");
+        json.beginArray();
+        for (String label : model.getLabels(state)) {
+            json.value(label);
+        }
+        json.endArray();
+        json.endObject();
+    }
+
+    @Override
+    public void end() throws IOException {
+        json.endArray();
+        json.endObject();
+        json.flush();
+        out.write('\n');
+        out.flush();
+    }
+}
@@ -0,0 +1,247 @@
+package modelChecker;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A store of quasi-reduced multi-valued decision diagrams over a fixed number
+ * of levels.
+ *
+ * Level k, from 1 at the bottom to the number of levels at the top, has a
+ * given number of local values, and a node at level k has one child at level
+ * k - 1 for each of them. A node stands for the set of tuples along its paths
+ * to ONE. Nodes are numbered and kept unique, so equal sets are equal numbers.
+ * EMPTY is the empty set at every level, and ONE the set of the empty tuple at
+ * level 0.
+ */
+final class Mdd {
+    static final int EMPTY = 0;
+    static final int ONE = 1;
+
+    private final int[] sizes;
+    private int[] levels = new int[64];
+    private int[][] children = new int[64][];
+    private int count = 2;
+    private final Map<Node, Integer> unique = new HashMap<Node, Integer>();
+    private final int[] full;
+
+    private final Map<Long, Integer> unionCache = new HashMap<Long, Integer>();
+    private final Map<Long, Integer> intersectCache = new HashMap<Long, Integer>();
+    private final Map<Long, Integer> differenceCache = new HashMap<Long, Integer>();
+
+    /**
+     * @param sizes the number of local values of each level, from level 1 up
+     */
+    Mdd(int[] sizes) {
+        this.sizes = new int[sizes.length + 1];
+        System.arraycopy(sizes, 0, this.sizes, 1, sizes.length);
+
+        full = new int[sizes.length + 1];
+        full[0] = ONE;
+        for (int k = 1; k <= sizes.length; k++) {
+            int[] next = new int[this.sizes[k]];
+            Arrays.fill(next, full[k - 1]);
+            full[k] = make(k, next);
+        }
+    }
+
+    int getLevels() {
+        return sizes.length - 1;
+    }
+
+    int size(int level) {
+        return sizes[level];
+    }
+
+    /**
+     * Returns the number of nodes made so far.
+     */
+    int getNodeCount() {
+        return count;
+    }
+
+    int level(int node) {
+        return levels[node];
+    }
+
+    int child(int node, int value) {
+        return (node == EMPTY) ? EMPTY : children[node][value];
+    }
+
+    /**
+     * Returns the set of all tuples of the levels up to the given one.
+     */
+    int full(int level) {
+        return full[level];
+    }
+
+    /**
+     * Returns the node with the given children. The array must not be changed
+     * afterwards.
+     */
+    int make(int level, int[] next) {
+        boolean empty = true;
+        for (int i = 0; i < next.length && empty; i++) {
+            empty = next[i] == EMPTY;
+        }
+        if (empty) {
+            return EMPTY;
+        }
+
+        Node node = new Node(level, next);
+        Integer known = unique.get(node);
+        if (known != null) {
+            return known;
+        }
+        if (count == levels.length) {
+            levels = Arrays.copyOf(levels, count * 2);
+            children = Arrays.copyOf(children, count * 2);
+        }
+        levels[count] = level;
+        children[count] = next;
+        unique.put(node, count);
+        return count++;
+    }
+
+    /**
+     * Returns the tuples whose value at each level is allowed.
+     *
+     * @param allowed the allowed values of each level, indexed by level; null allows all values
+     */
+    int product(boolean[][] allowed) {
+        int node = ONE;
+        for (int k = 1; k < sizes.length; k++) {
+            int[] next = new int[sizes[k]];
+            for (int i = 0; i < next.length; i++) {
+                next[i] = (allowed[k] == null || allowed[k][i]) ? node : EMPTY;
+            }
+            node = make(k, next);
+        }
+        return node;
+    }
+
+    boolean contains(int node, int[] tuple) {
+        for (int k = getLevels(); k > 0 && node != EMPTY; k--) {
+            node = children[node][tuple[k - 1]];
+        }
+        return node == ONE;
+    }
+
+    /**
+     * Returns the number of tuples in a set.
+     */
+    double cardinality(int node) {
+        return cardinality(node, new HashMap<Integer, Double>());
+    }
+
+    private double cardinality(int node, Map<Integer, Double> counted) {
+        if (node == EMPTY || node == ONE) {
+            return node;
+        }
+        Double known = counted.get(node);
+        if (known != null) {
+            return known;
+        }
+        double sum = 0;
+        for (int next : children[node]) {
+            sum += cardinality(next, counted);
+        }
+        counted.put(node, sum);
+        return sum;
+    }
+
+    int union(int a, int b) {
+        if (a == EMPTY || a == b) return b;
+        if (b == EMPTY) return a;
+
+        long key = key(Math.min(a, b), Math.max(a, b));
+        Integer known = unionCache.get(key);
+        if (known != null) {
+            return known;
+        }
+        int level = levels[a];
+        int[] next = new int[sizes[level]];
+        for (int i = 0; i < next.length; i++) {
+            next[i] = union(children[a][i], children[b][i]);
+        }
+        int result = make(level, next);
+        unionCache.put(key, result);
+        return result;
+    }
+
+    int intersect(int a, int b) {
+        if (a == EMPTY || b == EMPTY) return EMPTY;
+        if (a == b) return a;
+
+        long key = key(Math.min(a, b), Math.max(a, b));
+        Integer known = intersectCache.get(key);
+        if (known != null) {
+            return known;
+        }
+        int level = levels[a];
+        int[] next = new int[sizes[level]];
+        for (int i = 0; i < next.length; i++) {
+            next[i] = intersect(children[a][i], children[b][i]);
+        }
+        int result = make(level, next);
+        intersectCache.put(key, result);
+        return result;
+    }
+
+    int difference(int a, int b) {
+        if (a == EMPTY || a == b) return EMPTY;
+        if (b == EMPTY) return a;
+
+        long key = key(a, b);
+        Integer known = differenceCache.get(key);
+        if (known != null) {
+            return known;
+        }
+        int level = levels[a];
+        int[] next = new int[sizes[level]];
+        for (int i = 0; i < next.length; i++) {
+            next[i] = difference(children[a][i], children[b][i]);
+        }
+        int result = make(level, next);
+        differenceCache.put(key, result);
+        return result;
+    }
+
+    /**
+     * Forgets the results of the set operations; the nodes stay.
+     */
+    void clearCaches() {
+        unionCache.clear();
+        intersectCache.clear();
+        differenceCache.clear();
+    }
+
+    static long key(int a, int b) {
+        return ((long) a << 32) | (b & 0xffffffffL);
+    }
+
+    private static final class Node {
+        final int level;
+        final int[] children;
+        final int hash;
+
+        Node(int level, int[] children) {
+            this.level = level;
+            this.children = children;
+            this.hash = 31 * level + Arrays.hashCode(children);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Node)) return false;
+            Node other = (Node) o;
+            return level == other.level && Arrays.equals(children, other.children);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -27,6 +27,22 @@ public interface ModelChecker {
      */
     public boolean check(Model model, StateFormula constraint, StateFormula query);
 
+    /**
+     * verifies whether the model satisfies the query under the given
+     * constraint and returns the verdict together with the failing initial
+     * states, the counterexample traces and the timings.
+     *
+     * @param model
+     *            - model to verify
+     * @param constraint
+     *            - the constraint applied to the model before verification
+     *            against the query.
+     * @param query
+     *            - the state formula to verify the model against.
+     * @return - the result of the check.
+     */
+    public CheckResult checkWithResult(Model model, StateFormula constraint, StateFormula query);
+
     // Returns a trace of the previous check attempt if it failed.
     public String[] getTrace(Model model, SATChecker checker, Set<State> sat, StateFormula formula);
 }
@@ -0,0 +1,102 @@
+package modelChecker;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import formula.pathFormula.Always;
+import formula.pathFormula.Eventually;
+import formula.pathFormula.Next;
+import formula.pathFormula.PathFormula;
+import formula.pathFormula.Until;
+import formula.stateFormula.And;
+import formula.stateFormula.AtomicProp;
+import formula.stateFormula.ForAll;
+import formula.stateFormula.Not;
+import formula.stateFormula.Or;
+import formula.stateFormula.StateFormula;
+import formula.stateFormula.ThereExists;
+import model.Composition;
+import model.Model;
+
+/**
+ * Builds a reduced product of a composition that satisfies the same formulas
+ * in its initial states as the full product.
+ *
+ * The reduction preserves CTL without next operators, so formulas with next
+ * operators are rejected. Formulas with actions are rejected too, because the
+ * action constraints look at the incoming and outgoing transitions of a state,
+ * and the reduction removes transitions.
+ */
+public class PartialOrderReduction {
+    private final Composition composition;
+
+    public PartialOrderReduction(Composition composition) {
+        this.composition = composition;
+    }
+
+    /**
+     * Returns the reduced product for the given formulas.
+     *
+     * @param formulas the formulas that will be checked on the product
+     * @return the reduced product
+     * @throws IllegalArgumentException if a formula has a next operator or actions
+     */
+    public Model reduce(StateFormula... formulas) {
+        Set<String> labels = new HashSet<String>();
+        for (StateFormula formula : formulas) {
+            collect(formula, labels);
+        }
+        return composition.reduceFor(labels).buildModel();
+    }
+
+    /**
+     * Returns the share of component moves that the last reduction did not explore.
+     */
+    public double getReductionRatio() {
+        return composition.getReductionRatio();
+    }
+
+    private void collect(StateFormula formula, Set<String> labels) {
+        if (formula instanceof AtomicProp) {
+            labels.add(((AtomicProp) formula).label);
+        } else if (formula instanceof Not) {
+            collect(((Not) formula).stateFormula, labels);
+        } else if (formula instanceof And) {
+            collect(((And) formula).left, labels);
+            collect(((And) formula).right, labels);
+        } else if (formula instanceof Or) {
+            collect(((Or) formula).left, labels);
+            collect(((Or) formula).right, labels);
+        } else if (formula instanceof ThereExists) {
+            collect(((ThereExists) formula).pathFormula, labels);
+        } else if (formula instanceof ForAll) {
+            collect(((ForAll) formula).pathFormula, labels);
+        }
+    }
+
+    private void collect(PathFormula formula, Set<String> labels) {
+        if (formula instanceof Next) {
+            throw new IllegalArgumentException("Partial-order reduction does not preserve next operators");
+        } else if (formula instanceof Until) {
+            Until until = (Until) formula;
+            requireNoActions(until.getLeftActions());
+            requireNoActions(until.getRightActions());
+            collect(until.left, labels);
+            collect(until.right, labels);
+        } else if (formula instanceof Eventually) {
+            Eventually eventually = (Eventually) formula;
+            requireNoActions(eventually.getLeftActions());
+            requireNoActions(eventually.getRightActions());
+            collect(eventually.stateFormula, labels);
+        } else if (formula instanceof Always) {
+            requireNoActions(((Always) formula).getActions());
+            collect(((Always) formula).stateFormula, labels);
+        }
+    }
+
+    private static void requireNoActions(Set<String> actions) {
+        if (actions != null && !actions.isEmpty()) {
+            throw new IllegalArgumentException("Partial-order reduction does not preserve actions " + actions);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package modelChecker;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import formula.pathFormula.Always;
+import formula.pathFormula.Eventually;
+import formula.pathFormula.Next;
+import formula.pathFormula.PathFormula;
+import formula.pathFormula.Until;
+import formula.stateFormula.And;
+import formula.stateFormula.AtomicProp;
+import formula.stateFormula.BoolProp;
+import formula.stateFormula.ForAll;
+import formula.stateFormula.Not;
+import formula.stateFormula.Or;
+import formula.stateFormula.StateFormula;
+import formula.stateFormula.ThereExists;
+import model.CompiledModel;
+
+/**
+ * Decides in which order the operands of a conjunction or disjunction are
+ * evaluated.
+ *
+ * Every subformula gets a rough estimate of its cost, in states and edges
+ * visited, and of its selectivity, the share of states that satisfy it. Atomic
+ * propositions are estimated from the number of states carrying their label and
+ * the temporal operators from the size of the model. The operand that is
+ * expected to make the whole evaluation cheapest goes first: one that is likely
+ * to be empty in a conjunction or full in a disjunction, so that the other
+ * operand can be skipped, or one that is just cheaper.
+ *
+ * An operand that only depends on the labels of each state is evaluated over
+ * the states the first operand leaves open. Temporal operands always see all
+ * states, because a smaller universe would cut their paths. The planner counts
+ * what it did for the current check and the estimated cost of the operands it
+ * skipped.
+ */
+class QueryPlanner {
+    private final CompiledModel model;
+    private final Map<StateFormula, Estimate> estimates = new IdentityHashMap<StateFormula, Estimate>();
+    private int reordered;
+    private int skipped;
+    private int restricted;
+    private long savedCost;
+
+    /**
+     * The estimated cost and selectivity of a formula, and whether it depends
+     * on the labels of each state alone.
+     */
+    static final class Estimate {
+        final double cost;
+        final double selectivity;
+        final boolean local;
+
+        Estimate(double cost, double selectivity, boolean local) {
+            this.cost = cost;
+            this.selectivity = Math.max(0, Math.min(1, selectivity));
+            this.local = local;
+        }
+    }
+
+    QueryPlanner(CompiledModel model) {
+        this.model = model;
+    }
+
+    /**
+     * Decides whether the right operand of a conjunction goes first, and counts
+     * the decision.
+     */
+    boolean rightFirst(And formula) {
+        Estimate left = estimate(formula.left);
+        Estimate right = estimate(formula.right);
+        boolean swap = expectedAnd(right, left) < expectedAnd(left, right);
+        if (swap) reordered++;
+        return swap;
+    }
+
+    /**
+     * Decides whether the right operand of a disjunction goes first, and counts
+     * the decision.
+     */
+    boolean rightFirst(Or formula) {
+        Estimate left = estimate(formula.left);
+        Estimate right = estimate(formula.right);
+        boolean swap = expectedOr(right, left) < expectedOr(left, right);
+        if (swap) reordered++;
+        return swap;
+    }
+
+    /**
+     * Returns whether a formula only depends on the labels of each state, so
+     * that it can be evaluated over any subset of the states.
+     */
+    boolean isLocal(StateFormula formula) {
+        return estimate(formula).local;
+    }
+
+    /**
+     * Records that an operand was not evaluated.
+     */
+    void skipped(StateFormula formula) {
+        skipped++;
+        savedCost += (long) estimate(formula).cost;
+    }
+
+    /**
+     * Records that an operand was evaluated over the states the other operand left open.
+     */
+    void restricted() {
+        restricted++;
+    }
+
+    int getReordered() {
+        return reordered;
+    }
+
+    int getSkipped() {
+        return skipped;
+    }
+
+    int getRestricted() {
+        return restricted;
+    }
+
+    long getSavedCost() {
+        return savedCost;
+    }
+
+    /**
+     * Starts counting for the next check. The estimates are kept.
+     */
+    void reset() {
+        reordered = 0;
+        skipped = 0;
+        restricted = 0;
+        savedCost = 0;
+    }
+
+    /**
+     * Expected cost of a conjunction that evaluates first, then second unless first is empty.
+     */
+    private double expectedAnd(Estimate first, Estimate second) {
+        double nonEmpty = 1 - Math.pow(1 - first.selectivity, model.getStateCount());
+        double secondCost = second.local ? second.cost * first.selectivity : second.cost;
+        return first.cost + nonEmpty * secondCost;
+    }
+
+    /**
+     * Expected cost of a disjunction that evaluates first, then second unless first is full.
+     */
+    private double expectedOr(Estimate first, Estimate second) {
+        double notFull = 1 - Math.pow(first.selectivity, model.getStateCount());
+        double secondCost = second.local ? second.cost * (1 - first.selectivity) : second.cost;
+        return first.cost + notFull * secondCost;
+    }
+
+    Estimate estimate(StateFormula formula) {
+        Estimate estimate = estimates.get(formula);
+        if (estimate == null) {
+            estimate = compute(formula);
+            estimates.put(formula, estimate);
+        }
+        return estimate;
+    }
+
+    private Estimate compute(StateFormula formula) {
+        int n = Math.max(1, model.getStateCount());
+
+        if (formula instanceof BoolProp) {
+            return new Estimate(1, ((BoolProp) formula).value ? 1 : 0, true);
+        } else if (formula instanceof AtomicProp) {
+            int label = model.getLabelId(((AtomicProp) formula).label);
+            int carrying = (label < 0) ? 0 : model.labelEnd(label) - model.labelBegin(label);
+            return new Estimate(1 + carrying, (double) carrying / n, true);
+        } else if (formula instanceof Not) {
+            Estimate operand = estimate(((Not) formula).stateFormula);
+            return new Estimate(operand.cost + n, 1 - operand.selectivity, operand.local);
+        } else if (formula instanceof And) {
+            Estimate left = estimate(((And) formula).left);
+            Estimate right = estimate(((And) formula).right);
+            return new Estimate(left.cost + right.cost + n, left.selectivity * right.selectivity,
+                    left.local && right.local);
+        } else if (formula instanceof Or) {
+            Estimate left = estimate(((Or) formula).left);
+            Estimate right = estimate(((Or) formula).right);
+            return new Estimate(left.cost + right.cost + n,
+                    left.selectivity + right.selectivity - left.selectivity * right.selectivity,
+                    left.local && right.local);
+        } else if (formula instanceof ThereExists) {
+            return temporal(((ThereExists) formula).pathFormula, true);
+        } else if (formula instanceof ForAll) {
+            return temporal(((ForAll) formula).pathFormula, false);
+        }
+        return new Estimate(n, 0.5, false);
+    }
+
+    /**
+     * Estimates a temporal operator: a pass over the edges for Next, a backward
+     * search or count-down over states and edges for the others, and one more
+     * pass over the edges if actions have to be filtered.
+     */
+    private Estimate temporal(PathFormula path, boolean exists) {
+        int n = Math.max(1, model.getStateCount());
+        int m = model.getEdgeCount();
+        double successors = Math.max(1, (double) m / n);
+
+        if (path instanceof Next) {
+            Next next = (Next) path;
+            Estimate operand = estimate(next.stateFormula);
+            double actions = next.actionsIsEmpty() ? 0 : m;
+            double selectivity = exists ? 1 - Math.pow(1 - operand.selectivity, successors)
+                    : Math.pow(operand.selectivity, successors);
+            return new Estimate(operand.cost + n + m + actions, selectivity, false);
+        } else if (path instanceof Until) {
+            Until until = (Until) path;
+            Estimate left = estimate(until.left);
+            Estimate right = estimate(until.right);
+            double actions = (until.getLeftActions().isEmpty() && until.getRightActions().isEmpty()) ? 0 : m;
+            double spread = exists ? 0.5 : 0.25;
+            return new Estimate(left.cost + right.cost + n + (exists ? m : 2 * m) + actions,
+                    right.selectivity + (1 - right.selectivity) * left.selectivity * spread, false);
+        } else if (path instanceof Eventually) {
+            Eventually eventually = (Eventually) path;
+            Estimate operand = estimate(eventually.stateFormula);
+            double actions = (eventually.getLeftActions().isEmpty() && eventually.getRightActions().isEmpty()) ? 0 : m;
+            double spread = exists ? 0.5 : 0.25;
+            return new Estimate(operand.cost + n + (exists ? m : 2 * m) + actions,
+                    operand.selectivity + (1 - operand.selectivity) * spread, false);
+        } else if (path instanceof Always) {
+            Always always = (Always) path;
+            Estimate operand = estimate(always.stateFormula);
+            double actions = always.actionsIsEmpty() ? 0 : m;
+            return new Estimate(operand.cost + n + (exists ? 2 * m : m) + actions,
+                    operand.selectivity * (exists ? 0.5 : 0.25), false);
+        }
+        return new Estimate(n + m, 0.5, false);
+    }
+}
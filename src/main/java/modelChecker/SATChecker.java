@@ -3,19 +3,63 @@ package modelChecker;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 import formula.pathFormula.*;
 import formula.stateFormula.*;
 import model.*;
 
+/**
+ * Computes satisfaction sets of asCTL formulas.
+ *
+ * A checker only holds a reference to an immutable CompiledModel, and all
+ * per-check buffers are taken from thread-local scratch space, so any number of
+ * checkers can work on the same compiled model from different threads.
+ *
+ * Intermediate state sets are borrowed from the scratch pool and released as
+ * soon as they are used up, so once the pool is warm a check only allocates the
+ * set it returns, and not even that if the caller hands it back with recycle().
+ */
 public class SATChecker {
-    private Model model;
+    private static final BoolProp TRUE = new BoolProp(true);
+    private static final int[] NO_ACTIONS = new int[0];
+
+    private final CompiledModel model;
+    private SatCache cache;
+    private QueryPlanner planner;
 
     public SATChecker(Model model) {
+        this(model.compile());
+    }
+
+    public SATChecker(CompiledModel model) {
         this.model = model;
     }
 
+    public CompiledModel getModel() {
+        return model;
+    }
+
+    /**
+     * Sets the cache that satisfaction sets of temporal subformulas are looked up in
+     * and stored to.
+     * @param cache the cache, or null to disable caching
+     */
+    public void setCache(SatCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Sets the planner that orders the operands of conjunctions and disjunctions.
+     * @param planner the planner, or null to evaluate them in syntax order
+     */
+    void setPlanner(QueryPlanner planner) {
+        this.planner = planner;
+    }
+
+    QueryPlanner getPlanner() {
+        return planner;
+    }
+
     /**
      * Computes the satisfaction model checking for the given formula.
      * @param formula the state formula
@@ -23,45 +67,371 @@ public class SATChecker {
      * @return The satisfaction set that contains the all states that satisfy the given formula.
      */
     public Set<State> getSat(StateFormula formula, Set<State> states) {
+        return toStates(getSat(formula, toStateSet(states)));
+    }
+
+    /**
+     * Computes the satisfaction model checking for the given formula.
+     * Successors outside the given set of states are ignored, so the paths
+     * considered by the temporal operators stay inside it.
+     *
+     * @param formula the state formula
+     * @param states the set of all states that should be checked, it is not modified
+     * @return A new set that contains the all states that satisfy the given formula.
+     */
+    public StateSet getSat(StateFormula formula, StateSet states) {
+        return getSat(formula, states, null);
+    }
+
+    /**
+     * Hands back a set returned by getSat() once the caller is done with it, so
+     * later checks on the same thread can reuse it instead of allocating a new
+     * one. The set must not be used afterwards.
+     *
+     * @param set the set, which is cleared
+     */
+    public void recycle(StateSet set) {
+        release(set);
+    }
+
+    /**
+     * Computes the satisfaction set of a formula, stopping its outermost
+     * fixpoint as soon as the goal is decided. Negations pass the negated goal
+     * on to their operand. If the goal is decided afterwards, the returned set
+     * is incomplete.
+     *
+     * @param formula the state formula
+     * @param states the set of all states that should be checked, it is not modified
+     * @param goal the goal, or null to compute the whole set
+     * @return the satisfaction set, or a partial one if the goal was decided
+     */
+    StateSet getSat(StateFormula formula, StateSet states, Goal goal) {
+        // only the temporal operators are worth caching, and only over the full state space
+        boolean cacheable = cache != null && (formula instanceof ThereExists || formula instanceof ForAll)
+                && states.cardinality() == model.getStateCount();
+
+        if (cacheable) {
+            StateSet cached = cache.get(model, formula);
+            if (cached != null) {
+                return copyOf(cached);
+            }
+        }
+
+        StateSet sat = evaluate(formula, states, goal);
+
+        if (cacheable && (goal == null || !goal.isDecided())) {
+            cache.put(model, formula, sat.copy());
+        }
+        return sat;
+    }
+
+    private StateSet evaluate(StateFormula formula, StateSet states, Goal goal) {
         // Use "instanceof" to check the type of StateFormula instance
         if (formula instanceof BoolProp) {
             return getSatBool((BoolProp) formula, states);
         } else if (formula instanceof AtomicProp) {
             return getSatAtomicProp((AtomicProp) formula, states);
         } else if (formula instanceof And) {
-            // "(a And b) = Not(Not a Or Not b)" by CNF propery
-            Or or = new Or(new Not(((And) formula).left), new Not(((And) formula).right));
-            return getSatNot(new Not(or), states);
+            return getSatAnd((And) formula, states);
         } else if (formula instanceof Or) {
             return getSatOr((Or) formula, states);
         } else if (formula instanceof Not) {
-            return getSatNot((Not) formula, states);
+            return getSatNot((Not) formula, states, goal);
         } else if (formula instanceof ThereExists) {
-            return getSatThereExists((ThereExists) formula, states);
+            return getSatThereExists((ThereExists) formula, states, goal);
         } else if (formula instanceof ForAll) {
-            return getSatForAll((ForAll) formula, states);
+            return getSatForAll((ForAll) formula, states, goal);
         }
 
-        return new HashSet<>();
+        return model.newStateSet();
+    }
+
+    /**
+     * Converts a set of states of the model to a state set.
+     * States that do not belong to the model are ignored.
+     *
+     * @param states the states
+     * @return the state set
+     */
+    public StateSet toStateSet(Set<State> states) {
+        StateSet set = model.newStateSet();
+
+        for (State state : states) {
+            int index = model.indexOf(state.getName());
+            if (index >= 0) {
+                set.add(index);
+            }
+        }
+        return set;
+    }
+
+    /**
+     * Converts a state set back to the states of the model.
+     * @param set the state set
+     * @return a new, modifiable set of states
+     */
+    public Set<State> toStates(StateSet set) {
+        Set<State> states = new HashSet<State>();
+
+        for (int s = set.nextState(0); s >= 0; s = set.nextState(s + 1)) {
+            states.add(model.getState(s));
+        }
+        return states;
     }
 
     /**
      * Computes the satisfaction model checking for the path formula "ForAll".
+     *
+     * Every universal operator has its own algorithm that gives the same result as
+     * its ENF translation, state by state, without evaluating the negated
+     * existential formulas of the translation.
+     *
      * @param formula path formula "ForAll"
      * @param states the set of all states that should be checked
      * @return The satisfaction set that contains the all states that satisfy the given formula.
      */
-    private Set<State> getSatForAll(ForAll formula, Set<State> states) {
+    private StateSet getSatForAll(ForAll formula, StateSet states, Goal goal) {
         PathFormula pathFormula = formula.pathFormula;
-        ThereExists exists = new ThereExists(pathFormula);
-        Set<State> sat = this.getSatThereExists(exists, states);
 
-        // check if the satisfaction set contains all states
-        if (sat.containsAll(states)) {
-            return sat;
+        // use "instanceof" to check the type of PathFormula instance
+        if (pathFormula instanceof Next) {
+            return getSatForAllNext((Next) pathFormula, states);
+        } else if (pathFormula instanceof Until) {
+            Until until = (Until) pathFormula;
+            return getSatForAllUntil(until.left, until.right, until.getLeftActions(), until.getRightActions(), states, goal);
+        } else if (pathFormula instanceof Always) {
+            return getSatForAllAlways((Always) pathFormula, states, goal);
+        } else if (pathFormula instanceof Eventually) {
+            return getSatForAllEventually((Eventually) pathFormula, states, goal);
+        }
+
+        return model.newStateSet();
+    }
+
+    /**
+     * Computes the satisfaction model checking for the formula "ForAll Next" in a
+     * single pass: a state satisfies it if none of its successors is a state that
+     * violates the formula and passes the action filter (a state without successors
+     * satisfies it).
+     *
+     * @param next path formula "Next"
+     * @param states the set of all states that should be checked
+     * @return The satisfaction set that contains the all states that satisfy the given formula.
+     */
+    private StateSet getSatForAllNext(Next next, StateSet states) {
+        StateSet fStates = getSat(next.stateFormula, states);
+        int[] actionIds = next.actionsIsEmpty() ? null : actionIds(next.getActions());
+        StateSet newSetOfStates = newSet();
+
+        for (int s = states.nextState(0); s >= 0; s = states.nextState(s + 1)) {
+            boolean holds = true;
+
+            for (int e = model.succBegin(s); e < model.succEnd(s) && holds; e++) {
+                int target = model.edgeTarget(e);
+                if (!states.contains(target) || fStates.contains(target)) continue;
+
+                holds = actionIds != null && !passesIncomingActions(target, actionIds, states);
+            }
+            if (holds) newSetOfStates.add(s);
+        }
+
+        release(fStates);
+        return newSetOfStates;
+    }
+
+    /**
+     * Computes the satisfaction model checking for the formula "ForAll Always".
+     *
+     * The violating states are searched backwards like in "ThereExists Eventually",
+     * and every state reached is removed from the result.
+     *
+     * @param always path formula "Always"
+     * @param states the set of all states that should be checked
+     * @return The satisfaction set that contains the all states that satisfy the given formula.
+     */
+    private StateSet getSatForAllAlways(Always always, StateSet states, Goal goal) {
+        StateSet violating = copyOf(states);
+        removeAndRelease(violating, getSat(always.stateFormula, states));
+
+        boolean actions_notEmpty = !always.actionsIsEmpty();
+        int[] actionIds = actionIds(always.getActions());
+        if (actions_notEmpty) {
+            filterByIncomingActions(violating, actionIds, states);
+        }
+
+        StateSet newSetOfStates = copyOf(states);
+        newSetOfStates.removeAll(violating);
+        if (goal != null && goal.startShrinking(newSetOfStates)) {
+            release(violating);
+            return newSetOfStates;
+        }
+        int[] queue = Scratch.get().queue(model.getStateCount());
+        int head = 0;
+        int tail = 0;
+
+        for (int s = violating.nextState(0); s >= 0; s = violating.nextState(s + 1)) {
+            queue[tail++] = s;
+        }
+
+        search:
+        while (head < tail) {
+            int next = queue[head++];
+
+            if (actions_notEmpty && violating.contains(next)) {
+                // an edge into a violating state must carry one of the actions
+                for (int action : actionIds) {
+                    for (int i = model.predBegin(next, action); i < model.predEnd(next, action); i++) {
+                        int state = model.actionPredSource(i);
+                        if (!newSetOfStates.contains(state)) continue;
+
+                        newSetOfStates.remove(state);
+                        queue[tail++] = state;
+                        if (goal != null && goal.left(state)) break search;
+                    }
+                }
+                continue;
+            }
+
+            for (int i = model.predBegin(next); i < model.predEnd(next); i++) {
+                int state = model.predSource(i);
+                if (!newSetOfStates.contains(state)) continue;
+
+                newSetOfStates.remove(state);
+                queue[tail++] = state;
+                if (goal != null && goal.left(state)) break search;
+            }
+        }
+
+        release(violating);
+        return newSetOfStates;
+    }
+
+    /**
+     * Computes the satisfaction model checking for the formula "ForAll Eventually".
+     *
+     * The states that violate the formula and pass the right action filter are the
+     * candidates. Every other state satisfies the formula, and a candidate does
+     * once all of its successors among the candidates do, which is counted down
+     * over the incoming edges.
+     *
+     * @param eventually path formula "Eventually"
+     * @param states the set of all states that should be checked
+     * @return The satisfaction set that contains the all states that satisfy the given formula.
+     */
+    private StateSet getSatForAllEventually(Eventually eventually, StateSet states, Goal goal) {
+        StateSet candidates = copyOf(states);
+        removeAndRelease(candidates, getSat(eventually.stateFormula, states));
+
+        if (!eventually.rightIsEmpty()) {
+            filterByIncomingActions(candidates, actionIds(eventually.getRightActions()), states);
+        }
+
+        StateSet newSetOfStates = copyOf(states);
+        newSetOfStates.removeAll(candidates);
+        countDown(candidates, newSetOfStates, states, goal);
+        release(candidates);
+        return newSetOfStates;
+    }
+
+    /**
+     * Computes the satisfaction model checking for the formula "ForAll Until".
+     *
+     * Without actions, a state satisfies A(P U Q) if it satisfies Q, or it satisfies P
+     * and all of its successors satisfy the formula; this is counted down over the
+     * incoming edges starting from the right states. With actions the result is the
+     * complement of the two existential parts of the ENF translation, which are
+     * computed from the left and right sets evaluated only once.
+     *
+     * @param left the left formula
+     * @param right the right formula
+     * @param leftActions the actions allowed on the left part of the path
+     * @param rightActions the actions allowed on the edge into the right part
+     * @param states the set of all states that should be checked
+     * @return The satisfaction set that contains the all states that satisfy the given formula.
+     */
+    private StateSet getSatForAllUntil(StateFormula left, StateFormula right, Set<String> leftActions,
+            Set<String> rightActions, StateSet states, Goal goal) {
+        StateSet leftStates = getSat(left, states);
+        StateSet rightStates = getSat(right, states);
+
+        StateSet notRight = copyOf(states);
+        notRight.removeAll(rightStates);
+
+        if (leftActions.isEmpty() && rightActions.isEmpty()) {
+            StateSet candidates = notRight;
+            candidates.retainAll(leftStates);
+            countDown(candidates, rightStates, states, goal);
+            release(candidates);
+            release(leftStates);
+            return rightStates;
+        }
+        release(rightStates);
+
+        // not(E(not Q U (not P and not Q))) and not(EG(not Q))
+        StateSet untilRight = copyOf(notRight);
+        removeAndRelease(untilRight, leftStates);
+
+        StateSet violating = existsUntil(copyOf(notRight), untilRight, leftActions, rightActions, states, null);
+        addAndRelease(violating, existsAlways(notRight, rightActions, states, null));
+
+        StateSet newSetOfStates = copyOf(states);
+        removeAndRelease(newSetOfStates, violating);
+        return newSetOfStates;
+    }
+
+    /**
+     * Adds every candidate whose successors are all in the result to the result,
+     * until no more can be added. Successors outside the given states are
+     * ignored, so a candidate without successors is added right away.
+     *
+     * @param candidates the states that may be added
+     * @param result the states known to be in the result, updated in place
+     * @param states the set of all states that should be checked
+     * @param goal the goal to stop at, or null
+     * @return the result
+     */
+    private StateSet countDown(StateSet candidates, StateSet result, StateSet states, Goal goal) {
+        if (goal != null && goal.startGrowing(result)) {
+            return result;
+        }
+        Scratch scratch = Scratch.get();
+        int[] counters = scratch.counters(model.getStateCount());
+        int[] queue = scratch.queue(model.getStateCount());
+        int head = 0;
+        int tail = 0;
+
+        // count the successors of each candidate that are not in the result yet
+        for (int s = candidates.nextState(0); s >= 0; s = candidates.nextState(s + 1)) {
+            int count = 0;
+            for (int e = model.succBegin(s); e < model.succEnd(s); e++) {
+                int target = model.edgeTarget(e);
+                if (states.contains(target) && !result.contains(target)) count++;
+            }
+            counters[s] = count;
+            if (count == 0) queue[tail++] = s;
+        }
+
+        for (int i = 0; i < tail; i++) {
+            result.add(queue[i]);
+            if (goal != null && goal.entered(queue[i])) return result;
         }
 
-        return new HashSet<>();
+        // a candidate is added once the last of its successors outside the result is added
+        while (head < tail) {
+            int added = queue[head++];
+
+            for (int i = model.predBegin(added); i < model.predEnd(added); i++) {
+                int state = model.predSource(i);
+
+                if (candidates.contains(state) && !result.contains(state) && --counters[state] == 0) {
+                    result.add(state);
+                    queue[tail++] = state;
+                    if (goal != null && goal.entered(state)) return result;
+                }
+            }
+        }
+
+        return result;
     }
 
     /**
@@ -70,289 +440,345 @@ public class SATChecker {
      * @param states the set of all states that should be checked
      * @return The satisfaction set that contains the all states that satisfy the given formula.
      */
-    private Set<State> getSatThereExists(ThereExists formula, Set<State> states) {
+    private StateSet getSatThereExists(ThereExists formula, StateSet states, Goal goal) {
         PathFormula pathFormula = formula.pathFormula;
 
         // use "instanceof" to check the type of PathFormula instance
         if (pathFormula instanceof Next) {
-            return getSatExistsNext(formula, states);
+            return getSatExistsNext((Next) pathFormula, states);
         } else if (pathFormula instanceof Until) {
-            return getSatExistsUntil(formula, states);
+            Until until = (Until) pathFormula;
+            return getSatExistsUntil(until.left, until.right, until.getLeftActions(), until.getRightActions(), states, goal);
         } else if (pathFormula instanceof Always) {
-            return getSatExistsAlways(formula, states);
+            return getSatExistsAlways((Always) pathFormula, states, goal);
         } else if (pathFormula instanceof Eventually) {
             // "Exists Eventually = Exists True Until" by min-set
             // Fφ == [trueU(φ)]
             Eventually e = (Eventually) pathFormula;
-            Until u = new Until(new BoolProp(true), e.stateFormula, e.getLeftActions(), e.getRightActions());
-            return getSatExistsUntil(new ThereExists(u), states);
+            return getSatExistsUntil(TRUE, e.stateFormula, e.getLeftActions(), e.getRightActions(), states, goal);
         }
 
-        return new HashSet<>();
+        return model.newStateSet();
     }
 
     /**
      * The aim of this method is to compute the satisfaction model checking for the formula "ThereExists Until".
-     * @param formula path formula "ThereExists"
+     *
+     * Starting from the right states, the least fixpoint is computed by a single
+     * backward search over the incoming edges: a left state is added once it has an
+     * edge into the set. If right actions are given, an edge into a right state only
+     * counts if it carries one of them.
+     *
+     * @param left the left formula
+     * @param right the right formula
+     * @param leftActions the actions allowed on the left part of the path
+     * @param rightActions the actions allowed on the edge into the right part
      * @param states the set of all states that should be checked
      * @return The satisfaction set that contains the all states that satisfy the given formula.
      */
-    private Set<State> getSatExistsUntil(ThereExists formula, Set<State> states) {
-        PathFormula pathFormula = formula.pathFormula;
-
-        // check if the pathFormula is an instace of Until class
-        if (!(pathFormula instanceof Until))
-            return getSatThereExists(formula, states);
-
-        StateFormula left = ((Until) pathFormula).left;
-        StateFormula right = ((Until) pathFormula).right;
-        Set<State> leftStates = getSat(left, new HashSet<State>(states));
-        Set<State> rightStates = getSat(right, new HashSet<State>(states));
-        Set<String> rightActions = ((Until) pathFormula).getRightActions();
-        Set<String> leftActions = ((Until) pathFormula).getLeftActions();
+    private StateSet getSatExistsUntil(StateFormula left, StateFormula right, Set<String> leftActions,
+            Set<String> rightActions, StateSet states, Goal goal) {
+        return existsUntil(getSat(left, states), getSat(right, states), leftActions, rightActions, states, goal);
+    }
 
+    /**
+     * Computes "ThereExists Until" from the satisfaction sets of its operands.
+     * @param leftStates the states that satisfy the left formula, released
+     * @param rightStates the states that satisfy the right formula, released
+     * @param leftActions the actions allowed on the left part of the path
+     * @param rightActions the actions allowed on the edge into the right part
+     * @param states the set of all states that should be checked
+     * @param goal the goal to stop at, or null
+     * @return The satisfaction set that contains the all states that satisfy the formula.
+     */
+    private StateSet existsUntil(StateSet leftStates, StateSet rightStates, Set<String> leftActions,
+            Set<String> rightActions, StateSet states, Goal goal) {
         boolean rightAction_notEmpty = !rightActions.isEmpty();  // check if the rightActions is not empty
         boolean leftAction_notEmpty = !leftActions.isEmpty();    // check if the leftActions is not empty
+        int[] rightActionIds = actionIds(rightActions);
 
         // check if the set of right actions of the until formula is empty
         if (rightAction_notEmpty) {
-            rightStates = this.getSetOfStatesByCheckingActionConstraints(rightStates, rightActions);
+            filterByIncomingActions(rightStates, rightActionIds, states);
         }
 
         // check if the set of left actions of the until formula is empty
         if (leftAction_notEmpty) {
-            leftStates = this.getSetOfStatesByCheckingActionConstraints(leftStates, rightStates, leftActions);
+            filterByOutgoingActions(leftStates, actionIds(leftActions), states);
         }
 
-        Set<State> newSetOfStates = new HashSet<>(rightStates);
-
-        // run infinite loop to check all paths
-        while (true) {
-            Set<State> statesToRemove = new HashSet<>();
-            // subtract 2 sets to avoid the cycle
-            Set<State> s = CollectionHelper.substraction(leftStates, newSetOfStates);
-
-            for (State state : s) {
-                Set<State> nextStates = getSetOfNextStates(state, states);
-                Set<State> nextStatesToRemove = new HashSet<>();
-
-                for (State nextState : nextStates) {
-                    // validate the set of right states
-                    if (rightAction_notEmpty && rightStates.contains(nextState)) {
-                        // Get set of transitions by checking the target name
-                        String targetName = nextState.getName();
-
-                        // get the set of transitions, where the target of the transition is the nextState and the source of the transition is the current state
-                        Set<Transition> transitions = model.getTargetTransition(targetName).stream().filter(x -> x.getSource().equals(state.getName())).collect(Collectors.toSet());
-
-                        // check if the set of transitions is empty
-                        if (transitions.isEmpty())
-                            continue;
-
-                        int count = 0; // to count the number of transitions that does not have the actions that are defined in the constraint
-
-                        for (Transition tr : transitions) {
-                            // get the actions that the transition contains
-                            Set<String> setOfActions_TargetIsNextState = Arrays.stream(tr.getActions()).collect(Collectors.toSet());
-
-                            // Check if the intersection of the setOfActions_TargetIsNextState and rightActions is empty.
-                            // The rightActions contains all right actions, and the setOfActions_TargetIsNextState contains all actions
-                            // that the current transition has.
-                            // Thus, the intersection of them will not be an empty set if the current transition has the action that we are looking for
-                            boolean isEmpty = CollectionHelper.intersection(setOfActions_TargetIsNextState, rightActions).isEmpty();
+        StateSet newSetOfStates = copyOf(rightStates);
+        if (goal != null && goal.startGrowing(newSetOfStates)) {
+            release(leftStates);
+            release(rightStates);
+            return newSetOfStates;
+        }
+        int[] queue = Scratch.get().queue(model.getStateCount());
+        int head = 0;
+        int tail = 0;
 
-                            if (isEmpty) count += 1;
-                        }
+        for (int s = rightStates.nextState(0); s >= 0; s = rightStates.nextState(s + 1)) {
+            queue[tail++] = s;
+        }
 
-                        // check if all transitions do not have the actions that we are looking for
-                        if (count == transitions.size())
-                            nextStatesToRemove.add(nextState);
+        // search backwards from the states that are already known to satisfy the formula
+        search:
+        while (head < tail) {
+            int next = queue[head++];
+
+            if (rightAction_notEmpty && rightStates.contains(next)) {
+                // an edge into a right state must carry one of the right actions
+                for (int action : rightActionIds) {
+                    for (int i = model.predBegin(next, action); i < model.predEnd(next, action); i++) {
+                        int state = model.actionPredSource(i);
+                        if (newSetOfStates.contains(state) || !leftStates.contains(state)) continue;
+
+                        newSetOfStates.add(state);
+                        queue[tail++] = state;
+                        if (goal != null && goal.entered(state)) break search;
                     }
                 }
-
-                nextStates.removeAll(nextStatesToRemove); // remove all unnecessary states
-                nextStates.retainAll(newSetOfStates); // retain all states those who satisfy the formula
-
-                if (nextStates.isEmpty()) statesToRemove.add(state);
+                continue;
             }
 
-            s.removeAll(statesToRemove); // remove all states that do not satisfy the action constraints
-
-            // if there is no more states to add, then break the inifinte loop
-            if (s.isEmpty()) break;
+            for (int i = model.predBegin(next); i < model.predEnd(next); i++) {
+                int state = model.predSource(i);
+                if (newSetOfStates.contains(state) || !leftStates.contains(state)) continue;
 
-            newSetOfStates.addAll(s);
+                newSetOfStates.add(state);
+                queue[tail++] = state;
+                if (goal != null && goal.entered(state)) break search;
+            }
         }
 
+        release(leftStates);
+        release(rightStates);
         return newSetOfStates;
     }
 
     /**
      * Computes the satisfaction model checking for the formula "ThereExists Next".
-     * @param formula formula "ThereExists Next"
+     * @param next path formula "Next"
      * @param states the set of all states that should be checked
      * @return The satisfaction set that contains the all states that satisfy the given formula.
      */
-    private Set<State> getSatExistsNext(ThereExists formula, Set<State> states) {
-        PathFormula pathFormula = formula.pathFormula;
-
-        // check if the pathFormula is an instace of Next class
-        if (!(pathFormula instanceof Next)) return getSatThereExists(formula, states);
-
-        StateFormula stateFormula = ((Next) pathFormula).stateFormula;
-        Set<State> fStates = getSat(stateFormula, states); //gets the set of states that satisfy the given formula
-        Set<String> actions = ((Next)pathFormula).getActions();
+    private StateSet getSatExistsNext(Next next, StateSet states) {
+        StateSet fStates = getSat(next.stateFormula, states); //gets the set of states that satisfy the given formula
 
-        if (!actions.isEmpty()) {
+        if (!next.actionsIsEmpty()) {
             // update the set of satisfaction states by checking the action constraints
-            fStates = getSetOfStatesByCheckingActionConstraints(fStates, ((Next) pathFormula).getActions());
+            filterByIncomingActions(fStates, actionIds(next.getActions()), states);
         }
 
-        Set<State> newSetOfStates = new HashSet<>();
+        StateSet newSetOfStates = newSet();
 
-        // use for loop to iterate states in the set
-        for(State state : states){
-            Set<State> nextStates = getSetOfNextStates(state, states);
-            nextStates.retainAll(fStates);
+        // a state satisfies the formula if one of its successors does
+        for (int s = fStates.nextState(0); s >= 0; s = fStates.nextState(s + 1)) {
+            if (!states.contains(s)) continue;
 
-            if (!nextStates.isEmpty()) newSetOfStates.add(state);
+            for (int i = model.predBegin(s); i < model.predEnd(s); i++) {
+                int state = model.predSource(i);
+                if (states.contains(state)) newSetOfStates.add(state);
+            }
         }
 
+        release(fStates);
         return newSetOfStates;
     }
 
     /**
-     * This method returns the set of next states of the current state.
-     * @param state The current state
+     * Compute the Exists Always formula for the satisfaction checking.
+     *
+     * Every state in the set counts its successors that are still in the set. A
+     * state whose count drops to zero is removed, and its predecessors' counts are
+     * decremented, so each edge is looked at a constant number of times.
+     *
+     * @param always path formula "Always"
      * @param states the set of all states that should be checked
-     * @return The set of states that are next state of the current state.
+     * @return The satisfaction set that contains the all states that satisfy the given formula.
      */
-    private Set<State> getSetOfNextStates(State state, Set<State> states) {
-        // get the set of names of next states
-        Set<String> nextStates_str = Arrays.asList(model.getTransitions()).stream().filter(x -> x.getSource().equals(state.getName())).map(x -> x.getTarget()).collect(Collectors.toSet());
-        // get the set of next states
-        Set<State> nextStates = states.stream().filter(x -> nextStates_str.contains(x.getName())).collect(Collectors.toSet());
-        return nextStates;
+    private StateSet getSatExistsAlways(Always always, StateSet states, Goal goal) {
+        // gets the set of states that satisfy the given formula
+        return existsAlways(getSat(always.stateFormula, states), always.getActions(), states, goal);
     }
 
     /**
-     * Compute the Exists Always formula for the satisfaction checking.
-     * @param formula
-     * @param states
-     * @return
+     * Computes "ThereExists Always" from the satisfaction set of its operand.
+     * @param fStates the states that satisfy the formula, updated in place
+     * @param actions the actions allowed on the path
+     * @param states the set of all states that should be checked
+     * @param goal the goal to stop at, or null
+     * @return The satisfaction set that contains the all states that satisfy the formula.
      */
-    private Set<State> getSatExistsAlways(ThereExists formula, Set<State> states) {
-        PathFormula pathFormula = formula.pathFormula;
-
-        // check if the pathFormula is an instace of Always class
-        if (!(pathFormula instanceof Always)) return getSatThereExists(formula, states);
-
-        StateFormula stateFormula = ((Always) pathFormula).stateFormula;
-        Set<State> fStates = getSat(stateFormula, states); // gets the set of states that satisfy the given formula
-        Set<String> actions = ((Always) pathFormula).getActions();
-
+    private StateSet existsAlways(StateSet fStates, Set<String> actions, StateSet states, Goal goal) {
         if (!actions.isEmpty()) {
             // update the set of satisfaction states by checking the action constraints
-            fStates = getSetOfStatesByCheckingActionConstraints(fStates, ((Always) pathFormula).getActions());
+            filterByIncomingActions(fStates, actionIds(actions), states);
         }
 
-        Set<State> newSetOfStates = new HashSet<>(fStates);
-
-        // use an infinite loop to check all states of all paths
-        while (true) {
-            Set<State> s = new HashSet<>(newSetOfStates);
-            Set<State> statesToRemove = new HashSet<>();
+        StateSet newSetOfStates = fStates;
+        if (goal != null && goal.startShrinking(newSetOfStates)) {
+            return newSetOfStates;
+        }
+        Scratch scratch = Scratch.get();
+        int[] counters = scratch.counters(model.getStateCount());
+        int[] queue = scratch.queue(model.getStateCount());
+        int head = 0;
+        int tail = 0;
+
+        // count the successors of each state that satisfy the state formula
+        for (int s = newSetOfStates.nextState(0); s >= 0; s = newSetOfStates.nextState(s + 1)) {
+            int count = 0;
+            for (int e = model.succBegin(s); e < model.succEnd(s); e++) {
+                if (newSetOfStates.contains(model.edgeTarget(e))) count++;
+            }
+            counters[s] = count;
+            if (count == 0) queue[tail++] = s;
+        }
 
-            // use for loop to iterate the states in the set
-            for (State state : s) {
-                Set<State> nextStates = getSetOfNextStates(state, states);
-                nextStates.retainAll(newSetOfStates); //retain the states that satisfy the state formula
+        for (int i = 0; i < tail; i++) {
+            newSetOfStates.remove(queue[i]);
+            if (goal != null && goal.left(queue[i])) return newSetOfStates;
+        }
 
-                // check if all next states do not satisfy the given state formula
-                if (nextStates.isEmpty()) statesToRemove.add(state);
-            }
+        // remove the states without any successor left in the set
+        while (head < tail) {
+            int removed = queue[head++];
 
-            // check if there is no more states to remove from the set
-            if (statesToRemove.size() == 0) break;
+            for (int i = model.predBegin(removed); i < model.predEnd(removed); i++) {
+                int state = model.predSource(i);
 
-            newSetOfStates.removeAll(statesToRemove);
+                if (newSetOfStates.contains(state) && --counters[state] == 0) {
+                    newSetOfStates.remove(state);
+                    queue[tail++] = state;
+                    if (goal != null && goal.left(state)) return newSetOfStates;
+                }
+            }
         }
 
         return newSetOfStates;
     }
 
     /**
-     * Gets all the states with transitions that have the specified actions we are looking for.
-     * Basically, this method is used for the path formula that we need to care about the left states
-     * and right states, such as Until or Eventually.
+     * Keeps the states that have no incoming transitions apart from self-loops, or at least
+     * one incoming transition that has one of the specified actions we are looking for.
+     * Transitions from outside the universe are ignored.
      *
-     * @param leftStates the set of left states
-     * @param rightStates the set of right states
-     * @param actions the set of actions that we are looking for.
-     * @return The set of states who are the target of the transitions that have the specified actions we are looking for.
+     * @param states the set of states, updated in place.
+     * @param actionIds the ids of the actions that we are looking for.
+     * @param universe the set of all states that should be checked
      */
-    private Set<State> getSetOfStatesByCheckingActionConstraints(Set<State> leftStates, Set<State> rightStates, Set<String> actions) {
-        Set<State> statesToRemove = new HashSet<State>();
-        Set<State> newLeftStates = new HashSet<State>(leftStates); //clone the set "leftStates"
-
-        // use the for loop to check all left states
-        for (State state : leftStates) {
-            int count = 0;
+    private void filterByIncomingActions(StateSet states, int[] actionIds, StateSet universe) {
+        for (int s = states.nextState(0); s >= 0; s = states.nextState(s + 1)) {
+            // all transitions do not have the action that we are looking for
+            if (!passesIncomingActions(s, actionIds, universe)) states.remove(s);
+        }
+    }
 
-            Set<Transition> transitions = model.getTransition(state.getName()).stream().filter(x -> !x.getSource().equals(x.getTarget())).collect(Collectors.toSet());
-            if (transitions.isEmpty()) continue;
+    /**
+     * Keeps the states that have no outgoing transitions apart from self-loops, or at least
+     * one outgoing transition that has one of the specified actions we are looking for.
+     * Transitions that leave the universe are ignored.
+     *
+     * @param states the set of states, updated in place.
+     * @param actionIds the ids of the actions that we are looking for.
+     * @param universe the set of all states that should be checked
+     */
+    private void filterByOutgoingActions(StateSet states, int[] actionIds, StateSet universe) {
+        for (int s = states.nextState(0); s >= 0; s = states.nextState(s + 1)) {
+            if (!passesOutgoingActions(s, actionIds, universe)) states.remove(s);
+        }
+    }
 
-            for (Transition tr : transitions) {
-                // check if the current transition has the action that we are looking for
-                boolean isEmpty = CollectionHelper.intersection(Arrays.stream(tr.getActions()).collect(Collectors.toSet()), actions).isEmpty();
+    /**
+     * Checks whether a state has no incoming transitions apart from self-loops, or at least
+     * one incoming transition with one of the actions. The transitions with an action
+     * are looked up in the action index of the model, so the cost does not depend on
+     * how many other actions the incoming transitions carry.
+     */
+    boolean passesIncomingActions(int state, int[] actionIds) {
+        return passesIncomingActions(state, actionIds, null);
+    }
 
-                //if (isEmpty && !nextIsFromRightStates) count += 1;
-                if (isEmpty) count += 1;
+    /**
+     * Same as passesIncomingActions(), but only looks at transitions from the
+     * universe, as if the other states were not part of the model.
+     *
+     * @param universe the states, or null for all of them
+     */
+    boolean passesIncomingActions(int state, int[] actionIds, StateSet universe) {
+        for (int action : actionIds) {
+            for (int i = model.predBegin(state, action); i < model.predEnd(state, action); i++) {
+                int source = model.actionPredSource(i);
+                if (source != state && (universe == null || universe.contains(source))) return true;
             }
-
-            if (count == transitions.size()) statesToRemove.add(state);
         }
 
-        newLeftStates.removeAll(statesToRemove);
-        return newLeftStates;
+        for (int i = model.predBegin(state); i < model.predEnd(state); i++) {
+            int source = model.predSource(i);
+            if (source != state && (universe == null || universe.contains(source))) return false;
+        }
+        return true;
     }
 
     /**
-     * Gets all the states with transitions that have the specified actions we are looking for.
-     * @param states the set of states.
-     * @param actions the set of actions that we are looking for.
-     * @return The set of states who are the target of the transitions that have the specified actions we are looking for.
+     * Checks whether a state has no outgoing transitions apart from self-loops, or at least
+     * one outgoing transition with one of the actions.
      */
-    private Set<State> getSetOfStatesByCheckingActionConstraints(Set<State> states, Set<String> actions) {
-        Set<State> statesToRemove = new HashSet<State>();
-        Set<State> newStates = new HashSet<State>(states); //clone the set "states"
+    boolean passesOutgoingActions(int state, int[] actionIds) {
+        return passesOutgoingActions(state, actionIds, null);
+    }
 
-        // use for loop to check all states in the given set.
-        for (State state : states) {
-            int count = 0;
-            // get the set of transitions by comparing the target state of the transition
-            Set<Transition> transitions = model.getTargetTransition(state.getName()).stream().filter(x -> !x.getSource().equals(x.getTarget())).collect(Collectors.toSet());
+    /**
+     * Same as passesOutgoingActions(), but only looks at transitions into the
+     * universe, as if the other states were not part of the model.
+     *
+     * @param universe the states, or null for all of them
+     */
+    boolean passesOutgoingActions(int state, int[] actionIds, StateSet universe) {
+        for (int action : actionIds) {
+            for (int i = model.succBegin(state, action); i < model.succEnd(state, action); i++) {
+                int target = model.edgeTarget(model.actionSuccEdge(i));
+                if (target != state && (universe == null || universe.contains(target))) return true;
+            }
+        }
 
-            // check if the set of transitions is empty
-            if (transitions.isEmpty()) continue;
+        for (int e = model.succBegin(state); e < model.succEnd(state); e++) {
+            int target = model.edgeTarget(e);
+            if (target != state && (universe == null || universe.contains(target))) return false;
+        }
+        return true;
+    }
 
-            // use for loop to iterate transitions
-            for (Transition tr : transitions) {
-                boolean isEmpty = CollectionHelper.intersection(Arrays.stream(tr.getActions()).collect(Collectors.toSet()), actions).isEmpty();
+    /**
+     * Returns the ids of the given actions, in increasing order.
+     * Actions that do not occur in the model are ignored.
+     */
+    int[] actionIds(Set<String> actions) {
+        if (actions.isEmpty()) return NO_ACTIONS;
 
-                if (isEmpty) {
-                    count++;
-                }
-            }
+        int[] ids = new int[actions.size()];
+        int count = 0;
 
-            // check if all transitions do not have the action that we are looking for
-            if (count == transitions.size()) {
-                statesToRemove.add(state);
-            }
+        for (String action : actions) {
+            int id = model.getActionId(action);
+            if (id >= 0) ids[count++] = id;
         }
+        ids = Arrays.copyOf(ids, count);
+        Arrays.sort(ids);
+        return ids;
+    }
 
-        newStates.removeAll(statesToRemove);
-        return newStates;
+    /**
+     * Checks whether an edge carries one of the actions.
+     * @param edge the edge
+     * @param actionIds the action ids in increasing order
+     */
+    boolean hasAction(int edge, int[] actionIds) {
+        for (int i = model.actionBegin(edge); i < model.actionEnd(edge); i++) {
+            if (Arrays.binarySearch(actionIds, model.edgeAction(i)) >= 0) return true;
+        }
+        return false;
     }
 
     /**
@@ -361,10 +787,10 @@ public class SATChecker {
      * @param states - set of current states
      * @return Set of states that are passed the satisfaction check
      */
-    private Set<State> getSatBool(BoolProp formula, Set<State> states) {
-        if (!formula.value) return new HashSet<State>(); //return the empty set if the boolean value is false
+    private StateSet getSatBool(BoolProp formula, StateSet states) {
+        if (!formula.value) return newSet(); //return the empty set if the boolean value is false
 
-        return states;
+        return copyOf(states);
     }
 
     /**
@@ -373,27 +799,84 @@ public class SATChecker {
      * @param states - set of current states
      * @return Set of states that are passed the satisfaction check
      */
-    private Set<State> getSatAtomicProp(AtomicProp formula, Set<State> states){
-        String targetLabel = formula.label;
+    private StateSet getSatAtomicProp(AtomicProp formula, StateSet states) {
+        StateSet result = newSet();
+        int label = model.getLabelId(formula.label);
+
+        // no state carries the label
+        if (label < 0) return result;
+
+        for (int i = model.labelBegin(label); i < model.labelEnd(label); i++) {
+            int s = model.labelState(i);
+            if (states.contains(s)) result.add(s);
+        }
+        return result;
+    }
+
+    /**
+     * Compute the satisfaction checking for And formula.
+     * The right operand is skipped if the left one is empty. With a planner the
+     * operands may be swapped, and a local second operand is only evaluated over
+     * the states of the first.
+     * @param formula - And formula
+     * @param states - set of current states.
+     * @return Set of states that are passed the satisfaction check
+     */
+    private StateSet getSatAnd(And formula, StateSet states) {
+        boolean swap = planner != null && planner.rightFirst(formula);
+        StateFormula first = swap ? formula.right : formula.left;
+        StateFormula second = swap ? formula.left : formula.right;
+
+        StateSet result = getSat(first, states);
+        if (result.isEmpty()) {
+            if (planner != null) planner.skipped(second);
+            return result;
+        }
+        if (planner != null && planner.isLocal(second)) {
+            planner.restricted();
+            StateSet both = getSat(second, result);
+            release(result);
+            return both;
+        }
 
-        // Use the stream filter to get the set of states that has the target label.
-		return states.stream().filter(x->Arrays.asList(x.getLabel()).contains(targetLabel)).collect(Collectors.toSet());
+        StateSet other = getSat(second, states);
+        result.retainAll(other);
+        release(other);
+        return result;
     }
 
     /**
      * Compute the satisfaction checking for Or formula.
+     * The right operand is skipped if the left one holds everywhere. With a
+     * planner the operands may be swapped, and a local second operand is only
+     * evaluated over the states outside the first.
      * @param formula - Or formula
      * @param states - set of current states.
      * @return Set of states that are passed the satisfaction check
      */
-    private Set<State> getSatOr(Or formula, Set<State> states) {
-        Set<State> left = getSat(formula.left, states);
-        Set<State> right = getSat(formula.right, states);
-
-        left.removeAll(right); // remove all elements in right set, to remove the duplicating elements
-        right.addAll(left); // add all elements in the modified left set to right set.
+    private StateSet getSatOr(Or formula, StateSet states) {
+        boolean swap = planner != null && planner.rightFirst(formula);
+        StateFormula first = swap ? formula.right : formula.left;
+        StateFormula second = swap ? formula.left : formula.right;
+
+        StateSet result = getSat(first, states);
+        if (result.containsAll(states)) {
+            if (planner != null) planner.skipped(second);
+            return result;
+        }
 
-        return right;
+        StateSet other;
+        if (planner != null && planner.isLocal(second)) {
+            planner.restricted();
+            StateSet rest = copyOf(states);
+            rest.removeAll(result);
+            other = getSat(second, rest);
+            release(rest);
+        } else {
+            other = getSat(second, states);
+        }
+        addAndRelease(result, other);
+        return result;
     }
 
     /**
@@ -402,11 +885,49 @@ public class SATChecker {
      * @param states  - set of current states.
      * @return Set of states that are passed the satisfaction check
      */
-    private Set<State> getSatNot(Not formula, Set<State> states) {
-        Set<State> tempSet = getSat(formula.stateFormula, states);
-        Set<State> copied_original = new HashSet<>(states);
-        copied_original.removeAll(tempSet);
+    private StateSet getSatNot(Not formula, StateSet states, Goal goal) {
+        Goal negated = (goal == null) ? null : goal.negate();
+        StateSet operand = getSat(formula.stateFormula, states, negated);
+        if (negated != null && negated.isDecided()) {
+            goal.decideFrom(negated);
+            return operand;
+        }
+
+        StateSet copied_original = copyOf(states);
+        removeAndRelease(copied_original, operand);
         return copied_original;
     }
 
+    /**
+     * Returns an empty set, borrowed from the scratch pool of this thread.
+     */
+    private StateSet newSet() {
+        return Scratch.get().borrowSet(model);
+    }
+
+    /**
+     * Returns a copy of a set, borrowed from the scratch pool of this thread.
+     */
+    private StateSet copyOf(StateSet set) {
+        StateSet copy = newSet();
+        copy.addAll(set);
+        return copy;
+    }
+
+    /**
+     * Puts an intermediate set back into the scratch pool of this thread.
+     */
+    private void release(StateSet set) {
+        Scratch.get().releaseSet(model, set);
+    }
+
+    private void addAndRelease(StateSet set, StateSet other) {
+        set.addAll(other);
+        release(other);
+    }
+
+    private void removeAndRelease(StateSet set, StateSet other) {
+        set.removeAll(other);
+        release(other);
+    }
 }
@@ -0,0 +1,31 @@
+package modelChecker;
+
+import formula.stateFormula.StateFormula;
+import model.CompiledModel;
+import model.StateSet;
+
+/**
+ * Stores satisfaction sets of subformulas so that later checks against the
+ * same compiled model can reuse them. Only sets computed over all states of
+ * the model are stored. Implementations must not hand out sets that callers
+ * could modify, the checker copies what it gets and what it puts.
+ */
+public interface SatCache {
+    /**
+     * Looks up the satisfaction set of a formula.
+     *
+     * @param model the compiled model the set belongs to
+     * @param formula the formula
+     * @return the satisfaction set or null if it is not cached
+     */
+    public StateSet get(CompiledModel model, StateFormula formula);
+
+    /**
+     * Stores the satisfaction set of a formula.
+     *
+     * @param model the compiled model the set belongs to
+     * @param formula the formula
+     * @param sat the satisfaction set over all states of the model
+     */
+    public void put(CompiledModel model, StateFormula formula, StateSet sat);
+}
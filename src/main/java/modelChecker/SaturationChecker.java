@@ -0,0 +1,438 @@
+package modelChecker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import formula.pathFormula.Always;
+import formula.pathFormula.Eventually;
+import formula.pathFormula.PathFormula;
+import formula.pathFormula.Until;
+import formula.stateFormula.And;
+import formula.stateFormula.AtomicProp;
+import formula.stateFormula.BoolProp;
+import formula.stateFormula.ForAll;
+import formula.stateFormula.Not;
+import formula.stateFormula.Or;
+import formula.stateFormula.StateFormula;
+import formula.stateFormula.ThereExists;
+import model.CompiledModel;
+import model.Composition;
+import model.LongIntMap;
+import model.Model;
+import model.StateSet;
+
+/**
+ * A symbolic checker for the EF and EU fragment on compositions, which does not
+ * build the product.
+ *
+ * Sets of product states are multi-valued decision diagrams (see Mdd) with one
+ * level per component, the first component at the bottom. The transitions are
+ * split into events by what they touch, as in Composition: one event per
+ * component for its moves without synchronised actions, and one event per
+ * synchronised action for the joint moves of the components that have it. An
+ * event only changes the levels of its components, between its bottom and top
+ * level, and leaves the others alone.
+ *
+ * Fixpoints are computed by saturation: the nodes are saturated bottom-up, and
+ * a node at level k is saturated by firing the events whose top level is k
+ * until nothing changes, with every node that such a firing makes below level k
+ * saturated at once. Each event is so only applied where it is local, and the
+ * diagrams stay close to the size of the final result, while a breadth-first
+ * iteration over the whole transition relation goes through much larger ones on
+ * asynchronous models. EU is saturated backwards under the constraint that new
+ * states satisfy its left operand, and reachability forwards.
+ *
+ * The supported formulas are the boolean combinations of atomic propositions,
+ * EF and EU without actions, and AG without actions as not EF not. The sets
+ * range over all combinations of component states; on the reachable ones they
+ * match the explicit engine on the product.
+ */
+public class SaturationChecker {
+    private final List<CompiledModel> components;
+    private final Mdd mdd;
+    private final List<List<Event>> eventsByTop = new ArrayList<List<Event>>();
+    private final int initial;
+    private int reachable = -1;
+
+    private boolean forward;
+    private final LongIntMap saturated = new LongIntMap();
+
+    public SaturationChecker(Composition composition) {
+        this.components = composition.getComponents();
+        if (components.isEmpty()) {
+            throw new IllegalStateException("No components");
+        }
+
+        int levels = components.size();
+        int[] sizes = new int[levels];
+        for (int i = 0; i < levels; i++) {
+            sizes[i] = components.get(i).getStateCount();
+        }
+        mdd = new Mdd(sizes);
+
+        for (int k = 0; k <= levels; k++) {
+            eventsByTop.add(new ArrayList<Event>());
+        }
+        Set<String> synchronised = composition.getSynchronised();
+        for (int i = 0; i < levels; i++) {
+            addLocalEvent(i, synchronised);
+        }
+        for (String action : synchronised) {
+            addSynchronisedEvent(action);
+        }
+
+        boolean[][] allowed = new boolean[levels + 1][];
+        for (int i = 0; i < levels; i++) {
+            CompiledModel component = components.get(i);
+            allowed[i + 1] = new boolean[component.getStateCount()];
+            for (int j = 0; j < component.getInitialCount(); j++) {
+                allowed[i + 1][component.getInitial(j)] = true;
+            }
+        }
+        initial = mdd.product(allowed);
+    }
+
+    /**
+     * Checks a model on its own, as a composition of one component.
+     */
+    public SaturationChecker(Model model) {
+        this(new Composition().add(model));
+    }
+
+    /**
+     * Returns the number of reachable product states.
+     */
+    public double countReachable() {
+        return mdd.cardinality(reachable());
+    }
+
+    /**
+     * Returns the number of decision diagram nodes made so far.
+     */
+    public int getNodeCount() {
+        return mdd.getNodeCount();
+    }
+
+    /**
+     * Checks whether all initial product states satisfy a formula.
+     *
+     * @param formula the formula
+     * @return true if the formula holds
+     * @throws IllegalArgumentException if the formula is not supported
+     */
+    public boolean check(StateFormula formula) {
+        return mdd.difference(initial, satisfy(formula)) == Mdd.EMPTY;
+    }
+
+    /**
+     * Returns the states of a product that satisfy a formula. The product must be
+     * built from the same components, so that its state names are the component
+     * state names joined by commas.
+     *
+     * @param formula the formula
+     * @param product the product, from Composition.build()
+     * @return the satisfying product states
+     * @throws IllegalArgumentException if the formula is not supported
+     */
+    public StateSet getSat(StateFormula formula, CompiledModel product) {
+        int sat = satisfy(formula);
+        StateSet result = product.newStateSet();
+        int[] tuple = new int[components.size()];
+        for (int s = 0; s < product.getStateCount(); s++) {
+            decode(product.getName(s), tuple);
+            if (mdd.contains(sat, tuple)) {
+                result.add(s);
+            }
+        }
+        return result;
+    }
+
+    private void decode(String name, int[] tuple) {
+        String[] names = (tuple.length == 1) ? new String[] { name } : name.split(",", -1);
+        if (names.length != tuple.length) {
+            throw new IllegalArgumentException("Not a state of the product: " + name);
+        }
+        for (int i = 0; i < tuple.length; i++) {
+            tuple[i] = components.get(i).indexOf(names[i]);
+            if (tuple[i] < 0) {
+                throw new IllegalArgumentException("Not a state of the product: " + name);
+            }
+        }
+    }
+
+    private int reachable() {
+        if (reachable < 0) {
+            reachable = saturate(true, mdd.full(components.size()), initial);
+        }
+        return reachable;
+    }
+
+    private int satisfy(StateFormula formula) {
+        int levels = components.size();
+        if (formula instanceof BoolProp) {
+            return ((BoolProp) formula).value ? mdd.full(levels) : Mdd.EMPTY;
+        } else if (formula instanceof AtomicProp) {
+            return labelled(((AtomicProp) formula).label);
+        } else if (formula instanceof Not) {
+            return mdd.difference(mdd.full(levels), satisfy(((Not) formula).stateFormula));
+        } else if (formula instanceof And) {
+            return mdd.intersect(satisfy(((And) formula).left), satisfy(((And) formula).right));
+        } else if (formula instanceof Or) {
+            return mdd.union(satisfy(((Or) formula).left), satisfy(((Or) formula).right));
+        } else if (formula instanceof ThereExists) {
+            PathFormula path = ((ThereExists) formula).pathFormula;
+            if (path instanceof Eventually) {
+                Eventually eventually = (Eventually) path;
+                requireNoActions(eventually.getLeftActions());
+                requireNoActions(eventually.getRightActions());
+                return saturate(false, mdd.full(levels), satisfy(eventually.stateFormula));
+            } else if (path instanceof Until) {
+                Until until = (Until) path;
+                requireNoActions(until.getLeftActions());
+                requireNoActions(until.getRightActions());
+                int left = satisfy(until.left);
+                return saturate(false, left, satisfy(until.right));
+            }
+        } else if (formula instanceof ForAll) {
+            PathFormula path = ((ForAll) formula).pathFormula;
+            if (path instanceof Always) {
+                requireNoActions(((Always) path).getActions());
+                int bad = mdd.difference(mdd.full(levels), satisfy(((Always) path).stateFormula));
+                return mdd.difference(mdd.full(levels), saturate(false, mdd.full(levels), bad));
+            }
+        }
+        throw new IllegalArgumentException("Saturation only supports EF, EU and AG: " + formula);
+    }
+
+    private static void requireNoActions(Set<String> actions) {
+        if (actions != null && !actions.isEmpty()) {
+            throw new IllegalArgumentException("Saturation does not support actions " + actions);
+        }
+    }
+
+    /**
+     * Returns the product states with a label, that is, with some component state that has it.
+     */
+    private int labelled(String label) {
+        int levels = components.size();
+        int result = Mdd.EMPTY;
+        for (int i = 0; i < levels; i++) {
+            CompiledModel component = components.get(i);
+            int id = component.getLabelId(label);
+            if (id < 0) continue;
+
+            boolean[][] allowed = new boolean[levels + 1][];
+            allowed[i + 1] = new boolean[component.getStateCount()];
+            for (int j = component.labelBegin(id); j < component.labelEnd(id); j++) {
+                allowed[i + 1][component.labelState(j)] = true;
+            }
+            result = mdd.union(result, mdd.product(allowed));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the least set that contains the given states and every successor
+     * (forward) or predecessor (backward) of its states that is in the constraint.
+     */
+    private int saturate(boolean forward, int constraint, int states) {
+        this.forward = forward;
+        saturated.clear();
+        for (List<Event> events : eventsByTop) {
+            for (Event event : events) {
+                event.fired.clear();
+            }
+        }
+        mdd.clearCaches();
+        return saturate(components.size(), constraint, states);
+    }
+
+    /**
+     * Saturates a node at level k: saturates its children, then fires the
+     * events with top level k until nothing changes.
+     */
+    private int saturate(int k, int constraint, int states) {
+        if (k == 0 || states == Mdd.EMPTY || constraint == Mdd.EMPTY) {
+            return states;
+        }
+        long key = Mdd.key(constraint, states);
+        int known = saturated.get(key);
+        if (known >= 0) {
+            return known;
+        }
+
+        int[] next = new int[mdd.size(k)];
+        for (int i = 0; i < next.length; i++) {
+            next[i] = saturate(k - 1, mdd.child(constraint, i), mdd.child(states, i));
+        }
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Event event : eventsByTop.get(k)) {
+                int[][] relation = event.relation(k, forward);
+                for (int i = 0; i < next.length; i++) {
+                    if (next[i] == Mdd.EMPTY || relation[i] == null) continue;
+                    for (int j : relation[i]) {
+                        int image = fire(k - 1, mdd.child(constraint, j), next[i], event);
+                        int union = mdd.union(next[j], image);
+                        if (union != next[j]) {
+                            next[j] = union;
+                            changed = true;
+                        }
+                    }
+                }
+            }
+        }
+
+        int result = mdd.make(k, next);
+        saturated.put(key, result);
+        return result;
+    }
+
+    /**
+     * Fires an event on the levels up to k of a saturated node and returns the
+     * saturated image within the constraint.
+     */
+    private int fire(int k, int constraint, int states, Event event) {
+        if (states == Mdd.EMPTY || constraint == Mdd.EMPTY) {
+            return Mdd.EMPTY;
+        }
+        if (k < event.bottom) {
+            return saturate(k, constraint, mdd.intersect(constraint, states));
+        }
+        long key = Mdd.key(constraint, states);
+        int known = event.fired.get(key);
+        if (known >= 0) {
+            return known;
+        }
+
+        int[][] relation = event.relation(k, forward);
+        int[] next = new int[mdd.size(k)];
+        for (int i = 0; i < next.length; i++) {
+            int child = mdd.child(states, i);
+            if (child == Mdd.EMPTY) continue;
+            if (relation == null) {
+                next[i] = fire(k - 1, mdd.child(constraint, i), child, event);
+            } else if (relation[i] != null) {
+                for (int j : relation[i]) {
+                    next[j] = mdd.union(next[j], fire(k - 1, mdd.child(constraint, j), child, event));
+                }
+            }
+        }
+
+        int result = saturate(k, constraint, mdd.make(k, next));
+        event.fired.put(key, result);
+        return result;
+    }
+
+    private void addLocalEvent(int i, Set<String> synchronised) {
+        CompiledModel component = components.get(i);
+        int[][] successors = new int[component.getStateCount()][];
+        boolean any = false;
+        for (int s = 0; s < successors.length; s++) {
+            List<Integer> targets = new ArrayList<Integer>();
+            for (int e = component.succBegin(s); e < component.succEnd(s); e++) {
+                boolean local = component.actionBegin(e) == component.actionEnd(e);
+                for (int j = component.actionBegin(e); j < component.actionEnd(e) && !local; j++) {
+                    local = !synchronised.contains(component.getActionName(component.edgeAction(j)));
+                }
+                if (local) targets.add(component.edgeTarget(e));
+            }
+            successors[s] = toArray(targets);
+            any |= successors[s] != null;
+        }
+
+        if (any) {
+            Event event = new Event(components.size(), i + 1, i + 1);
+            event.set(i + 1, successors);
+            eventsByTop.get(i + 1).add(event);
+        }
+    }
+
+    private void addSynchronisedEvent(String action) {
+        Event event = null;
+        for (int i = 0; i < components.size(); i++) {
+            CompiledModel component = components.get(i);
+            int id = component.getActionId(action);
+            if (id < 0) continue;
+
+            int[][] successors = new int[component.getStateCount()][];
+            for (int s = 0; s < successors.length; s++) {
+                List<Integer> targets = new ArrayList<Integer>();
+                for (int j = component.succBegin(s, id); j < component.succEnd(s, id); j++) {
+                    targets.add(component.edgeTarget(component.actionSuccEdge(j)));
+                }
+                successors[s] = toArray(targets);
+            }
+            if (event == null) {
+                event = new Event(components.size(), i + 1, i + 1);
+            }
+            event.top = i + 1;
+            event.set(i + 1, successors);
+        }
+
+        // actions that no component has are dropped
+        if (event != null) {
+            eventsByTop.get(event.top).add(event);
+        }
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        if (list.isEmpty()) {
+            return null;
+        }
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * A set of transitions that changes the levels from bottom to top, and the
+     * images it gave in the current fixpoint.
+     */
+    private static final class Event {
+        final int[][][] successors;
+        final int[][][] predecessors;
+        final int bottom;
+        int top;
+        final LongIntMap fired = new LongIntMap();
+
+        Event(int levels, int bottom, int top) {
+            this.successors = new int[levels + 1][][];
+            this.predecessors = new int[levels + 1][][];
+            this.bottom = bottom;
+            this.top = top;
+        }
+
+        void set(int level, int[][] successors) {
+            this.successors[level] = successors;
+
+            List<List<Integer>> sources = new ArrayList<List<Integer>>();
+            for (int s = 0; s < successors.length; s++) {
+                sources.add(new ArrayList<Integer>());
+            }
+            for (int s = 0; s < successors.length; s++) {
+                if (successors[s] == null) continue;
+                for (int t : successors[s]) {
+                    sources.get(t).add(s);
+                }
+            }
+            int[][] predecessors = new int[successors.length][];
+            for (int t = 0; t < predecessors.length; t++) {
+                predecessors[t] = toArray(sources.get(t));
+            }
+            this.predecessors[level] = predecessors;
+        }
+
+        /**
+         * Returns the moves of a level by local state, or null if the event leaves the level alone.
+         */
+        int[][] relation(int level, boolean forward) {
+            return forward ? successors[level] : predecessors[level];
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package modelChecker;
+
+import java.util.Arrays;
+
+import model.CompiledModel;
+import model.StateSet;
+import model.Storage;
+
+/**
+ * Per-thread scratch buffers for the fixpoint algorithms.
+ *
+ * The buffers only grow, so after the first check on a thread later checks of
+ * models of the same size do not allocate them again. A buffer is only valid
+ * until the next call that asks for the same buffer on the same thread, so the
+ * algorithms take their buffers after all recursive evaluation is done.
+ *
+ * State sets are pooled as well: a set that is released is handed out again by
+ * a later borrow, so repeated checks of models with the same storage and number
+ * of states reuse their intermediate sets instead of allocating new ones. Sets
+ * that do not fit into the pool are handed back to their storage, which lets a
+ * mapped storage reuse their files.
+ */
+final class Scratch {
+    private static final ThreadLocal<Scratch> LOCAL = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    private int[] queue = new int[0];
+    private int[] counters = new int[0];
+
+    private static final int MAX_SETS = 64;
+    private Storage setStorage;
+    private int setUniverse = -1;
+    private final StateSet[] sets = new StateSet[MAX_SETS];
+    private int setCount;
+
+    private Scratch() {
+    }
+
+    /**
+     * Returns the scratch buffers of the calling thread.
+     * @return the buffers
+     */
+    static Scratch get() {
+        return LOCAL.get();
+    }
+
+    /**
+     * Returns a work queue with room for at least the given number of states.
+     * The contents are undefined.
+     */
+    int[] queue(int size) {
+        if (queue.length < size) {
+            queue = new int[size];
+        }
+        return queue;
+    }
+
+    /**
+     * Returns a counter array with room for at least the given number of states.
+     * The contents are undefined.
+     */
+    int[] counters(int size) {
+        if (counters.length < size) {
+            counters = new int[size];
+        }
+        return counters;
+    }
+
+    /**
+     * Returns an empty set of the model's storage, taken from the pool if it has one.
+     */
+    StateSet borrowSet(CompiledModel model) {
+        if (!pools(model)) {
+            // the pooled sets belong to another universe
+            for (int i = 0; i < setCount; i++) {
+                setStorage.release(sets[i]);
+            }
+            Arrays.fill(sets, 0, setCount, null);
+            setCount = 0;
+            setStorage = model.getStorage();
+            setUniverse = model.getStateCount();
+        }
+        if (setCount == 0) {
+            return model.newStateSet();
+        }
+
+        StateSet set = sets[--setCount];
+        sets[setCount] = null;
+        return set;
+    }
+
+    /**
+     * Puts a set that is not used anymore back into the pool. It must not be
+     * used by the caller afterwards.
+     */
+    void releaseSet(CompiledModel model, StateSet set) {
+        if (!pools(model) || set.universeSize() != setUniverse || setCount == MAX_SETS) {
+            model.getStorage().release(set);
+            return;
+        }
+
+        set.clear();
+        sets[setCount++] = set;
+    }
+
+    private boolean pools(CompiledModel model) {
+        return setStorage == model.getStorage() && setUniverse == model.getStateCount();
+    }
+}
@@ -1,12 +1,135 @@
 package modelChecker;
 
-import java.util.Set;
-import java.util.HashSet;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import model.*;
+import formula.FormulaSuite;
 import formula.stateFormula.*;
 
 public class SimpleModelChecker implements ModelChecker {
+    private final CheckReporter reporter;
+    private SatCache satCache;
+    private boolean earlyExit;
+    private int boundedSearch;
+    private boolean allCounterexamples;
+    private TraceSink traceSink;
+    private boolean queryPlanning;
+    private boolean restrictToConstraint;
+
+    /**
+     * Creates a model checker that does no console output.
+     * Use the result returned by checkWithResult() to inspect the outcome.
+     */
+    public SimpleModelChecker() {
+        this(null);
+    }
+
+    /**
+     * Creates a model checker that hands every result to the given reporter.
+     *
+     * @param reporter the reporter, or null for no reporting
+     */
+    public SimpleModelChecker(CheckReporter reporter) {
+        this.reporter = reporter;
+    }
+
+    /**
+     * Sets the cache that every check looks up and stores subformula results in.
+     *
+     * @param satCache the cache, or null to disable caching
+     */
+    public void setSatCache(SatCache satCache) {
+        this.satCache = satCache;
+    }
+
+    /**
+     * Lets checks stop as soon as their verdict is known. The outermost fixpoint
+     * of the query stops once every initial state is in a growing result, or
+     * once one is missing from a shrinking one. The result then reports the
+     * first failing initial state only and no satisfaction set size.
+     *
+     * Early exit is only used when every initial state satisfies the constraint,
+     * otherwise the whole satisfaction set is computed as before.
+     *
+     * @param earlyExit true to stop checks early
+     */
+    public void setEarlyExit(boolean earlyExit) {
+        this.earlyExit = earlyExit;
+    }
+
+    /**
+     * Lets checks first search for a counterexample of at most the given length
+     * with a BoundedModelChecker, from the initial states that satisfy the
+     * constraint. If one is found, it is the trace of the result and no fixpoint
+     * is computed; the result then reports its initial state only. Otherwise the
+     * query is checked as before.
+     *
+     * @param maxBound the longest counterexample searched, or 0 to not search
+     */
+    public void setBoundedSearch(int maxBound) {
+        this.boundedSearch = maxBound;
+    }
+
+    /**
+     * Lets failing checks return a trace for every failing initial state instead
+     * of the first one. The traces are found together by one backward search
+     * over the states that violate the query, which are known from the check.
+     * Checks that stop early still report the first failing initial state only.
+     *
+     * @param allCounterexamples true for a trace per failing initial state
+     */
+    public void setAllCounterexamples(boolean allCounterexamples) {
+        this.allCounterexamples = allCounterexamples;
+    }
+
+    /**
+     * Lets failing checks hand their traces to a sink step by step instead of
+     * keeping them in the result, so a long trace is never held as names. The
+     * sink receives the trace of the first failing initial state, or of every
+     * one if all counterexamples are asked for. Checks that stop early or fail
+     * in the bounded search still keep their trace in the result.
+     *
+     * @param traceSink the sink, or null to keep traces in the result
+     */
+    public void setTraceSink(TraceSink traceSink) {
+        this.traceSink = traceSink;
+    }
+
+    /**
+     * Lets checks evaluate the operands of conjunctions and disjunctions in the
+     * order a QueryPlanner estimates to be cheapest, skipping the second one when
+     * the first decides the result. The result reports how many operands were
+     * reordered, skipped and restricted, and the estimated cost saved.
+     *
+     * @param queryPlanning true to plan the evaluation order
+     */
+    public void setQueryPlanning(boolean queryPlanning) {
+        this.queryPlanning = queryPlanning;
+    }
+
+    /**
+     * Lets checks apply the constraint to the model before the query is checked,
+     * instead of intersecting the query's satisfaction set with it afterwards.
+     * The query is then evaluated over the states that satisfy the constraint
+     * only, so its paths never leave them and the work done is proportional to
+     * the constrained part of the model. Only the initial states that satisfy
+     * the constraint are checked, and the traces stay inside the constraint too.
+     *
+     * The bounded search is not used in this mode, as it does not know about
+     * the constraint.
+     *
+     * @param restrictToConstraint true to check the query inside the constraint
+     */
+    public void setRestrictToConstraint(boolean restrictToConstraint) {
+        this.restrictToConstraint = restrictToConstraint;
+    }
 
     /**
      * This method computes the satisfaction model check with the ENF.
@@ -18,98 +141,314 @@ public class SimpleModelChecker implements ModelChecker {
      * @return The satisfaction set for the given constraint and query.
      */
     public boolean checkENF(Model model, StateFormula constraint, StateFormula query) {
-        // The query should not be null!
-        if (query == null) {
-            System.out.println("Query should not be null!");
-            return false;
+        return checkENFWithResult(model, constraint, query).isSatisfied();
+    }
+
+    /**
+     * Same as checkENF(), but returns the whole result of the check.
+     *
+     * @param model The model to check
+     * @param constraint The constraint
+     * @param query The query
+     * @return The result of the check
+     */
+    public CheckResult checkENFWithResult(Model model, StateFormula constraint, StateFormula query) {
+        return report(run(model, constraint, query, true));
+    }
+
+    @Override
+    public boolean check(Model model, StateFormula constraint, StateFormula query) {
+        return checkWithResult(model, constraint, query).isSatisfied();
+    }
+
+    @Override
+    public CheckResult checkWithResult(Model model, StateFormula constraint, StateFormula query) {
+        return report(run(model, constraint, query, false));
+    }
+
+    /**
+     * Checks several queries against one model and constraint. The model is
+     * compiled and the constraint is checked only once for all queries.
+     *
+     * @param model The model to check
+     * @param constraint The constraint, may be null
+     * @param queries The queries
+     * @param useENF true if the formulas should be converted to ENF before checking
+     * @return The results of the checks, in the order of the queries
+     */
+    public List<CheckResult> checkAllWithResult(Model model, StateFormula constraint, List<StateFormula> queries, boolean useENF) {
+        List<CheckResult> results = runAll(model, constraint, queries, useENF);
+        for (CheckResult result : results) {
+            report(result);
         }
+        return results;
+    }
 
-        Set<State> startingStates = model.getInitialSet();
-        SATChecker satChecker = new SATChecker(model);
-        Set<State> allStates = new HashSet<State>(model.getStatesSet());
-        Set<State> satConstraint = null;
+    /**
+     * Checks every formula of a suite against the model, under the suite's constraint.
+     *
+     * @param model The model to check
+     * @param suite The formulas
+     * @param useENF true if the formulas should be converted to ENF before checking
+     * @return The results of the checks by formula name, in the order of the suite
+     */
+    public Map<String, CheckResult> checkSuite(Model model, FormulaSuite suite, boolean useENF) {
+        List<CheckResult> results = checkAllWithResult(model, suite.getConstraint(),
+                new ArrayList<StateFormula>(suite.getFormulas().values()), useENF);
 
-        ENFConverter enfConverter = new ENFConverter(); //enf converter will convert the formula to ENF
+        Map<String, CheckResult> named = new LinkedHashMap<String, CheckResult>();
+        int i = 0;
+        for (String name : suite.getFormulas().keySet()) {
+            named.put(name, results.get(i++));
+        }
+        return named;
+    }
 
-        if (constraint != null){
-            StateFormula constraint_enf = enfConverter.convertToENF(constraint); //convert the constraint to ENF
+    /**
+     * Runs a single check without doing any output.
+     *
+     * @param model The model to check
+     * @param constraint The constraint, may be null
+     * @param query The query
+     * @param useENF true if both formulas should be converted to ENF before checking
+     * @return The result of the check
+     */
+    private CheckResult run(Model model, StateFormula constraint, StateFormula query, boolean useENF) {
+        return runAll(model, constraint, Collections.singletonList(query), useENF).get(0);
+    }
 
-            satConstraint = satChecker.getSat(constraint_enf, allStates); //compute the sat model check with the constraint
+    /**
+     * Runs the checks of several queries without doing any output, sharing the
+     * compiled model, the checker and the constraint's satisfaction set.
+     */
+    private List<CheckResult> runAll(Model model, StateFormula constraint, List<StateFormula> queries, boolean useENF) {
+        long start = System.nanoTime();
+        List<CheckResult> results = new ArrayList<CheckResult>(queries.size());
+
+        CompiledModel compiled = model.compile();
+        StateSet startingStates = compiled.initialStates();
+        SATChecker satChecker = new SATChecker(compiled);
+        satChecker.setCache(satCache);
+        QueryPlanner planner = queryPlanning ? new QueryPlanner(compiled) : null;
+        satChecker.setPlanner(planner);
+        StateSet allStates = compiled.allStates();
+        StateSet satConstraint = null;
+        CheckResult constraintResult = new CheckResult();
+        long constraintNanos = 0;
+        boolean trivial = false;
+
+        // check if the constraint is null
+        if (constraint != null) {
+            StateFormula constraintToCheck = prepare(constraint, useENF, constraintResult);
+
+            satConstraint = satChecker.getSat(constraintToCheck, allStates); //compute the sat model check with the constraint
+            constraintNanos = System.nanoTime() - start;
 
             // check if the satisfaction set for the constraint is empty
-            Set<State> initialStates = new HashSet<State>(model.getInitialSet());
+            StateSet initialStates = startingStates.copy();
             initialStates.retainAll(satConstraint);
-            if (initialStates.isEmpty()) {
-                System.out.println("The model trivially satisfies the formula as there are no states that satisfy the constraint.");
-                return true;
+            trivial = initialStates.isEmpty();
+        }
+
+        for (StateFormula query : queries) {
+            long queryStart = System.nanoTime();
+            CheckResult result = new CheckResult();
+            results.add(result);
+
+            // The query should not be null!
+            if (query == null) {
+                result.setMessage("Query should not be null!");
+                result.setTotalNanos(System.nanoTime() - queryStart);
+                continue;
+            }
+
+            if (satConstraint != null) {
+                result.addSimplifiedNodes(constraintResult.getSimplifiedNodes());
+                result.setConstraintSatSize(satConstraint.cardinality());
+                result.setConstraintNanos(constraintNanos);
+            }
+
+            if (trivial) {
+                result.setSatisfied(true);
+                result.setTriviallySatisfied(true);
+                result.setMessage("The model trivially satisfies the formula as there are no states that satisfy the constraint.");
+                result.setTotalNanos(constraintNanos + System.nanoTime() - queryStart);
+                continue;
+            }
+
+            if (planner != null) {
+                planner.reset();
             }
+            checkQuery(model, compiled, satChecker, allStates, startingStates, satConstraint, query, useENF, result);
+            result.setTotalNanos(constraintNanos + System.nanoTime() - queryStart);
         }
+        return results;
+    }
 
-        StateFormula query_enf = enfConverter.convertToENF(query); //convert the query to ENF
+    private void checkQuery(Model model, CompiledModel compiled, SATChecker satChecker, StateSet allStates,
+            StateSet startingStates, StateSet satConstraint, StateFormula query, boolean useENF, CheckResult result) {
+        long queryStart = System.nanoTime();
+        StateFormula queryToCheck = prepare(query, useENF, result);
 
-        // If the model satisfies the constraint but not the query, then print a counter example with a trace and return false.
-        Set<State> sat = satChecker.getSat(query_enf, allStates); 
-        // Else, get the intersection of both and check if it contains the starting states.
+        // with a restricted universe the states outside the constraint are not part of the model
+        boolean restrict = restrictToConstraint && satConstraint != null;
+        StateSet universe = restrict ? satConstraint : allStates;
+        StateSet checkedStates = startingStates;
+        if (restrict) {
+            checkedStates = startingStates.copy();
+            checkedStates.retainAll(satConstraint);
+        }
 
-        // check if the satConstraint is null
-        if (satConstraint != null) {
-            sat.retainAll(satConstraint);
+        if (boundedSearch > 0 && !restrict) {
+            StateSet starting = startingStates.copy();
+            if (satConstraint != null) {
+                starting.retainAll(satConstraint);
+            }
+            String[] trace = new BoundedModelChecker(compiled).setMaxBound(boundedSearch)
+                    .findCounterexample(starting, queryToCheck);
+            if (trace != null) {
+                result.setQueryNanos(System.nanoTime() - queryStart);
+                result.setEarlyTerminated(true);
+                result.addFailingInitialState(trace[0]);
+                result.addTrace(trace);
+                result.setMessage("The model does not satisfy the query given the constraint.");
+                return;
+            }
         }
 
-        if (!sat.containsAll(startingStates)) {
-            System.out.println("The model does not satisfy the query given the constraint.");
-            String[] trace = getTrace(model, satChecker, sat, query);
-            printTrace(trace);
-            return false;
+        Goal goal = null;
+        if (earlyExit && (restrict || satConstraint == null || satConstraint.containsAll(startingStates))) {
+            goal = new Goal(checkedStates, Goal.Kind.ALL_IN);
         }
 
-        System.out.println("The model satisfies the query and the constraint.");
-        return true; // return the result of satisfaction checking
-    }
+        // If the model satisfies the constraint but not the query, then
+        // record a counter example with a trace and return false.
+        StateSet sat = satChecker.getSat(queryToCheck, universe, goal);
+        QueryPlanner planner = satChecker.getPlanner();
+        if (planner != null) {
+            // recorded before the traces, which evaluate formulas of their own
+            result.setPlan(planner.getReordered(), planner.getSkipped(), planner.getRestricted(),
+                    planner.getSavedCost());
+        }
+        if (goal != null && goal.isDecided()) {
+            result.setQueryNanos(System.nanoTime() - queryStart);
+            result.setEarlyTerminated(true);
+            decided(model, compiled, satChecker, restrict ? universe : null, query, queryToCheck, goal, result);
+            return;
+        }
+        // Else, get the intersection of both and check if it contains the starting states.
 
-    @Override
-    public boolean check(Model model, StateFormula constraint, StateFormula query) {
-        // The query should not be null!
-        if (query == null) {
-            System.out.println("Query should not be null!");
-            return false;
+        StateSet violating = null;
+        if (allCounterexamples || traceSink != null || restrict) {
+            violating = universe.copy();
+            violating.removeAll(sat);
         }
+        if (satConstraint != null && !restrict) {
+            sat.retainAll(satConstraint);
+        }
+        result.setQuerySatSize(sat.cardinality());
+        result.setQueryNanos(System.nanoTime() - queryStart);
 
-        Set<State> startingStates = model.getInitialSet();
-        SATChecker satChecker = new SATChecker(model);
-        Set<State> allStates = new HashSet<State>(model.getStatesSet());
-        Set<State> satConstraint = null;
+        int[] failing = new int[compiled.getInitialCount()];
+        int failingCount = 0;
+        for (int i = 0; i < compiled.getInitialCount(); i++) {
+            int state = compiled.getInitial(i);
+            if (!checkedStates.contains(state)) continue;
 
-        // check if the constraint is null
-        if (constraint != null){
-            satConstraint = satChecker.getSat(constraint, allStates);
-            Set<State> initialStates = new HashSet<State>(model.getInitialSet());
-            initialStates.retainAll(satConstraint);
+            result.setVerdict(compiled.getName(state), sat.contains(state));
+            if (!sat.contains(state)) {
+                result.addFailingInitialState(compiled.getName(state));
+                failing[failingCount++] = state;
+            }
+        }
 
-            if (initialStates.isEmpty()) {
-                System.out.println("The model trivially satisfies the formula as there are no states that satisfy the constraint.");
-                return true;
+        if (failingCount > 0) {
+            long traceStart = System.nanoTime();
+            if (traceSink != null) {
+                int[] traced = Arrays.copyOf(failing, allCounterexamples ? failingCount : 1);
+                try {
+                    new TraceGenerator(model, satChecker).streamCounterExamples(violating, traced, traceSink);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Cannot write the trace", e);
+                }
+            } else if (allCounterexamples) {
+                TraceGenerator generator = new TraceGenerator(model, satChecker);
+                for (String[] trace : generator.getCounterExamplesForTraces(violating, Arrays.copyOf(failing, failingCount))) {
+                    result.addTrace(trace);
+                }
+            } else if (restrict) {
+                // the single trace generator would leave the constraint
+                TraceGenerator generator = new TraceGenerator(model, satChecker);
+                result.addTrace(generator.getCounterExamplesForTraces(violating, Arrays.copyOf(failing, 1)).get(0));
+            } else {
+                result.addTrace(getTrace(model, satChecker, satChecker.toStates(sat), query));
             }
+            result.setTraceNanos(System.nanoTime() - traceStart);
+            result.setMessage("The model does not satisfy the query given the constraint.");
+            return;
         }
 
-        // If the model satisfies the constraint but not the query, then 
-        // print a counter example with a trace and return false.
-        Set<State> sat = satChecker.getSat(query, allStates); 
-        // Else, get the intersection of both and check if it contains the starting states. 
+        result.setSatisfied(true);
+        result.setMessage("The model satisfies the query given the constraint.");
+    }
 
-        if (satConstraint != null) {
-            sat.retainAll(satConstraint);
+    /**
+     * Records the verdict of a check that stopped as soon as its goal was decided.
+     * With a restricted universe the trace is found inside it, which needs the
+     * whole satisfaction set of the query.
+     */
+    private void decided(Model model, CompiledModel compiled, SATChecker satChecker, StateSet universe,
+            StateFormula query, StateFormula queryToCheck, Goal goal, CheckResult result) {
+        if (goal.holds()) {
+            result.setSatisfied(true);
+            result.setMessage("The model satisfies the query given the constraint.");
+            return;
+        }
+
+        result.addFailingInitialState(compiled.getName(goal.getWitness()));
+
+        long traceStart = System.nanoTime();
+        if (universe != null) {
+            StateSet violating = universe.copy();
+            violating.removeAll(satChecker.getSat(queryToCheck, universe));
+            TraceGenerator generator = new TraceGenerator(model, satChecker);
+            result.addTrace(generator.getCounterExamplesForTraces(violating, new int[] { goal.getWitness() }).get(0));
+        } else {
+            // the trace starts at the failing initial state, which is the only state missing from this set
+            StateSet notFailing = compiled.allStates();
+            notFailing.remove(goal.getWitness());
+            result.addTrace(getTrace(model, satChecker, satChecker.toStates(notFailing), query));
         }
+        result.setTraceNanos(System.nanoTime() - traceStart);
+        result.setMessage("The model does not satisfy the query given the constraint.");
+    }
+
+    /**
+     * Simplifies a formula, converting it to ENF in between if asked to, and
+     * records how many nodes the simplification saved.
+     */
+    private StateFormula prepare(StateFormula formula, boolean useENF, CheckResult result) {
+        FormulaSimplifier simplifier = new FormulaSimplifier();
 
-        if (!sat.containsAll(startingStates)) {
-            System.out.println("The model does not satisfy the query given the constraint.");
-            String[] trace = getTrace(model, satChecker, sat, query);
-            printTrace(trace);     
-            return false;
+        if (!useENF) {
+            StateFormula simplified = simplifier.simplify(formula);
+            result.addSimplifiedNodes(FormulaSimplifier.size(formula) - FormulaSimplifier.size(simplified));
+            return simplified;
         }
 
-        System.out.println("The model satisfies the query given the constraint.");
-        return true; // return the result of satisfaction checking
+        //enf converter will convert the formula to ENF
+        ENFConverter enfConverter = new ENFConverter();
+        StateFormula enf = enfConverter.convertToENF(formula);
+        StateFormula simplified = simplifier.simplify(enfConverter.convertToENF(simplifier.simplify(formula)));
+        result.addSimplifiedNodes(FormulaSimplifier.size(enf) - FormulaSimplifier.size(simplified));
+        return simplified;
+    }
+
+    private CheckResult report(CheckResult result) {
+        if (reporter != null) {
+            reporter.report(result);
+        }
+        return result;
     }
 
     @Override
@@ -121,19 +460,4 @@ public class SimpleModelChecker implements ModelChecker {
 
         return counterExamples.toArray(new String[counterExamples.size()]);
     }
-
-    private void printTrace(String[] trace){
-        System.out.println("Path Trace:");
-        StringBuilder sb = new StringBuilder();
-        String stateName = trace[0];
-        sb.append(stateName);
-
-        // use the for loop to iterate all states in the trace array
-        for (int i = 1; i < trace.length; i++) {
-            stateName = trace[i];
-            sb.append("->");
-            sb.append(stateName);
-        }
-        System.out.println(sb.toString());
-    }
 }
@@ -1,17 +1,20 @@
 package modelChecker;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
-import java.util.HashMap;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 import formula.stateFormula.Not;
 import formula.stateFormula.StateFormula;
+import model.CompiledModel;
+import model.IntHashSet;
 import model.Model;
 import model.State;
-import model.Transition;
+import model.StateSet;
 
 class TraceGenerator {
     private SATChecker checker;
@@ -37,8 +40,7 @@ class TraceGenerator {
      */
     public List<String> getCounterExampleForTrace(Set<State> sat, StateFormula formula) {
         ArrayList<String> result = new ArrayList<String>();
-        Set<String> resultNames = new HashSet<String>();
-        HashMap<String, State> stateMap = model.getStateMap();
+        IntHashSet resultStates = new IntHashSet();
         boolean foundCycle = false;
 
         Set<State> initialNotSat = new HashSet<State>(model.getInitialSet());
@@ -47,57 +49,34 @@ class TraceGenerator {
         // Get the initial states that don't satisfy the formula
         Not negatedFormula = new Not(formula);
         Set<State> negated_sat = checker.getSat(negatedFormula, new HashSet<State>(model.getStatesSet()));
-        Set<State> negated_sat_cloned = new HashSet<State>(negated_sat);
-        
-        // Remove the startingState from the set
-        State currentState = initialNotSat.iterator().next();
-        negated_sat_cloned.remove(currentState); 
 
-        String name = currentState.getName();
-        result.add(name);
-        resultNames.add(name);
+        // Start from the first failing initial state
+        int current = model.indexOf(initialNotSat.iterator().next().getName());
+        result.add(model.getName(current));
+        resultStates.add(current);
 
         while (true) {
-            Set<Transition> transitions = model.getTransition(name).stream().filter(x -> !x.getSource().equals(x.getTarget())).collect(Collectors.toSet());;
-            boolean checkIfFindNext = false;
+            IntHashSet transitions = leaving(current);
 
             // if the current state is a terminal state, break the loop
             if (transitions.isEmpty()) break;
 
-            // use for loop to check all states in the set
-            for (State s : negated_sat) {
-                Set<Transition> t = model.getTargetTransition(s.getName()).stream().filter(x -> !x.getSource().equals(x.getTarget())).collect(Collectors.toSet());
-                Set<Transition> intersection = CollectionHelper.intersection(transitions, t);
-
-                // check if the intersection set is empty
-                if (!intersection.isEmpty()) {
-                    checkIfFindNext = true;
-                    Transition tr = intersection.iterator().next();
-                    String targetName = tr.getTarget();
-
-                    result.add(targetName); // add the name of the state to the result list
-
-                    // The set does not allow the duplication, thus, by using contains() method of the set, we could detect the cyclic path.
-                    if (resultNames.contains(targetName)) {
-                        foundCycle = true;
-                    } else {
-                        resultNames.add(targetName);
-                    }
-
-                    currentState = stateMap.get(targetName);
-                    name = currentState.getName();
-                    break;
-                }
-            }
+            int next = nextState(transitions, negated_sat);
 
-            // break the endless loop if we find the cycle
-            if (foundCycle) {
+            // break the loop if we failed to find the next state from negated_sat
+            if (next < 0) {
+                resultStates.remove(current);
                 break;
             }
 
-            // break the loop if we failed to find the next state from negated_sat
-            if (!checkIfFindNext) {
-                resultNames.remove(name);
+            result.add(model.getName(next)); // add the name of the state to the result list
+
+            // The set does not allow the duplication, thus, by using add() method of the set, we could detect the cyclic path.
+            foundCycle = !resultStates.add(next);
+            current = next;
+
+            // break the endless loop if we find the cycle
+            if (foundCycle) {
                 break;
             }
         }
@@ -106,46 +85,176 @@ class TraceGenerator {
             Set<State> allStates = model.getStatesSet();
 
             while (true) {
-                Set<Transition> transitions = model.getTransition(name).stream().filter(x -> !x.getSource().equals(x.getTarget())).collect(Collectors.toSet());
-                boolean checkIfFindNext = false;
+                IntHashSet transitions = leaving(current);
 
                 // if the current state is a terminal state, break the loop
                 if (transitions.isEmpty()) break;
 
-                // use for loop to check all states in the set
-                for (State s : allStates) {
-                    Set<Transition> t = model.getTargetTransition(s.getName()).stream().filter(x -> !x.getSource().equals(x.getTarget())).collect(Collectors.toSet());;
-                    //Set<Transition> t = model.getTargetTransition(s.getName());
-                    Set<Transition> intersection = CollectionHelper.intersection(transitions, t);
-
-                    // check if the intersection set is empty
-                    if (!intersection.isEmpty()) {
-                        checkIfFindNext = true;
-                        Transition tr = intersection.iterator().next();
-                        String targetName = tr.getTarget();
-
-                        result.add(targetName); //add the name of the state to the result list
-
-                        // Check if the resultNames contains the name of the next state.
-                        // If so, that means that the TraceGenerator found the cycle.
-                        if (resultNames.contains(targetName)) {
-                            foundCycle = true;
-                        } else {
-                            resultNames.add(targetName); //add the name of the next state to the list
-                        }
-
-                        currentState = stateMap.get(targetName);
-                        name = currentState.getName();
-                        break;
-                    }
-                }
-
-                if (foundCycle || !checkIfFindNext) {
-                    break;
-                }
+                int next = nextState(transitions, allStates);
+                if (next < 0) break;
+
+                result.add(model.getName(next)); //add the name of the state to the result list
+
+                // Check if the result contains the next state.
+                // If so, that means that the TraceGenerator found the cycle.
+                if (!resultStates.add(next)) break;
+                current = next;
             }
         }
 
         return result;
     }
+
+    /**
+     * Gets the indexes of the transitions that leave a state for another state.
+     */
+    private IntHashSet leaving(int state) {
+        int[] outgoing = model.getOutgoing(state);
+        IntHashSet transitions = new IntHashSet(outgoing.length);
+        for (int t : outgoing) {
+            transitions.add(t);
+        }
+        // the transitions that also enter the state are its self loops
+        for (int t : model.getIncoming(state)) {
+            transitions.remove(t);
+        }
+        return transitions;
+    }
+
+    /**
+     * Gets the first candidate that one of the given transitions enters.
+     *
+     * @return the index of the state, or -1 if there is none
+     */
+    private int nextState(IntHashSet transitions, Set<State> candidates) {
+        for (State s : candidates) {
+            int state = model.indexOf(s.getName());
+            if (CollectionHelper.firstCommon(transitions, model.getIncoming(state)) >= 0) {
+                return state;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets a counterexample for every failing initial state at once.
+     *
+     * @param violating the states that do not satisfy the formula
+     * @param initial the failing initial states
+     * @return the trace of each failing initial state, in the given order
+     * @see #streamCounterExamples(StateSet, int[], TraceSink)
+     */
+    public List<String[]> getCounterExamplesForTraces(StateSet violating, int[] initial) {
+        CollectingSink sink = new CollectingSink();
+        try {
+            streamCounterExamples(violating, initial, sink);
+        } catch (IOException e) {
+            // collecting in memory does not do any I/O
+            throw new UncheckedIOException(e);
+        }
+        return sink.traces;
+    }
+
+    /**
+     * Hands a counterexample for every failing initial state to a sink, one step
+     * at a time.
+     *
+     * The states that violate the formula are given, so the negated formula is
+     * not checked again. A trace ends in a violating state without a transition
+     * to another violating state. One backward breadth-first search from all of
+     * these gives every violating state that can reach one the edge it leaves
+     * over on a shortest way there. The other violating states only lead into
+     * cycles of violating states and keep an edge to one of their violating
+     * successors. Each trace then follows the edges from its initial state until
+     * it ends, or repeats a state, which is added once more like in the single
+     * trace.
+     *
+     * @param violating the states that do not satisfy the formula
+     * @param initial the failing initial states
+     * @param sink the sink that receives the traces, in the given order
+     * @throws IOException if the sink fails
+     */
+    public void streamCounterExamples(StateSet violating, int[] initial, TraceSink sink) throws IOException {
+        CompiledModel compiled = checker.getModel();
+        int n = compiled.getStateCount();
+        final int end = -2;
+        int[] via = new int[n];
+        Arrays.fill(via, -1);
+        int[] queue = new int[n];
+        int head = 0;
+        int tail = 0;
+
+        for (int s = violating.nextState(0); s >= 0; s = violating.nextState(s + 1)) {
+            boolean stuck = true;
+            for (int e = compiled.succBegin(s); e < compiled.succEnd(s) && stuck; e++) {
+                int target = compiled.edgeTarget(e);
+                stuck = target == s || !violating.contains(target);
+            }
+            if (stuck) {
+                via[s] = end;
+                queue[tail++] = s;
+            }
+        }
+
+        // search backwards from all trace ends at once
+        while (head < tail) {
+            int target = queue[head++];
+            for (int i = compiled.predBegin(target); i < compiled.predEnd(target); i++) {
+                int s = compiled.predSource(i);
+                if (s == target || via[s] != -1 || !violating.contains(s)) continue;
+
+                via[s] = compiled.predEdge(i);
+                queue[tail++] = s;
+            }
+        }
+
+        for (int s = violating.nextState(0); s >= 0; s = violating.nextState(s + 1)) {
+            for (int e = compiled.succBegin(s); e < compiled.succEnd(s) && via[s] == -1; e++) {
+                int target = compiled.edgeTarget(e);
+                if (target != s && violating.contains(target)) via[s] = e;
+            }
+        }
+
+        int[] visited = new int[n];
+        for (int t = 0; t < initial.length; t++) {
+            int s = initial[t];
+            visited[s] = t + 1;
+            sink.begin(compiled);
+            sink.step(s, -1);
+
+            while (via[s] >= 0) {
+                int edge = via[s];
+                s = compiled.edgeTarget(edge);
+                sink.step(s, edge);
+                if (visited[s] == t + 1) break;
+                visited[s] = t + 1;
+            }
+            sink.end();
+        }
+    }
+
+    /**
+     * Keeps the state names of each trace.
+     */
+    private static class CollectingSink implements TraceSink {
+        private final List<String[]> traces = new ArrayList<String[]>();
+        private CompiledModel model;
+        private List<String> trace;
+
+        @Override
+        public void begin(CompiledModel model) {
+            this.model = model;
+            trace = new ArrayList<String>();
+        }
+
+        @Override
+        public void step(int state, int edge) {
+            trace.add(model.getName(state));
+        }
+
+        @Override
+        public void end() {
+            traces.add(trace.toArray(new String[trace.size()]));
+        }
+    }
 }
@@ -0,0 +1,35 @@
+package modelChecker;
+
+import java.io.IOException;
+
+import model.CompiledModel;
+
+/**
+ * Receives counterexample traces one step at a time.
+ *
+ * A step is the index of a state of the compiled model and the index of the
+ * edge it was reached over, so a trace never has to exist as a list of names.
+ * A sink looks up names, labels and actions in the model only when it needs
+ * them.
+ */
+public interface TraceSink {
+    /**
+     * Starts a trace.
+     *
+     * @param model the model the state and edge indexes refer to
+     */
+    public void begin(CompiledModel model) throws IOException;
+
+    /**
+     * Adds the next state of the trace.
+     *
+     * @param state the state
+     * @param edge the edge from the previous state, or -1 for the first state
+     */
+    public void step(int state, int edge) throws IOException;
+
+    /**
+     * Ends the trace.
+     */
+    public void end() throws IOException;
+}
@@ -0,0 +1,379 @@
+package server;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import formula.FormulaParser;
+import formula.FormulaSuite;
+import formula.stateFormula.StateFormula;
+import model.CompiledModel;
+import model.Model;
+import modelChecker.CheckResult;
+import modelChecker.SimpleModelChecker;
+
+/**
+ * Checks many models against their properties on a work-stealing pool.
+ *
+ * The manifest lists one job per model:
+ *
+ * <pre>
+ * {
+ *     "jobs": [
+ *         {"model": "mutex.json", "constraint": "fair.json", "queries": ["safe.json", "live.json"]},
+ *         {"model": "ring.json", "suite": "ring-suite.json", "enf": true, "flyweight": true}
+ *     ]
+ * }
+ * </pre>
+ *
+ * Relative paths are resolved against the manifest's directory. A job with
+ * "flyweight" parses its model without State objects. A suite's
+ * formulas are checked under its constraint unless the job gives one, as in
+ * the server's batch method.
+ *
+ * A model is loaded only once it is admitted by the memory budget, which is
+ * charged an estimate derived from the size of the model file. Its properties
+ * are then split into tasks that idle workers steal, subformula results are
+ * shared between them through a result cache, and once the last property is
+ * checked the model and its cached results are dropped and the budget is
+ * released. A model bigger than the whole budget is admitted alone.
+ *
+ * Results are written as one JSON object per line in the layout of
+ * {@link ResultJson}, plus the "job" index, the "model" path and the "query"
+ * path or suite "name". A job that cannot be loaded writes a single line
+ * with an "error" message instead. Lines of different models interleave in
+ * the order the models finish.
+ */
+public class BatchRunner {
+    /** Rough number of heap bytes a model takes per byte of its JSON file, once parsed and compiled. */
+    static final long HEAP_PER_FILE_BYTE = 4;
+
+    private final ForkJoinPool pool;
+    private final long memoryBudget;
+    private final ResultCache results;
+    private final SimpleModelChecker checker;
+    private final JsonParser parser = new JsonParser();
+
+    private long reserved;
+    private long peakReserved;
+    private int checks;
+    private int errors;
+
+    /**
+     * Creates a runner.
+     *
+     * @param threads the number of worker threads
+     * @param memoryBudget the heap in bytes that loaded models and cached results may take together;
+     *            a quarter of it bounds the result cache
+     */
+    public BatchRunner(int threads, long memoryBudget) {
+        this.pool = new ForkJoinPool(threads);
+        this.memoryBudget = memoryBudget - memoryBudget / 4;
+        this.results = new ResultCache(memoryBudget / 4 / 8);
+        this.checker = new SimpleModelChecker();
+        checker.setSatCache(results);
+    }
+
+    /**
+     * Runs a manifest. "--manifest file" names the manifest, "--out file" the
+     * results file (stdout if omitted), "--threads n" the number of workers
+     * (one per core by default) and "--memory-budget bytes" the heap the
+     * loaded models may take (half the maximum heap by default).
+     */
+    public static void main(String[] args) throws IOException {
+        String manifest = null;
+        String out = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long budget = Runtime.getRuntime().maxMemory() / 2;
+
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            switch (args[i]) {
+            case "--manifest":
+                manifest = args[i + 1];
+                break;
+            case "--out":
+                out = args[i + 1];
+                break;
+            case "--threads":
+                threads = Integer.parseInt(args[i + 1]);
+                break;
+            case "--memory-budget":
+                budget = Long.parseLong(args[i + 1]);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (manifest == null) {
+            throw new IllegalArgumentException("Missing --manifest");
+        }
+
+        BatchRunner runner = new BatchRunner(threads, budget);
+        try (Writer writer = (out != null)
+                ? Files.newBufferedWriter(Paths.get(out), StandardCharsets.UTF_8)
+                : new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))) {
+            runner.run(manifest, writer);
+        } finally {
+            runner.shutdown();
+        }
+        System.err.println(runner.getChecks() + " checks, " + runner.getErrors() + " errors, peak reservation "
+                + runner.getPeakReserved() + " bytes");
+    }
+
+    /**
+     * Runs every job of a manifest file.
+     *
+     * @param manifestPath the path of the manifest
+     * @param out where the results are written, one JSON object per line
+     * @throws IOException if the manifest cannot be read or the results cannot be written
+     */
+    public void run(String manifestPath, Writer out) throws IOException {
+        JsonObject manifest;
+        try (Reader reader = new InputStreamReader(Files.newInputStream(Paths.get(manifestPath)), StandardCharsets.UTF_8)) {
+            manifest = parser.parse(reader).getAsJsonObject();
+        } catch (JsonParseException | IllegalStateException e) {
+            throw new IOException("Malformed manifest " + manifestPath + ": " + e.getMessage());
+        }
+        Path base = Paths.get(manifestPath).toAbsolutePath().getParent();
+        run(manifest, base, out);
+    }
+
+    /**
+     * Runs every job of a manifest and waits until all of them are done.
+     *
+     * @param manifest the manifest
+     * @param base the directory relative paths are resolved against
+     * @param out where the results are written, one JSON object per line
+     * @throws IOException if the results cannot be written
+     */
+    public void run(JsonObject manifest, Path base, Writer out) throws IOException {
+        if (!manifest.has("jobs")) {
+            throw new IllegalArgumentException("Missing jobs");
+        }
+
+        List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+        int index = 0;
+        for (JsonElement element : manifest.getAsJsonArray("jobs")) {
+            JsonObject job = element.getAsJsonObject();
+            if (!job.has("model")) {
+                throw new IllegalArgumentException("Job " + index + " has no model");
+            }
+            File file = base.resolve(job.get("model").getAsString()).toFile();
+
+            // wait on this thread, not on a worker, until the model fits
+            long estimate = Math.max(1, file.length() * HEAP_PER_FILE_BYTE);
+            try {
+                admit(estimate);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for memory", e);
+            }
+            tasks.add(pool.submit(new ModelTask(index++, job, file, base, estimate, out)));
+        }
+
+        try {
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    public synchronized long getPeakReserved() {
+        return peakReserved;
+    }
+
+    public synchronized int getChecks() {
+        return checks;
+    }
+
+    public synchronized int getErrors() {
+        return errors;
+    }
+
+    private synchronized void admit(long estimate) throws InterruptedException {
+        while (reserved > 0 && reserved + estimate > memoryBudget) {
+            wait();
+        }
+        reserved += estimate;
+        peakReserved = Math.max(peakReserved, reserved);
+    }
+
+    private synchronized void release(long estimate) {
+        reserved -= estimate;
+        notifyAll();
+    }
+
+    private synchronized void count(int checked, int failed) {
+        checks += checked;
+        errors += failed;
+    }
+
+    private static void write(Writer out, JsonObject line) {
+        try {
+            synchronized (out) {
+                out.write(line.toString());
+                out.write('\n');
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Loads one model, checks all its properties and unloads it.
+     */
+    private class ModelTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int index;
+        private final JsonObject job;
+        private final File file;
+        private final Path base;
+        private final long estimate;
+        private final Writer out;
+
+        ModelTask(int index, JsonObject job, File file, Path base, long estimate, Writer out) {
+            this.index = index;
+            this.job = job;
+            this.file = file;
+            this.base = base;
+            this.estimate = estimate;
+            this.out = out;
+        }
+
+        @Override
+        protected void compute() {
+            CompiledModel compiled = null;
+            try {
+                StateFormula constraint = job.has("constraint") ? parse(job.get("constraint").getAsString()) : null;
+                List<String> names = new ArrayList<String>();
+                List<StateFormula> queries = new ArrayList<StateFormula>();
+                if (job.has("suite")) {
+                    FormulaSuite suite = FormulaSuite.parse(base.resolve(job.get("suite").getAsString()).toString());
+                    names.addAll(suite.getNames());
+                    queries.addAll(suite.getFormulas().values());
+                    if (constraint == null) {
+                        constraint = suite.getConstraint();
+                    }
+                } else if (job.has("queries")) {
+                    for (JsonElement query : job.getAsJsonArray("queries")) {
+                        names.add(query.getAsString());
+                        queries.add(parse(query.getAsString()));
+                    }
+                } else {
+                    throw new IllegalArgumentException("Missing queries or suite");
+                }
+
+                boolean flyweight = job.has("flyweight") && job.get("flyweight").getAsBoolean();
+                Model model = flyweight ? Model.parseFlyweight(file.getPath()) : Model.parseModel(file.getPath());
+                compiled = model.compile();
+
+                boolean useENF = job.has("enf") && job.get("enf").getAsBoolean();
+                new PropertyTask(this, model, constraint, queries, names, useENF, 0, queries.size()).invoke();
+                count(queries.size(), 0);
+            } catch (IOException | IllegalArgumentException | IllegalStateException | ClassCastException e) {
+                JsonObject line = header();
+                line.addProperty("error", e.getMessage());
+                write(out, line);
+                count(0, 1);
+            } finally {
+                if (compiled != null) {
+                    results.removeModel(compiled);
+                }
+                release(estimate);
+            }
+        }
+
+        private StateFormula parse(String path) throws IOException {
+            return new FormulaParser(base.resolve(path).toString()).parse();
+        }
+
+        JsonObject header() {
+            JsonObject line = new JsonObject();
+            line.addProperty("job", index);
+            line.addProperty("model", job.get("model").getAsString());
+            return line;
+        }
+    }
+
+    /**
+     * Checks a range of one model's properties, splitting it in halves so idle workers can steal them.
+     */
+    private class PropertyTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final ModelTask owner;
+        private final Model model;
+        private final StateFormula constraint;
+        private final List<StateFormula> queries;
+        private final List<String> names;
+        private final boolean useENF;
+        private final int from;
+        private final int to;
+
+        PropertyTask(ModelTask owner, Model model, StateFormula constraint, List<StateFormula> queries,
+                List<String> names, boolean useENF, int from, int to) {
+            this.owner = owner;
+            this.model = model;
+            this.constraint = constraint;
+            this.queries = queries;
+            this.names = names;
+            this.useENF = useENF;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new PropertyTask(owner, model, constraint, queries, names, useENF, from, middle),
+                        new PropertyTask(owner, model, constraint, queries, names, useENF, middle, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                CheckResult result = checker.checkAllWithResult(model, constraint,
+                        Collections.singletonList(queries.get(i)), useENF).get(0);
+                JsonObject line = owner.header();
+                line.addProperty(owner.job.has("suite") ? "name" : "query", names.get(i));
+                for (Map.Entry<String, JsonElement> entry : ResultJson.toJson(result).entrySet()) {
+                    line.add(entry.getKey(), entry.getValue());
+                }
+                write(owner.out, line);
+            }
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package server;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import formula.FormulaParser;
+import formula.FormulaSuite;
+import formula.stateFormula.StateFormula;
+import model.CompiledModel;
+import model.Model;
+import modelChecker.CheckResult;
+import modelChecker.SimpleModelChecker;
+
+/**
+ * The command line entry point of the jar.
+ *
+ * <pre>
+ * check --model m.json [--constraint c.json] (--query q.json ... | --suite s.json)
+ *       [--engine fixpoint|enf|bounded] [--bound n] [--threads n] [--timeout ms] [--flyweight true]
+ * batch --manifest jobs.json [--out results.jsonl] [--threads n] [--memory-budget bytes]
+ * serve [--port n] [--model-cache n] [--result-cache n]
+ * </pre>
+ *
+ * "check" is the default command. It prints one JSON object with the model's
+ * size, the overall verdict, the time spent parsing the files and indexing
+ * the model, and per query the result in the layout of {@link ResultJson},
+ * which carries the constraint, query and trace timings. "--query" may be
+ * repeated. The "enf" engine checks the ENF of the formulas, "bounded" first
+ * searches for a counterexample of at most "--bound" steps (20 by default).
+ * "--flyweight true" parses the model without State objects, see
+ * {@link Model#parseFlyweight(String)}.
+ * With more than one thread the queries are split between them, each share
+ * checking the constraint once. A check that does not finish within the
+ * timeout prints "timedOut" instead of results.
+ *
+ * The exit code is 0 if every query holds, 1 if one does not and 2 if the
+ * check timed out. "batch" runs a {@link BatchRunner} and "serve" a
+ * {@link CheckerServer}, with their options. Any command that fails, for
+ * example on a bad option or a file that cannot be read, prints
+ * {"error": message} instead and exits with 3.
+ */
+public class CheckerCli {
+    static final int SATISFIED = 0;
+    static final int VIOLATED = 1;
+    static final int TIMED_OUT = 2;
+    static final int ERROR = 3;
+
+    private static final int DEFAULT_BOUND = 20;
+
+    private CheckerCli() {
+    }
+
+    public static void main(String[] args) {
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        int status = run(args, out);
+        out.flush();
+        System.exit(status);
+    }
+
+    /**
+     * Runs a command and turns its failure into a JSON error.
+     *
+     * @param args the command and its options
+     * @param out where the JSON result or error is printed
+     * @return the exit code
+     */
+    static int run(String[] args, PrintWriter out) {
+        boolean named = args.length > 0 && !args[0].startsWith("--");
+        String command = named ? args[0] : "check";
+        String[] options = named ? Arrays.copyOfRange(args, 1, args.length) : args;
+
+        try {
+            switch (command) {
+            case "check":
+                return check(options, out);
+            case "batch":
+                BatchRunner.main(options);
+                return SATISFIED;
+            case "serve":
+                CheckerServer.main(options);
+                return SATISFIED;
+            default:
+                throw new IllegalArgumentException("Unknown command " + command);
+            }
+        } catch (IOException | RuntimeException e) {
+            JsonObject json = new JsonObject();
+            json.addProperty("error", (e.getMessage() != null) ? e.getMessage() : e.toString());
+            out.println(json.toString());
+            return ERROR;
+        }
+    }
+
+    /**
+     * Runs the "check" command.
+     *
+     * @param args the options of the command
+     * @param out where the JSON result is printed
+     * @return the exit code
+     * @throws IOException if a file cannot be read
+     */
+    static int check(String[] args, PrintWriter out) throws IOException {
+        String modelPath = null;
+        String constraintPath = null;
+        String suitePath = null;
+        List<String> queryPaths = new ArrayList<String>();
+        String engine = "fixpoint";
+        int bound = DEFAULT_BOUND;
+        int threads = 1;
+        long timeout = 0;
+        boolean flyweight = false;
+
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            switch (args[i]) {
+            case "--model":
+                modelPath = args[i + 1];
+                break;
+            case "--constraint":
+                constraintPath = args[i + 1];
+                break;
+            case "--query":
+                queryPaths.add(args[i + 1]);
+                break;
+            case "--suite":
+                suitePath = args[i + 1];
+                break;
+            case "--engine":
+                engine = args[i + 1];
+                break;
+            case "--bound":
+                bound = Integer.parseInt(args[i + 1]);
+                break;
+            case "--threads":
+                threads = Integer.parseInt(args[i + 1]);
+                break;
+            case "--timeout":
+                timeout = Long.parseLong(args[i + 1]);
+                break;
+            case "--flyweight":
+                flyweight = Boolean.parseBoolean(args[i + 1]);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (modelPath == null) {
+            throw new IllegalArgumentException("Missing --model");
+        }
+        if (queryPaths.isEmpty() == (suitePath == null)) {
+            throw new IllegalArgumentException("Give either --query or --suite");
+        }
+        if (!engine.equals("fixpoint") && !engine.equals("enf") && !engine.equals("bounded")) {
+            throw new IllegalArgumentException("Unknown engine " + engine);
+        }
+
+        long start = System.nanoTime();
+        Model model = flyweight ? Model.parseFlyweight(modelPath) : Model.parseModel(modelPath);
+        StateFormula constraint = (constraintPath != null) ? new FormulaParser(constraintPath).parse() : null;
+        List<String> names = new ArrayList<String>();
+        List<StateFormula> queries = new ArrayList<StateFormula>();
+        if (suitePath != null) {
+            FormulaSuite suite = FormulaSuite.parse(suitePath);
+            names.addAll(suite.getNames());
+            queries.addAll(suite.getFormulas().values());
+            if (constraint == null) {
+                constraint = suite.getConstraint();
+            }
+        } else {
+            for (String path : queryPaths) {
+                names.add(path);
+                queries.add(new FormulaParser(path).parse());
+            }
+        }
+        long parsed = System.nanoTime();
+        CompiledModel compiled = model.compile();
+        long indexed = System.nanoTime();
+
+        SimpleModelChecker checker = new SimpleModelChecker();
+        if (engine.equals("bounded")) {
+            checker.setBoundedSearch(bound);
+        }
+        List<CheckResult> results;
+        try {
+            results = checkAll(checker, model, constraint, queries, engine.equals("enf"), threads, timeout);
+        } catch (TimeoutException e) {
+            results = null;
+        }
+        long end = System.nanoTime();
+
+        JsonObject json = new JsonObject();
+        json.addProperty("model", modelPath);
+        json.addProperty("states", compiled.getStateCount());
+        json.addProperty("transitions", compiled.getEdgeCount());
+        json.addProperty("engine", engine);
+
+        JsonObject timings = new JsonObject();
+        timings.addProperty("parseNanos", parsed - start);
+        timings.addProperty("indexNanos", indexed - parsed);
+        timings.addProperty("checkNanos", end - indexed);
+        timings.addProperty("totalNanos", end - start);
+
+        int status;
+        if (results == null) {
+            json.addProperty("timedOut", true);
+            json.add("timings", timings);
+            status = TIMED_OUT;
+        } else {
+            boolean satisfied = true;
+            JsonArray array = new JsonArray();
+            for (int i = 0; i < results.size(); i++) {
+                JsonObject result = ResultJson.toJson(results.get(i));
+                result.addProperty(suitePath != null ? "name" : "query", names.get(i));
+                array.add(result);
+                satisfied &= results.get(i).isSatisfied();
+            }
+            json.addProperty("satisfied", satisfied);
+            json.add("timings", timings);
+            json.add("results", array);
+            status = satisfied ? SATISFIED : VIOLATED;
+        }
+        out.println(json.toString());
+        return status;
+    }
+
+    /**
+     * Checks the queries in contiguous shares, one per thread, and gives up
+     * waiting for them once the timeout passes. The workers are daemon
+     * threads, so a check that overruns does not keep the process alive.
+     */
+    private static List<CheckResult> checkAll(final SimpleModelChecker checker, final Model model,
+            final StateFormula constraint, List<StateFormula> queries, final boolean useENF, int threads,
+            long timeout) throws TimeoutException {
+        int shares = Math.max(1, Math.min(threads, queries.size()));
+        ExecutorService pool = Executors.newFixedThreadPool(shares, runnable -> {
+            Thread thread = new Thread(runnable, "checker");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            List<Future<List<CheckResult>>> futures = new ArrayList<Future<List<CheckResult>>>();
+            for (int i = 0; i < shares; i++) {
+                final List<StateFormula> share = queries.subList(i * queries.size() / shares,
+                        (i + 1) * queries.size() / shares);
+                futures.add(pool.submit(() -> checker.checkAllWithResult(model, constraint, share, useENF)));
+            }
+
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+            List<CheckResult> results = new ArrayList<CheckResult>(queries.size());
+            for (Future<List<CheckResult>> future : futures) {
+                if (timeout > 0) {
+                    results.addAll(future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+                } else {
+                    results.addAll(future.get());
+                }
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while checking", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package server;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import formula.FormulaParser;
+import formula.FormulaSuite;
+import formula.stateFormula.StateFormula;
+import model.CompiledModel;
+import model.Model;
+import modelChecker.CheckResult;
+import modelChecker.SimpleModelChecker;
+
+/**
+ * A resident model checker that answers JSON-RPC 2.0 requests, one JSON
+ * object per line, either on stdin/stdout or on a local socket.
+ *
+ * Parsed and compiled models are kept in an LRU cache keyed by the SHA-256
+ * hash of the model's JSON, and satisfaction sets of temporal subformulas in
+ * a second LRU cache, so repeated checks against the same model skip parsing,
+ * compiling and recomputing shared subformulas.
+ *
+ * Methods:
+ * <ul>
+ * <li>load {"path": file} or {"model": {...}}: returns {"model": hash, "states", "transitions"}</li>
+ * <li>check {"model": hash or "path": file, "query", "constraint", "enf"}: returns the check result.
+ * Formulas are either a path to a formula file or an object in the formula file layout.</li>
+ * <li>batch {"model" or "path", "constraint", "queries": [...], "enf"}: returns {"results": [...]}.
+ * Instead of queries, "suite" names a formula suite file; its formulas are checked under its
+ * constraint unless one is given, and every result carries the formula's "name".</li>
+ * <li>stats: returns the cache sizes and hit counts</li>
+ * <li>shutdown: stops the server after replying</li>
+ * </ul>
+ */
+public class CheckerServer {
+    static final int PARSE_ERROR = -32700;
+    static final int METHOD_NOT_FOUND = -32601;
+    static final int INVALID_PARAMS = -32602;
+    static final int SERVER_ERROR = -32000;
+
+    private static final long DEFAULT_MODEL_WEIGHT = 50000000L;
+    private static final long DEFAULT_RESULT_WORDS = 50000000L;
+
+    private final LruCache<String, Model> models;
+    private final ResultCache results;
+    private final SimpleModelChecker checker;
+    private final JsonParser parser = new JsonParser();
+    private boolean running = true;
+
+    /**
+     * Creates a server.
+     *
+     * @param maxModelWeight the maximum number of states plus transitions of all cached models
+     * @param maxResultWords the maximum number of 64-bit words of all cached satisfaction sets
+     */
+    public CheckerServer(long maxModelWeight, long maxResultWords) {
+        results = new ResultCache(maxResultWords);
+        models = new LruCache<String, Model>(maxModelWeight, new LruCache.Weigher<Model>() {
+            @Override
+            public long weigh(Model model) {
+                CompiledModel compiled = model.compile();
+                return compiled.getStateCount() + compiled.getEdgeCount();
+            }
+        });
+        models.setRemovalListener(new LruCache.RemovalListener<String, Model>() {
+            @Override
+            public void removed(String key, Model model) {
+                results.removeModel(model.compile());
+            }
+        });
+        checker = new SimpleModelChecker();
+        checker.setSatCache(results);
+    }
+
+    /**
+     * Starts the server. With "--port n" it listens on the loopback interface,
+     * otherwise it reads requests from stdin and writes replies to stdout.
+     * "--model-cache n" and "--result-cache n" set the cache limits.
+     */
+    public static void main(String[] args) throws IOException {
+        long modelWeight = DEFAULT_MODEL_WEIGHT;
+        long resultWords = DEFAULT_RESULT_WORDS;
+        int port = -1;
+
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            switch (args[i]) {
+            case "--port":
+                port = Integer.parseInt(args[i + 1]);
+                break;
+            case "--model-cache":
+                modelWeight = Long.parseLong(args[i + 1]);
+                break;
+            case "--result-cache":
+                resultWords = Long.parseLong(args[i + 1]);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        CheckerServer server = new CheckerServer(modelWeight, resultWords);
+        if (port < 0) {
+            server.serve(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)),
+                    new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+            return;
+        }
+
+        try (ServerSocket socket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            while (server.running) {
+                try (Socket client = socket.accept()) {
+                    server.serve(new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8)),
+                            new PrintWriter(new OutputStreamWriter(client.getOutputStream(), StandardCharsets.UTF_8)));
+                } catch (IOException e) {
+                    // a broken connection ends that client only
+                    System.err.println("Connection failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Answers requests, one per line, until the input ends or a shutdown request arrives.
+     *
+     * @param in the request lines
+     * @param out where the replies are written, one per line
+     * @throws IOException if reading or writing fails
+     */
+    public void serve(BufferedReader in, PrintWriter out) throws IOException {
+        String line;
+        while (running && (line = in.readLine()) != null) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            out.println(handleLine(line).toString());
+            out.flush();
+        }
+    }
+
+    /**
+     * Answers a single request line.
+     * @param line the JSON-RPC request
+     * @return the JSON-RPC reply
+     */
+    public JsonObject handleLine(String line) {
+        JsonObject request;
+        try {
+            request = parser.parse(line).getAsJsonObject();
+        } catch (JsonParseException | IllegalStateException e) {
+            return error(null, PARSE_ERROR, "Parse error: " + e.getMessage());
+        }
+        return handle(request);
+    }
+
+    /**
+     * Answers a single request.
+     * @param request the JSON-RPC request
+     * @return the JSON-RPC reply
+     */
+    public JsonObject handle(JsonObject request) {
+        JsonElement id = request.get("id");
+        JsonElement methodElement = request.get("method");
+        JsonElement paramsElement = request.get("params");
+        if (methodElement != null && !(methodElement.isJsonPrimitive() && methodElement.getAsJsonPrimitive().isString())) {
+            return error(id, INVALID_PARAMS, "The method must be a string");
+        }
+        if (paramsElement != null && !paramsElement.isJsonObject()) {
+            return error(id, INVALID_PARAMS, "The params must be an object");
+        }
+        String method = (methodElement != null) ? methodElement.getAsString() : "";
+        JsonObject params = (paramsElement != null) ? paramsElement.getAsJsonObject() : new JsonObject();
+
+        try {
+            switch (method) {
+            case "load":
+                return reply(id, load(params));
+            case "check":
+                return reply(id, check(params));
+            case "batch":
+                return reply(id, batch(params));
+            case "stats":
+                return reply(id, stats());
+            case "shutdown":
+                running = false;
+                return reply(id, new JsonObject());
+            default:
+                return error(id, METHOD_NOT_FOUND, "Unknown method '" + method + "'");
+            }
+        } catch (IllegalArgumentException | IllegalStateException | ClassCastException e) {
+            return error(id, INVALID_PARAMS, e.getMessage());
+        } catch (IOException e) {
+            return error(id, SERVER_ERROR, e.getMessage());
+        } catch (RuntimeException e) {
+            // no single request may end the server
+            return error(id, SERVER_ERROR, e.toString());
+        }
+    }
+
+    private JsonObject load(JsonObject params) throws IOException {
+        String hash = loadModel(params);
+        CompiledModel compiled = models.get(hash).compile();
+
+        JsonObject result = new JsonObject();
+        result.addProperty("model", hash);
+        result.addProperty("states", compiled.getStateCount());
+        result.addProperty("transitions", compiled.getEdgeCount());
+        return result;
+    }
+
+    private JsonObject check(JsonObject params) throws IOException {
+        Model model = models.get(loadModel(params));
+        StateFormula constraint = formula(params.get("constraint"));
+        StateFormula query = formula(params.get("query"));
+        if (query == null) {
+            throw new IllegalArgumentException("Missing query");
+        }
+        return ResultJson.toJson(run(model, constraint, query, params));
+    }
+
+    private JsonObject batch(JsonObject params) throws IOException {
+        Model model = models.get(loadModel(params));
+        StateFormula constraint = formula(params.get("constraint"));
+        boolean useENF = params.has("enf") && params.get("enf").getAsBoolean();
+
+        JsonArray results = new JsonArray();
+        if (params.has("suite")) {
+            FormulaSuite suite = FormulaSuite.parse(params.get("suite").getAsString());
+            List<CheckResult> checked = checker.checkAllWithResult(model,
+                    (constraint != null) ? constraint : suite.getConstraint(),
+                    new ArrayList<StateFormula>(suite.getFormulas().values()), useENF);
+            List<String> names = suite.getNames();
+            for (int i = 0; i < names.size(); i++) {
+                JsonObject result = ResultJson.toJson(checked.get(i));
+                result.addProperty("name", names.get(i));
+                results.add(result);
+            }
+        } else if (params.has("queries")) {
+            List<StateFormula> queries = new ArrayList<StateFormula>();
+            for (JsonElement element : params.getAsJsonArray("queries")) {
+                queries.add(formula(element));
+            }
+            for (CheckResult checked : checker.checkAllWithResult(model, constraint, queries, useENF)) {
+                results.add(ResultJson.toJson(checked));
+            }
+        } else {
+            throw new IllegalArgumentException("Missing queries or suite");
+        }
+
+        JsonObject result = new JsonObject();
+        result.add("results", results);
+        return result;
+    }
+
+    private CheckResult run(Model model, StateFormula constraint, StateFormula query, JsonObject params) {
+        boolean useENF = params.has("enf") && params.get("enf").getAsBoolean();
+        return useENF ? checker.checkENFWithResult(model, constraint, query)
+                : checker.checkWithResult(model, constraint, query);
+    }
+
+    private JsonObject stats() {
+        JsonObject result = new JsonObject();
+        result.addProperty("models", models.size());
+        result.addProperty("modelWeight", models.weight());
+        result.addProperty("modelHits", models.hits());
+        result.addProperty("modelMisses", models.misses());
+        result.addProperty("results", results.entries().size());
+        result.addProperty("resultWords", results.entries().weight());
+        result.addProperty("resultHits", results.entries().hits());
+        result.addProperty("resultMisses", results.entries().misses());
+        return result;
+    }
+
+    /**
+     * Makes sure the model named by the parameters is cached and returns its hash.
+     * The model is given by the hash of an already loaded model ("model" as a string),
+     * inline ("model" as an object) or by a file ("path").
+     */
+    private String loadModel(JsonObject params) throws IOException {
+        JsonElement model = params.get("model");
+        byte[] content;
+
+        if (model != null && model.isJsonPrimitive()) {
+            String hash = model.getAsString();
+            if (models.get(hash) == null) {
+                throw new IllegalArgumentException("Unknown model " + hash + ", load it first");
+            }
+            return hash;
+        } else if (model != null && model.isJsonObject()) {
+            content = model.toString().getBytes(StandardCharsets.UTF_8);
+        } else if (params.has("path")) {
+            content = Files.readAllBytes(Paths.get(params.get("path").getAsString()));
+        } else {
+            throw new IllegalArgumentException("Missing model or path");
+        }
+
+        String hash = sha256(content);
+        if (models.get(hash) == null) {
+            Model parsed = Model.parseModel(new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8));
+            parsed.compile();
+            models.put(hash, parsed);
+        }
+        return hash;
+    }
+
+    private StateFormula formula(JsonElement element) throws IOException {
+        if (element == null || element.isJsonNull()) {
+            return null;
+        } else if (element.isJsonObject()) {
+            return new FormulaParser(element.getAsJsonObject()).parse();
+        }
+        return new FormulaParser(element.getAsString()).parse();
+    }
+
+    private static String sha256(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static JsonObject reply(JsonElement id, JsonObject result) {
+        JsonObject reply = new JsonObject();
+        reply.addProperty("jsonrpc", "2.0");
+        reply.add("id", id);
+        reply.add("result", result);
+        return reply;
+    }
+
+    private static JsonObject error(JsonElement id, int code, String message) {
+        JsonObject error = new JsonObject();
+        error.addProperty("code", code);
+        error.addProperty("message", message);
+
+        JsonObject reply = new JsonObject();
+        reply.addProperty("jsonrpc", "2.0");
+        reply.add("id", id);
+        reply.add("error", error);
+        return reply;
+    }
+}
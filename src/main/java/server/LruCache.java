@@ -0,0 +1,141 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * A least-recently-used cache bounded by the total weight of its values.
+ *
+ * Each value is weighed once when it is stored. When the total weight exceeds
+ * the limit, the least recently used entries are evicted until it fits again;
+ * a single value heavier than the limit is still stored, alone. All methods
+ * are synchronized.
+ */
+public class LruCache<K, V> {
+    /**
+     * Computes the weight of a cached value.
+     */
+    public interface Weigher<V> {
+        public long weigh(V value);
+    }
+
+    /**
+     * Is told about every entry that is evicted or removed.
+     */
+    public interface RemovalListener<K, V> {
+        public void removed(K key, V value);
+    }
+
+    private final LinkedHashMap<K, V> map = new LinkedHashMap<K, V>(16, 0.75f, true);
+    private final Map<K, Long> weights = new HashMap<K, Long>();
+    private final long maxWeight;
+    private final Weigher<V> weigher;
+    private RemovalListener<K, V> listener;
+    private long totalWeight;
+    private long hits;
+    private long misses;
+
+    public LruCache(long maxWeight, Weigher<V> weigher) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    public synchronized void setRemovalListener(RemovalListener<K, V> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Returns the cached value and marks it as most recently used.
+     * @param key the key
+     * @return the value or null if it is not cached
+     */
+    public synchronized V get(K key) {
+        V value = map.get(key);
+        if (value == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return value;
+    }
+
+    /**
+     * Stores a value, replacing any previous value for the key, and evicts
+     * least recently used entries if the cache is over its weight limit.
+     *
+     * @param key the key
+     * @param value the value
+     */
+    public synchronized void put(K key, V value) {
+        remove(key);
+
+        long weight = weigher.weigh(value);
+        map.put(key, value);
+        weights.put(key, weight);
+        totalWeight += weight;
+
+        Iterator<Map.Entry<K, V>> iterator = map.entrySet().iterator();
+        while (totalWeight > maxWeight && map.size() > 1) {
+            Map.Entry<K, V> eldest = iterator.next();
+            iterator.remove();
+            evicted(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    /**
+     * Removes the value for a key.
+     * @param key the key
+     * @return the removed value or null if it was not cached
+     */
+    public synchronized V remove(K key) {
+        V value = map.remove(key);
+        if (value != null) {
+            evicted(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * Removes every entry whose key matches.
+     * @param filter decides which keys to remove
+     */
+    public synchronized void removeIf(Predicate<K> filter) {
+        List<K> keys = new ArrayList<K>();
+        for (K key : map.keySet()) {
+            if (filter.test(key)) {
+                keys.add(key);
+            }
+        }
+        for (K key : keys) {
+            remove(key);
+        }
+    }
+
+    private void evicted(K key, V value) {
+        totalWeight -= weights.remove(key);
+        if (listener != null) {
+            listener.removed(key, value);
+        }
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public synchronized long weight() {
+        return totalWeight;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+}
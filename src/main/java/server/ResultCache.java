@@ -0,0 +1,71 @@
+package server;
+
+import formula.stateFormula.StateFormula;
+import model.CompiledModel;
+import model.StateSet;
+import modelChecker.SatCache;
+
+/**
+ * Subformula results shared by all checks the server runs, bounded by the
+ * number of 64-bit words the cached sets take.
+ */
+class ResultCache implements SatCache {
+    private final LruCache<Key, StateSet> cache;
+
+    ResultCache(long maxWords) {
+        cache = new LruCache<Key, StateSet>(maxWords, new LruCache.Weigher<StateSet>() {
+            @Override
+            public long weigh(StateSet value) {
+                return 1 + value.universeSize() / 64;
+            }
+        });
+    }
+
+    @Override
+    public StateSet get(CompiledModel model, StateFormula formula) {
+        return cache.get(new Key(model, formula));
+    }
+
+    @Override
+    public void put(CompiledModel model, StateFormula formula, StateSet sat) {
+        cache.put(new Key(model, formula), sat);
+    }
+
+    /**
+     * Drops every result computed for the given model.
+     * @param model the model that was evicted
+     */
+    void removeModel(final CompiledModel model) {
+        cache.removeIf(key -> key.model == model);
+    }
+
+    LruCache<?, ?> entries() {
+        return cache;
+    }
+
+    private static final class Key {
+        private final CompiledModel model;
+        private final StateFormula formula;
+        private final int hash;
+
+        Key(CompiledModel model, StateFormula formula) {
+            this.model = model;
+            this.formula = formula;
+            this.hash = 31 * System.identityHashCode(model) + formula.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return model == other.model && formula.equals(other.formula);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
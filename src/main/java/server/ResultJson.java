@@ -0,0 +1,72 @@
+package server;
+
+import java.util.Map;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import modelChecker.CheckResult;
+
+/**
+ * Converts check results to JSON.
+ */
+public class ResultJson {
+    private ResultJson() {
+    }
+
+    /**
+     * Returns the JSON form of a check result.
+     *
+     * @param result the result
+     * @return a JSON object with the verdict, failing initial states, traces, per-initial-state verdicts, set sizes, simplification and timings
+     */
+    public static JsonObject toJson(CheckResult result) {
+        JsonObject json = new JsonObject();
+        json.addProperty("satisfied", result.isSatisfied());
+        json.addProperty("trivial", result.isTriviallySatisfied());
+        json.addProperty("earlyTerminated", result.isEarlyTerminated());
+        json.addProperty("message", result.getMessage());
+
+        JsonArray failing = new JsonArray();
+        for (String name : result.getFailingInitialStates()) {
+            failing.add(new JsonPrimitive(name));
+        }
+        json.add("failingInitialStates", failing);
+
+        JsonArray traces = new JsonArray();
+        for (String[] trace : result.getTraces()) {
+            JsonArray steps = new JsonArray();
+            for (String name : trace) {
+                steps.add(new JsonPrimitive(name));
+            }
+            traces.add(steps);
+        }
+        json.add("traces", traces);
+
+        JsonObject verdicts = new JsonObject();
+        for (Map.Entry<String, Boolean> verdict : result.getVerdicts().entrySet()) {
+            verdicts.addProperty(verdict.getKey(), verdict.getValue());
+        }
+        json.add("verdicts", verdicts);
+
+        json.addProperty("constraintSatSize", result.getConstraintSatSize());
+        json.addProperty("querySatSize", result.getQuerySatSize());
+        json.addProperty("simplifiedNodes", result.getSimplifiedNodes());
+
+        JsonObject plan = new JsonObject();
+        plan.addProperty("reorderedOperands", result.getReorderedOperands());
+        plan.addProperty("skippedOperands", result.getSkippedOperands());
+        plan.addProperty("restrictedOperands", result.getRestrictedOperands());
+        plan.addProperty("savedCost", result.getSavedCost());
+        json.add("plan", plan);
+
+        JsonObject timings = new JsonObject();
+        timings.addProperty("constraintNanos", result.getConstraintNanos());
+        timings.addProperty("queryNanos", result.getQueryNanos());
+        timings.addProperty("traceNanos", result.getTraceNanos());
+        timings.addProperty("totalNanos", result.getTotalNanos());
+        json.add("timings", timings);
+        return json;
+    }
+}
@@ -9,6 +9,7 @@ import org.junit.Test;
 
 import formula.pathFormula.*;
 import formula.stateFormula.*;
+import modelChecker.ENFConverter;
 import modelChecker.SATChecker;
 import model.*;
 
@@ -120,15 +121,45 @@ public class StateFormulaTest {
         StateFormula forall = new ForAll(eventually);
         
         Set<State> result = checker.getSat(forall, model.getStatesSet());
-        // If not all states are satisfied, empty set is returned.
-        assert(result.isEmpty());
+        // Paths only continue through states entered with act3, and all of them reach wait1.
+        assert(result.containsAll(model.getStatesSet()));
+        assertEquals(checker.getSat(new ENFConverter().convertToENF(forall), model.getStatesSet()), result);
         
         eventually = new Eventually(wait1, new HashSet<>(), new HashSet<>());
         forall = new ForAll(eventually);
 
         result = checker.getSat(forall, model.getStatesSet());
-        // Contains all the states.
-        assert(result.containsAll(model.getStatesSet()));
+        // The cycle s0 -> s3 -> s4 -> s0 never waits in process 1, so only the wait1 states satisfy it.
+        Set<State> expected = new HashSet<>();
+        expected.add(model.getState("s1"));
+        expected.add(model.getState("s5"));
+        expected.add(model.getState("s7"));
+        assertEquals(expected, result);
+        assertEquals(checker.getSat(new ENFConverter().convertToENF(forall), model.getStatesSet()), result);
+    }
+
+    @Test
+    public void testforAllNextAndAlways(){
+        Set<String> actions = new HashSet<>(Arrays.asList(actionSet2));
+        StateFormula notCrit = new Not(new Or(crit1, crit2));
+        ENFConverter converter = new ENFConverter();
+
+        StateFormula[] formulas = {
+            new ForAll(new Next(notCrit, new HashSet<>())),
+            new ForAll(new Next(notCrit, actions)),
+            new ForAll(new Always(notCrit, new HashSet<>())),
+            new ForAll(new Always(notCrit, actions)),
+            new ForAll(new Until(notCrit, wait1, new HashSet<>(), new HashSet<>())),
+            new ForAll(new Until(notCrit, wait1, new HashSet<>(Arrays.asList(actionSet1)), actions))
+        };
+        for (StateFormula formula : formulas) {
+            assertEquals(checker.getSat(converter.convertToENF(formula), model.getStatesSet()),
+                    checker.getSat(formula, model.getStatesSet()));
+        }
+
+        // s0 only moves to s1 and s3
+        assertTrue(checker.getSat(formulas[0], model.getStatesSet()).contains(model.getState("s0")));
+        assertFalse(checker.getSat(formulas[2], model.getStatesSet()).contains(model.getState("s0")));
     }
 
     @Test
@@ -236,4 +267,26 @@ public class StateFormulaTest {
         Set<State> result = checker.getSat(exists, model.getStatesSet());
         assert(result.containsAll(expected));
     }
+
+    @Test
+    public void parseManyFormulas() throws IOException {
+        FormulaParser parser = new FormulaParser();
+        StateFormula first = parser.parseFormula("(wait1 && EF crit1)");
+        StateFormula second = parser.parseFormula("AG (crit1 || !wait1)");
+
+        assertEquals(new And(wait1, new ThereExists(new Eventually(crit1, new HashSet<String>(), new HashSet<String>()))), first);
+        assertEquals(FormulaParser.parseRawFormulaString("AG (crit1 || !wait1)"), second);
+
+        // identifiers are interned across the formulas of one parser
+        String label = ((AtomicProp) ((And) first).left).label;
+        Or or = (Or) ((Always) ((ForAll) second).pathFormula).stateFormula;
+        assertSame(label, ((AtomicProp) ((Not) or.right).stateFormula).label);
+
+        try {
+            parser.parseFormula("(wait1 & crit1)");
+            fail("expected a parse error");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("Error at character position 10:"));
+        }
+    }
 }
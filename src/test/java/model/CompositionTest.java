@@ -0,0 +1,150 @@
+package model;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.HashSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import formula.pathFormula.*;
+import formula.stateFormula.*;
+import modelChecker.PartialOrderReduction;
+import modelChecker.SATChecker;
+import modelChecker.SaturationChecker;
+
+public class CompositionTest {
+    private Composition composition;
+
+    @Before
+    public void instantiateEnvironment() {
+        try {
+            composition = Composition.parse("src/test/resources/composition/system.json");
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail(e.toString());
+        }
+    }
+
+    @Test
+    public void buildReachableProduct() {
+        CompiledModel product = composition.build();
+
+        // idle,waiting -> ready,waiting -> idle,busy -> ready,busy / idle,waiting
+        assertEquals(4, product.getStateCount());
+        assertEquals(5, product.getEdgeCount());
+        assertEquals(1, product.getInitialCount());
+        assertEquals("idle,waiting", product.getName(product.getInitial(0)));
+
+        int sent = product.indexOf("idle,busy");
+        assertTrue(sent >= 0);
+        int send = product.getActionId("send");
+        assertEquals(1, product.predEnd(sent, send) - product.predBegin(sent, send));
+        assertEquals(product.indexOf("ready,waiting"), product.actionPredSource(product.predBegin(sent, send)));
+    }
+
+    @Test
+    public void synchronisedActionNeedsAllComponents() throws IOException {
+        CompiledModel product = composition.build();
+
+        // the producer cannot send while the consumer is busy
+        int blocked = product.indexOf("ready,busy");
+        int send = product.getActionId("send");
+        assertEquals(0, product.succEnd(blocked, send) - product.succBegin(blocked, send));
+
+        // without synchronisation the components interleave freely
+        Composition free = new Composition()
+                .add(Model.parseModel("src/test/resources/composition/producer.json"))
+                .add(Model.parseModel("src/test/resources/composition/consumer.json"));
+        assertEquals(4, free.build().getStateCount());
+        assertEquals(8, free.build().getEdgeCount());
+    }
+
+    @Test
+    public void checkProduct() {
+        Model product = composition.buildModel();
+        SATChecker checker = new SATChecker(product);
+
+        // the consumer is never busy and waiting at once, and both can be busy together
+        StateFormula never = new ForAll(new Always(new Not(new And(new AtomicProp("busy"), new AtomicProp("waiting"))),
+                new HashSet<String>()));
+        StateFormula both = new ThereExists(new Eventually(new And(new AtomicProp("ready"), new AtomicProp("busy")),
+                new HashSet<String>(), new HashSet<String>()));
+        StateSet initial = product.compile().initialStates();
+        assertTrue(checker.getSat(never, product.compile().allStates()).containsAll(initial));
+        assertTrue(checker.getSat(both, product.compile().allStates()).containsAll(initial));
+        assertSame(product.compile(), checker.getModel());
+    }
+
+    @Test
+    public void reduceInterleavings() {
+        Composition full = new Composition();
+        Composition reduced = new Composition();
+        for (int i = 0; i < 3; i++) {
+            // a worker that toggles between two states on its own
+            Model worker = new Model(
+                    new State[] { new State("w" + i + "a", true, new String[] { "idle" + i }),
+                            new State("w" + i + "b", false, new String[] { "working" + i }) },
+                    new Transition[] { new Transition("w" + i + "a", "w" + i + "b", new String[] { "start" + i }),
+                            new Transition("w" + i + "b", "w" + i + "a", new String[] { "stop" + i }) });
+            full.add(worker);
+            reduced.add(worker);
+        }
+
+        HashSet<String> none = new HashSet<String>();
+        StateFormula[] formulas = {
+                new ForAll(new Always(new ThereExists(new Eventually(new AtomicProp("working0"), none, none)), none)),
+                new ThereExists(new Until(new AtomicProp("idle0"), new AtomicProp("working0"), none, none)),
+                new ForAll(new Eventually(new AtomicProp("working0"), none, none)) };
+        PartialOrderReduction reduction = new PartialOrderReduction(reduced);
+        Model small = reduction.reduce(formulas);
+        Model large = full.buildModel();
+
+        assertTrue(small.compile().getEdgeCount() < large.compile().getEdgeCount());
+        assertTrue(reduction.getReductionRatio() > 0);
+        for (StateFormula formula : formulas) {
+            StateSet expected = new SATChecker(large).getSat(formula, large.compile().allStates());
+            StateSet actual = new SATChecker(small).getSat(formula, small.compile().allStates());
+            assertEquals(expected.containsAll(large.compile().initialStates()),
+                    actual.containsAll(small.compile().initialStates()));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void reductionRejectsNext() {
+        new PartialOrderReduction(composition).reduce(new ThereExists(new Next(new AtomicProp("busy"), new HashSet<String>())));
+    }
+
+    @Test
+    public void saturateWithoutProduct() {
+        SaturationChecker saturation = new SaturationChecker(composition);
+        assertEquals(4, saturation.countReachable(), 0);
+
+        HashSet<String> none = new HashSet<String>();
+        StateFormula[] formulas = {
+                new ThereExists(new Eventually(new And(new AtomicProp("ready"), new AtomicProp("busy")), none, none)),
+                new ThereExists(new Until(new AtomicProp("waiting"), new AtomicProp("busy"), none, none)),
+                new ForAll(new Always(new Not(new And(new AtomicProp("busy"), new AtomicProp("waiting"))), none)) };
+        Model product = composition.buildModel();
+        for (StateFormula formula : formulas) {
+            StateSet expected = new SATChecker(product).getSat(formula, product.compile().allStates());
+            StateSet actual = saturation.getSat(formula, product.compile());
+            assertEquals(expected.cardinality(), actual.cardinality());
+            assertTrue(expected.containsAll(actual));
+            assertEquals(expected.containsAll(product.compile().initialStates()), saturation.check(formula));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void saturationRejectsActions() {
+        HashSet<String> send = new HashSet<String>();
+        send.add("send");
+        new SaturationChecker(composition).check(new ThereExists(new Eventually(new AtomicProp("busy"), send, send)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void limitProductSize() {
+        composition.setMaxStates(2).build();
+    }
+}
@@ -2,15 +2,38 @@ package modelChecker;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Before;
 import org.junit.Test;
 
 import formula.*;
+import formula.pathFormula.Eventually;
 import formula.stateFormula.*;
 import modelChecker.SimpleModelChecker;
+import model.CompiledModel;
+import model.IntHashSet;
+import model.MappedStateSet;
+import model.MappedStorage;
 import model.Model;
+import model.ModelDelta;
+import model.RoaringStateSet;
+import model.State;
+import model.StateSet;
+import model.Storage;
+import model.Transition;
 
 public class ModelCheckerTest {
     private Model model;
@@ -29,7 +52,7 @@ public class ModelCheckerTest {
             model = Model.parseModel("src/test/resources/model1.json");
             fairnessConstraint = new FormulaParser("src/test/resources/constraint1-pass.json").parse();
             query = new FormulaParser("src/test/resources/ctl1.json").parse();
-            mc = new SimpleModelChecker();
+            mc = new SimpleModelChecker(new ConsoleReporter());
         } catch (IOException e) {
             e.printStackTrace();
             fail(e.toString());
@@ -51,7 +74,7 @@ public class ModelCheckerTest {
     @Test
     public void buildAndCheckModel2() {
         // Constraint fails Trivially True
-        setEnvironment("model1.json", "ctl1.json", "constraint1.json");
+        setEnvironment("model1.json", "ctl1.json", "constraint2.json");
         assertTrue(mc.check(model, fairnessConstraint, query));
     }
 
@@ -86,7 +109,7 @@ public class ModelCheckerTest {
     @Test
     public void buildAndCheckModelWithENF2() {
         // Constraint fails Trivially True
-        setEnvironment("model1.json", "ctl1.json", "constraint1.json");
+        setEnvironment("model1.json", "ctl1.json", "constraint2.json");
         assertTrue(mc.check(model, fairnessConstraint, query));
     }
 
@@ -126,9 +149,10 @@ public class ModelCheckerTest {
     @Test
     public void buildAndChecKMutexModel2() {
         try {
-            // sat model checking passes
+            // the constraint holds in every state, but no state satisfies the query
             StateFormula query2 = new FormulaParser("src/test/resources/ctl2.json").parse();
-            assertTrue(mc.check(mutexModel, fairnessConstraint, query2));
+            assertFalse(mc.check(mutexModel, fairnessConstraint, query2));
+            assertFalse(mc.checkENF(mutexModel, fairnessConstraint, query2));
         } catch (IOException e) {
             e.printStackTrace();
             fail(e.toString());
@@ -147,6 +171,499 @@ public class ModelCheckerTest {
         }
     }
 
+    @Test
+    public void checkResultForPassingQuery() {
+        setEnvironment("model1.json", "ctl1.json", "constraint1-pass.json");
+        CheckResult result = new SimpleModelChecker().checkWithResult(model, fairnessConstraint, query);
+
+        assertTrue(result.isSatisfied());
+        assertFalse(result.isTriviallySatisfied());
+        assertTrue(result.getFailingInitialStates().isEmpty());
+        assertNull(result.getTrace());
+        assertTrue(result.getConstraintSatSize() > 0);
+    }
+
+    @Test
+    public void checkResultForTriviallySatisfiedQuery() {
+        setEnvironment("model1.json", "ctl1.json", "constraint2.json");
+        CheckResult result = new SimpleModelChecker().checkWithResult(model, fairnessConstraint, query);
+
+        assertTrue(result.isSatisfied());
+        assertTrue(result.isTriviallySatisfied());
+        assertEquals(-1, result.getQuerySatSize());
+    }
+
+    @Test
+    public void checkResultForFailingQuery() {
+        setEnvironment("model1.json", "ctl3.json", "constraint1-pass.json");
+        CheckResult result = new SimpleModelChecker().checkWithResult(model, fairnessConstraint, query);
+
+        assertFalse(result.isSatisfied());
+        assertFalse(result.getFailingInitialStates().isEmpty());
+        assertNotNull(result.getTrace());
+        assertTrue(result.getFailingInitialStates().contains(result.getTrace()[0]));
+        assertTrue(result.getTotalNanos() >= result.getQueryNanos());
+    }
+
+    @Test
+    public void shareCompiledModelAcrossThreads() throws Exception {
+        CompiledModel compiled = mutexModel.compile();
+        StateFormula query2 = new FormulaParser("src/test/resources/ctl2.json").parse();
+        StateSet expected = new SATChecker(compiled).getSat(query2, compiled.allStates());
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        List<Future<StateSet>> futures = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            futures.add(pool.submit(() -> new SATChecker(compiled).getSat(query2, compiled.allStates())));
+        }
+        for (Future<StateSet> future : futures) {
+            assertEquals(expected, future.get());
+        }
+        pool.shutdown();
+        assertSame(compiled, mutexModel.compile());
+    }
+
+    @Test
+    public void indexEdgesByAction() {
+        CompiledModel compiled = mutexModel.compile();
+
+        for (int s = 0; s < compiled.getStateCount(); s++) {
+            for (int a = 0; a < compiled.getActionCount(); a++) {
+                List<Integer> expected = new ArrayList<>();
+                for (int i = compiled.predBegin(s); i < compiled.predEnd(s); i++) {
+                    int edge = compiled.predEdge(i);
+                    for (int j = compiled.actionBegin(edge); j < compiled.actionEnd(edge); j++) {
+                        if (compiled.edgeAction(j) == a) expected.add(edge);
+                    }
+                }
+
+                List<Integer> indexed = new ArrayList<>();
+                for (int i = compiled.predBegin(s, a); i < compiled.predEnd(s, a); i++) {
+                    assertEquals(s, compiled.edgeTarget(compiled.actionPredEdge(i)));
+                    indexed.add(compiled.actionPredEdge(i));
+                }
+                assertEquals(expected, indexed);
+
+                for (int i = compiled.succBegin(s, a); i < compiled.succEnd(s, a); i++) {
+                    int edge = compiled.actionSuccEdge(i);
+                    assertTrue(edge >= compiled.succBegin(s) && edge < compiled.succEnd(s));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void indexTransitionsByStateIndex() {
+        Transition[] transitions = mutexModel.getTransitions();
+        State[] states = mutexModel.getStates();
+
+        for (int s = 0; s < states.length; s++) {
+            assertEquals(s, mutexModel.indexOf(states[s].getName()));
+            IntHashSet outgoing = new IntHashSet();
+            for (int t : mutexModel.getOutgoing(s)) {
+                assertEquals(states[s].getName(), transitions[t].getSource());
+                outgoing.add(t);
+            }
+            for (int t : mutexModel.getIncoming(s)) {
+                assertEquals(states[s].getName(), transitions[t].getTarget());
+            }
+            assertEquals(mutexModel.getTransition(states[s].getName()).size(), outgoing.size());
+        }
+        assertEquals(-1, mutexModel.indexOf("missing"));
+        assertNull(mutexModel.getTransition("missing"));
+        assertTrue(mutexModel.getTargetTransition("missing").isEmpty());
+    }
+
+    @Test
+    public void streamFlyweightTransitionsBeforeStates() throws IOException {
+        String json = "{\"transitions\":[{\"source\":\"s0\",\"target\":\"s1\",\"actions\":[\"go\"]},"
+                + "{\"source\":\"s1\",\"target\":\"gone\",\"actions\":[\"lost\"]},"
+                + "{\"source\":\"s1\",\"target\":\"s0\",\"actions\":[\"back\",\"go\"]}],"
+                + "\"states\":[{\"name\":\"s0\",\"init\":true,\"label\":[\"p\"]},{\"name\":\"s1\",\"label\":[]}]}";
+        Model flyweight = Model.parseFlyweight(new StringReader(json), Storage.HEAP);
+        CompiledModel compiled = flyweight.compile();
+
+        // the dangling transition and its action are dropped
+        assertEquals(2, compiled.getEdgeCount());
+        assertEquals(-1, compiled.getActionId("lost"));
+        Transition[] transitions = flyweight.getTransitions();
+        assertEquals("s1", transitions[1].getSource());
+        assertArrayEquals(new String[] { "back", "go" }, transitions[1].getActions());
+        assertEquals(Model.parseModel(new StringReader(json)).compile().getActionCount(), compiled.getActionCount());
+    }
+
+    @Test
+    public void materializeFlyweightStates() throws IOException {
+        Model flyweight = Model.parseFlyweight("src/test/resources/mtxmodel.json");
+        CompiledModel compiled = flyweight.compile();
+        assertTrue(flyweight.isFlyweight());
+        assertFalse(mutexModel.isFlyweight());
+
+        // states are made on demand, equal to the parsed ones but never kept
+        State[] states = mutexModel.getStates();
+        assertEquals(states.length, flyweight.getStateCount());
+        for (int s = 0; s < states.length; s++) {
+            State state = flyweight.getState(states[s].getName());
+            assertEquals(states[s], state);
+            assertNotSame(state, flyweight.getState(states[s].getName()));
+            assertEquals(states[s].isInit(), state.isInit());
+            assertArrayEquals(states[s].getLabel(), compiled.getLabels(s));
+            assertEquals(mutexModel.getOutgoing(s).length, flyweight.getOutgoing(s).length);
+            assertEquals(mutexModel.getIncoming(s).length, flyweight.getIncoming(s).length);
+            // transitions are made from the compiled edges
+            for (int t : flyweight.getOutgoing(s)) {
+                assertEquals(states[s].getName(), flyweight.getTransitions()[t].getSource());
+            }
+            assertEquals(mutexModel.getTargetTransition(states[s].getName()).size(),
+                    flyweight.getTargetTransition(states[s].getName()).size());
+        }
+        assertEquals(mutexModel.getTransitions().length, flyweight.getTransitions().length);
+        assertEquals(mutexModel.getInitialSet(), flyweight.getInitialSet());
+        assertEquals(mutexModel.compile().getEdgeCount(), compiled.getEdgeCount());
+
+        SimpleModelChecker checker = new SimpleModelChecker();
+        StateFormula failing = new FormulaParser("src/test/resources/ctl2.json").parse();
+        CheckResult expected = checker.checkWithResult(mutexModel, fairnessConstraint_mutex, failing);
+        CheckResult actual = checker.checkWithResult(flyweight, fairnessConstraint_mutex, failing);
+        assertFalse(actual.isSatisfied());
+        assertEquals(expected.getTraces().size(), actual.getTraces().size());
+        for (int i = 0; i < expected.getTraces().size(); i++) {
+            assertArrayEquals(expected.getTraces().get(i), actual.getTraces().get(i));
+        }
+    }
+
+    @Test
+    public void reuseRecycledSets() throws IOException {
+        SATChecker checker = new SATChecker(mutexModel);
+        StateSet all = mutexModel.compile().allStates();
+        StateFormula[] formulas = { FormulaParser.parseRawFormulaString("AG (!crit1 || !crit2)"),
+                FormulaParser.parseRawFormulaString("E (wait1 U crit1)"),
+                FormulaParser.parseRawFormulaString("A (!crit1 U wait1)") };
+
+        for (StateFormula formula : formulas) {
+            StateSet first = checker.getSat(formula, all);
+            StateSet expected = first.copy();
+            checker.recycle(first);
+
+            // the recycled set is handed out again and must not leak into the next result
+            StateSet second = checker.getSat(formula, all);
+            assertEquals(expected.cardinality(), second.cardinality());
+            assertTrue(second.containsAll(expected));
+        }
+    }
+
+    @Test
+    public void planConjunctionsBySelectivity() throws IOException {
+        // no state is labelled missing, so the temporal operand is never evaluated
+        StateFormula query = FormulaParser.parseRawFormulaString("((EG wait1) && missing)");
+        SimpleModelChecker checker = new SimpleModelChecker();
+        checker.setQueryPlanning(true);
+        CheckResult result = checker.checkWithResult(mutexModel, null, query);
+
+        assertFalse(result.isSatisfied());
+        assertEquals(0, result.getQuerySatSize());
+        assertEquals(1, result.getReorderedOperands());
+        assertEquals(1, result.getSkippedOperands());
+        assertTrue(result.getSavedCost() > 0);
+
+        CheckResult unplanned = new SimpleModelChecker().checkWithResult(mutexModel, null, query);
+        assertEquals(unplanned.getQuerySatSize(), result.getQuerySatSize());
+        assertEquals(0, unplanned.getReorderedOperands());
+    }
+
+    @Test
+    public void simplifyBeforeChecking() {
+        setEnvironment("model1.json", "ctl1.json", "constraint1-pass.json");
+        StateFormula doubled = new Not(new Not(new And(query, new BoolProp(true))));
+        FormulaSimplifier simplifier = new FormulaSimplifier();
+        StateFormula simplified = simplifier.simplify(doubled);
+
+        assertEquals(simplifier.simplify(query), simplified);
+        CheckResult result = new SimpleModelChecker().checkWithResult(model, fairnessConstraint, doubled);
+        assertEquals(mc.check(model, fairnessConstraint, query), result.isSatisfied());
+        assertEquals(FormulaSimplifier.size(doubled) - FormulaSimplifier.size(simplified), result.getSimplifiedNodes());
+    }
+
+    @Test
+    public void stopAtVerdict() throws IOException {
+        SimpleModelChecker early = new SimpleModelChecker();
+        early.setEarlyExit(true);
+        SimpleModelChecker full = new SimpleModelChecker();
+
+        // a least fixpoint that reaches the initial state, a greatest one that loses it
+        for (String text : new String[] { "EF crit1", "AG !crit1" }) {
+            StateFormula formula = FormulaParser.parseRawFormulaString(text);
+            CheckResult stopped = early.checkWithResult(mutexModel, null, formula);
+            CheckResult complete = full.checkWithResult(mutexModel, null, formula);
+
+            assertTrue(stopped.isEarlyTerminated());
+            assertEquals(complete.isSatisfied(), stopped.isSatisfied());
+            assertEquals(complete.getFailingInitialStates(), stopped.getFailingInitialStates());
+            assertEquals(complete.getTraces().size(), stopped.getTraces().size());
+        }
+    }
+
+    @Test
+    public void restrictQueryToConstraint() throws IOException {
+        StateFormula constraint = FormulaParser.parseRawFormulaString("!crit2");
+        SimpleModelChecker restricted = new SimpleModelChecker();
+        restricted.setRestrictToConstraint(true);
+
+        // s0 -> s3 -> s4 leaves the constraint, so only the restricted check passes
+        StateFormula safe = FormulaParser.parseRawFormulaString("AG !crit2");
+        assertFalse(new SimpleModelChecker().check(mutexModel, constraint, safe));
+        assertTrue(restricted.check(mutexModel, constraint, safe));
+
+        // a counterexample inside the sub-model never visits a state outside it
+        CheckResult result = restricted.checkWithResult(mutexModel, constraint,
+                FormulaParser.parseRawFormulaString("AG !crit1"));
+        assertFalse(result.isSatisfied());
+        assertEquals(1, result.getTraces().size());
+        for (String name : result.getTraces().get(0)) {
+            assertFalse(Arrays.asList(mutexModel.getStateMap().get(name).getLabel()).contains("crit2"));
+        }
+    }
+
+    @Test
+    public void findShortCounterexample() throws IOException {
+        CompiledModel compiled = mutexModel.compile();
+        BoundedModelChecker bounded = new BoundedModelChecker(mutexModel);
+
+        // AG !crit1 fails on the shortest path into crit1
+        String[] trace = bounded.findCounterexample(FormulaParser.parseRawFormulaString("AG !crit1"));
+        assertNotNull(trace);
+        assertEquals(trace.length - 1, bounded.getBound());
+        assertTrue(compiled.isInitial(compiled.indexOf(trace[0])));
+        assertTrue(compiled.getState(compiled.indexOf(trace[trace.length - 1])).getLabel().length > 0);
+        for (int i = 0; i + 1 < trace.length; i++) {
+            boolean edge = false;
+            int source = compiled.indexOf(trace[i]);
+            for (int e = compiled.succBegin(source); e < compiled.succEnd(source); e++) {
+                edge |= compiled.getName(compiled.edgeTarget(e)).equals(trace[i + 1]);
+            }
+            assertTrue(edge);
+        }
+
+        SimpleModelChecker checker = new SimpleModelChecker();
+        checker.setBoundedSearch(10);
+        CheckResult result = checker.checkWithResult(mutexModel, null, FormulaParser.parseRawFormulaString("AG !crit1"));
+        assertFalse(result.isSatisfied());
+        assertTrue(result.isEarlyTerminated());
+        assertArrayEquals(trace, result.getTrace());
+
+        // no counterexample for a query that holds, and the full check still runs
+        StateFormula mutex = FormulaParser.parseRawFormulaString("AG !(crit1 && crit2)");
+        assertNull(bounded.findCounterexample(mutex));
+        assertTrue(checker.checkWithResult(mutexModel, null, mutex).isSatisfied());
+    }
+
+    @Test
+    public void traceEveryFailingInitialState() throws IOException {
+        // b -> a -> bad, and c loops among safe states
+        Model threeStarts = new Model(
+                new State[] { new State("a", true, new String[0]), new State("b", true, new String[0]),
+                        new State("c", true, new String[0]), new State("bad", false, new String[] { "bad" }) },
+                new Transition[] { new Transition("a", "bad", new String[0]), new Transition("b", "a", new String[0]),
+                        new Transition("c", "c", new String[0]) });
+        SimpleModelChecker checker = new SimpleModelChecker();
+        checker.setAllCounterexamples(true);
+        CheckResult result = checker.checkWithResult(threeStarts, null, FormulaParser.parseRawFormulaString("AG !bad"));
+
+        assertFalse(result.isSatisfied());
+        assertEquals(Arrays.asList("a", "b"), result.getFailingInitialStates());
+        assertEquals(Boolean.FALSE, result.getVerdicts().get("a"));
+        assertEquals(Boolean.TRUE, result.getVerdicts().get("c"));
+        assertEquals(2, result.getTraces().size());
+        assertArrayEquals(new String[] { "a", "bad" }, result.getTraces().get(0));
+        assertArrayEquals(new String[] { "b", "a", "bad" }, result.getTraces().get(1));
+    }
+
+    @Test
+    public void streamTracesToSinks() throws IOException {
+        Model twoStarts = new Model(
+                new State[] { new State("a", true, new String[0]), new State("b", true, new String[] { "start" }),
+                        new State("bad", false, new String[] { "bad" }) },
+                new Transition[] { new Transition("a", "bad", new String[] { "fail" }),
+                        new Transition("b", "a", new String[] { "step" }) });
+        StateFormula query = FormulaParser.parseRawFormulaString("AG !bad");
+
+        SimpleModelChecker checker = new SimpleModelChecker();
+        checker.setAllCounterexamples(true);
+        StringWriter json = new StringWriter();
+        checker.setTraceSink(new JsonTraceSink(json));
+        CheckResult result = checker.checkWithResult(twoStarts, null, query);
+        assertFalse(result.isSatisfied());
+        assertTrue(result.getTraces().isEmpty());
+
+        String[] lines = json.toString().split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("{\"steps\":[{\"state\":\"b\",\"labels\":[\"start\"]},"
+                + "{\"actions\":[\"step\"],\"state\":\"a\",\"labels\":[]},"
+                + "{\"actions\":[\"fail\"],\"state\":\"bad\",\"labels\":[\"bad\"]}]}", lines[1]);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        checker.setTraceSink(new BinaryTraceSink(bytes));
+        checker.checkWithResult(twoStarts, null, query);
+        List<String[]> traces = BinaryTraceSink.readTraces(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(2, traces.size());
+        assertArrayEquals(new String[] { "a", "bad" }, traces.get(0));
+        assertArrayEquals(new String[] { "b", "a", "bad" }, traces.get(1));
+    }
+
+    @Test
+    public void checkSuite() throws IOException {
+        FormulaSuite suite = FormulaSuite.parse("src/test/resources/mtxsuite.json");
+        assertEquals(Arrays.asList("reach", "mutex", "2"), suite.getNames());
+
+        // equal action sets are shared between identifiers and formulas
+        Eventually reach = (Eventually) ((ThereExists) suite.get("reach")).pathFormula;
+        assertSame(suite.getActionSets().get("b"), suite.getActionSets().get("d"));
+        assertEquals(new HashSet<String>(Arrays.asList("act1")), reach.getLeftActions());
+
+        Map<String, CheckResult> results = new SimpleModelChecker().checkSuite(mutexModel, suite, false);
+        for (String name : suite.getNames()) {
+            CheckResult single = new SimpleModelChecker().checkWithResult(mutexModel, suite.getConstraint(), suite.get(name));
+            assertEquals(single.isSatisfied(), results.get(name).isSatisfied());
+            assertEquals(single.getQuerySatSize(), results.get(name).getQuerySatSize());
+        }
+        assertTrue(results.get("mutex").isSatisfied());
+    }
+
+    @Test
+    public void checkWithMappedStorage() throws IOException {
+        StateFormula mutexQuery = new FormulaParser("src/test/resources/mtxctl.json").parse();
+        Storage storage = new MappedStorage(null, 12);
+        CompiledModel mapped = CompiledModel.compile(mutexModel, storage);
+        CompiledModel heap = mutexModel.compile();
+
+        assertEquals(heap.getEdgeCount(), mapped.getEdgeCount());
+        StateSet expected = new SATChecker(heap).getSat(mutexQuery, heap.allStates());
+        StateSet actual = new SATChecker(mapped).getSat(mutexQuery, mapped.allStates());
+        assertTrue(actual instanceof MappedStateSet);
+        for (int s = 0; s < heap.getStateCount(); s++) {
+            assertEquals(expected.contains(s), actual.contains(s));
+        }
+
+        // a set spanning several 4 KB segments
+        StateSet large = storage.newStateSet(100000);
+        for (int s = 0; s < 100000; s += 7) large.add(s);
+        StateSet copy = large.copy();
+        copy.remove(99995);
+        assertEquals(14286, large.cardinality());
+        assertEquals(99995, large.nextState(99989));
+        assertEquals(-1, copy.nextState(99989));
+        assertTrue(large.containsAll(copy));
+        large.removeAll(copy);
+        assertEquals(1, large.cardinality());
+    }
+
+    @Test
+    public void mappedSetsAreReusedAfterRelease() throws IOException {
+        StateFormula mutexQuery = new FormulaParser("src/test/resources/mtxctl.json").parse();
+        MappedStorage storage = new MappedStorage(null, 12);
+        CompiledModel mapped = CompiledModel.compile(mutexModel, storage);
+        SATChecker checker = new SATChecker(mapped);
+        StateSet all = mapped.allStates();
+
+        checker.recycle(checker.getSat(mutexQuery, all));
+        long mappings = storage.getMappingCount();
+        for (int i = 0; i < 10; i++) {
+            checker.recycle(checker.getSat(mutexQuery, all));
+        }
+        assertEquals(mappings, storage.getMappingCount());
+
+        StateSet large = storage.newFullStateSet(100000);
+        storage.release(large);
+        StateSet reused = storage.newStateSet(100000);
+        assertEquals(mappings + 1, storage.getMappingCount());
+        assertTrue(reused.isEmpty());
+    }
+
+    @Test
+    public void checkWithCompressedSets() throws IOException {
+        StateFormula mutexQuery = new FormulaParser("src/test/resources/mtxctl.json").parse();
+        CompiledModel compressed = CompiledModel.compile(mutexModel, Storage.COMPRESSED);
+        CompiledModel heap = mutexModel.compile();
+
+        StateSet expected = new SATChecker(heap).getSat(mutexQuery, heap.allStates());
+        StateSet actual = new SATChecker(compressed).getSat(mutexQuery, compressed.allStates());
+        assertTrue(actual instanceof RoaringStateSet);
+        for (int s = 0; s < heap.getStateCount(); s++) {
+            assertEquals(expected.contains(s), actual.contains(s));
+        }
+
+        // all but a few states of three chunks, then a sparse set
+        RoaringStateSet most = RoaringStateSet.full(200000);
+        most.remove(5);
+        most.remove(70000);
+        RoaringStateSet few = most.complement();
+        assertEquals(2, few.cardinality());
+        assertEquals(70000, few.nextState(6));
+        assertEquals(199998, most.cardinality());
+
+        few.addRange(131000, 131100);
+        most.retainAll(few);
+        assertEquals(100, most.cardinality());
+        most.addAll(few);
+        assertEquals(102, most.cardinality());
+        assertTrue(most.containsAll(few) && few.containsAll(most));
+    }
+
+    @Test
+    public void recheckAfterModelEdit() throws Exception {
+        List<StateFormula> formulas = new ArrayList<>();
+        formulas.add(new FormulaParser("src/test/resources/mtxctl.json").parse());
+        formulas.add(new FormulaParser("src/test/resources/ctl2.json").parse());
+
+        IncrementalChecker checker = new IncrementalChecker();
+        IncrementalChecker.Snapshot snapshot = checker.check(mutexModel, formulas);
+        ModelDelta delta = new ModelDelta()
+                .addLabel("s1", "crit2")
+                .removeTransition("s0", "s1")
+                .addState("s9", false, "wait1")
+                .addTransition("s9", "s0");
+        IncrementalChecker.Snapshot edited = checker.recheck(snapshot, delta);
+        IncrementalChecker.Snapshot full = checker.check(delta.applyTo(mutexModel), formulas);
+
+        for (StateFormula formula : formulas) {
+            assertEquals(full.getSat(formula), edited.getSat(formula));
+            assertEquals(full.holds(formula), edited.holds(formula));
+        }
+        assertTrue(edited.getRecomputedStates() <= full.getRecomputedStates());
+    }
+
+    @Test
+    public void recheckWorkIsBoundedByEditedRegion() throws Exception {
+        // a chain s0 -> s1 -> ... -> s199 that ends in a self loop
+        int n = 200;
+        State[] states = new State[n];
+        Transition[] transitions = new Transition[n];
+        for (int i = 0; i < n; i++) {
+            states[i] = new State("s" + i, i == 0, new String[] { (i % 2 == 0) ? "p" : "q" });
+            transitions[i] = new Transition("s" + i, "s" + Math.min(i + 1, n - 1), new String[0]);
+        }
+        Model chain = new Model(states, transitions);
+        List<StateFormula> formulas = Arrays.asList(FormulaParser.parseRawFormulaString("EF (p && q)"),
+                FormulaParser.parseRawFormulaString("AG (p || q)"),
+                FormulaParser.parseRawFormulaString("E (!q U (p && EX p))"));
+
+        IncrementalChecker checker = new IncrementalChecker();
+        IncrementalChecker.Snapshot snapshot = checker.check(chain, formulas);
+        // only s0 and s1 can reach s1
+        ModelDelta delta = new ModelDelta().addLabel("s1", "p");
+        IncrementalChecker.Snapshot edited = checker.recheck(snapshot, delta);
+        IncrementalChecker.Snapshot full = checker.check(delta.applyTo(chain), formulas);
+
+        for (StateFormula formula : formulas) {
+            assertEquals(full.getSat(formula), edited.getSat(formula));
+        }
+        // a full check visits every state once per subformula, a recheck at most the two states per subformula
+        int subformulas = full.getRecomputedStates() / n;
+        assertEquals(n * subformulas, full.getRecomputedStates());
+        assertTrue(edited.getRecomputedStates() <= 2 * subformulas);
+        assertTrue(edited.getRecomputedStates() > 0);
+    }
+
     private void setEnvironment(String modelName, String queryName, String constraintName){
         try {
             String resourcePath = "src/test/resources/";
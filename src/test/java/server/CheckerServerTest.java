@@ -0,0 +1,192 @@
+package server;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Paths;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import formula.FormulaParser;
+import formula.stateFormula.StateFormula;
+import model.Model;
+import modelChecker.SimpleModelChecker;
+
+public class CheckerServerTest {
+    private static final String MODEL = "src/test/resources/mtxmodel.json";
+    private CheckerServer server;
+
+    @Before
+    public void instantiateEnvironment() {
+        server = new CheckerServer(1000, 1000);
+    }
+
+    @Test
+    public void loadReturnsContentHash() {
+        JsonObject first = server.handleLine(request(1, "load", "{\"path\":\"" + MODEL + "\"}"));
+        JsonObject second = server.handleLine(request(2, "load", "{\"path\":\"" + MODEL + "\"}"));
+
+        String hash = first.getAsJsonObject("result").get("model").getAsString();
+        assertEquals(hash, second.getAsJsonObject("result").get("model").getAsString());
+        assertEquals(8, first.getAsJsonObject("result").get("states").getAsInt());
+    }
+
+    @Test
+    public void checkByHashReusesSubformulaResults() {
+        JsonObject load = server.handleLine(request(1, "load", "{\"path\":\"" + MODEL + "\"}"));
+        String hash = load.getAsJsonObject("result").get("model").getAsString();
+        String params = "{\"model\":\"" + hash + "\",\"query\":\"src/test/resources/ctl2.json\","
+                + "\"constraint\":\"src/test/resources/mtxconstraint.json\"}";
+
+        JsonObject first = server.handleLine(request(2, "check", params));
+        JsonObject second = server.handleLine(request(3, "check", params));
+
+        assertFalse(first.getAsJsonObject("result").get("satisfied").getAsBoolean());
+        assertEquals(first.getAsJsonObject("result").get("traces"), second.getAsJsonObject("result").get("traces"));
+
+        JsonObject stats = server.handleLine(request(4, "stats", "{}")).getAsJsonObject("result");
+        assertTrue(stats.get("resultHits").getAsLong() > 0);
+    }
+
+    @Test
+    public void batchChecksEveryQuery() {
+        String params = "{\"path\":\"" + MODEL + "\",\"queries\":[\"src/test/resources/ctl1.json\","
+                + "{\"formula\":\"EF crit1\"}]}";
+        JsonObject reply = server.handleLine(request(1, "batch", params));
+
+        assertEquals(2, reply.getAsJsonObject("result").getAsJsonArray("results").size());
+    }
+
+    @Test
+    public void batchChecksSuite() {
+        String params = "{\"path\":\"" + MODEL + "\",\"suite\":\"src/test/resources/mtxsuite.json\"}";
+        JsonArray results = server.handleLine(request(1, "batch", params)).getAsJsonObject("result").getAsJsonArray("results");
+
+        assertEquals(3, results.size());
+        assertEquals("mutex", results.get(1).getAsJsonObject().get("name").getAsString());
+    }
+
+    @Test
+    public void reportsErrors() {
+        assertEquals(CheckerServer.METHOD_NOT_FOUND, errorCode(server.handleLine(request(1, "unknown", "{}"))));
+        assertEquals(CheckerServer.INVALID_PARAMS, errorCode(server.handleLine(request(2, "check", "{\"model\":\"abc\"}"))));
+        assertEquals(CheckerServer.PARSE_ERROR, errorCode(server.handleLine("not json")));
+    }
+
+    @Test
+    public void survivesMalformedRequests() throws IOException {
+        String lines = "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"check\",\"params\":\"x\"}\n"
+                + "{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":{},\"params\":{}}\n"
+                + request(3, "stats", "{}") + "\n";
+        StringWriter out = new StringWriter();
+        server.serve(new BufferedReader(new StringReader(lines)), new PrintWriter(out));
+
+        String[] replies = out.toString().split("\n");
+        assertEquals(3, replies.length);
+        assertEquals(CheckerServer.INVALID_PARAMS, errorCode(new JsonParser().parse(replies[0]).getAsJsonObject()));
+        assertEquals(CheckerServer.INVALID_PARAMS, errorCode(new JsonParser().parse(replies[1]).getAsJsonObject()));
+        assertTrue(new JsonParser().parse(replies[2]).getAsJsonObject().getAsJsonObject("result").has("models"));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedModel() {
+        CheckerServer small = new CheckerServer(30, 1000);
+        small.handleLine(request(1, "load", "{\"path\":\"" + MODEL + "\"}"));
+        small.handleLine(request(2, "load", "{\"path\":\"src/test/resources/model1.json\"}"));
+        small.handleLine(request(3, "load", "{\"path\":\"src/test/resources/model2.json\"}"));
+
+        JsonObject stats = small.handleLine(request(4, "stats", "{}")).getAsJsonObject("result");
+        assertTrue(stats.get("modelWeight").getAsLong() <= 30);
+    }
+
+    @Test
+    public void runBatchManifest() throws IOException {
+        String manifest = "{\"jobs\":["
+                + "{\"model\":\"mtxmodel.json\",\"constraint\":\"mtxconstraint.json\",\"queries\":[\"mtxctl.json\",\"ctl2.json\"]},"
+                + "{\"model\":\"mtxmodel.json\",\"suite\":\"mtxsuite.json\"},"
+                + "{\"model\":\"model1.json\",\"constraint\":\"constraint1-pass.json\",\"queries\":[\"ctl1.json\"]},"
+                + "{\"model\":\"missing.json\",\"queries\":[\"ctl1.json\"]}]}";
+        long size = new File(MODEL).length() * BatchRunner.HEAP_PER_FILE_BYTE;
+
+        // room for one mutex model at a time
+        BatchRunner runner = new BatchRunner(4, size * 4 / 3 + 4);
+        StringWriter out = new StringWriter();
+        try {
+            runner.run(new JsonParser().parse(manifest).getAsJsonObject(), Paths.get("src/test/resources"), out);
+        } finally {
+            runner.shutdown();
+        }
+
+        String[] lines = out.toString().split("\n");
+        assertEquals(7, lines.length);
+        assertEquals(6, runner.getChecks());
+        assertEquals(1, runner.getErrors());
+        assertEquals(size, runner.getPeakReserved());
+
+        SimpleModelChecker checker = new SimpleModelChecker();
+        Model mutex = Model.parseModel(MODEL);
+        StateFormula constraint = new FormulaParser("src/test/resources/mtxconstraint.json").parse();
+        for (String text : lines) {
+            JsonObject line = new JsonParser().parse(text).getAsJsonObject();
+            if (line.get("job").getAsInt() == 0) {
+                StateFormula query = new FormulaParser("src/test/resources/" + line.get("query").getAsString()).parse();
+                assertEquals(checker.check(mutex, constraint, query), line.get("satisfied").getAsBoolean());
+            } else if (line.get("job").getAsInt() == 3) {
+                assertTrue(line.has("error"));
+            }
+        }
+    }
+
+    @Test
+    public void checkFromCommandLine() throws IOException {
+        StringWriter out = new StringWriter();
+        int status = CheckerCli.check(new String[] { "--model", MODEL,
+                "--constraint", "src/test/resources/mtxconstraint.json",
+                "--query", "src/test/resources/mtxctl.json", "--query", "src/test/resources/ctl2.json",
+                "--threads", "2", "--timeout", "60000" }, new PrintWriter(out));
+
+        JsonObject json = new JsonParser().parse(out.toString()).getAsJsonObject();
+        JsonArray results = json.getAsJsonArray("results");
+        assertEquals(CheckerCli.VIOLATED, status);
+        assertFalse(json.get("satisfied").getAsBoolean());
+        assertEquals(2, results.size());
+        assertEquals("src/test/resources/ctl2.json", results.get(1).getAsJsonObject().get("query").getAsString());
+        assertFalse(results.get(1).getAsJsonObject().get("satisfied").getAsBoolean());
+        assertTrue(json.getAsJsonObject("timings").has("parseNanos"));
+        assertTrue(json.getAsJsonObject("timings").has("indexNanos"));
+        assertTrue(results.get(0).getAsJsonObject().getAsJsonObject("timings").has("traceNanos"));
+    }
+
+    @Test
+    public void commandLineReportsErrors() {
+        StringWriter out = new StringWriter();
+        int status = CheckerCli.run(new String[] { "check", "--model", MODEL, "--query" }, new PrintWriter(out));
+        assertEquals(CheckerCli.ERROR, status);
+        assertEquals("Missing value for --query",
+                new JsonParser().parse(out.toString()).getAsJsonObject().get("error").getAsString());
+
+        out = new StringWriter();
+        status = CheckerCli.run(new String[] { "--model", "missing.json", "--query", "src/test/resources/ctl1.json" },
+                new PrintWriter(out));
+        assertEquals(CheckerCli.ERROR, status);
+        assertTrue(new JsonParser().parse(out.toString()).getAsJsonObject().has("error"));
+    }
+
+    private static int errorCode(JsonObject reply) {
+        return reply.getAsJsonObject("error").get("code").getAsInt();
+    }
+
+    private static String request(int id, String method, String params) {
+        return "{\"jsonrpc\":\"2.0\",\"id\":" + id + ",\"method\":\"" + method + "\",\"params\":" + params + "}";
+    }
+}